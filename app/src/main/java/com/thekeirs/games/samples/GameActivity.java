@@ -28,7 +28,7 @@ public class GameActivity extends AppCompatActivity {
 
         mBus = new MessageBus();
 
-        mObjectManager = new GameObjectManager(mBus, getResources());
+        mObjectManager = new GameObjectManager(mBus);
         mObjectManager.setLevel(new OpeningScreenLevel());
 
         mGameView = (GameView) findViewById(R.id.gameview);
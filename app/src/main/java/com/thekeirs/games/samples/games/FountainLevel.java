@@ -45,6 +45,7 @@ public class FountainLevel extends GameLevel {
             Sprite p = new Sprite("platform" + i, PLAT_COORDS[i][0], PLAT_COORDS[i][1], PLATFORM_WIDTH, PLATFORM_HEIGHT, R.raw.button_castle_blaster);
             p.setSolid(true);
             p.setBouncy(true);
+            p.setStatic(true);
             platforms.add(p);
             mManager.addObject(p);
         }
@@ -54,6 +55,7 @@ public class FountainLevel extends GameLevel {
 
         floor = new Sprite("floor", WIDTH / 2, HEIGHT - 5, WIDTH, 10, R.raw.button_castle_blaster);
         floor.setSolid(true);
+        floor.setStatic(true);
         mManager.addObject(floor);
     }
 
@@ -65,12 +67,13 @@ public class FountainLevel extends GameLevel {
         if (Rand.onceEvery(1.0f)) {
             Sprite ball = new Sprite("", WIDTH / 2, HEIGHT / 2, 40, 40, R.raw.pink_ball) {
                 @Override
-                public void onCollision(GameObject other) {
+                public void onCollisionEnter(GameObject other) {
                     if (other != floor) {
                         Audio.play(R.raw.frog_croak);
                     }
                 }
             };
+            ball.setCircleShape(20);
             ball.setFeelsGravity(true);
             ball.setAutoDieOffscreen(true);
             ball.setdX(Rand.between(-150, 150));
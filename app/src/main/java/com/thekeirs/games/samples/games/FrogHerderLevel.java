@@ -23,6 +23,10 @@ public class FrogHerderLevel extends GameLevel {
     private Sprite mLillypad;
     private Sprite mYouWon;
 
+    // The lillypad is a trigger, so it keeps count of the frogs on it as they hop on and off.
+    private int mFrogCount;
+    private int mFrogsOnPad;
+
     public FrogHerderLevel() {
         super();
     }
@@ -43,7 +47,22 @@ public class FrogHerderLevel extends GameLevel {
         mManager.setScene(scene);
 
         // Create one lillypad centered on the screen and give it to the game manager.
-        mLillypad = new Sprite("lillypad", 700, 350, 200, 200, R.raw.lillypad);
+        mLillypad = new Sprite("lillypad", 700, 350, 200, 200, R.raw.lillypad) {
+            @Override
+            public void onTriggerEnter(GameObject other) {
+                if (other.name.startsWith("frog")) {
+                    ++mFrogsOnPad;
+                }
+            }
+
+            @Override
+            public void onTriggerExit(GameObject other) {
+                if (other.name.startsWith("frog")) {
+                    --mFrogsOnPad;
+                }
+            }
+        };
+        mLillypad.setTrigger(true);
         mManager.addObject(mLillypad);
 
         for (int i = 0; i < NUM_FROGS; ++i) {
@@ -64,6 +83,7 @@ public class FrogHerderLevel extends GameLevel {
             // Add the frog to the Game Object Manager so it can be drawn on the screen,
             // touched, and have its location updated.
             mManager.addObject(frog);
+            ++mFrogCount;
         }
     }
 
@@ -80,13 +100,8 @@ public class FrogHerderLevel extends GameLevel {
 
     @Override
     public void update(int millis) {
-        // Use a loop to count how many frogs are not touching the lillypad right now
-        int frogsOffPad = 0;
-        for (GameObject frog : mManager.getObjectsMatching("frog")) {
-            if (frog.intersects(mLillypad) == false) {
-                ++frogsOffPad;
-            }
-        }
+        // The lillypad has been counting the frogs hopping on and off it
+        int frogsOffPad = mFrogCount - mFrogsOnPad;
 
         // If we're in the winning condition and we haven't already displayed the
         // "You Won" banner, display it.
@@ -1,6 +1,7 @@
 package com.thekeirs.games.samples.games;
 
 import com.thekeirs.games.engine.Audio;
+import com.thekeirs.games.engine.GameObject;
 import com.thekeirs.games.engine.Rand;
 import com.thekeirs.games.engine.Sprite;
 import com.thekeirs.games.samples.R;
@@ -71,8 +72,14 @@ public class FrogSprite extends Sprite {
         // Pick a random distance to hop when tapped.
         int dist = Rand.between(30, 50);
 
-        // When tapped, always hop exactly towards the middle of the screen.
-        hopToward(dist, targetX, targetY);
+        // When tapped, hop towards the closest lillypad.  If there aren't any, hop towards
+        // the target location we were given instead.
+        GameObject pad = manager.getNearestObject(getX(), getY(), "lillypad");
+        if (pad != null) {
+            hopToward(dist, pad.getX(), pad.getY());
+        } else {
+            hopToward(dist, targetX, targetY);
+        }
 
         // And make a suitable frog noise.
         Audio.play(R.raw.frog_croak);
@@ -62,12 +62,22 @@ public class ZombieLevel extends GameLevel {
         mManager.addObject(
                 new Sprite("zombie", 400, 100, 200, 200, R.raw.zombie){
                     @Override
-                    public void onCollision(GameObject other) {
-                        super.onCollision(other);
+                    public void onCollisionEnter(GameObject other) {
+                        super.onCollisionEnter(other);
                         if (other.name.equals("death")) {
                             score -= 100;
                         }
                     }
+
+                    // Walked off the edge of the world: turn around.
+                    @Override
+                    public void onTriggerExit(GameObject other) {
+                        super.onTriggerExit(other);
+                        if (other == mManager.getWorldTrigger()) {
+                            direction = (direction + 180) % 360;
+                            score -= 20;
+                        }
+                    }
                 }
         );
         mManager.addObject(
@@ -98,10 +108,7 @@ public class ZombieLevel extends GameLevel {
         scoreText = (Text) mManager.getObjectByName("score");
         scoreText.setTransparency(200);
         scoreText.setHexColor("BB0000");
-        zombie.setComplexShape(
-                new CollisionVertex(1, 4),
-                new CollisionVertex(1, 0),
-                new CollisionVertex(-5, 2));
+        zombie.setHullShape(6);
         zombie.setSolid(true);
         brain.setSolid(true);
     }
@@ -117,10 +124,6 @@ public class ZombieLevel extends GameLevel {
             zombie.forceCollisionDetection(this.speed, this.direction);
             zombie.hop(this.speed, this.direction);
             zombie.setRotation((float) this.direction);
-            if (zombie.isFullyOffScreen()) {
-                this.direction = (this.direction + 180) % 360;
-                score -= 20;
-            }
 
             if (brain.isInside(zombie)) {
                 // http://soundbible.com/976-Eating.html
@@ -2,9 +2,6 @@ package com.thekeirs.games.engine;
 
 import android.content.Context;
 
-import java.util.HashSet;
-import java.util.Set;
-
 import im.delight.android.audio.SoundManager;
 
 
@@ -37,35 +34,38 @@ import im.delight.android.audio.SoundManager;
  * idea is debatable (eg, if player has gone up a few levels, some
  * old sounds may not be used on later levels.)
  *
+ * The player and the list of loaded sounds belong to the current
+ * EngineContext, so games running side by side don't share them.
+ *
  */
 
 public class Audio {
     static final int MAX_STREAMS = 6;
 
     static final String TAG = "GameEngine-Audio";
-    static private SoundManager mSoundManager;
-    static private Set<Integer> mLoadedSounds = new HashSet<>();
 
     /**
      * Called by the game engine to resume sound playing after a pause.  Do not call directly.
      */
     static public void onResume(Context context) {
-        mSoundManager = new SoundManager(context, MAX_STREAMS);
-        mSoundManager.start();
-        preload();
+        EngineContext engine = EngineContext.current();
+        engine.soundManager = new SoundManager(context, MAX_STREAMS);
+        engine.soundManager.start();
+        preload(engine);
     }
 
-    private static void preload() {
-        for (Integer id : mLoadedSounds) {
-            mSoundManager.load(id);
+    private static void preload(EngineContext engine) {
+        for (Integer id : engine.loadedSounds) {
+            engine.soundManager.load(id);
         }
     }
 
     /** Called by the game engine to pause sound playing.  Do not call directly. */
     static public void onPause() {
-        if (mSoundManager != null) {
-            mSoundManager.cancel();
-            mSoundManager = null;
+        EngineContext engine = EngineContext.current();
+        if (engine.soundManager != null) {
+            engine.soundManager.cancel();
+            engine.soundManager = null;
         }
     }
 
@@ -82,12 +82,13 @@ public class Audio {
      *           your audio clip, for example {@code R.raw.monster_roar1}
      */
     static public void play(int id) {
-        if (mSoundManager != null) {
-            if (!mLoadedSounds.contains(id)) {
-                mSoundManager.load(id);
-                mLoadedSounds.add(id);
+        EngineContext engine = EngineContext.current();
+        if (engine.soundManager != null) {
+            if (!engine.loadedSounds.contains(id)) {
+                engine.soundManager.load(id);
+                engine.loadedSounds.add(id);
             }
-            mSoundManager.play(id);
+            engine.soundManager.play(id);
         }
     }
 }
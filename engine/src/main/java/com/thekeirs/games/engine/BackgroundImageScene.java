@@ -1,9 +1,5 @@
 package com.thekeirs.games.engine;
 
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Rect;
-
 /**
  * <h1>A scene consisting of a single fixed background image</h1>
  * <p>
@@ -14,7 +10,8 @@ import android.graphics.Rect;
  */
 
 public class BackgroundImageScene extends Scene {
-    private Bitmap mImage;
+    private int mImageId;
+    private final float[] mMatrix = new float[6];
     private GameObjectManager mManager;
 
     /**
@@ -42,18 +39,13 @@ public class BackgroundImageScene extends Scene {
      * @param id resource ID of the image (eg {@code R.raw.background_level2})
      */
     public void setImage(int id) {
-        mImage = Images.get(id);
+        mImageId = id;
     }
 
-    /**
-     * Used by the game engine to draw the image on the screen.  Do not call this directly.
-     *
-     * @param c  the canvas object for the current screen
-     */
     @Override
-    public void draw(Canvas c) {
-        Rect src = new Rect(0, 0, mImage.getWidth(), mImage.getHeight());
-        Rect cRect = new Rect(0, 0, c.getWidth(), c.getHeight());
-        c.drawBitmap(mImage, src, cRect, null);
+    public void writeCommands(RenderCommandList out, float width, float height) {
+        mMatrix[RenderCommandList.IMAGE_A] = width;
+        mMatrix[RenderCommandList.IMAGE_E] = height;
+        out.image(mImageId, mMatrix, 0, 0, 1, 1, 255);
     }
 }
@@ -0,0 +1,104 @@
+package com.thekeirs.games.engine;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+/**
+ * <h1>[internal] Carries out render commands on an Android {@link Canvas}</h1>
+ * <p>
+ *     Used by the {@link RenderThread} to draw onto the screen.  Give it the canvas for each
+ *     frame with {@link #setCanvas(Canvas)} before calling {@link #render}.
+ * </p>
+ */
+
+public final class CanvasBackend implements RenderBackend {
+    private Canvas mCanvas;
+    private final Matrix mMatrix = new Matrix();
+    private final float[] mValues = new float[9];
+    private final Rect mSrc = new Rect();
+    private final RectF mUnit = new RectF(0, 0, 1, 1);
+    private final Paint mImagePaint = new Paint();
+    private final Paint mPaint = new Paint();
+    private final Paint mOutline = new Paint();
+
+    public CanvasBackend() {
+        mImagePaint.setFilterBitmap(true);
+        mOutline.setStyle(Paint.Style.STROKE);
+        mValues[8] = 1.0f;
+    }
+
+    public void setCanvas(Canvas canvas) {
+        mCanvas = canvas;
+    }
+
+    @Override
+    public int getWidth() {
+        return mCanvas.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return mCanvas.getHeight();
+    }
+
+    @Override
+    public void render(RenderCommandList commands) {
+        float[] args = commands.getArgs();
+        for (int i = 0; i < commands.size(); i++) {
+            int a = commands.getArgOffset(i);
+            switch (commands.getOp(i)) {
+                case RenderCommandList.FILL:
+                    mCanvas.drawColor(commands.getValue(i));
+                    break;
+                case RenderCommandList.IMAGE:
+                    drawImage(Images.get(commands.getValue(i)), args, a);
+                    break;
+                case RenderCommandList.TEXT:
+                    mPaint.setColor(commands.getValue(i));
+                    mPaint.setTextSize(args[a + RenderCommandList.TEXT_SIZE]);
+                    mCanvas.drawText(commands.getText(i), args[a + RenderCommandList.TEXT_X],
+                            args[a + RenderCommandList.TEXT_Y], mPaint);
+                    break;
+                case RenderCommandList.OUTLINE:
+                    mOutline.setColor(commands.getValue(i));
+                    mCanvas.drawRect(args[a + RenderCommandList.OUTLINE_LEFT],
+                            args[a + RenderCommandList.OUTLINE_TOP],
+                            args[a + RenderCommandList.OUTLINE_RIGHT],
+                            args[a + RenderCommandList.OUTLINE_BOTTOM], mOutline);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Draws the chosen part of the image into the unit square, with the canvas transformed
+     * so that the unit square lands where the command says.
+     */
+    private void drawImage(Bitmap image, float[] args, int a) {
+        mValues[0] = args[a + RenderCommandList.IMAGE_A];
+        mValues[1] = args[a + RenderCommandList.IMAGE_B];
+        mValues[2] = args[a + RenderCommandList.IMAGE_C];
+        mValues[3] = args[a + RenderCommandList.IMAGE_D];
+        mValues[4] = args[a + RenderCommandList.IMAGE_E];
+        mValues[5] = args[a + RenderCommandList.IMAGE_F];
+        mMatrix.setValues(mValues);
+
+        int w = image.getWidth(), h = image.getHeight();
+        mSrc.set(Math.round(args[a + RenderCommandList.IMAGE_SRC_LEFT] * w),
+                Math.round(args[a + RenderCommandList.IMAGE_SRC_TOP] * h),
+                Math.round(args[a + RenderCommandList.IMAGE_SRC_RIGHT] * w),
+                Math.round(args[a + RenderCommandList.IMAGE_SRC_BOTTOM] * h));
+        mImagePaint.setAlpha((int) args[a + RenderCommandList.IMAGE_ALPHA]);
+
+        mCanvas.save();
+        mCanvas.concat(mMatrix);
+        mCanvas.drawBitmap(image, mSrc, mUnit, mImagePaint);
+        mCanvas.restore();
+    }
+}
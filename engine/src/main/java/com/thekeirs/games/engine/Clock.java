@@ -0,0 +1,105 @@
+package com.thekeirs.games.engine;
+
+/**
+ * <h1>Decides how fast game time runs compared to real time</h1>
+ * <p>
+ *     The engine thread asks the clock how much game time has gone by since it last asked,
+ *     and runs that many fixed-length updates.  Normally game time keeps pace with real
+ *     time, but it can be slowed down, sped up, or stopped with {@link #setTimeScale(float)}:
+ *     0.5 gives slow motion, 0 pauses the game while it carries on drawing.
+ * </p>
+ * <p>
+ *     Fast-forward ({@link #setFastForward(int)}) goes further: real time is ignored
+ *     altogether and a set number of updates are run for every frame drawn, as fast as the
+ *     device can manage.  This is handy for letting a level play itself out at 20 times
+ *     normal speed to see what happens in the long run.
+ * </p>
+ * <p>
+ *     Real time comes from {@link #realTimeNanos()}.  Override it to drive the game from
+ *     some other time source, such as a fake clock that a test moves forward by hand.
+ * </p>
+ */
+
+public class Clock {
+    private float mTimeScale = 1.0f;
+    private int mFastForward = 1;           // Updates per frame drawn, when more than 1
+    private long mLastReal;                 // Real time when we were last asked, in nsec
+    private double mCarry;                  // Scaled time left over from rounding, in nsec
+
+    /**
+     * Gets the current real time.  Only differences between two calls mean anything.
+     *
+     * @return real time in nanoseconds
+     */
+    public long realTimeNanos() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Starts counting from now, forgetting any time that went by since we were last asked.
+     * Called by the engine thread when it starts, so time spent in the background doesn't
+     * come pouring in all at once.
+     */
+    public void restart() {
+        mLastReal = realTimeNanos();
+        mCarry = 0;
+    }
+
+    /**
+     * Works out how much game time has gone by since the last call (or since
+     * {@link #restart()}), allowing for the time scale.
+     *
+     * @return game time in nanoseconds
+     */
+    public long elapsedGameNanos() {
+        long now = realTimeNanos();
+        double scaled = (now - mLastReal) * (double) mTimeScale + mCarry;
+        mLastReal = now;
+        long elapsed = (long) scaled;
+        mCarry = scaled - elapsed;
+        return elapsed;
+    }
+
+    /**
+     * Sets how fast game time runs compared to real time.
+     *
+     * @param scale 1.0 for normal speed, less for slow motion, more to speed up, or 0 to pause
+     */
+    public void setTimeScale(float scale) {
+        if (scale < 0 || Float.isNaN(scale)) {
+            throw new IllegalArgumentException("Time scale can't be negative: " + scale);
+        }
+        mTimeScale = scale;
+    }
+
+    public float getTimeScale() {
+        return mTimeScale;
+    }
+
+    public boolean isPaused() {
+        return mTimeScale == 0 && !isFastForward();
+    }
+
+    /**
+     * Turns fast-forward on or off.  While it is on, the engine runs {@code updatesPerFrame}
+     * updates back to back between frames and skips drawing the ones in between, whatever
+     * real time and the time scale say.
+     *
+     * @param updatesPerFrame how many updates to run for each frame drawn; 1 turns
+     *                        fast-forward off
+     */
+    public void setFastForward(int updatesPerFrame) {
+        if (updatesPerFrame < 1) {
+            throw new IllegalArgumentException("Need at least one update per frame: " + updatesPerFrame);
+        }
+        mFastForward = updatesPerFrame;
+    }
+
+    public int getFastForward() {
+        return mFastForward;
+    }
+
+    public boolean isFastForward() {
+        return mFastForward > 1;
+    }
+}
@@ -0,0 +1,58 @@
+package com.thekeirs.games.engine;
+
+/**
+ * Box shape for use with the collisions subsystem.
+ * <p>
+ *     A rectangle centered on its owner that turns when the owner is rotated, so it is an
+ *     axis-aligned box when the owner isn't rotated and an oriented box when it is.  It
+ *     works anywhere a four-sided {@link CollisionShape} would, but also keeps its center,
+ *     half-size and orientation so tests against circles can be done in closed form.
+ * </p>
+ */
+
+public class CollisionBox extends CollisionShape {
+    private final float mHalfWidth, mHalfHeight;
+
+    // World-space placement, kept up to date by setTransform()
+    float mCenterX, mCenterY;
+    float mPosedHalfWidth, mPosedHalfHeight;
+    float mCos = 1.0f, mSin;
+
+    /**
+     * Builds a box that keeps the same size no matter how big its owner is.
+     *
+     * @param width  width of the box in world units
+     * @param height height of the box in world units
+     */
+    public CollisionBox(float width, float height) {
+        super(width, height, 0, 0);
+        mHalfWidth = width / 2;
+        mHalfHeight = height / 2;
+    }
+
+    /**
+     * Builds a box covering an object's bounding rectangle.  The box follows its owner's
+     * size from then on.
+     */
+    public CollisionBox(WorldRect boundingRect) {
+        super(boundingRect);
+        mHalfWidth = boundingRect.width() / 2;
+        mHalfHeight = boundingRect.height() / 2;
+    }
+
+    @Override
+    void pose(float sx, float sy, float cos, float sin) {
+        super.pose(sx, sy, cos, sin);
+        mPosedHalfWidth = mHalfWidth * sx;
+        mPosedHalfHeight = mHalfHeight * sy;
+        mCos = cos;
+        mSin = sin;
+    }
+
+    @Override
+    void place(float x, float y) {
+        super.place(x, y);
+        mCenterX = x;
+        mCenterY = y;
+    }
+}
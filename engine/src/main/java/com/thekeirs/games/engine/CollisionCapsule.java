@@ -0,0 +1,93 @@
+package com.thekeirs.games.engine;
+
+/**
+ * Capsule shape for use with the collisions subsystem.
+ * <p>
+ *     A capsule is every point within a given radius of a line segment: a rectangle with
+ *     round ends.  It is a good fit for long, thin things such as bullets, lasers or a
+ *     character's body, and like the other shapes it turns and stretches with its owner.
+ * </p>
+ */
+
+public class CollisionCapsule extends ConvexShape {
+    private final float mX1, mY1, mX2, mY2;
+    private final float mRadius;
+
+    // Stretched and rotated ends, still relative to the owner's center
+    private float mPosedX1, mPosedY1, mPosedX2, mPosedY2;
+
+    // World-space placement, kept up to date by setTransform()
+    float mWorldX1, mWorldY1, mWorldX2, mWorldY2;
+    float mPosedRadius;
+
+    /**
+     * Builds a capsule that keeps the same size no matter how big its owner is.
+     *
+     * @param x1     horizontal coordinate of one end of the center line, relative to the
+     *               owner's center
+     * @param y1     vertical coordinate of that end
+     * @param x2     horizontal coordinate of the other end of the center line
+     * @param y2     vertical coordinate of the other end
+     * @param radius how far the capsule reaches out from its center line, in world units
+     */
+    public CollisionCapsule(float x1, float y1, float x2, float y2, float radius) {
+        this(x1, y1, x2, y2, radius, 0, 0);
+    }
+
+    /**
+     * Builds a capsule for an object {@code width} by {@code height} world units in size.  If
+     * the owner is later resized, the capsule is stretched to match; the radius follows
+     * whichever of the width or height grew the least.
+     */
+    public CollisionCapsule(float x1, float y1, float x2, float y2, float radius,
+                            float width, float height) {
+        super(width, height);
+        mX1 = x1;
+        mY1 = y1;
+        mX2 = x2;
+        mY2 = y2;
+        mRadius = radius;
+    }
+
+    @Override
+    void pose(float sx, float sy, float cos, float sin) {
+        float x1 = mX1 * sx, y1 = mY1 * sy, x2 = mX2 * sx, y2 = mY2 * sy;
+        mPosedX1 = x1 * cos - y1 * sin;
+        mPosedY1 = x1 * sin + y1 * cos;
+        mPosedX2 = x2 * cos - y2 * sin;
+        mPosedY2 = x2 * sin + y2 * cos;
+        mPosedRadius = mRadius * Math.min(sx, sy);
+    }
+
+    @Override
+    void place(float x, float y) {
+        mWorldX1 = mPosedX1 + x;
+        mWorldY1 = mPosedY1 + y;
+        mWorldX2 = mPosedX2 + x;
+        mWorldY2 = mPosedY2 + y;
+        mMinX = Math.min(mWorldX1, mWorldX2) - mPosedRadius;
+        mMinY = Math.min(mWorldY1, mWorldY2) - mPosedRadius;
+        mMaxX = Math.max(mWorldX1, mWorldX2) + mPosedRadius;
+        mMaxY = Math.max(mWorldY1, mWorldY2) + mPosedRadius;
+    }
+
+    @Override
+    float maxAlong(float dx, float dy) {
+        return Math.max(mWorldX1 * dx + mWorldY1 * dy, mWorldX2 * dx + mWorldY2 * dy)
+                + mPosedRadius;
+    }
+
+    @Override
+    void support(float dx, float dy, float[] out, int offset) {
+        boolean first = mWorldX1 * dx + mWorldY1 * dy >= mWorldX2 * dx + mWorldY2 * dy;
+        float len = (float) Math.hypot(dx, dy);
+        float scale = (len > 0) ? mPosedRadius / len : 0;
+        out[offset] = (first ? mWorldX1 : mWorldX2) + dx * scale;
+        out[offset + 1] = (first ? mWorldY1 : mWorldY2) + dy * scale;
+    }
+
+    @Override
+    float signedDistance(float x, float y) {
+        return distanceToSegment(x, y, mWorldX1, mWorldY1, mWorldX2, mWorldY2) - mPosedRadius;
+    }
+}
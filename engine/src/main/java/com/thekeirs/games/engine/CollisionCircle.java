@@ -0,0 +1,85 @@
+package com.thekeirs.games.engine;
+
+/**
+ * Circle shape for use with the collisions subsystem.
+ * <p>
+ *     A circle centered on its owner.  Round things like balls and bullets are much cheaper
+ *     to check as circles than as many-sided polygons: two circles touch if their centers
+ *     are closer than the sum of their radii, which is a handful of multiplies.
+ * </p>
+ * <p>
+ *     If the owner is stretched, the radius follows whichever of its width or height grew
+ *     the least, so the circle never pokes out further than it did to begin with.
+ * </p>
+ */
+
+public class CollisionCircle extends ConvexShape {
+    private final float mRadius;
+
+    // World-space placement, kept up to date by setTransform()
+    float mCenterX, mCenterY;
+    float mPosedRadius;
+
+    /**
+     * Builds a circle that keeps the same size no matter how big its owner is.
+     *
+     * @param radius radius in world units
+     */
+    public CollisionCircle(float radius) {
+        this(radius, 0, 0);
+    }
+
+    /**
+     * Builds a circle for an object {@code width} by {@code height} world units in size.  If
+     * the owner is later resized, the circle grows or shrinks to match.
+     *
+     * @param radius radius in world units
+     */
+    public CollisionCircle(float radius, float width, float height) {
+        super(width, height);
+        mRadius = radius;
+    }
+
+    /**
+     * Gets the circle's radius as of the last {@link #setTransform} call.
+     *
+     * @return radius in world units
+     */
+    public float getWorldRadius() {
+        return mPosedRadius;
+    }
+
+    @Override
+    void pose(float sx, float sy, float cos, float sin) {
+        mPosedRadius = mRadius * Math.min(sx, sy);
+    }
+
+    @Override
+    void place(float x, float y) {
+        mCenterX = x;
+        mCenterY = y;
+        mMinX = x - mPosedRadius;
+        mMinY = y - mPosedRadius;
+        mMaxX = x + mPosedRadius;
+        mMaxY = y + mPosedRadius;
+    }
+
+    @Override
+    float maxAlong(float dx, float dy) {
+        return mCenterX * dx + mCenterY * dy + mPosedRadius;
+    }
+
+    @Override
+    void support(float dx, float dy, float[] out, int offset) {
+        float len = (float) Math.hypot(dx, dy);
+        float scale = (len > 0) ? mPosedRadius / len : 0;
+        out[offset] = mCenterX + dx * scale;
+        out[offset + 1] = mCenterY + dy * scale;
+    }
+
+    @Override
+    float signedDistance(float x, float y) {
+        float dx = x - mCenterX, dy = y - mCenterY;
+        return (float) Math.sqrt(dx * dx + dy * dy) - mPosedRadius;
+    }
+}
@@ -0,0 +1,192 @@
+package com.thekeirs.games.engine;
+
+import android.graphics.Bitmap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds convex collision shapes that fit the visible part of an image, so you don't have to
+ * work out the vertices by hand.
+ * <p>
+ *     The shape is the convex hull of every pixel in the image that isn't (nearly) fully
+ *     transparent, trimmed down to a given number of corners.  Fewer corners make collision
+ *     checks cheaper, at the price of a looser fit.  Working out a hull means reading every
+ *     pixel, so the result is cached by image and vertex count, the same way {@link Images}
+ *     caches the bitmaps: a hundred sprites using the same image share one set of vertices.
+ *     The cache is shared by every game running in the process.
+ * </p>
+ * <p>
+ *     The shape is described at the image's own size and is stretched to fit whatever size
+ *     the object using it is.
+ * </p>
+ */
+
+public final class CollisionHulls {
+    final public static int DEFAULT_MAX_VERTICES = 8;
+    final private static int ALPHA_THRESHOLD = 32;  // Pixels this transparent or more don't count
+
+    private static Map<Long, float[]> mCache = new HashMap<>();
+    private static Map<Integer, float[]> mSizes = new HashMap<>();
+
+    /**
+     * Gets a collision shape fitting the given image, with at most
+     * {@value #DEFAULT_MAX_VERTICES} corners.
+     *
+     * @param resourceId the ID of the image (eg {@literal R.raw.zombie})
+     * @return a new shape for one object to use
+     */
+    public static CollisionShape get(int resourceId) {
+        return get(resourceId, DEFAULT_MAX_VERTICES);
+    }
+
+    /**
+     * Gets a collision shape fitting the given image with at most {@code maxVertices}
+     * corners.  Each call returns a new shape, since a shape keeps track of where its owner
+     * is, but the vertices are only worked out once per image and vertex count.
+     *
+     * @param resourceId  the ID of the image (eg {@literal R.raw.zombie})
+     * @param maxVertices most corners the shape may have, at least 3
+     * @return a new shape for one object to use
+     */
+    public static synchronized CollisionShape get(int resourceId, int maxVertices) {
+        if (maxVertices < 3) {
+            throw new IllegalArgumentException("A hull needs at least 3 vertices: " + maxVertices);
+        }
+        long key = ((long) resourceId << 32) | maxVertices;
+        float[] hull = mCache.get(key);
+        float[] size = mSizes.get(resourceId);
+        if (hull == null) {
+            Bitmap bmp = Images.get(resourceId);
+            int w = bmp.getWidth(), h = bmp.getHeight();
+            int[] pixels = new int[w * h];
+            bmp.getPixels(pixels, 0, w, 0, 0, w, h);
+            hull = buildHull(pixels, w, h, maxVertices);
+            size = new float[] {w, h};
+            mCache.put(key, hull);
+            mSizes.put(resourceId, size);
+        }
+        return new CollisionShape(hull, size[0], size[1]);
+    }
+
+    /**
+     * Forgets every cached hull.
+     */
+    public static synchronized void clear() {
+        mCache.clear();
+        mSizes.clear();
+    }
+
+    /**
+     * Works out the convex hull of the visible pixels in an image and trims it down to
+     * {@code maxVertices} corners.
+     *
+     * @param pixels colors of the image, row by row, as {@link Bitmap#getPixels} gives them
+     * @return hull corners (x0, y0, x1, y1, ...) relative to the image's center, in order
+     */
+    static float[] buildHull(int[] pixels, int width, int height, int maxVertices) {
+        // The hull only depends on the leftmost and rightmost visible pixel of each row.  Use
+        // the outside corners of those pixels so the hull covers them completely.
+        long[] points = new long[4 * height];
+        int count = 0;
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            int left = 0;
+            while (left < width && (pixels[row + left] >>> 24) <= ALPHA_THRESHOLD) {
+                left++;
+            }
+            if (left == width) {
+                continue;
+            }
+            int right = width - 1;
+            while ((pixels[row + right] >>> 24) <= ALPHA_THRESHOLD) {
+                right--;
+            }
+            points[count++] = pack(left, y);
+            points[count++] = pack(left, y + 1);
+            points[count++] = pack(right + 1, y);
+            points[count++] = pack(right + 1, y + 1);
+        }
+        if (count == 0) {
+            // Nothing visible at all: use the whole image.
+            points[count++] = pack(0, 0);
+            points[count++] = pack(width, 0);
+            points[count++] = pack(width, height);
+            points[count++] = pack(0, height);
+        }
+
+        int[] hull = convexHull(points, count);
+        int n = simplify(hull, hull.length / 2, maxVertices);
+
+        float[] verts = new float[2 * n];
+        for (int i = 0; i < n; i++) {
+            verts[2 * i] = hull[2 * i] - width / 2.0f;
+            verts[2 * i + 1] = hull[2 * i + 1] - height / 2.0f;
+        }
+        return verts;
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | y;
+    }
+
+    /**
+     * Andrew's monotone chain.  Returns the hull's corners (x0, y0, x1, y1, ...) with
+     * straight-through points left out.
+     */
+    private static int[] convexHull(long[] points, int count) {
+        Arrays.sort(points, 0, count);
+        int[] hull = new int[4 * count + 2];
+        int n = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            int start = n;
+            for (int j = 0; j < count; j++) {
+                long p = points[pass == 0 ? j : count - 1 - j];
+                int x = (int) (p >> 32), y = (int) p;
+                while (n - start >= 2 && cross(hull, n - 2, n - 1, x, y) <= 0) {
+                    n--;
+                }
+                hull[2 * n] = x;
+                hull[2 * n + 1] = y;
+                n++;
+            }
+            n--;    // The last point of each half is the first point of the other
+        }
+        return Arrays.copyOf(hull, 2 * Math.max(n, 1));
+    }
+
+    private static long cross(int[] hull, int a, int b, int x, int y) {
+        long abx = hull[2 * b] - hull[2 * a], aby = hull[2 * b + 1] - hull[2 * a + 1];
+        long apx = x - hull[2 * a], apy = y - hull[2 * a + 1];
+        return abx * apy - aby * apx;
+    }
+
+    /**
+     * Trims a hull down to at most {@code maxVertices} corners by repeatedly dropping the
+     * corner that cuts off the least area, so what's left stays convex and close to the
+     * original.
+     *
+     * @return the number of corners left at the front of {@code hull}
+     */
+    private static int simplify(int[] hull, int n, int maxVertices) {
+        while (n > maxVertices) {
+            int best = 0;
+            long bestArea = Long.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                int prev = (i + n - 1) % n, next = (i + 1) % n;
+                long area = Math.abs(cross(hull, prev, i, hull[2 * next], hull[2 * next + 1]));
+                if (area < bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            System.arraycopy(hull, 2 * best + 2, hull, 2 * best, 2 * (n - best - 1));
+            n--;
+        }
+        return n;
+    }
+
+    private CollisionHulls() {
+    }
+}
@@ -0,0 +1,602 @@
+package com.thekeirs.games.engine;
+
+import java.util.Arrays;
+
+/**
+ * <h1>[internal] Exact overlap tests between pairs of collision shapes</h1>
+ * <p>
+ *     The cheapest test that works for the two shapes involved is used:
+ * </p>
+ * <ul>
+ *     <li>circle against circle, box or capsule is done in closed form, which is only a
+ *     few multiplies;</li>
+ *     <li>circle against polygon, and polygon against polygon, use the separating axis
+ *     test;</li>
+ *     <li>anything else (capsules against polygons or each other) falls back to a generic
+ *     test that only needs each shape's support function: GJK to find out whether the
+ *     shapes overlap, then EPA to find the minimum translation vector.</li>
+ * </ul>
+ * <p>
+ *     A {@link CompoundShape} is checked part by part, skipping the pairs of parts whose
+ *     bounding boxes don't overlap, and the pushes out of every overlapping pair are combined
+ *     into one that clears them all.
+ * </p>
+ * <p>
+ *     Everything reports results the same way as {@link ConvexShape#collideWith}, and none
+ *     of it allocates.
+ * </p>
+ */
+
+final class CollisionNarrowphase {
+    final static int EPA_MAX_VERTS = 32;
+    final private static int GJK_MAX_ITERATIONS = 32;
+    final private static float EPA_TOLERANCE = 0.01f;   // World units
+    final private static float COMPOUND_SLOP = 0.001f;  // World units; overlaps this thin count as apart
+    final private static int COMPOUND_ROUNDS = 8;       // Times the combined push is re-tested
+    final private static int COMPOUND_SOLVER_PASSES = 32;
+
+    // Scratch space for callers that don't pass in a result of their own
+    final private static ThreadLocal<CollisionResult> sScratch = new ThreadLocal<CollisionResult>() {
+        @Override
+        protected CollisionResult initialValue() {
+            return new CollisionResult();
+        }
+    };
+
+    /**
+     * Scratch space for checking a compound shape: the result for one pair of parts, and the
+     * push each overlapping pair needs, as a unit normal and the least distance along it.
+     */
+    private static final class CompoundScratch {
+        final CollisionResult part = new CollisionResult();
+        float[] normalX = new float[8];
+        float[] normalY = new float[8];
+        float[] depth = new float[8];
+        int count;
+
+        void add(float nx, float ny, float d) {
+            if (count == depth.length) {
+                int capacity = count * 2;
+                normalX = Arrays.copyOf(normalX, capacity);
+                normalY = Arrays.copyOf(normalY, capacity);
+                depth = Arrays.copyOf(depth, capacity);
+            }
+            normalX[count] = nx;
+            normalY[count] = ny;
+            depth[count] = d;
+            count++;
+        }
+    }
+
+    final private static ThreadLocal<CompoundScratch> sCompoundScratch = new ThreadLocal<CompoundScratch>() {
+        @Override
+        protected CompoundScratch initialValue() {
+            return new CompoundScratch();
+        }
+    };
+
+    private CollisionNarrowphase() {
+    }
+
+    static boolean collide(ConvexShape a, ConvexShape b, CollisionResult result) {
+        if (a instanceof CompoundShape || b instanceof CompoundShape) {
+            return compound(a, b, result);
+        }
+        if (a instanceof CollisionCircle) {
+            return circleAgainst((CollisionCircle) a, b, result);
+        }
+        if (b instanceof CollisionCircle) {
+            boolean hit = circleAgainst((CollisionCircle) b, a, result);
+            if (result != null) {
+                result.normalX = -result.normalX;
+                result.normalY = -result.normalY;
+            }
+            return hit;
+        }
+        if (a instanceof CollisionShape && b instanceof CollisionShape) {
+            return polygons((CollisionShape) a, (CollisionShape) b, result);
+        }
+        return gjk(a, b, (result != null) ? result : sScratch.get());
+    }
+
+    /**
+     * Checks every pair of parts whose boxes overlap, where a shape that isn't compound
+     * counts as a single part.
+     * <p>
+     *     Each overlapping pair needs {@code a} pushed at least its depth along its normal.
+     *     When parts overlap in different directions, no one pair's push is enough, so the
+     *     pushes are combined: starting from the deepest, the push is corrected toward each
+     *     pair it doesn't yet clear, over and over until it clears them all.  Then {@code a}
+     *     is slid over by the combined push and every pair is checked again, since the push
+     *     can shove one part into another; any new overlaps are added and the push worked
+     *     out again.  With just one overlapping pair, this gives that pair's own result.
+     * </p>
+     * <p>
+     *     Parts can be wedged so that the pairs' pushes fight each other and never settle.  If
+     *     there are still overlaps after the last round, {@code a} is instead pushed right
+     *     clear of everything in {@code b}, in whichever of the directions tried so far that
+     *     is shortest.
+     * </p>
+     */
+    private static boolean compound(ConvexShape a, ConvexShape b, CollisionResult result) {
+        CompoundScratch scratch = sCompoundScratch.get();
+        scratch.count = 0;
+        if (!collectParts(a, b, 0, 0, result == null, scratch)) {
+            if (result != null) {
+                // Boxes that don't overlap give a separating axis for the whole shapes.  If the
+                // boxes do overlap, any axis will do; it just won't be a useful one to cache.
+                boolean apartX = a.mMaxX <= b.mMinX || b.mMaxX <= a.mMinX;
+                result.normalX = apartX ? 1 : 0;
+                result.normalY = apartX ? 0 : 1;
+                result.depth = 0;
+            }
+            return false;
+        }
+        if (result == null) {
+            return true;
+        }
+
+        int deepest = 0;
+        for (int k = 1; k < scratch.count; k++) {
+            if (scratch.depth[k] > scratch.depth[deepest]) {
+                deepest = k;
+            }
+        }
+        float tx = scratch.normalX[deepest] * scratch.depth[deepest];
+        float ty = scratch.normalY[deepest] * scratch.depth[deepest];
+        boolean clear = false;
+        for (int round = 0; round < COMPOUND_ROUNDS && !clear; round++) {
+            for (int pass = 0; pass < COMPOUND_SOLVER_PASSES; pass++) {
+                float worst = 0;
+                for (int k = 0; k < scratch.count; k++) {
+                    float nx = scratch.normalX[k], ny = scratch.normalY[k];
+                    float gap = scratch.depth[k] - (tx * nx + ty * ny);
+                    if (gap > 0) {
+                        tx += nx * gap;
+                        ty += ny * gap;
+                        worst = Math.max(worst, gap);
+                    }
+                }
+                if (worst <= COMPOUND_SLOP) {
+                    break;
+                }
+            }
+            a.slide(tx, ty);
+            clear = !collectParts(a, b, tx, ty, false, scratch);
+            a.slide(0, 0);
+        }
+
+        float length = (float) Math.sqrt(tx * tx + ty * ty);
+        if (clear && length > 0) {
+            result.normalX = tx / length;
+            result.normalY = ty / length;
+            result.depth = length;
+        } else {
+            result.depth = Float.POSITIVE_INFINITY;
+            if (length > 0) {
+                pushClear(a, b, tx / length, ty / length, result);
+            }
+            for (int k = 0; k < scratch.count; k++) {
+                pushClear(a, b, scratch.normalX[k], scratch.normalY[k], result);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Works out how far {@code a} has to move along a unit direction for its shadow on that
+     * direction to be clear of {@code b}'s, which is sure to separate them, and keeps it in
+     * {@code result} if it is shorter than what's there already.
+     */
+    private static void pushClear(ConvexShape a, ConvexShape b, float nx, float ny,
+                                  CollisionResult result) {
+        float distance = b.maxAlong(nx, ny) + a.maxAlong(-nx, -ny);
+        if (distance < result.depth) {
+            result.normalX = nx;
+            result.normalY = ny;
+            result.depth = distance;
+        }
+    }
+
+    /**
+     * Adds the push needed for each overlapping pair of parts to the scratch list, as it
+     * would be measured from where {@code a} really is.  {@code a} has been slid over by
+     * (tx, ty) already.
+     *
+     * @param any stop at the first overlapping pair, without recording anything
+     * @return {@code true} if any pair overlapped by more than {@link #COMPOUND_SLOP}
+     */
+    private static boolean collectParts(ConvexShape a, ConvexShape b, float tx, float ty,
+                                        boolean any, CompoundScratch scratch) {
+        ConvexShape[] aParts = (a instanceof CompoundShape) ? ((CompoundShape) a).mParts : null;
+        ConvexShape[] bParts = (b instanceof CompoundShape) ? ((CompoundShape) b).mParts : null;
+        int aCount = (aParts != null) ? aParts.length : 1;
+        int bCount = (bParts != null) ? bParts.length : 1;
+        CollisionResult part = scratch.part;
+
+        boolean hit = false;
+        for (int i = 0; i < aCount; i++) {
+            ConvexShape pa = (aParts != null) ? aParts[i] : a;
+            if (!boundsOverlap(pa, b)) {
+                continue;
+            }
+            for (int j = 0; j < bCount; j++) {
+                ConvexShape pb = (bParts != null) ? bParts[j] : b;
+                if (!boundsOverlap(pa, pb) || !collide(pa, pb, any ? null : part)) {
+                    continue;
+                }
+                if (any) {
+                    return true;
+                }
+                if (part.depth > COMPOUND_SLOP || (tx == 0 && ty == 0)) {
+                    scratch.add(part.normalX, part.normalY,
+                            part.depth + tx * part.normalX + ty * part.normalY);
+                    hit = true;
+                }
+            }
+        }
+        return hit;
+    }
+
+    private static boolean boundsOverlap(ConvexShape a, ConvexShape b) {
+        return a.mMinX < b.mMaxX && b.mMinX < a.mMaxX && a.mMinY < b.mMaxY && b.mMinY < a.mMaxY;
+    }
+
+    private static boolean circleAgainst(CollisionCircle a, ConvexShape b, CollisionResult result) {
+        if (b instanceof CollisionCircle) {
+            CollisionCircle c = (CollisionCircle) b;
+            return circles(a.mCenterX, a.mCenterY, a.mPosedRadius,
+                    c.mCenterX, c.mCenterY, c.mPosedRadius, result);
+        }
+        if (b instanceof CollisionBox) {
+            return circleBox(a, (CollisionBox) b, result);
+        }
+        if (b instanceof CollisionShape) {
+            return circlePolygon(a, (CollisionShape) b, result);
+        }
+        if (b instanceof CollisionCapsule) {
+            CollisionCapsule c = (CollisionCapsule) b;
+            float ex = c.mWorldX2 - c.mWorldX1, ey = c.mWorldY2 - c.mWorldY1;
+            float lenSq = ex * ex + ey * ey;
+            float t = (lenSq > 0)
+                    ? ((a.mCenterX - c.mWorldX1) * ex + (a.mCenterY - c.mWorldY1) * ey) / lenSq
+                    : 0;
+            t = Math.max(0, Math.min(1, t));
+            return circles(a.mCenterX, a.mCenterY, a.mPosedRadius,
+                    c.mWorldX1 + t * ex, c.mWorldY1 + t * ey, c.mPosedRadius, result);
+        }
+        return gjk(a, b, (result != null) ? result : sScratch.get());
+    }
+
+    private static boolean circles(float ax, float ay, float ar, float bx, float by, float br,
+                                   CollisionResult result) {
+        float dx = ax - bx, dy = ay - by;
+        float reach = ar + br;
+        float distSq = dx * dx + dy * dy;
+        if (result == null) {
+            return distSq < reach * reach;
+        }
+        float dist = (float) Math.sqrt(distSq);
+        if (dist > 0) {
+            result.normalX = dx / dist;
+            result.normalY = dy / dist;
+        } else {
+            // Right on top of each other; any direction will do, so push up.
+            result.normalX = 0;
+            result.normalY = -1;
+        }
+        result.depth = Math.max(0, reach - dist);
+        return dist < reach;
+    }
+
+    /**
+     * Works in the box's own frame, where it is axis-aligned: the closest point of the box
+     * to the circle's center is just the center clamped to the box's half-size.
+     */
+    private static boolean circleBox(CollisionCircle a, CollisionBox b, CollisionResult result) {
+        float rx = a.mCenterX - b.mCenterX, ry = a.mCenterY - b.mCenterY;
+        float cos = b.mCos, sin = b.mSin;
+        float hw = b.mPosedHalfWidth, hh = b.mPosedHalfHeight;
+        float r = a.mPosedRadius;
+        float lx = rx * cos + ry * sin;
+        float ly = -rx * sin + ry * cos;
+
+        float dx = lx - Math.max(-hw, Math.min(hw, lx));
+        float dy = ly - Math.max(-hh, Math.min(hh, ly));
+        float distSq = dx * dx + dy * dy;
+        float nx, ny, depth;
+        boolean hit;
+        if (distSq > 0) {
+            // Center is outside the box; push straight away from the closest point.
+            hit = distSq < r * r;
+            if (result == null) {
+                return hit;
+            }
+            float dist = (float) Math.sqrt(distSq);
+            nx = dx / dist;
+            ny = dy / dist;
+            depth = hit ? r - dist : 0;
+        } else {
+            // Center is inside the box; leave through the nearest side.
+            hit = true;
+            if (result == null) {
+                return true;
+            }
+            float penX = hw - Math.abs(lx), penY = hh - Math.abs(ly);
+            if (penX < penY) {
+                nx = (lx < 0) ? -1 : 1;
+                ny = 0;
+                depth = penX + r;
+            } else {
+                nx = 0;
+                ny = (ly < 0) ? -1 : 1;
+                depth = penY + r;
+            }
+        }
+        // Back to world coordinates
+        result.normalX = nx * cos - ny * sin;
+        result.normalY = nx * sin + ny * cos;
+        result.depth = depth;
+        return hit;
+    }
+
+    private static boolean circlePolygon(CollisionCircle a, CollisionShape b, CollisionResult result) {
+        float cx = a.mCenterX, cy = a.mCenterY, r = a.mPosedRadius;
+        if (result != null) {
+            result.depth = Float.MAX_VALUE;
+        }
+
+        // The polygon's edges, plus the direction from its nearest corner to the circle.
+        float[] wv = b.mWorldVerts;
+        float nearestSq = Float.MAX_VALUE, ex = 0, ey = 0;
+        for (int v = 0; v < b.mVertCount; v++) {
+            float dx = cx - wv[2 * v], dy = cy - wv[2 * v + 1];
+            float dSq = dx * dx + dy * dy;
+            if (dSq < nearestSq) {
+                nearestSq = dSq;
+                ex = dx;
+                ey = dy;
+            }
+        }
+        for (int i = 0; i <= b.mWorldAxisCount; i++) {
+            float ax, ay;
+            if (i < b.mWorldAxisCount) {
+                ax = b.mWorldAxes[2 * i];
+                ay = b.mWorldAxes[2 * i + 1];
+            } else if (nearestSq > 0) {
+                float len = (float) Math.sqrt(nearestSq);
+                ax = ex / len;
+                ay = ey / len;
+            } else {
+                continue;
+            }
+            float c = cx * ax + cy * ay;
+            if (!overlapOnAxis(ax, ay, c - r, c + r,
+                    -b.maxAlong(-ax, -ay), b.maxAlong(ax, ay), result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean polygons(CollisionShape a, CollisionShape b, CollisionResult result) {
+        if (result != null) {
+            result.depth = Float.MAX_VALUE;
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            CollisionShape owner = (pass == 0) ? a : b;
+            for (int i = 0; i < owner.mWorldAxisCount; i++) {
+                float ax = owner.mWorldAxes[2 * i], ay = owner.mWorldAxes[2 * i + 1];
+                if (!overlapOnAxis(ax, ay, -a.maxAlong(-ax, -ay), a.maxAlong(ax, ay),
+                        -b.maxAlong(-ax, -ay), b.maxAlong(ax, ay), result)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One step of the separating axis test.  If the shadows {@code [min, max]} and
+     * {@code [otherMin, otherMax]} on the axis don't overlap, records the axis as separating
+     * and returns {@code false}.  Otherwise, if this is the shallowest overlap seen so far,
+     * records it as the minimum translation vector.  {@code result.depth} must start out at
+     * {@link Float#MAX_VALUE}.
+     */
+    private static boolean overlapOnAxis(float ax, float ay, float min, float max,
+                                         float otherMin, float otherMax, CollisionResult result) {
+        float overlap = Math.min(max, otherMax) - Math.max(min, otherMin);
+        if (overlap <= 0) {
+            // Found a separating axis
+            if (result != null) {
+                result.normalX = ax;
+                result.normalY = ay;
+                result.depth = 0;
+            }
+            return false;
+        }
+        if (result == null) {
+            return true;
+        }
+        // If one shadow is entirely inside the other, escaping means going all the way
+        // out through the nearer end.
+        if ((min >= otherMin && max <= otherMax) || (otherMin >= min && otherMax <= max)) {
+            overlap += Math.min(Math.abs(min - otherMin), Math.abs(max - otherMax));
+        }
+        if (overlap < result.depth) {
+            // Point the normal away from the other shape.
+            boolean flip = (min + max) < (otherMin + otherMax);
+            result.normalX = flip ? -ax : ax;
+            result.normalY = flip ? -ay : ay;
+            result.depth = overlap;
+        }
+        return true;
+    }
+
+    /**
+     * Gilbert-Johnson-Keerthi test on the Minkowski difference {@code a - b}: the shapes
+     * overlap exactly when that difference contains the origin.  Builds up a triangle of
+     * support points around the origin, or finds a direction along which the difference
+     * lies entirely on one side of it.  On overlap, hands the triangle to {@link #epa}.
+     */
+    private static boolean gjk(ConvexShape a, ConvexShape b, CollisionResult result) {
+        float[] s = result.simplex;
+        float dx = (a.mMinX + a.mMaxX) - (b.mMinX + b.mMaxX);
+        float dy = (a.mMinY + a.mMaxY) - (b.mMinY + b.mMaxY);
+        if (dx == 0 && dy == 0) {
+            dx = 1;
+        }
+        int count = 0;
+        for (int iteration = 0; iteration < GJK_MAX_ITERATIONS; iteration++) {
+            minkowskiSupport(a, b, dx, dy, s, 2 * count, result.support);
+            float px = s[2 * count], py = s[2 * count + 1];
+            if (px * dx + py * dy <= 0) {
+                // Nothing in a - b gets past the origin along d, so d separates the shapes.
+                float len = (float) Math.hypot(dx, dy);
+                result.normalX = dx / len;
+                result.normalY = dy / len;
+                result.depth = 0;
+                return false;
+            }
+            count++;
+            if (count == 1) {
+                dx = -px;
+                dy = -py;
+                continue;
+            }
+
+            // Newest point is "a"; work out which part of the simplex is nearest the origin.
+            int ia = 2 * (count - 1);
+            float ax = s[ia], ay = s[ia + 1];
+            float bx = s[0], by = s[1];
+            float abx = bx - ax, aby = by - ay;
+            if (count == 2) {
+                // Search perpendicular to the segment, on the origin's side.
+                dx = -aby;
+                dy = abx;
+                if (dx * -ax + dy * -ay < 0) {
+                    dx = -dx;
+                    dy = -dy;
+                }
+                if (dx == 0 && dy == 0) {
+                    break;
+                }
+                continue;
+            }
+
+            float cx = s[2], cy = s[3];
+            float acx = cx - ax, acy = cy - ay;
+            // Normal of ab pointing away from c
+            float nx = -aby, ny = abx;
+            if (nx * acx + ny * acy > 0) {
+                nx = -nx;
+                ny = -ny;
+            }
+            if (nx * -ax + ny * -ay > 0) {
+                // Origin is beyond edge ab; drop c.
+                s[2] = ax;
+                s[3] = ay;
+                count = 2;
+                dx = nx;
+                dy = ny;
+                continue;
+            }
+            // Normal of ac pointing away from b
+            nx = -acy;
+            ny = acx;
+            if (nx * abx + ny * aby > 0) {
+                nx = -nx;
+                ny = -ny;
+            }
+            if (nx * -ax + ny * -ay > 0) {
+                // Origin is beyond edge ac; drop b.
+                s[0] = cx;
+                s[1] = cy;
+                s[2] = ax;
+                s[3] = ay;
+                count = 2;
+                dx = nx;
+                dy = ny;
+                continue;
+            }
+            return epa(a, b, result);
+        }
+        // Didn't settle, or ran into a point; the shapes are at most grazing each other.
+        result.normalX = 0;
+        result.normalY = 0;
+        result.depth = 0;
+        return false;
+    }
+
+    /**
+     * Expanding polytope algorithm: starting from a triangle of {@code a - b} around the
+     * origin, keeps pushing out the edge nearest the origin until it can't go any further.
+     * That edge's normal and distance are the minimum translation vector.
+     */
+    private static boolean epa(ConvexShape a, ConvexShape b, CollisionResult result) {
+        float[] p = result.simplex;
+        int count = 3;
+        // Wind the triangle consistently so every edge normal below points outward.
+        float area = (p[2] - p[0]) * (p[5] - p[1]) - (p[3] - p[1]) * (p[4] - p[0]);
+        if (area < 0) {
+            float tx = p[2], ty = p[3];
+            p[2] = p[4];
+            p[3] = p[5];
+            p[4] = tx;
+            p[5] = ty;
+        }
+
+        float bestX = 0, bestY = 0, bestDist = 0;
+        while (true) {
+            int edge = 0;
+            bestDist = Float.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                int j = (i + 1) % count;
+                float ex = p[2 * j] - p[2 * i], ey = p[2 * j + 1] - p[2 * i + 1];
+                float len = (float) Math.hypot(ex, ey);
+                if (len == 0) {
+                    continue;
+                }
+                float nx = ey / len, ny = -ex / len;
+                float dist = nx * p[2 * i] + ny * p[2 * i + 1];
+                if (dist < bestDist) {
+                    bestDist = dist;
+                    bestX = nx;
+                    bestY = ny;
+                    edge = i;
+                }
+            }
+            if (count == EPA_MAX_VERTS) {
+                break;
+            }
+            minkowskiSupport(a, b, bestX, bestY, result.support, 0, result.support);
+            float sx = result.support[0], sy = result.support[1];
+            if (sx * bestX + sy * bestY - bestDist < EPA_TOLERANCE) {
+                break;
+            }
+            // Insert the new point between the ends of the nearest edge.
+            int at = edge + 1;
+            System.arraycopy(p, 2 * at, p, 2 * at + 2, 2 * (count - at));
+            p[2 * at] = sx;
+            p[2 * at + 1] = sy;
+            count++;
+        }
+
+        // a - b has to move by -normal * depth to stop containing the origin.
+        result.normalX = -bestX;
+        result.normalY = -bestY;
+        result.depth = bestDist;
+        return bestDist > 0;
+    }
+
+    /**
+     * Support point of {@code a - b} in direction d, stored at {@code out[offset]}.
+     */
+    private static void minkowskiSupport(ConvexShape a, ConvexShape b, float dx, float dy,
+                                         float[] out, int offset, float[] scratch) {
+        a.support(dx, dy, scratch, 0);
+        b.support(-dx, -dy, scratch, 2);
+        out[offset] = scratch[0] - scratch[2];
+        out[offset + 1] = scratch[1] - scratch[3];
+    }
+}
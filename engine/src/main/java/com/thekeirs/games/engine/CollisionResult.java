@@ -0,0 +1,42 @@
+package com.thekeirs.games.engine;
+
+/**
+ * Holds the outcome of a collision check between two shapes in the collisions subsystem.
+ * <p>
+ *     When two shapes overlap, {@code normalX}/{@code normalY} is a unit-length direction and
+ *     {@code depth} the distance that the first shape would have to move along it to stop
+ *     overlapping the second.  Together they make up the "minimum translation vector".
+ * </p>
+ * <p>
+ *     Instances are meant to be reused from one check to the next, so the collision code
+ *     doesn't have to allocate anything.
+ * </p>
+ */
+
+public final class CollisionResult {
+    public float normalX;
+    public float normalY;
+    public float depth;
+
+    // Working space for the generic narrowphase, so it doesn't have to allocate
+    final float[] simplex = new float[2 * CollisionNarrowphase.EPA_MAX_VERTS];
+    final float[] support = new float[4];
+
+    /**
+     * Horizontal part of the minimum translation vector.
+     *
+     * @return distance in world units to move along the X axis to separate the shapes
+     */
+    public float getTranslationX() {
+        return normalX * depth;
+    }
+
+    /**
+     * Vertical part of the minimum translation vector.
+     *
+     * @return distance in world units to move along the Y axis to separate the shapes
+     */
+    public float getTranslationY() {
+        return normalY * depth;
+    }
+}
@@ -1,134 +1,219 @@
 package com.thekeirs.games.engine;
 
-import android.graphics.RectF;
-
 /**
- * Shapes class for use with the collisions subsystem.
+ * Polygon shape for use with the collisions subsystem.
+ * <p>
+ *     A shape is a convex polygon, with vertices given relative to the center of the object
+ *     that owns it.  Collisions between two polygons are found with the separating axis test:
+ *     if there is any edge direction along which the two polygons' shadows don't overlap,
+ *     they aren't touching.
+ * </p>
+ * <p>
+ *     Besides the vertices it was built from, a shape keeps a world-space copy of itself
+ *     along with the matching edge normals; see {@link ConvexShape#setTransform}.  A plain
+ *     move just slides the cached vertices over without touching the axes.
+ * </p>
+ * <p>
+ *     Vertices and axes are kept in flat {@code float} arrays (x0, y0, x1, y1, ...) so
+ *     checking two shapes against each other doesn't create any garbage.
+ * </p>
  *
  * Created by Holden Matheson on 6/7/2017.
  */
 
-public class CollisionShape {
-    public CollisionVertex[] verticies;
-    private CollisionVector[] edges;
-    private CollisionVector[] normals;
-    private CollisionVector[] axes;
-    private int countAxes;
-    private boolean goodNormals;
-    private boolean goodAxes;
+public class CollisionShape extends ConvexShape {
+    final private static float PARALLEL_EPSILON = 0.001f;
+
+    private final float[] mVerts;       // x0, y0, x1, y1, ... relative to the owner's center
+    final int mVertCount;
 
+    // World-space copy, kept up to date by setTransform()
+    private final float[] mPosedVerts;  // Stretched and rotated, still relative to the center
+    final float[] mWorldVerts;          // Posed vertices plus the owner's center
+    final float[] mWorldAxes;           // Unit-length edge normals, parallel duplicates removed
+    int mWorldAxisCount;
 
+    /**
+     * Builds a shape from a list of vertices that keeps the same size no matter how big its
+     * owner is.
+     */
     public CollisionShape(CollisionVertex[] verts) {
-        verticies = verts;
-        goodNormals = false;
-        goodAxes = false;
-        calculateEdges();
-        calculateNormals();
-        calculateAxes();
+        this(verts, 0, 0);
     }
 
     /**
-     * Builds a CollisionShape from a RectF. Used to test collisions between normal
-     * and complex shapes.
+     * Builds a shape from a list of vertices describing an object {@code width} by
+     * {@code height} world units in size.  If the owner is later resized, the shape is
+     * stretched to match.
      */
-    public CollisionShape(RectF boundingRect){
-        double yOffset = boundingRect.height() / 2.0;
-        double xOffset = boundingRect.width() / 2.0;
-        verticies = new CollisionVertex[] {
-                new CollisionVertex(-xOffset, -yOffset),
-                new CollisionVertex(xOffset, -yOffset),
-                new CollisionVertex(xOffset, yOffset),
-                new CollisionVertex(-xOffset, yOffset)};
-        goodNormals = false;
-        goodAxes = false;
-        calculateEdges();
-        calculateNormals();
-        calculateAxes();
+    public CollisionShape(CollisionVertex[] verts, float width, float height) {
+        this(flatten(verts), width, height);
     }
 
-    private void calculateEdges(){
-        edges = new CollisionVector[verticies.length];
-        for (int i = 0; i < verticies.length - 1; i++) {
-            edges[i] = new CollisionVector(verticies[i], verticies[i + 1]);
+    /**
+     * Builds a CollisionShape from a WorldRect. Used to test collisions between normal
+     * and complex shapes.  The shape follows its owner's size from then on.
+     */
+    public CollisionShape(WorldRect boundingRect){
+        this(boundingRect.width(), boundingRect.height(),
+                boundingRect.width(), boundingRect.height());
+    }
+
+    /**
+     * Builds a rectangle centered on the owner.
+     */
+    CollisionShape(float boxWidth, float boxHeight, float refWidth, float refHeight) {
+        this(new float[] {
+                -boxWidth / 2, -boxHeight / 2,
+                boxWidth / 2, -boxHeight / 2,
+                boxWidth / 2, boxHeight / 2,
+                -boxWidth / 2, boxHeight / 2}, refWidth, refHeight);
+    }
+
+    /**
+     * Builds a shape from flat vertices (x0, y0, x1, y1, ...).  The array is kept, not
+     * copied, so shapes can share one; it must not be changed afterwards.
+     */
+    CollisionShape(float[] verts, float refWidth, float refHeight) {
+        super(refWidth, refHeight);
+        mVerts = verts;
+        mVertCount = verts.length / 2;
+        mPosedVerts = new float[verts.length];
+        mWorldVerts = new float[verts.length];
+        mWorldAxes = new float[verts.length];
+    }
+
+    private static float[] flatten(CollisionVertex[] verts) {
+        float[] flat = new float[verts.length * 2];
+        for (int i = 0; i < verts.length; i++) {
+            flat[2 * i] = verts[i].x;
+            flat[2 * i + 1] = verts[i].y;
         }
-        edges[verticies.length - 1] = new CollisionVector(verticies[verticies.length - 1], verticies[0]);
-    }
-
-    public boolean collideWith(CollisionShape other, double x, double y, double other_x, double other_y){
-        CollisionVector overlap_axis;
-        double overlap = 1000000;  // overlap in pixels
-        CollisionProjection projection, other_projection;
-//        Log.d("SAT", "#####Projecting onto host axes...");
-        for(CollisionVector axis : axes){
-            projection = projectOnto(axis, x, y);
-            other_projection = other.projectOnto(axis, other_x, other_y);
-            if(!projection.overlaps(other_projection)){
-                return false;
-            }
-//            else{
-//                double o = projection.getOverlap(other_projection);
-//                if (o < overlap){
-//                    overlap_axis = axis;
-//                    overlap = o;
-//                }
-//            }
+        return flat;
+    }
+
+    public int getVertexCount() {
+        return mVertCount;
+    }
+
+    public float getVertexX(int i) {
+        return mVerts[2 * i];
+    }
+
+    public float getVertexY(int i) {
+        return mVerts[2 * i + 1];
+    }
+
+    /**
+     * Horizontal world coordinate of a vertex as of the last {@link #setTransform} call.
+     */
+    public float getWorldVertexX(int i) {
+        return mWorldVerts[2 * i];
+    }
+
+    /**
+     * Vertical world coordinate of a vertex as of the last {@link #setTransform} call.
+     */
+    public float getWorldVertexY(int i) {
+        return mWorldVerts[2 * i + 1];
+    }
+
+    @Override
+    void pose(float sx, float sy, float cos, float sin) {
+        for (int i = 0; i < mVertCount; i++) {
+            float x = mVerts[2 * i] * sx, y = mVerts[2 * i + 1] * sy;
+            // Same direction as Matrix.postRotate(), so the shape turns with the sprite image.
+            mPosedVerts[2 * i] = x * cos - y * sin;
+            mPosedVerts[2 * i + 1] = x * sin + y * cos;
         }
-//        Log.d("SAT", "#####Projecting onto other axes...");
-        for(CollisionVector axis : other.axes){
-            projection = projectOnto(axis, x, y);
-            other_projection = other.projectOnto(axis, other_x, other_y);
-            if(!projection.overlaps(other_projection)){
-                return false;
-            }
+        calculateAxes();
+    }
+
+    @Override
+    void place(float x, float y) {
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < mVertCount; i++) {
+            float wx = mPosedVerts[2 * i] + x, wy = mPosedVerts[2 * i + 1] + y;
+            mWorldVerts[2 * i] = wx;
+            mWorldVerts[2 * i + 1] = wy;
+            if (wx < minX) minX = wx;
+            if (wx > maxX) maxX = wx;
+            if (wy < minY) minY = wy;
+            if (wy > maxY) maxY = wy;
         }
-        return true;
+        mMinX = minX;
+        mMinY = minY;
+        mMaxX = maxX;
+        mMaxY = maxY;
     }
 
-    // Currently returns perpendiculars, not true normals
-    private void calculateNormals(){
-        if (!goodNormals){
-            normals = new CollisionVector[edges.length];
-            for (int i = 0; i < edges.length; i++){
-                normals[i] = edges[i].perpendicular();
-            }
+    @Override
+    float signedDistance(float x, float y) {
+        // Nearest edge, then inside if the point is on the same side of every edge.
+        float min = Float.POSITIVE_INFINITY;
+        boolean left = false, right = false;
+        for (int i = 0, j = mVertCount - 1; i < mVertCount; j = i++) {
+            float x1 = mWorldVerts[2 * j], y1 = mWorldVerts[2 * j + 1];
+            float x2 = mWorldVerts[2 * i], y2 = mWorldVerts[2 * i + 1];
+            min = Math.min(min, distanceToSegment(x, y, x1, y1, x2, y2));
+            float cross = (x2 - x1) * (y - y1) - (y2 - y1) * (x - x1);
+            left |= cross > 0;
+            right |= cross < 0;
+        }
+        return (left && right) ? min : -min;
+    }
 
-            goodNormals = true;
+    @Override
+    float maxAlong(float dx, float dy) {
+        float max = -Float.MAX_VALUE;
+        for (int v = 0; v < mVertCount; v++) {
+            float p = mWorldVerts[2 * v] * dx + mWorldVerts[2 * v + 1] * dy;
+            if (p > max) max = p;
         }
+        return max;
     }
 
-    private void calculateAxes(){
-        boolean duplicate;
-        if (!goodAxes){
-            axes = new CollisionVector[normals.length];
-            countAxes = 0;
-            for (int i = 0; i < normals.length; i++){
-                duplicate = false;
-                for (int j = 0; j < countAxes; j++){
-                    if (normals[i].isParallel(axes[j])){
-                        duplicate = true;
-                    }
-                }
-                if (!duplicate){
-                    axes[countAxes] = normals[i];
-                    countAxes++;
-                }
+    @Override
+    void support(float dx, float dy, float[] out, int offset) {
+        float max = -Float.MAX_VALUE;
+        int best = 0;
+        for (int v = 0; v < mVertCount; v++) {
+            float p = mWorldVerts[2 * v] * dx + mWorldVerts[2 * v + 1] * dy;
+            if (p > max) {
+                max = p;
+                best = v;
             }
-            goodAxes = true;
         }
+        out[offset] = mWorldVerts[2 * best];
+        out[offset + 1] = mWorldVerts[2 * best + 1];
     }
 
-    public CollisionProjection projectOnto(CollisionVector axis, double offset_x, double offset_y){
-        double min, max;
-        min = max = verticies[0].projectOnto(axis, offset_x, offset_y);
-        for(CollisionVertex vert: verticies){
-            double p = vert.projectOnto(axis, offset_x, offset_y);
-            if (p < min){
-                min = p;
+    private void calculateAxes() {
+        mWorldAxisCount = 0;
+        for (int i = 0; i < mVertCount; i++) {
+            int j = (i + 1) % mVertCount;
+            float ex = mPosedVerts[2 * j] - mPosedVerts[2 * i];
+            float ey = mPosedVerts[2 * j + 1] - mPosedVerts[2 * i + 1];
+            float len = (float) Math.hypot(ex, ey);
+            if (len == 0) {
+                continue;
             }
-            else if (p > max){
-                max = p;
+            // Perpendicular to the edge, normalized so projected overlaps are real distances.
+            float nx = ey / len, ny = -ex / len;
+
+            boolean duplicate = false;
+            for (int k = 0; k < mWorldAxisCount; k++) {
+                if (Math.abs(nx * mWorldAxes[2 * k + 1] - ny * mWorldAxes[2 * k]) < PARALLEL_EPSILON) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                mWorldAxes[2 * mWorldAxisCount] = nx;
+                mWorldAxes[2 * mWorldAxisCount + 1] = ny;
+                mWorldAxisCount++;
             }
         }
-        return new CollisionProjection(min, max);
     }
 }
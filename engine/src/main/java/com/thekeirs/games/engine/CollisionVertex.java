@@ -2,21 +2,21 @@ package com.thekeirs.games.engine;
 
 /**
  * Vertex class for the collision subsystem.
+ * <p>
+ *     Only used to describe a shape when it's created; {@link CollisionShape} copies the
+ *     coordinates into its own arrays.
+ * </p>
  *
  * Created by Holden Matheson on 6/7/2017.
  */
 
 public class CollisionVertex {
 
-    double x;
-    double y;
+    float x;
+    float y;
 
-    public CollisionVertex(double i, double j){
+    public CollisionVertex(float i, float j){
         x = i;
         y = j;
     }
-
-    public double projectOnto(CollisionVector axis, double offset_x, double offset_y){
-        return (x + offset_x) * axis.x + (y + offset_y) * axis.y;
-    }
 }
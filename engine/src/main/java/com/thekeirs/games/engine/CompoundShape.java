@@ -0,0 +1,118 @@
+package com.thekeirs.games.engine;
+
+/**
+ * Collision shape made of several convex parts, for objects that aren't convex themselves:
+ * an L-shaped platform, say, or a car with a cab on top.  This is much cheaper than making
+ * each part its own {@link GameObject}.
+ * <p>
+ *     The parts are described relative to the owner's center like any other shape, at the
+ *     owner size given to the constructor, and are stretched and turned along with the
+ *     owner.  Polygons can be put anywhere; a part that should be round and off-center can
+ *     be a {@link CollisionCapsule} with both ends at the same point.
+ * </p>
+ * <p>
+ *     Each part keeps its own bounding box.  When two shapes are checked, pairs of parts
+ *     whose boxes don't overlap are skipped before the exact test is run.  The pairs that do
+ *     overlap each need pushing apart in their own direction, and the minimum translation
+ *     vector is one push that clears them all.
+ * </p>
+ */
+
+public class CompoundShape extends ConvexShape {
+    final ConvexShape[] mParts;
+
+    /**
+     * Builds a compound shape that keeps the same size no matter how big its owner is.
+     *
+     * @param parts the convex parts; not other compound shapes
+     */
+    public CompoundShape(ConvexShape... parts) {
+        this(0, 0, parts);
+    }
+
+    /**
+     * Builds a compound shape for an object {@code width} by {@code height} world units in
+     * size.  If the owner is later resized, every part is stretched to match.
+     *
+     * @param parts the convex parts; not other compound shapes
+     */
+    public CompoundShape(float width, float height, ConvexShape... parts) {
+        super(width, height);
+        if (parts.length == 0) {
+            throw new IllegalArgumentException("A compound shape needs at least one part");
+        }
+        for (ConvexShape part : parts) {
+            if (part instanceof CompoundShape) {
+                throw new IllegalArgumentException("Compound shapes can't be nested");
+            }
+        }
+        mParts = parts.clone();
+    }
+
+    public int getPartCount() {
+        return mParts.length;
+    }
+
+    public ConvexShape getPart(int i) {
+        return mParts[i];
+    }
+
+    @Override
+    void pose(float sx, float sy, float cos, float sin) {
+        for (ConvexShape part : mParts) {
+            part.pose(sx, sy, cos, sin);
+        }
+    }
+
+    @Override
+    void place(float x, float y) {
+        mMinX = mMinY = Float.POSITIVE_INFINITY;
+        mMaxX = mMaxY = Float.NEGATIVE_INFINITY;
+        for (ConvexShape part : mParts) {
+            part.place(x, y);
+            mMinX = Math.min(mMinX, part.mMinX);
+            mMinY = Math.min(mMinY, part.mMinY);
+            mMaxX = Math.max(mMaxX, part.mMaxX);
+            mMaxY = Math.max(mMaxY, part.mMaxY);
+        }
+    }
+
+    /**
+     * How far the furthest part reaches.  This treats the shape as the convex hull around
+     * all of its parts, which is good enough for ruling out collisions along an axis.
+     */
+    @Override
+    float maxAlong(float dx, float dy) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (ConvexShape part : mParts) {
+            max = Math.max(max, part.maxAlong(dx, dy));
+        }
+        return max;
+    }
+
+    @Override
+    void support(float dx, float dy, float[] out, int offset) {
+        float best = Float.NEGATIVE_INFINITY;
+        float bestX = 0, bestY = 0;
+        for (ConvexShape part : mParts) {
+            part.support(dx, dy, out, offset);
+            float dot = out[offset] * dx + out[offset + 1] * dy;
+            if (dot > best) {
+                best = dot;
+                bestX = out[offset];
+                bestY = out[offset + 1];
+            }
+        }
+        out[offset] = bestX;
+        out[offset + 1] = bestY;
+    }
+
+    @Override
+    float signedDistance(float x, float y) {
+        float min = Float.POSITIVE_INFINITY;
+        for (ConvexShape part : mParts) {
+            min = Math.min(min, part.signedDistance(x, y));
+        }
+        return min;
+    }
+}
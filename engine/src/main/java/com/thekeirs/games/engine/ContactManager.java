@@ -0,0 +1,352 @@
+package com.thekeirs.games.engine;
+
+import java.util.ArrayList;
+
+/**
+ * <h1>[internal] Keeps track of which pairs of objects are touching from one step to the next</h1>
+ * <p>
+ *     While objects move during a step, each pair of objects that gets checked is recorded
+ *     here, along with whether they were touching.  If the second object of a pair moves
+ *     later in the same step, it finds the pair already recorded and skips checking it
+ *     again, so each pair goes through the exact shape test at most once per step.
+ * </p>
+ * <p>
+ *     At the end of the step, {@link #endStep} compares the contacts with the previous
+ *     step's and calls {@link GameObject#onCollisionEnter}, {@link GameObject#onCollisionStay}
+ *     and {@link GameObject#onCollisionExit} on both objects of each pair, all in one batch
+ *     after the physics is done.  A pair that was touching but that nobody checked this step
+ *     (because neither object moved) is checked once more there so it doesn't look like it
+ *     came apart.
+ * </p>
+ * <p>
+ *     Pairs are keyed by the ids of the two objects in an open-addressed table of primitive
+ *     arrays, like {@link SeparatingAxisCache}, so recording and looking up pairs doesn't
+ *     allocate.
+ * </p>
+ */
+
+public final class ContactManager {
+    final private static long EMPTY = 0;
+    final private static long DELETED = -1;
+    final private static int INITIAL_CAPACITY = 64;
+
+    final private static byte ENTER = 0;
+    final private static byte STAY = 1;
+    final private static byte EXIT = 2;
+    final private static byte LEFT_GAME = 3;    // Second object was removed; only tell the first
+
+    private long[] mKeys = new long[INITIAL_CAPACITY];
+    private GameObject[] mFirst = new GameObject[INITIAL_CAPACITY];
+    private GameObject[] mSecond = new GameObject[INITIAL_CAPACITY];
+    private boolean[] mTested = new boolean[INITIAL_CAPACITY];      // Checked this step
+    private boolean[] mTouching = new boolean[INITIAL_CAPACITY];    // Touching this step
+    private boolean[] mWasTouching = new boolean[INITIAL_CAPACITY]; // Touching last step
+    private int[] mFirstMoves = new int[INITIAL_CAPACITY];  // Move counts when last checked
+    private int[] mSecondMoves = new int[INITIAL_CAPACITY];
+    private int mSize;          // Live entries
+    private int mDeleted;       // Tombstones
+    private final ArrayList<GameObject> mEvicted = new ArrayList<>();  // Left since the last sweep
+
+    // Events waiting to be delivered: (mEventA[i], mEventB[i]) with type mEventType[i]
+    private GameObject[] mEventA = new GameObject[INITIAL_CAPACITY];
+    private GameObject[] mEventB = new GameObject[INITIAL_CAPACITY];
+    private byte[] mEventType = new byte[INITIAL_CAPACITY];
+    private int mEventCount;
+
+    /**
+     * Checks whether a pair of objects has already been through the collision test during
+     * this step.
+     */
+    public boolean wasTested(GameObject a, GameObject b) {
+        checkReturning(a, b);
+        int i = find(key(a, b));
+        return i >= 0 && mTested[i];
+    }
+
+    /**
+     * Records the outcome of checking a pair of objects during this step.
+     *
+     * @param touching {@code true} if they were found to be touching
+     */
+    public void record(GameObject a, GameObject b, boolean touching) {
+        checkReturning(a, b);
+        int i = insert(a, b);
+        mTested[i] = true;
+        mTouching[i] |= touching;
+        mFirstMoves[i] = mFirst[i].moveCount;
+        mSecondMoves[i] = mSecond[i].moveCount;
+    }
+
+    /**
+     * Forgets every pair involving an object that is leaving the game.  The objects it was
+     * touching get {@link GameObject#onCollisionExit} at the end of the step; the leaving
+     * object doesn't hear about it.
+     * <p>
+     *     The object is only marked here.  Its pairs are swept out of the table at the end of
+     *     the step, in one pass for every object that left, so removing lots of objects at once
+     *     doesn't mean walking the whole table for each one.
+     * </p>
+     */
+    public void evict(GameObject obj) {
+        if (mSize == 0 || obj.contactsEvicted) {
+            return;
+        }
+        obj.contactsEvicted = true;
+        mEvicted.add(obj);
+    }
+
+    /**
+     * Works out which contacts started, continued or ended during this step, delivers the
+     * callbacks for them, and gets ready for the next step.
+     */
+    public void endStep() {
+        sweepEvicted();
+        for (int i = 0; i < mKeys.length; i++) {
+            long k = mKeys[i];
+            if (k == EMPTY || k == DELETED) {
+                continue;
+            }
+            GameObject a = mFirst[i], b = mSecond[i];
+            boolean touching = mTouching[i];
+            if (!mTested[i] && mWasTouching[i]) {
+                // Nobody checked this pair while moving.  If neither has moved at all since
+                // it was last checked (both asleep, say) it's still together; otherwise
+                // check once more.
+                touching = (a.moveCount == mFirstMoves[i] && b.moveCount == mSecondMoves[i])
+                        || a.isTouching(b);
+                mFirstMoves[i] = a.moveCount;
+                mSecondMoves[i] = b.moveCount;
+            }
+            if (touching) {
+                addEvent(a, b, mWasTouching[i] ? STAY : ENTER);
+            } else if (mWasTouching[i]) {
+                addEvent(a, b, EXIT);
+            }
+
+            if (touching) {
+                mWasTouching[i] = true;
+                mTouching[i] = false;
+                mTested[i] = false;
+            } else {
+                deleteSlot(i);
+            }
+        }
+        if (mDeleted * 4 > mKeys.length) {
+            rehash(mKeys.length);
+        }
+
+        // Deliver last, so callbacks that add or remove objects don't disturb the table walk.
+        int count = mEventCount;
+        mEventCount = 0;
+        for (int e = 0; e < count; e++) {
+            GameObject a = mEventA[e], b = mEventB[e];
+            mEventA[e] = null;
+            mEventB[e] = null;
+            switch (mEventType[e]) {
+                case ENTER:
+                    a.onCollisionEnter(b);
+                    b.onCollisionEnter(a);
+                    a.onCollision(b);
+                    b.onCollision(a);
+                    break;
+                case STAY:
+                    a.onCollisionStay(b);
+                    b.onCollisionStay(a);
+                    a.onCollision(b);
+                    b.onCollision(a);
+                    break;
+                case EXIT:
+                    a.onCollisionExit(b);
+                    b.onCollisionExit(a);
+                    break;
+                default:
+                    if (!a.removalRequested()) {
+                        a.onCollisionExit(b);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * An object that was evicted and then added back before the end of the step would find
+     * its old pairs still in the table, so sweep them out now.
+     */
+    private void checkReturning(GameObject a, GameObject b) {
+        if (a.contactsEvicted || b.contactsEvicted) {
+            sweepEvicted();
+        }
+    }
+
+    /**
+     * Deletes every pair involving an evicted object, and tells the other object of each pair
+     * that was touching.
+     */
+    private void sweepEvicted() {
+        if (mEvicted.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < mKeys.length; i++) {
+            long k = mKeys[i];
+            if (k == EMPTY || k == DELETED) {
+                continue;
+            }
+            GameObject a = mFirst[i], b = mSecond[i];
+            if (!a.contactsEvicted && !b.contactsEvicted) {
+                continue;
+            }
+            if (mWasTouching[i] && a.contactsEvicted != b.contactsEvicted) {
+                GameObject left = a.contactsEvicted ? a : b;
+                addEvent(left == a ? b : a, left, LEFT_GAME);
+            }
+            deleteSlot(i);
+        }
+        for (int i = 0; i < mEvicted.size(); i++) {
+            mEvicted.get(i).contactsEvicted = false;
+        }
+        mEvicted.clear();
+    }
+
+    /**
+     * Drops every pair and any undelivered events.
+     */
+    public void clear() {
+        mKeys = new long[INITIAL_CAPACITY];
+        mFirst = new GameObject[INITIAL_CAPACITY];
+        mSecond = new GameObject[INITIAL_CAPACITY];
+        mTested = new boolean[INITIAL_CAPACITY];
+        mTouching = new boolean[INITIAL_CAPACITY];
+        mWasTouching = new boolean[INITIAL_CAPACITY];
+        mFirstMoves = new int[INITIAL_CAPACITY];
+        mSecondMoves = new int[INITIAL_CAPACITY];
+        mSize = 0;
+        mDeleted = 0;
+        for (int i = 0; i < mEvicted.size(); i++) {
+            mEvicted.get(i).contactsEvicted = false;
+        }
+        mEvicted.clear();
+        for (int e = 0; e < mEventCount; e++) {
+            mEventA[e] = null;
+            mEventB[e] = null;
+        }
+        mEventCount = 0;
+    }
+
+    private void addEvent(GameObject a, GameObject b, byte type) {
+        if (mEventCount == mEventType.length) {
+            int capacity = mEventType.length * 2;
+            GameObject[] newA = new GameObject[capacity], newB = new GameObject[capacity];
+            byte[] newType = new byte[capacity];
+            System.arraycopy(mEventA, 0, newA, 0, mEventCount);
+            System.arraycopy(mEventB, 0, newB, 0, mEventCount);
+            System.arraycopy(mEventType, 0, newType, 0, mEventCount);
+            mEventA = newA;
+            mEventB = newB;
+            mEventType = newType;
+        }
+        mEventA[mEventCount] = a;
+        mEventB[mEventCount] = b;
+        mEventType[mEventCount] = type;
+        mEventCount++;
+    }
+
+    private int insert(GameObject a, GameObject b) {
+        long key = key(a, b);
+        int mask = mKeys.length - 1;
+        int slot = -1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long k = mKeys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == DELETED && slot < 0) {
+                slot = i;
+            } else if (k == EMPTY) {
+                if (slot < 0) {
+                    slot = i;
+                } else {
+                    mDeleted--;
+                }
+                break;
+            }
+        }
+        mKeys[slot] = key;
+        mFirst[slot] = a;
+        mSecond[slot] = b;
+        mTested[slot] = false;
+        mTouching[slot] = false;
+        mWasTouching[slot] = false;
+        mSize++;
+        if ((mSize + mDeleted) * 2 > mKeys.length) {
+            rehash(mSize * 4 > mKeys.length ? mKeys.length * 2 : mKeys.length);
+            return find(key);
+        }
+        return slot;
+    }
+
+    private void deleteSlot(int i) {
+        mKeys[i] = DELETED;
+        mFirst[i] = null;
+        mSecond[i] = null;
+        mSize--;
+        mDeleted++;
+    }
+
+    private int find(long key) {
+        int mask = mKeys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long k = mKeys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = mKeys;
+        GameObject[] oldFirst = mFirst, oldSecond = mSecond;
+        boolean[] oldTested = mTested, oldTouching = mTouching, oldWas = mWasTouching;
+        int[] oldFirstMoves = mFirstMoves, oldSecondMoves = mSecondMoves;
+        mKeys = new long[capacity];
+        mFirst = new GameObject[capacity];
+        mSecond = new GameObject[capacity];
+        mTested = new boolean[capacity];
+        mTouching = new boolean[capacity];
+        mWasTouching = new boolean[capacity];
+        mFirstMoves = new int[capacity];
+        mSecondMoves = new int[capacity];
+        mDeleted = 0;
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k == EMPTY || k == DELETED) {
+                continue;
+            }
+            int i = hash(k) & mask;
+            while (mKeys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            mKeys[i] = k;
+            mFirst[i] = oldFirst[j];
+            mSecond[i] = oldSecond[j];
+            mTested[i] = oldTested[j];
+            mTouching[i] = oldTouching[j];
+            mWasTouching[i] = oldWas[j];
+            mFirstMoves[i] = oldFirstMoves[j];
+            mSecondMoves[i] = oldSecondMoves[j];
+        }
+    }
+
+    private static long key(GameObject a, GameObject b) {
+        long ia = a.getId(), ib = b.getId();
+        return (ia < ib) ? (ia << 32) | ib : (ib << 32) | ia;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,159 @@
+package com.thekeirs.games.engine;
+
+/**
+ * Base class for the shapes used by the collisions subsystem.
+ * <p>
+ *     Every shape is convex (apart from {@link CompoundShape}, which is made of convex parts)
+ *     and is described relative to the center of the object that owns it.  Before shapes are
+ *     compared, {@link #setTransform} places them in the world: moved to the owner's center,
+ *     stretched to its current size and turned by its rotation.  That world-space copy is
+ *     cached, and only worked out again when the position, size or rotation has actually
+ *     changed.
+ * </p>
+ * <p>
+ *     {@link #collideWith} picks the cheapest test for the pair of shapes involved; see
+ *     {@link CollisionNarrowphase}.
+ * </p>
+ */
+
+public abstract class ConvexShape {
+    private final float mRefWidth;      // Owner size the shape describes, or 0 to not stretch
+    private final float mRefHeight;
+
+    private boolean mPoseDirty = true;  // Size or rotation changed since the last transform
+    private float mX, mY, mWidth, mHeight, mRotation;
+
+    // World-space bounding box, filled in by subclasses when they are placed
+    float mMinX, mMinY, mMaxX, mMaxY;
+
+    /**
+     * @param refWidth  width of the owner the shape was described for, or 0 if the shape
+     *                  should keep its size no matter how the owner is stretched
+     * @param refHeight height of the owner the shape was described for, or 0
+     */
+    ConvexShape(float refWidth, float refHeight) {
+        mRefWidth = refWidth;
+        mRefHeight = refHeight;
+    }
+
+    /**
+     * Places the shape in the world.  Cheap to call every time a collision is checked: when
+     * nothing has changed since the last call it returns right away, and when only the
+     * position has changed the shape is just slid over.
+     *
+     * @param x        horizontal coordinate of the owner's center, in world units
+     * @param y        vertical coordinate of the owner's center, in world units
+     * @param width    owner's current width, in world units
+     * @param height   owner's current height, in world units
+     * @param rotation degrees clockwise the owner is turned from its default orientation
+     */
+    public final void setTransform(float x, float y, float width, float height, float rotation) {
+        if (width != mWidth || height != mHeight || rotation != mRotation) {
+            mWidth = width;
+            mHeight = height;
+            mRotation = rotation;
+            mPoseDirty = true;
+        }
+        if (mPoseDirty) {
+            float sx = (mRefWidth > 0) ? width / mRefWidth : 1.0f;
+            float sy = (mRefHeight > 0) ? height / mRefHeight : 1.0f;
+            double radians = Math.toRadians(rotation);
+            pose(sx, sy, (float) Math.cos(radians), (float) Math.sin(radians));
+            mPoseDirty = false;
+        } else if (x == mX && y == mY) {
+            return;
+        }
+        mX = x;
+        mY = y;
+        place(x, y);
+    }
+
+    /**
+     * Gets the smallest axis-aligned box that holds the shape as of the last
+     * {@link #setTransform} call.
+     *
+     * @param out rectangle to fill in, in world units
+     */
+    public void getWorldBounds(WorldRect out) {
+        out.set(mMinX, mMinY, mMaxX, mMaxY);
+    }
+
+    /**
+     * Checks whether this shape overlaps another one, both as placed by their last
+     * {@link #setTransform} calls.
+     * <p>
+     *     If they do overlap and {@code result} is not null, it is filled in with the
+     *     minimum translation vector: the shortest distance and direction this shape would
+     *     have to move to no longer overlap the other one.  If they don't overlap, the
+     *     result's normal is set to an axis that separates them and its depth to zero.
+     * </p>
+     *
+     * @param result where to store the minimum translation vector or separating axis, or
+     *               {@code null} if the caller only cares whether the shapes touch
+     * @return {@code true} if the shapes overlap
+     */
+    public boolean collideWith(ConvexShape other, CollisionResult result) {
+        return CollisionNarrowphase.collide(this, other, result);
+    }
+
+    /**
+     * Checks whether a single axis separates this shape from another one, both as placed by
+     * their last {@link #setTransform} calls.  This is the cheap first step when we already
+     * have a good guess at which axis will separate them.
+     *
+     * @return {@code true} if the shapes' shadows on the axis don't overlap
+     */
+    public boolean isSeparatedAlong(float ax, float ay, ConvexShape other) {
+        float max = maxAlong(ax, ay), min = -maxAlong(-ax, -ay);
+        float otherMax = other.maxAlong(ax, ay), otherMin = -other.maxAlong(-ax, -ay);
+        return Math.min(max, otherMax) - Math.max(min, otherMin) <= 0;
+    }
+
+    /**
+     * Slides the placed shape over from where {@link #setTransform} last put it, without
+     * posing it again, to try out a push.  {@code slide(0, 0)} puts it back exactly.
+     */
+    final void slide(float dx, float dy) {
+        place(mX + dx, mY + dy);
+    }
+
+    /**
+     * Stretches and rotates the shape, still relative to the owner's center.
+     */
+    abstract void pose(float sx, float sy, float cos, float sin);
+
+    /**
+     * Moves the posed shape out to the owner's center and updates the bounding box.
+     */
+    abstract void place(float x, float y);
+
+    /**
+     * How far the placed shape reaches along a unit-length direction: the largest dot
+     * product of the direction with any point in the shape.
+     */
+    abstract float maxAlong(float dx, float dy);
+
+    /**
+     * Finds the point of the placed shape furthest along a direction, which need not be unit
+     * length.  Stores it as x, y at {@code out[offset]}.
+     */
+    abstract void support(float dx, float dy, float[] out, int offset);
+
+    /**
+     * Distance from a point to the edge of the placed shape: positive outside it, negative
+     * inside.
+     */
+    abstract float signedDistance(float x, float y);
+
+    /**
+     * Distance from a point to the line segment from (x1, y1) to (x2, y2).
+     */
+    static float distanceToSegment(float x, float y, float x1, float y1, float x2, float y2) {
+        float ex = x2 - x1, ey = y2 - y1;
+        float lenSq = ex * ex + ey * ey;
+        float t = (lenSq > 0) ? ((x - x1) * ex + (y - y1) * ey) / lenSq : 0;
+        t = Math.max(0, Math.min(1, t));
+        float dx = x - (x1 + t * ex), dy = y - (y1 + t * ey);
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+}
@@ -0,0 +1,672 @@
+package com.thekeirs.games.engine;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h1>[internal] Dynamic bounding-volume tree for answering "what is near here?" quickly</h1>
+ * <p>
+ *     Every object the {@link GameObjectManager} knows about is a leaf in a balanced binary
+ *     tree of axis-aligned boxes, where each parent's box surrounds both of its children.
+ *     Region, point, ray and nearest-neighbor questions only descend into the branches whose
+ *     boxes could possibly matter, so they take roughly logarithmic time rather than looking
+ *     at every object in the level.
+ * </p>
+ * <p>
+ *     Leaves store a slightly enlarged ("fat") copy of the object's bounding box.  As long as
+ *     an object stays inside its fat box, moving it costs nothing; only when it leaves the
+ *     fat box is the leaf pulled out and re-inserted.  The tree is kept balanced with the same
+ *     rotations an AVL tree uses.
+ * </p>
+ * <p>
+ *     Nodes live in flat parallel arrays rather than individual objects so the tree doesn't
+ *     generate garbage as things move around.
+ * </p>
+ * <p>
+ *     The queries only read the tree, and each thread keeps its own scratch space for them, so
+ *     several threads can ask questions at once as long as nothing is moving.  Adding, moving
+ *     and removing objects is only done on the game engine thread.
+ * </p>
+ */
+
+public final class DynamicAabbTree {
+    final static int NULL_NODE = -1;
+    final private static float FAT_MARGIN_FRACTION = 0.1f;
+    final private static float MIN_FAT_MARGIN = 2.0f;
+
+    private float[] mMinX, mMinY, mMaxX, mMaxY;
+    private int[] mParent;      // Doubles as the "next" link for nodes on the free list
+    private int[] mChild1, mChild2;
+    private int[] mHeight;      // 0 for leaves, -1 for free nodes
+    private GameObject[] mObject;
+    private int mRoot = NULL_NODE;
+    private int mFreeList = NULL_NODE;
+    private int mCapacity;
+
+    /**
+     * Scratch space for traversals, grown as needed and reused between queries on the same
+     * thread.
+     */
+    private static final class QueryScratch {
+        int[] stack = new int[64];
+        int[] heapNode = new int[64];
+        float[] heapKey = new float[64];
+    }
+
+    final private static ThreadLocal<QueryScratch> sScratch = new ThreadLocal<QueryScratch>() {
+        @Override
+        protected QueryScratch initialValue() {
+            return new QueryScratch();
+        }
+    };
+
+    public DynamicAabbTree() {
+        allocateArrays(16);
+    }
+
+    /**
+     * Adds an object to the tree using its current bounding box.
+     *
+     * @return the proxy id of the new leaf, to be passed to {@link #moveProxy} and
+     * {@link #destroyProxy} later.
+     */
+    public int createProxy(GameObject obj) {
+        int leaf = allocateNode();
+        setFatBox(leaf, obj.boundingRect);
+        mObject[leaf] = obj;
+        mHeight[leaf] = 0;
+        insertLeaf(leaf);
+        return leaf;
+    }
+
+    /**
+     * Removes a leaf from the tree.
+     */
+    public void destroyProxy(int proxy) {
+        removeLeaf(proxy);
+        freeNode(proxy);
+    }
+
+    /**
+     * Refits a leaf after its object moved.  Nothing happens unless the object has left the
+     * enlarged box it was filed under.
+     *
+     * @return {@code true} if the leaf had to be re-inserted
+     */
+    public boolean moveProxy(int proxy, WorldRect r) {
+        if (mMinX[proxy] <= r.left && mMinY[proxy] <= r.top
+                && mMaxX[proxy] >= r.right && mMaxY[proxy] >= r.bottom) {
+            return false;
+        }
+        removeLeaf(proxy);
+        setFatBox(proxy, r);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    /**
+     * Refits every leaf.  Used once per frame to pick up objects whose {@code boundingRect} was
+     * modified directly rather than through the {@link GameObject} movement methods.
+     */
+    public void updateAll() {
+        for (int i = 0; i < mCapacity; i++) {
+            if (mHeight[i] == 0) {
+                moveProxy(i, mObject[i].boundingRect);
+            }
+        }
+    }
+
+    /**
+     * Empties the tree.
+     */
+    public void clear() {
+        for (int i = 0; i < mCapacity; i++) {
+            if (mHeight[i] == 0) {
+                mObject[i].treeProxy = NULL_NODE;
+            }
+        }
+        allocateArrays(16);
+        mRoot = NULL_NODE;
+    }
+
+    /**
+     * Appends every object whose bounding box intersects the given area to {@code out}.
+     */
+    public void queryRegion(WorldRect area, List<GameObject> out) {
+        if (mRoot == NULL_NODE) {
+            return;
+        }
+        QueryScratch scratch = sScratch.get();
+        int sp = push(scratch, 0, mRoot);
+        while (sp > 0) {
+            int node = scratch.stack[--sp];
+            if (mMinX[node] >= area.right || mMaxX[node] <= area.left
+                    || mMinY[node] >= area.bottom || mMaxY[node] <= area.top) {
+                continue;
+            }
+            if (mHeight[node] == 0) {
+                if (WorldRect.intersects(mObject[node].boundingRect, area)) {
+                    out.add(mObject[node]);
+                }
+            } else {
+                sp = push(scratch, sp, mChild1[node]);
+                sp = push(scratch, sp, mChild2[node]);
+            }
+        }
+    }
+
+    /**
+     * Appends every object whose bounding box contains the given point to {@code out}.
+     */
+    public void queryPoint(float x, float y, List<GameObject> out) {
+        if (mRoot == NULL_NODE) {
+            return;
+        }
+        QueryScratch scratch = sScratch.get();
+        int sp = push(scratch, 0, mRoot);
+        while (sp > 0) {
+            int node = scratch.stack[--sp];
+            if (x < mMinX[node] || x > mMaxX[node] || y < mMinY[node] || y > mMaxY[node]) {
+                continue;
+            }
+            if (mHeight[node] == 0) {
+                if (mObject[node].contains(x, y)) {
+                    out.add(mObject[node]);
+                }
+            } else {
+                sp = push(scratch, sp, mChild1[node]);
+                sp = push(scratch, sp, mChild2[node]);
+            }
+        }
+    }
+
+    /**
+     * Finds the first object whose bounding box is crossed by the line segment from
+     * (x1, y1) to (x2, y2).
+     *
+     * @param exclude   object to ignore (usually the one doing the looking), or null
+     * @param solidOnly if {@code true}, only solid objects can block the segment
+     * @return the object hit closest to (x1, y1), or {@code null} if nothing was hit
+     */
+    public GameObject raycast(float x1, float y1, float x2, float y2, GameObject exclude,
+                              boolean solidOnly) {
+        if (mRoot == NULL_NODE) {
+            return null;
+        }
+        float dx = x2 - x1, dy = y2 - y1;
+        float bestT = 1.0f;
+        GameObject best = null;
+
+        QueryScratch scratch = sScratch.get();
+        int sp = push(scratch, 0, mRoot);
+        while (sp > 0) {
+            int node = scratch.stack[--sp];
+            float t = segmentEntry(x1, y1, dx, dy,
+                    mMinX[node], mMinY[node], mMaxX[node], mMaxY[node]);
+            if (t < 0 || t > bestT) {
+                continue;
+            }
+            if (mHeight[node] == 0) {
+                GameObject obj = mObject[node];
+                if (obj == exclude || (solidOnly && !obj.isSolid())) {
+                    continue;
+                }
+                WorldRect r = obj.boundingRect;
+                t = segmentEntry(x1, y1, dx, dy, r.left, r.top, r.right, r.bottom);
+                if (t >= 0 && t <= bestT) {
+                    bestT = t;
+                    best = obj;
+                }
+            } else {
+                sp = push(scratch, sp, mChild1[node]);
+                sp = push(scratch, sp, mChild2[node]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Finds the objects closest to a point, nearest first.  Distance is measured to the edge
+     * of each object's bounding box, so an object containing the point has distance zero.
+     *
+     * @param k       maximum number of objects to return
+     * @param prefix  only objects whose name starts with this are considered; null for all
+     * @param exclude object to ignore, or null
+     * @param out     list the objects are appended to
+     */
+    public void queryNearest(float x, float y, int k, String prefix, GameObject exclude,
+                             List<GameObject> out) {
+        if (mRoot == NULL_NODE || k <= 0) {
+            return;
+        }
+        // Best-first search: internal nodes and leaves are keyed by the distance to their fat
+        // box, which is never more than the distance to anything inside them.  Once a leaf
+        // passes the filters it is pushed back with its exact distance, encoded as ~node, and
+        // it is a correct answer as soon as it reaches the top of the heap.
+        QueryScratch scratch = sScratch.get();
+        int found = 0;
+        int size = heapPush(scratch, 0, mRoot, boxDistanceSq(x, y, mMinX[mRoot], mMinY[mRoot],
+                mMaxX[mRoot], mMaxY[mRoot]));
+        while (size > 0 && found < k) {
+            int node = scratch.heapNode[0];
+            size = heapPop(scratch, size);
+            if (node < 0) {
+                out.add(mObject[~node]);
+                found++;
+            } else if (mHeight[node] == 0) {
+                GameObject obj = mObject[node];
+                if (obj == exclude || (prefix != null && !obj.name.startsWith(prefix))) {
+                    continue;
+                }
+                WorldRect r = obj.boundingRect;
+                size = heapPush(scratch, size, ~node, boxDistanceSq(x, y, r.left, r.top, r.right, r.bottom));
+            } else {
+                int c1 = mChild1[node], c2 = mChild2[node];
+                size = heapPush(scratch, size, c1, boxDistanceSq(x, y, mMinX[c1], mMinY[c1], mMaxX[c1], mMaxY[c1]));
+                size = heapPush(scratch, size, c2, boxDistanceSq(x, y, mMinX[c2], mMinY[c2], mMaxX[c2], mMaxY[c2]));
+            }
+        }
+    }
+
+    /**
+     * Gets the height of the tree: 0 for a single leaf, -1 when empty.
+     */
+    int getHeight() {
+        return (mRoot == NULL_NODE) ? -1 : mHeight[mRoot];
+    }
+
+    /**
+     * Checks that the tree is put together properly: every link goes both ways, every height
+     * is right, every box surrounds its children and every leaf's box surrounds its object.
+     *
+     * @return the number of leaves
+     * @throws IllegalStateException if anything is out of place
+     */
+    int validate() {
+        if (mRoot == NULL_NODE) {
+            return 0;
+        }
+        check(mParent[mRoot] == NULL_NODE, mRoot, "root has a parent");
+        int leaves = 0;
+        int[] stack = new int[Math.max(16, 2 * (mHeight[mRoot] + 1))];
+        int sp = 0;
+        stack[sp++] = mRoot;
+        while (sp > 0) {
+            int node = stack[--sp];
+            if (mHeight[node] == 0) {
+                WorldRect r = mObject[node].boundingRect;
+                check(mMinX[node] <= r.left && mMinY[node] <= r.top
+                        && mMaxX[node] >= r.right && mMaxY[node] >= r.bottom, node,
+                        "leaf doesn't surround its object");
+                leaves++;
+                continue;
+            }
+            check(mHeight[node] > 0, node, "free node in the tree");
+            int c1 = mChild1[node], c2 = mChild2[node];
+            check(mParent[c1] == node && mParent[c2] == node, node, "child doesn't point back");
+            check(mHeight[node] == 1 + Math.max(mHeight[c1], mHeight[c2]), node, "wrong height");
+            check(mMinX[node] == Math.min(mMinX[c1], mMinX[c2])
+                    && mMinY[node] == Math.min(mMinY[c1], mMinY[c2])
+                    && mMaxX[node] == Math.max(mMaxX[c1], mMaxX[c2])
+                    && mMaxY[node] == Math.max(mMaxY[c1], mMaxY[c2]), node,
+                    "box doesn't fit its children");
+            stack[sp++] = c1;
+            stack[sp++] = c2;
+        }
+        return leaves;
+    }
+
+    private static void check(boolean ok, int node, String what) {
+        if (!ok) {
+            throw new IllegalStateException("Node " + node + ": " + what);
+        }
+    }
+
+    private static float boxDistanceSq(float x, float y, float minX, float minY, float maxX, float maxY) {
+        float dx = (x < minX) ? minX - x : (x > maxX) ? x - maxX : 0;
+        float dy = (y < minY) ? minY - y : (y > maxY) ? y - maxY : 0;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Slab test of a segment against a box.
+     *
+     * @return the fraction (0..1) along the segment where it first enters the box, 0 if it
+     * starts inside, or -1 if it misses.
+     */
+    static float segmentEntry(float x, float y, float dx, float dy,
+                              float minX, float minY, float maxX, float maxY) {
+        float tmin = 0.0f, tmax = 1.0f;
+        if (dx == 0) {
+            if (x < minX || x > maxX) {
+                return -1;
+            }
+        } else {
+            float inv = 1.0f / dx;
+            float t1 = (minX - x) * inv, t2 = (maxX - x) * inv;
+            tmin = Math.max(tmin, Math.min(t1, t2));
+            tmax = Math.min(tmax, Math.max(t1, t2));
+            if (tmin > tmax) {
+                return -1;
+            }
+        }
+        if (dy == 0) {
+            if (y < minY || y > maxY) {
+                return -1;
+            }
+        } else {
+            float inv = 1.0f / dy;
+            float t1 = (minY - y) * inv, t2 = (maxY - y) * inv;
+            tmin = Math.max(tmin, Math.min(t1, t2));
+            tmax = Math.min(tmax, Math.max(t1, t2));
+            if (tmin > tmax) {
+                return -1;
+            }
+        }
+        return tmin;
+    }
+
+    private void setFatBox(int node, WorldRect r) {
+        float margin = Math.max(MIN_FAT_MARGIN, FAT_MARGIN_FRACTION * Math.max(r.width(), r.height()));
+        mMinX[node] = r.left - margin;
+        mMinY[node] = r.top - margin;
+        mMaxX[node] = r.right + margin;
+        mMaxY[node] = r.bottom + margin;
+    }
+
+    private float perimeter(int node) {
+        return 2 * ((mMaxX[node] - mMinX[node]) + (mMaxY[node] - mMinY[node]));
+    }
+
+    private float unionPerimeter(int a, int b) {
+        float w = Math.max(mMaxX[a], mMaxX[b]) - Math.min(mMinX[a], mMinX[b]);
+        float h = Math.max(mMaxY[a], mMaxY[b]) - Math.min(mMinY[a], mMinY[b]);
+        return 2 * (w + h);
+    }
+
+    private void setUnion(int node, int a, int b) {
+        mMinX[node] = Math.min(mMinX[a], mMinX[b]);
+        mMinY[node] = Math.min(mMinY[a], mMinY[b]);
+        mMaxX[node] = Math.max(mMaxX[a], mMaxX[b]);
+        mMaxY[node] = Math.max(mMaxY[a], mMaxY[b]);
+    }
+
+    private void insertLeaf(int leaf) {
+        if (mRoot == NULL_NODE) {
+            mRoot = leaf;
+            mParent[leaf] = NULL_NODE;
+            return;
+        }
+
+        // Walk down choosing the sibling that grows the total perimeter the least.
+        int index = mRoot;
+        while (mHeight[index] > 0) {
+            int c1 = mChild1[index], c2 = mChild2[index];
+            float area = perimeter(index);
+            float combined = unionPerimeter(index, leaf);
+            float cost = 2 * combined;
+            float inheritance = 2 * (combined - area);
+
+            float cost1 = unionPerimeter(leaf, c1) + inheritance;
+            if (mHeight[c1] > 0) {
+                cost1 -= perimeter(c1);
+            }
+            float cost2 = unionPerimeter(leaf, c2) + inheritance;
+            if (mHeight[c2] > 0) {
+                cost2 -= perimeter(c2);
+            }
+            if (cost < cost1 && cost < cost2) {
+                break;
+            }
+            index = (cost1 < cost2) ? c1 : c2;
+        }
+        int sibling = index;
+
+        int oldParent = mParent[sibling];
+        int newParent = allocateNode();
+        mParent[newParent] = oldParent;
+        mObject[newParent] = null;
+        setUnion(newParent, leaf, sibling);
+        mHeight[newParent] = mHeight[sibling] + 1;
+        mChild1[newParent] = sibling;
+        mChild2[newParent] = leaf;
+        mParent[sibling] = newParent;
+        mParent[leaf] = newParent;
+        if (oldParent != NULL_NODE) {
+            if (mChild1[oldParent] == sibling) {
+                mChild1[oldParent] = newParent;
+            } else {
+                mChild2[oldParent] = newParent;
+            }
+        } else {
+            mRoot = newParent;
+        }
+
+        refitUpward(mParent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == mRoot) {
+            mRoot = NULL_NODE;
+            return;
+        }
+        int parent = mParent[leaf];
+        int grandParent = mParent[parent];
+        int sibling = (mChild1[parent] == leaf) ? mChild2[parent] : mChild1[parent];
+
+        if (grandParent != NULL_NODE) {
+            if (mChild1[grandParent] == parent) {
+                mChild1[grandParent] = sibling;
+            } else {
+                mChild2[grandParent] = sibling;
+            }
+            mParent[sibling] = grandParent;
+            freeNode(parent);
+            refitUpward(grandParent);
+        } else {
+            mRoot = sibling;
+            mParent[sibling] = NULL_NODE;
+            freeNode(parent);
+        }
+    }
+
+    private void refitUpward(int index) {
+        while (index != NULL_NODE) {
+            index = balance(index);
+            int c1 = mChild1[index], c2 = mChild2[index];
+            mHeight[index] = 1 + Math.max(mHeight[c1], mHeight[c2]);
+            setUnion(index, c1, c2);
+            index = mParent[index];
+        }
+    }
+
+    /**
+     * Performs a left or right rotation if node A is imbalanced.
+     *
+     * @return the node now at A's old position
+     */
+    private int balance(int a) {
+        if (mHeight[a] < 2) {
+            return a;
+        }
+        int b = mChild1[a], c = mChild2[a];
+        int bal = mHeight[c] - mHeight[b];
+
+        if (bal > 1) {
+            // Rotate C up
+            int f = mChild1[c], g = mChild2[c];
+            mChild1[c] = a;
+            mParent[c] = mParent[a];
+            mParent[a] = c;
+            replaceChild(mParent[c], a, c);
+            if (mHeight[f] > mHeight[g]) {
+                mChild2[c] = f;
+                mChild2[a] = g;
+                mParent[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                mHeight[a] = 1 + Math.max(mHeight[b], mHeight[g]);
+                mHeight[c] = 1 + Math.max(mHeight[a], mHeight[f]);
+            } else {
+                mChild2[c] = g;
+                mChild2[a] = f;
+                mParent[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                mHeight[a] = 1 + Math.max(mHeight[b], mHeight[f]);
+                mHeight[c] = 1 + Math.max(mHeight[a], mHeight[g]);
+            }
+            return c;
+        }
+
+        if (bal < -1) {
+            // Rotate B up
+            int d = mChild1[b], e = mChild2[b];
+            mChild1[b] = a;
+            mParent[b] = mParent[a];
+            mParent[a] = b;
+            replaceChild(mParent[b], a, b);
+            if (mHeight[d] > mHeight[e]) {
+                mChild2[b] = d;
+                mChild1[a] = e;
+                mParent[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                mHeight[a] = 1 + Math.max(mHeight[c], mHeight[e]);
+                mHeight[b] = 1 + Math.max(mHeight[a], mHeight[d]);
+            } else {
+                mChild2[b] = e;
+                mChild1[a] = d;
+                mParent[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                mHeight[a] = 1 + Math.max(mHeight[c], mHeight[d]);
+                mHeight[b] = 1 + Math.max(mHeight[a], mHeight[e]);
+            }
+            return b;
+        }
+        return a;
+    }
+
+    private void replaceChild(int parent, int oldChild, int newChild) {
+        if (parent == NULL_NODE) {
+            mRoot = newChild;
+        } else if (mChild1[parent] == oldChild) {
+            mChild1[parent] = newChild;
+        } else {
+            mChild2[parent] = newChild;
+        }
+    }
+
+    private static int push(QueryScratch scratch, int sp, int node) {
+        if (sp == scratch.stack.length) {
+            scratch.stack = Arrays.copyOf(scratch.stack, sp * 2);
+        }
+        scratch.stack[sp] = node;
+        return sp + 1;
+    }
+
+    private static int heapPush(QueryScratch scratch, int size, int node, float key) {
+        if (size == scratch.heapNode.length) {
+            scratch.heapNode = Arrays.copyOf(scratch.heapNode, size * 2);
+            scratch.heapKey = Arrays.copyOf(scratch.heapKey, size * 2);
+        }
+        int[] heapNode = scratch.heapNode;
+        float[] heapKey = scratch.heapKey;
+        int i = size;
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (heapKey[parent] <= key) {
+                break;
+            }
+            heapNode[i] = heapNode[parent];
+            heapKey[i] = heapKey[parent];
+            i = parent;
+        }
+        heapNode[i] = node;
+        heapKey[i] = key;
+        return size + 1;
+    }
+
+    private static int heapPop(QueryScratch scratch, int size) {
+        int[] heapNode = scratch.heapNode;
+        float[] heapKey = scratch.heapKey;
+        size--;
+        int node = heapNode[size];
+        float key = heapKey[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heapKey[child + 1] < heapKey[child]) {
+                child++;
+            }
+            if (key <= heapKey[child]) {
+                break;
+            }
+            heapNode[i] = heapNode[child];
+            heapKey[i] = heapKey[child];
+            i = child;
+        }
+        heapNode[i] = node;
+        heapKey[i] = key;
+        return size;
+    }
+
+    private int allocateNode() {
+        if (mFreeList == NULL_NODE) {
+            growArrays(mCapacity * 2);
+        }
+        int node = mFreeList;
+        mFreeList = mParent[node];
+        mParent[node] = NULL_NODE;
+        mChild1[node] = NULL_NODE;
+        mChild2[node] = NULL_NODE;
+        mHeight[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        mParent[node] = mFreeList;
+        mHeight[node] = -1;
+        mObject[node] = null;
+        mFreeList = node;
+    }
+
+    private void allocateArrays(int capacity) {
+        mCapacity = 0;
+        mFreeList = NULL_NODE;
+        mMinX = new float[0];
+        mMinY = new float[0];
+        mMaxX = new float[0];
+        mMaxY = new float[0];
+        mParent = new int[0];
+        mChild1 = new int[0];
+        mChild2 = new int[0];
+        mHeight = new int[0];
+        mObject = new GameObject[0];
+        growArrays(capacity);
+    }
+
+    private void growArrays(int capacity) {
+        int old = mCapacity;
+        mMinX = Arrays.copyOf(mMinX, capacity);
+        mMinY = Arrays.copyOf(mMinY, capacity);
+        mMaxX = Arrays.copyOf(mMaxX, capacity);
+        mMaxY = Arrays.copyOf(mMaxY, capacity);
+        mParent = Arrays.copyOf(mParent, capacity);
+        mChild1 = Arrays.copyOf(mChild1, capacity);
+        mChild2 = Arrays.copyOf(mChild2, capacity);
+        mHeight = Arrays.copyOf(mHeight, capacity);
+        mObject = Arrays.copyOf(mObject, capacity);
+        // Thread the new nodes onto the free list.
+        for (int i = capacity - 1; i >= old; i--) {
+            mParent[i] = mFreeList;
+            mHeight[i] = -1;
+            mFreeList = i;
+        }
+        mCapacity = capacity;
+    }
+}
@@ -0,0 +1,106 @@
+package com.thekeirs.games.engine;
+
+import android.content.res.Resources;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import im.delight.android.audio.SoundManager;
+
+/**
+ * <h1>[internal] Everything one running game needs that isn't part of its game world</h1>
+ * <p>
+ *     Games use {@link Rand}, {@link Audio} and {@link Images} through static methods, but
+ *     several games can run in the same process at once (see {@link WorldHost}), so those
+ *     methods look up the context of the game being run on the current thread: its random
+ *     number generator, its sound player, and where to load its images from.  The
+ *     {@link GameObjectManager} makes its context current while it updates the game.  Code
+ *     running outside any game - an Activity, say - gets the default context, which is the
+ *     one a game on a device uses.
+ * </p>
+ * <p>
+ *     Decoded images and collision hulls never change once loaded, so they are shared by every
+ *     context rather than loaded once per game.
+ * </p>
+ */
+
+public final class EngineContext {
+    private static final EngineContext DEFAULT = new EngineContext(new Random());
+    private static final ThreadLocal<EngineContext> sCurrent = new ThreadLocal<>();
+
+    final Random random;
+    int updateMillis = 16;                  // Length of the current update step
+    private volatile Resources mResources;
+    private volatile int mDefaultImageId;
+    SoundManager soundManager;
+    final Set<Integer> loadedSounds = new HashSet<>();
+
+    /**
+     * Creates a context whose random numbers come out the same every time for the same seed,
+     * so a game run with it can be repeated exactly.
+     *
+     * @param seed seed for the random number generator
+     */
+    public EngineContext(long seed) {
+        this(new Random(seed));
+    }
+
+    private EngineContext(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Sets where this game's images are loaded from.  Contexts that haven't been given any
+     * resources use the default context's.
+     */
+    public void setResources(Resources resources) {
+        mResources = resources;
+    }
+
+    public Resources getResources() {
+        Resources resources = mResources;
+        return (resources != null || this == DEFAULT) ? resources : DEFAULT.getResources();
+    }
+
+    /**
+     * Sets the image shown in place of any image that can't be loaded.  Contexts that haven't
+     * been given one use the default context's.
+     */
+    public void setDefaultImageId(int id) {
+        mDefaultImageId = id;
+    }
+
+    public int getDefaultImageId() {
+        int id = mDefaultImageId;
+        return (id != 0 || this == DEFAULT) ? id : DEFAULT.getDefaultImageId();
+    }
+
+    /**
+     * Gets the context for the game being run on this thread, or the default context if no game
+     * is being run here.
+     */
+    public static EngineContext current() {
+        EngineContext context = sCurrent.get();
+        return (context != null) ? context : DEFAULT;
+    }
+
+    /**
+     * Gets the context used by a game running on a device, and by code outside any game.
+     */
+    public static EngineContext getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Makes a context current on this thread.
+     *
+     * @param context the context to use, or null for the default
+     * @return the context that was current before, to hand back to {@code bind} when done
+     */
+    static EngineContext bind(EngineContext context) {
+        EngineContext previous = sCurrent.get();
+        sCurrent.set(context);
+        return previous;
+    }
+}
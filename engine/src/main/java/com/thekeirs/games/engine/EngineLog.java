@@ -0,0 +1,74 @@
+package com.thekeirs.games.engine;
+
+import android.util.Log;
+
+/**
+ * <h1>[internal] Debug logging for the simulation side of the game engine</h1>
+ * <p>
+ *     Messages go to Android's log when there is one.  When the engine is running somewhere
+ *     else, such as in a test on an ordinary Java VM, they are printed to standard output
+ *     instead, or wherever {@link #setSink(Sink)} says.
+ * </p>
+ */
+
+public final class EngineLog {
+    /**
+     * Somewhere to send log messages.
+     */
+    public interface Sink {
+        void log(char level, String tag, String message);
+    }
+
+    private static final Sink ANDROID = new Sink() {
+        @Override
+        public void log(char level, String tag, String message) {
+            if (level == 'E') {
+                Log.e(tag, message);
+            } else {
+                Log.d(tag, message);
+            }
+        }
+    };
+
+    private static final Sink CONSOLE = new Sink() {
+        @Override
+        public void log(char level, String tag, String message) {
+            System.out.println(level + "/" + tag + ": " + message);
+        }
+    };
+
+    private static volatile Sink sSink = ANDROID;
+
+    /**
+     * Sends log messages somewhere else.
+     *
+     * @param sink where to send them; null to go back to the default
+     */
+    public static void setSink(Sink sink) {
+        sSink = (sink != null) ? sink : ANDROID;
+    }
+
+    public static void d(String tag, String message) {
+        log('D', tag, message);
+    }
+
+    public static void e(String tag, String message) {
+        log('E', tag, message);
+    }
+
+    private static void log(char level, String tag, String message) {
+        try {
+            sSink.log(level, tag, message);
+        } catch (RuntimeException | LinkageError e) {
+            // No Android here (or only its stubs): use the console from now on.
+            if (sSink != ANDROID) {
+                throw e;
+            }
+            sSink = CONSOLE;
+            CONSOLE.log(level, tag, message);
+        }
+    }
+
+    private EngineLog() {
+    }
+}
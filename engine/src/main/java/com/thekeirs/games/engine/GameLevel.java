@@ -42,13 +42,23 @@ abstract public class GameLevel {
 
     /**
      * Your setup method is where all your work for setting up a new level should go.
+     * <p>
+     *     This is also the place to size the world with
+     *     {@link GameObjectManager#setWorldScreenSize(float, float, float)}, which also lets you
+     *     tune the collision grid cell size for levels with unusually large or small objects.
+     * </p>
+     * <p>
+     *     Any {@link GameSystem}s the level uses are added here too, with
+     *     {@link GameObjectManager#addSystem(GameSystem)}.
+     * </p>
      */
     public void setup() {
     }
 
     /**
      * You can choose how much of your game logic is done by individual sprites and how much
-     * is done centrally here in your override of the update method.
+     * is done centrally here in your override of the update method.  Logic too slow to fit in
+     * one update can be spread over the device's processors with {@link Jobs}.
      *
      * @param millis number of milliseconds since the previous game engine update.
      */
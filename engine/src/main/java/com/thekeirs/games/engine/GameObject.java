@@ -1,10 +1,8 @@
 package com.thekeirs.games.engine;
 
-import android.graphics.Canvas;
-import android.graphics.RectF;
-import android.util.Log;
-
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <h1>Abstract superclass to represent a game object in the game world</h1>
@@ -27,18 +25,29 @@ abstract public class GameObject {
      * Tracks the upper left and lower right coordinates of a box that surrounds this object
      * in world coordinates.
      */
-    public RectF boundingRect;
-    public CollisionShape complexShape;
+    public WorldRect boundingRect;
+    public ConvexShape complexShape;
+    private final CollisionResult mCollisionResult = new CollisionResult();
+    private final WorldRect mCollisionBounds = new WorldRect();
+    private final WorldRect mSweptBounds = new WorldRect();
+    private final PositionUpdate mStep = new PositionUpdate(0, 0, 0, 0);
+    private float mRotation;
 
     private float dX, dY;
     private boolean feelsGravity;
     private boolean isBouncy;
     private boolean isSolid;
     private boolean isComplex;
+    private boolean isStatic;
+    private boolean isTrigger;
+    private int mCollisionCategory = 1;     // Which collision layers we are on
+    private int mCollisionMask = ~0;        // Which collision layers we can hit
     private float ddX;
     private float ddY = 60.0f;  // Pixels/sec/sec
     private boolean autoDieOffscreen;
-    private static int anonymousCount;
+    private static final AtomicInteger anonymousCount = new AtomicInteger();
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+    private final int mId = nextId.getAndIncrement();
     protected boolean debugMode = false;
 
     /**
@@ -51,6 +60,35 @@ abstract public class GameObject {
     private boolean mRemovalRequested;  // Flag indicating this sprite should be removed
     private int mZOrder;                // Order to draw this on the screen
 
+    final private static float SLEEP_SPEED = 2.0f;      // World units/sec counted as "still"
+    final private static float SLEEP_DISTANCE = 1.0f;   // How far we can jiggle while at rest
+    final private static int SLEEP_DELAY = 500;         // Msec at rest before going to sleep
+    private boolean mCanSleep = true;   // Allowed to go to sleep when at rest
+    private boolean mSleeping;          // Asleep: the manager skips our update()
+    private int mRestTime;              // Msec we've been at rest
+    private float mRestX, mRestY;       // Where we came to rest
+    private long mSleepStart;           // Manager clock when we went to sleep
+    private float mPrevX = Float.NaN;   // Where we were before the last update, for drawing
+    private float mPrevY = Float.NaN;
+    int moveCount;                      // Bumped every time we move, for the contact manager
+
+    final private static int MAX_SUBSTEPS = 8;          // Most pieces one update is split into
+    private float mMaxStepFraction;     // Longest single move, as a fraction of our size
+    final private static int MAX_MARCH_STEPS = 8;       // Distance field lookups per move
+    final private static float MARCH_SKIN = 0.5f;       // This close to a solid counts as touching
+    private float[] mGradient;          // Non-null when we collide using the distance field
+    private ArrayList<GameObject> mNearby;  // Solids found by detect(), for move() to use
+    private long mNearbyVersion = NOT_DETECTED; // Manager's solid version when they were found
+    final private static long NOT_DETECTED = Long.MIN_VALUE;
+
+    SpatialGrid.Entry gridEntry;        // Our slot in the manager's collision grid, if solid
+    int treeProxy = DynamicAabbTree.NULL_NODE;  // Our leaf in the manager's query tree
+    int triggerStep;                    // Last step we were checked against the triggers
+    boolean contactsEvicted;            // Left the game; the contact manager hasn't swept us yet
+    boolean triggersEvicted;            // Same, for the trigger manager
+    boolean insideWorld;                // Overlapping the world when last checked
+    boolean hasOwnUpdate;               // Overrides update(), so can't be updated in phases
+
     /**
      * Basic constructor.
      *
@@ -58,12 +96,22 @@ abstract public class GameObject {
      *               a name like "anon-000123" will be automatically assigned.
      * @param extent initial area on the screen this sprite will occupy, in world units
      */
-    public GameObject(String name, RectF extent) {
-        this.name = (name != null && name.length() > 0) ? name : String.format("anon-%06d", anonymousCount++);
+    public GameObject(String name, WorldRect extent) {
+        this.name = (name != null && name.length() > 0) ? name : String.format("anon-%06d", anonymousCount.getAndIncrement());
         this.boundingRect = extent;
         this.isComplex = false;
     }
 
+    /**
+     * Returns a number that uniquely identifies this game object, even if another object
+     * later reuses its name.
+     *
+     * @return a positive id, unique within this run of the game
+     */
+    public final int getId() {
+        return mId;
+    }
+
     /**
      * Called by the {@link GameObjectManager} to be sure this game object knows who its
      * manager is.  This method is called automatically - do not use.
@@ -86,8 +134,22 @@ abstract public class GameObject {
      *              Typically 16msec at 60Hz screen refresh.
      */
     public void update(int msec) {
+        integrate(msec);
+        move(msec);
+    }
+
+    /**
+     * [internal] First part of {@link #update(int)}: counts time on screen and applies
+     * gravity to our velocity.  Touches nothing but this object, so the manager can run it
+     * for many objects at once on different threads.
+     */
+    void integrate(int msec) {
         float fracsec = msec / 1000.0f; // Velocities and gravity are in units of seconds
 
+        mPrevX = getX();
+        mPrevY = getY();
+        mNearbyVersion = NOT_DETECTED;
+
         mTimeOnScreen += msec;
         if (mMaxTimeOnScreen > 0 && mTimeOnScreen > mMaxTimeOnScreen) {
             requestRemoval();
@@ -97,18 +159,193 @@ abstract public class GameObject {
             dX += ddX * fracsec;
             dY += ddY * fracsec;
         }
-        if (dX != 0.0f || dY != 0.0f) {
-            PositionUpdate posup = new PositionUpdate(
-                    this.getX(), this.getY(),
-                    this.getX() + dX * fracsec, this.getY() + dY * fracsec);
+    }
 
-            interactWithSolids(posup);
-            setXY(posup.newx, posup.newy);
+    /**
+     * [internal] Optional middle part of {@link #update(int)}: finds the solids near the
+     * first piece of this update's move ahead of time, so {@link #move(int)} doesn't have to.
+     * Only reads the manager's collision grid and static index, which nothing changes until
+     * objects start moving, so the manager can run it for many objects at once on different
+     * threads.  If a solid has moved to different grid cells by the time we move, the solids
+     * are looked up again.
+     */
+    void detect(int msec) {
+        if ((dX == 0.0f && dY == 0.0f) || manager == null) {
+            return;
+        }
+        float fracsec = msec / 1000.0f;
+        beginStep(fracsec / countSubsteps(dX * fracsec, dY * fracsec));
+        StaticDistanceField field = (mGradient != null) ? manager.getStaticField() : null;
+        if (mNearby == null) {
+            mNearby = new ArrayList<>();
         }
+        mNearby.clear();
+        manager.findSolidObjectsNear(sweptBounds(mStep), this, field == null, mNearby);
+        mNearbyVersion = manager.getSolidVersion();
+    }
+
+    /**
+     * [internal] Last part of {@link #update(int)}: moves us by our velocity, stopping at or
+     * bouncing off any solids in the way, then checks whether we should be removed or go to
+     * sleep.  Changes other objects and the manager's bookkeeping, so it is only ever run for
+     * one object at a time.
+     */
+    void move(int msec) {
+        float fracsec = msec / 1000.0f;
+        if (dX != 0.0f || dY != 0.0f) {
+            int steps = countSubsteps(dX * fracsec, dY * fracsec);
+            float stepsec = fracsec / steps;
+            for (int step = 0; step < steps && (dX != 0.0f || dY != 0.0f); step++) {
+                beginStep(stepsec);
+                interactWithSolids(mStep, step == 0);
+                setBounds(mStep.newx, mStep.newy, boundingRect.width(), boundingRect.height());
+            }
+        }
+        mNearbyVersion = NOT_DETECTED;
 
         if (autoDieOffscreen && isFullyOffScreen()) {
             requestRemoval();
         }
+
+        checkForRest(msec);
+    }
+
+    /**
+     * Sets {@link #mStep} to one piece of this update's move, starting from where we are now.
+     *
+     * @param stepsec length of the piece in seconds
+     */
+    private void beginStep(float stepsec) {
+        mStep.oldx = getX();
+        mStep.oldy = getY();
+        mStep.newx = mStep.oldx + dX * stepsec;
+        mStep.newy = mStep.oldy + dY * stepsec;
+    }
+
+    /**
+     * Works out how many pieces to split a move into, so that no one piece carries us further
+     * than the fraction of our size set by {@link #setMaxStepFraction(float)}.
+     */
+    private int countSubsteps(float moveX, float moveY) {
+        float size = Math.min(boundingRect.width(), boundingRect.height());
+        if (mMaxStepFraction <= 0 || size <= 0) {
+            return 1;
+        }
+        float distance = Math.max(Math.abs(moveX), Math.abs(moveY));
+        int steps = (int) Math.ceil(distance / (mMaxStepFraction * size));
+        return Math.max(1, Math.min(steps, MAX_SUBSTEPS));
+    }
+
+    /**
+     * Turns on automatic sub-stepping for a fast-moving object.  Whenever one update would
+     * move the object further than the given fraction of its width or height (whichever is
+     * smaller), the move is split into several shorter ones, each checked for collisions.
+     * <p>
+     *     Every move is already swept against plain solids and against the boxes around
+     *     complex shapes, so nothing passes straight through a thin platform.  Sub-stepping
+     *     is for fast objects hitting complex shapes, where the exact shape test needs
+     *     shorter moves to catch the contact.  An update is never split into more than
+     *     {@value #MAX_SUBSTEPS} pieces.
+     * </p>
+     *
+     * @param fraction longest move per piece as a fraction of the object's size, like 0.5;
+     *                 0 (the default) turns sub-stepping off
+     */
+    public void setMaxStepFraction(float fraction) {
+        mMaxStepFraction = Math.max(0, fraction);
+    }
+
+    /**
+     * Puts this object to sleep once it has been sitting still for long enough.
+     * <p>
+     *     Something resting on the floor still picks up one update's worth of gravity before
+     *     the floor pushes back, so it never quite stops.  We allow for that, and only ask
+     *     that it stay within a small distance of where it first came to rest.
+     * </p>
+     *
+     * @param msec length of this update
+     */
+    private void checkForRest(int msec) {
+        if (!canSleep() || manager == null) {
+            mRestTime = 0;
+            return;
+        }
+        float fracsec = msec / 1000.0f;
+        float still = SLEEP_SPEED + (Math.abs(ddX) + Math.abs(ddY)) * fracsec;
+        if (mRestTime == 0) {
+            mRestX = getX();
+            mRestY = getY();
+        }
+        if (Math.abs(dX) < still && Math.abs(dY) < still
+                && Math.abs(getX() - mRestX) + Math.abs(getY() - mRestY) < SLEEP_DISTANCE) {
+            mRestTime += msec;
+            if (mRestTime >= SLEEP_DELAY) {
+                dX = 0;
+                dY = 0;
+                resetInterpolation();
+                mSleeping = true;
+                mSleepStart = manager.getClock();
+                manager.onSleepChanged(this, true);
+            }
+        } else {
+            mRestTime = 0;
+        }
+    }
+
+    /**
+     * Checks whether this object is allowed to go to sleep right now.  Only objects that feel
+     * gravity are put to sleep, since they are the ones that cost something to update while
+     * sitting still; objects that will remove themselves after a set time stay awake so the
+     * clock keeps running.
+     * <p>
+     *     Subclasses can override this to stay awake while they have something going on.
+     * </p>
+     *
+     * @return {@code true} if the object may be put to sleep once at rest
+     */
+    protected boolean canSleep() {
+        return mCanSleep && feelsGravity && mMaxTimeOnScreen == 0 && !mRemovalRequested;
+    }
+
+    /**
+     * Controls whether this object may be put to sleep when it comes to rest.  While asleep
+     * the manager skips its {@link #update(int)} entirely, so turn this off for objects whose
+     * {@code update()} does game logic that has to keep running while they sit still.
+     *
+     * @param canSleep {@code false} to keep the object awake at all times
+     */
+    public void setCanSleep(boolean canSleep) {
+        mCanSleep = canSleep;
+        if (!canSleep) {
+            wakeUp();
+        }
+    }
+
+    /**
+     * Checks whether this object has been put to sleep because it was at rest.  Sleeping
+     * objects aren't updated until something disturbs them: being moved, having their
+     * velocity or gravity changed, being bumped, or a solid near them moving or going away.
+     *
+     * @return {@code true} if the object is asleep
+     */
+    public boolean isSleeping() {
+        return mSleeping;
+    }
+
+    /**
+     * Wakes this object up if it is asleep, so it is updated again from the next step on.
+     */
+    public void wakeUp() {
+        if (!mSleeping) {
+            return;
+        }
+        mSleeping = false;
+        mRestTime = 0;
+        if (manager != null) {
+            // Count the time we spent asleep as time on screen.
+            mTimeOnScreen += manager.getClock() - mSleepStart;
+            manager.onSleepChanged(this, false);
+        }
     }
 
     protected class PositionUpdate {
@@ -123,47 +360,413 @@ abstract public class GameObject {
         }
     }
 
+    /**
+     * Checks whether this object would overlap any solids if it were moved by the given
+     * offset, without moving it, and calls {@link #onCollision(GameObject)} for each one.
+     * <p>
+     *     Only the offset position is tested, not the path there.  Nothing else changes: we
+     *     stay where we are, our velocity is left alone, and no enter, stay or exit callbacks
+     *     are delivered, since we never actually reach those solids.
+     * </p>
+     *
+     * @param x horizontal offset to test at, in world units
+     * @param y vertical offset to test at, in world units
+     * @return {@code true} if this object would overlap a solid at the offset position
+     */
     public boolean forceCollisionDetection(float x, float y){
-        PositionUpdate posup = new PositionUpdate(
-                this.getX(), this.getY(),
-                this.getX() + x, this.getY() + y);
-
-        interactWithSolids(posup);
-        return true;
+        if (manager == null) {
+            return false;
+        }
+        WorldRect bounds = getCollisionBounds();
+        mSweptBounds.set(bounds.left + x, bounds.top + y, bounds.right + x, bounds.bottom + y);
+        ArrayList<GameObject> nearby = manager.obtainScratchList();
+        manager.findSolidObjectsNear(mSweptBounds, this, true, nearby);
+        boolean hit = false;
+        for (int i = 0; i < nearby.size(); i++) {
+            GameObject obj = nearby.get(i);
+            boolean touching;
+            if (isComplex() || obj.isComplex()) {
+                if (!WorldRect.intersects(mSweptBounds, obj.getCollisionBounds())) {
+                    continue;
+                }
+                // Slide the other shape the opposite way, since a compound shape slides ours
+                // around while it is checked.
+                ConvexShape shape = getWorldShape();
+                ConvexShape other = obj.getWorldShape();
+                other.slide(-x, -y);
+                touching = shape.collideWith(other, mCollisionResult);
+                other.slide(0, 0);
+            } else {
+                WorldRect r = obj.boundingRect;
+                touching = boundingRect.left + x < r.right && r.left < boundingRect.right + x
+                        && boundingRect.top + y < r.bottom && r.top < boundingRect.bottom + y;
+            }
+            if (touching) {
+                hit = true;
+                onCollision(obj);
+            }
+        }
+        manager.recycleScratchList(nearby);
+        return hit;
     }
 
-    private void interactWithSolids(PositionUpdate posup) {
-        for (GameObject obj : manager.getSolidObjects()) {
-            if (this == obj){
-                continue;
-            }
-            if (!intersects(obj)) {
+    /**
+     * Checks this object against the solids around it for one move, from the old position in
+     * {@code posup} to the new one, and adjusts the new position and our velocity for any
+     * we hit.  Solids we already overlap are dealt with first; then the rest of the move is
+     * swept along its path so we can't skip over a solid in between.
+     *
+     * @param posup     the move to check, with the new position updated on return
+     * @param firstStep {@code false} for the later pieces of a sub-stepped update, which
+     *                  check again the solids they already checked earlier in the update
+     */
+    private void interactWithSolids(PositionUpdate posup, boolean firstStep) {
+        StaticDistanceField field = (mGradient != null) ? manager.getStaticField() : null;
+        ArrayList<GameObject> nearby;
+        if (firstStep && mNearbyVersion == manager.getSolidVersion()) {
+            // Found by detect(), and the grid hasn't changed since, so they're still right.
+            nearby = mNearby;
+        } else {
+            nearby = manager.obtainScratchList();
+            manager.findSolidObjectsNear(sweptBounds(posup), this, field == null, nearby);
+        }
+        // Solids on layers we can't hit (or that can't hit us) were already left out.
+        for (int i = 0; i < nearby.size(); i++) {
+            GameObject obj = nearby.get(i);
+            if (firstStep && manager.wasContactTested(this, obj)) {
+                // The other object already dealt with this pair when it moved this step.
                 continue;
             }
             if (isComplex() || obj.isComplex()){
-                Log.d("SAT", "Beginning complex check..." + obj.name + this.name);
-                // If either of these objects doesn't have a complex shape,
-                // generate it from the boundingRect
-                if (complexShape == null){
-                    complexShape = new CollisionShape(boundingRect);
+                // A rotated shape can poke out past its bounding box, so compare the boxes
+                // around the shapes themselves.
+                if (!WorldRect.intersects(getCollisionBounds(), obj.getCollisionBounds())) {
+                    continue;
                 }
-                if (obj.complexShape == null){
-                    obj.complexShape = new CollisionShape(obj.boundingRect);
+                if (debugMode) {
+                    EngineLog.d("SAT", "Beginning complex check..." + obj.name + this.name);
                 }
 
-                if (complexShape.collideWith(obj.complexShape, (double) this.getX(), (double) this.getY(), (double) obj.getX(), (double) obj.getY())){
-                    Log.d("SAT", "Colliding!" + this.name + " " + obj.name);
-                    onCollision(obj);
+                boolean touching = manager.collideComplex(this, obj, mCollisionResult);
+                if (touching){
+                    if (debugMode) {
+                        EngineLog.d("SAT", "Colliding!" + this.name + " " + obj.name);
+                    }
+                    pushOutOf(obj, posup, mCollisionResult);
+                    obj.wakeUp();
                 }
+                manager.recordContact(this, obj, touching);
             }
-            else {
+            else if (intersects(obj)) {
                 // If we're moving downwards and our center is above the top of the solid object
-                if (dY > 0 && posup.oldy < obj.boundingRect.top) {
+                boolean landed = dY > 0 && posup.oldy < obj.boundingRect.top;
+                if (landed) {
                     posup.newy = obj.boundingRect.top - boundingRect.height() / 2.0f;
                     dY = (obj.isBouncy) ? -dY : 0;
-                    onCollision(obj);
+                    obj.wakeUp();
                 }
+                manager.recordContact(this, obj, landed);
+            }
+        }
+        sweepAgainstSolids(nearby, posup);
+        if (nearby != mNearby) {
+            manager.recycleScratchList(nearby);
+        }
+        if (field != null) {
+            collideWithDistanceField(field, posup);
+        }
+    }
+
+    /**
+     * Works out the area covered by our collision bounds on the way through a move.
+     */
+    private WorldRect sweptBounds(PositionUpdate posup) {
+        WorldRect bounds = getCollisionBounds();
+        float moveX = posup.newx - posup.oldx, moveY = posup.newy - posup.oldy;
+        mSweptBounds.set(bounds.left + Math.min(moveX, 0), bounds.top + Math.min(moveY, 0),
+                bounds.right + Math.max(moveX, 0), bounds.bottom + Math.max(moveY, 0));
+        return mSweptBounds;
+    }
+
+    /**
+     * Makes this object check for collisions with the level's static solids using the
+     * distance field baked by {@link GameObjectManager#setStaticDistanceField(float)}, rather
+     * than testing its shape against each one nearby.  That costs a few lookups per move no
+     * matter how much scenery there is, which suits lots of small, fast things like bullets
+     * and particles.
+     * <p>
+     *     For this check the object counts as a circle: its collision circle if it has one,
+     *     otherwise one that fits inside its bounding box.  Moving solids are still checked
+     *     the usual way.  If the level has no distance field, the static solids are too.
+     * </p>
+     *
+     * @param uses {@code true} to collide with static solids using the distance field
+     */
+    public void setUsesDistanceField(boolean uses) {
+        mGradient = uses ? new float[2] : null;
+    }
+
+    /**
+     * Checks whether this object collides with static solids using the distance field.  See
+     * {@link #setUsesDistanceField(boolean)}.
+     *
+     * @return {@code true} if it uses the distance field
+     */
+    public boolean usesDistanceField() {
+        return mGradient != null;
+    }
+
+    /**
+     * Walks a move through the distance field, each time stepping as far as the distance to
+     * the nearest static solid, which can't overshoot it.  If we end up touching a solid we
+     * stop there, moved onto its surface, and carry on with whatever is left of the move
+     * along the surface.
+     */
+    private void collideWithDistanceField(StaticDistanceField field, PositionUpdate posup) {
+        float radius;
+        ConvexShape shape = isComplex() ? getWorldShape() : null;
+        if (shape instanceof CollisionCircle) {
+            radius = ((CollisionCircle) shape).mPosedRadius;
+        } else {
+            radius = Math.min(boundingRect.width(), boundingRect.height()) / 2.0f;
+        }
+
+        float moveX = posup.newx - posup.oldx, moveY = posup.newy - posup.oldy;
+        float length = (float) Math.sqrt(moveX * moveX + moveY * moveY);
+        float travelled = 0;
+        float x = posup.oldx, y = posup.oldy;
+        for (int step = 0; ; step++) {
+            float distance = field.sample(x, y, mGradient) - radius;
+            if (distance < MARCH_SKIN) {
+                GameObject solid = field.nearestSolid(x, y);
+                if (solid != null && !canCollideWith(solid)) {
+                    return;
+                }
+                float normalX = mGradient[0], normalY = mGradient[1];
+                float left = (length > 0) ? 1 - travelled / length : 0;
+                float restX = moveX * left, restY = moveY * left;
+                float restInto = restX * normalX + restY * normalY;
+                if (restInto < 0) {
+                    restX -= restInto * normalX;
+                    restY -= restInto * normalY;
+                }
+                posup.newx = x - normalX * distance + restX;
+                posup.newy = y - normalY * distance + restY;
+                if (solid != null) {
+                    bounceOff(solid, normalX, normalY);
+                    solid.wakeUp();
+                    manager.recordContact(this, solid, true);
+                }
+                return;
+            }
+            if (travelled >= length) {
+                return;
+            }
+            // Out of steps, probably skimming along a surface: just look at where we end up.
+            travelled = (step < MAX_MARCH_STEPS) ? Math.min(length, travelled + distance) : length;
+            x = posup.oldx + moveX * travelled / length;
+            y = posup.oldy + moveY * travelled / length;
+        }
+    }
+
+    /**
+     * Looks along the path of a move for the first solid we would run into, and stops the
+     * move there.  Boxes are swept against boxes: our bounding box against a plain solid's,
+     * or the boxes around the shapes when either of us is complex.  Solids we already
+     * overlap at the start are left alone, since the overlap test has handled them.
+     * <p>
+     *     A plain solid only stops things landing on top of it, the same as when they
+     *     overlap.  For complex shapes we only know when the boxes meet, so we only step in
+     *     when the move would carry us more than halfway through the solid's box, where the
+     *     exact shape test would push us out the wrong side.  Shorter moves are left for
+     *     that test to deal with at the start of the next move.
+     * </p>
+     */
+    private void sweepAgainstSolids(ArrayList<GameObject> nearby, PositionUpdate posup) {
+        float moveX = posup.newx - posup.oldx, moveY = posup.newy - posup.oldy;
+        if (moveX == 0 && moveY == 0) {
+            return;
+        }
+
+        GameObject hit = null;
+        float hitTime = 1;
+        boolean hitAlongY = false;
+        for (int i = 0; i < nearby.size(); i++) {
+            GameObject obj = nearby.get(i);
+            boolean plain = !isComplex() && !obj.isComplex();
+            float t = plain
+                    ? sweepBox(boundingRect, moveX, moveY, obj.boundingRect, false,
+                            mCollisionResult)
+                    : sweepBox(getCollisionBounds(), moveX, moveY, obj.getCollisionBounds(),
+                            true, mCollisionResult);
+            if (t < 0 || t >= hitTime) {
+                continue;
+            }
+            if (plain && mCollisionResult.normalY >= 0) {
+                continue;   // Plain solids only stop things coming down on top of them.
             }
+            hit = obj;
+            hitTime = t;
+            hitAlongY = mCollisionResult.normalY != 0;
+        }
+        if (hit == null) {
+            return;
+        }
+
+        if (!isComplex() && !hit.isComplex()) {
+            posup.newy = hit.boundingRect.top - boundingRect.height() / 2.0f;
+            dY = (hit.isBouncy) ? -dY : 0;
+        } else if (hitAlongY) {
+            posup.newy = posup.oldy + moveY * hitTime;
+            bounceOff(hit, 0, -Math.signum(moveY));
+        } else {
+            posup.newx = posup.oldx + moveX * hitTime;
+            bounceOff(hit, -Math.signum(moveX), 0);
+        }
+        hit.wakeUp();
+        manager.recordContact(this, hit, true);
+    }
+
+    /**
+     * Finds when a box moving by {@code (moveX, moveY)} first touches a box standing still,
+     * as a fraction of the move.  On a hit, the normal in {@code result} is set to the side
+     * of {@code still} that was hit, pointing out of it.
+     *
+     * @param pastMiddle only count hits where the move ends more than halfway through
+     * @return time of impact from 0 to 1, or -1 if the boxes don't meet during the move or
+     *         already overlap at the start
+     */
+    private static float sweepBox(WorldRect moving, float moveX, float moveY, WorldRect still,
+                                  boolean pastMiddle, CollisionResult result) {
+        float enterX, exitX, enterY, exitY;
+        if (moveX > 0) {
+            enterX = (still.left - moving.right) / moveX;
+            exitX = (still.right - moving.left) / moveX;
+        } else if (moveX < 0) {
+            enterX = (still.right - moving.left) / moveX;
+            exitX = (still.left - moving.right) / moveX;
+        } else if (moving.left < still.right && still.left < moving.right) {
+            enterX = Float.NEGATIVE_INFINITY;
+            exitX = Float.POSITIVE_INFINITY;
+        } else {
+            return -1;
+        }
+        if (moveY > 0) {
+            enterY = (still.top - moving.bottom) / moveY;
+            exitY = (still.bottom - moving.top) / moveY;
+        } else if (moveY < 0) {
+            enterY = (still.bottom - moving.top) / moveY;
+            exitY = (still.top - moving.bottom) / moveY;
+        } else if (moving.top < still.bottom && still.top < moving.bottom) {
+            enterY = Float.NEGATIVE_INFINITY;
+            exitY = Float.POSITIVE_INFINITY;
+        } else {
+            return -1;
+        }
+
+        float enter = Math.max(enterX, enterY);
+        float exit = Math.min(exitX, exitY);
+        if (enter < 0 || enter >= 1 || enter >= exit || (pastMiddle && enter + exit >= 2)) {
+            return -1;
+        }
+        if (enterY > enterX) {
+            result.normalX = 0;
+            result.normalY = (moveY > 0) ? -1 : 1;
+        } else {
+            result.normalX = (moveX > 0) ? -1 : 1;
+            result.normalY = 0;
+        }
+        result.depth = 0;
+        return enter;
+    }
+
+    /**
+     * Checks whether this object is still touching another one that it was touching last
+     * step, when neither of them has moved since.  Objects resting on top of a plain solid
+     * count as touching it.
+     */
+    boolean isTouching(GameObject other) {
+        if (manager == null || !canCollideWith(other)) {
+            return false;
+        }
+        if (isComplex() || other.isComplex()) {
+            return WorldRect.intersects(getCollisionBounds(), other.getCollisionBounds())
+                    && manager.collideComplex(this, other, mCollisionResult);
+        }
+        WorldRect a = boundingRect, b = other.boundingRect;
+        return a.left <= b.right && b.left <= a.right && a.top <= b.bottom && b.top <= a.bottom;
+    }
+
+    /**
+     * Returns this object's collision shape placed at its current position, size and
+     * rotation.  Objects without a complex shape get one generated from their bounding box
+     * the first time it's needed.  The world-space vertices are cached by the shape and
+     * only worked out again when something has changed.
+     */
+    ConvexShape getWorldShape() {
+        if (complexShape == null) {
+            complexShape = new CollisionBox(boundingRect);
+        }
+        complexShape.setTransform(boundingRect.centerX(), boundingRect.centerY(),
+                boundingRect.width(), boundingRect.height(), mRotation);
+        return complexShape;
+    }
+
+    /**
+     * Returns the area this object can collide within: its bounding box, grown if need be to
+     * cover a collision shape that has been rotated or pokes out past the box.
+     */
+    WorldRect getCollisionBounds() {
+        if (complexShape == null && mRotation == 0.0f) {
+            return boundingRect;
+        }
+        getWorldShape().getWorldBounds(mCollisionBounds);
+        mCollisionBounds.union(boundingRect);
+        return mCollisionBounds;
+    }
+
+    /**
+     * Moves this object out of a solid it has sunk into, along the minimum translation vector,
+     * and takes away (or for bouncy solids, reverses) the part of our velocity heading into it.
+     * The part of this step's move that would take us further in is dropped as well.
+     */
+    private void pushOutOf(GameObject obj, PositionUpdate posup, CollisionResult contact) {
+        float moveInto = (posup.newx - posup.oldx) * contact.normalX
+                + (posup.newy - posup.oldy) * contact.normalY;
+        if (moveInto < 0) {
+            posup.newx -= moveInto * contact.normalX;
+            posup.newy -= moveInto * contact.normalY;
+        }
+        posup.newx += contact.getTranslationX();
+        posup.newy += contact.getTranslationY();
+        bounceOff(obj, contact.normalX, contact.normalY);
+    }
+
+    /**
+     * Takes away (or for bouncy solids, reverses) the part of our velocity heading into a
+     * solid's surface.
+     *
+     * @param normalX unit normal of the surface, pointing out of the solid
+     * @param normalY unit normal of the surface, pointing out of the solid
+     */
+    private void bounceOff(GameObject obj, float normalX, float normalY) {
+        float intoSurface = dX * normalX + dY * normalY;
+        if (intoSurface < 0) {
+            float scale = obj.isBouncy ? 2.0f : 1.0f;
+            dX -= scale * intoSurface * normalX;
+            dY -= scale * intoSurface * normalY;
+        }
+    }
+
+    /**
+     * Lets the manager know this object has moved or been resized so it can keep its
+     * collision bookkeeping current.
+     */
+    private void boundsChanged() {
+        moveCount++;
+        wakeUp();
+        if (manager != null) {
+            manager.onObjectMoved(this);
         }
     }
 
@@ -195,6 +798,7 @@ abstract public class GameObject {
      * @param msec number of milliseconds until this game object requests automatic removal
      */
     public void setMaxTimeOnScreen(int msec) {
+        wakeUp();
         mMaxTimeOnScreen = msec;
     }
 
@@ -208,14 +812,14 @@ abstract public class GameObject {
     }
 
     /**
-     * Must be implemented by any subclasses to do the work of actually drawing the game object
-     * onto the screen.
+     * Called on the game engine thread after each batch of updates to record what this object
+     * looks like, so the render thread can draw it while the next update runs.  Subclasses
+     * that draw anything add it here; the default draws nothing.
      *
-     * @param c   the {@link Canvas} object the game is currently being drawn onto
-     * @param xScale the horizontal scaling factor between world coordinates and screen coordinates
-     * @param yScale the vertical scaling factor between world coordinates and screen coordinates
+     * @param snapshot the frame being recorded
      */
-    abstract public void draw(Canvas c, float xScale, float yScale);
+    protected void writeSnapshot(RenderSnapshot snapshot) {
+    }
 
     /**
      * Checks if this game object's bounding box includes a given point.
@@ -237,7 +841,9 @@ abstract public class GameObject {
         double radians = Math.toRadians(direction);
         float dx = (float) (distance * Math.cos(radians));
         float dy = (float) (distance * Math.sin(radians));
+        resetInterpolation();
         boundingRect.offset(dx, dy);
+        boundsChanged();
     }
 
     /**
@@ -246,7 +852,9 @@ abstract public class GameObject {
      * @param dy vertical offset in world coordinates
      */
     public void moveBy(float dx, float dy) {
+        resetInterpolation();
         boundingRect.offset(dx, dy);
+        boundsChanged();
     }
 
     /**
@@ -265,11 +873,13 @@ abstract public class GameObject {
         float dx = destx - boundingRect.centerX();
         float dy = desty - boundingRect.centerY();
         float totaldist = (float) Math.hypot(dx, dy);
+        resetInterpolation();
         if (distance < totaldist) {
             boundingRect.offset(dx * distance / totaldist, dy * distance / totaldist);
         } else {
             boundingRect.offsetTo(destx, desty);
         }
+        boundsChanged();
     }
 
     /**
@@ -290,6 +900,30 @@ abstract public class GameObject {
         return boundingRect.centerY();
     }
 
+    /**
+     * Where we were before the last update, or where we are now if that isn't known.  The
+     * render thread draws us between there and where we are now, since a frame usually falls
+     * somewhere between two updates.
+     */
+    float getPreviousX() {
+        return Float.isNaN(mPrevX) ? getX() : mPrevX;
+    }
+
+    float getPreviousY() {
+        return Float.isNaN(mPrevY) ? getY() : mPrevY;
+    }
+
+    /**
+     * Draw this object exactly where it is from now until its next update, rather than
+     * somewhere between there and where it was before.  Moving an object with
+     * {@link #setXY(float, float)}, {@link #moveBy(float, float)} and the like already does
+     * this, so it isn't drawn sliding across the screen when it is wrapped around.
+     */
+    public void resetInterpolation() {
+        mPrevX = Float.NaN;
+        mPrevY = Float.NaN;
+    }
+
     /**
      * Get the width of the bounding box for this sprite.
      *
@@ -317,8 +951,18 @@ abstract public class GameObject {
      * @param height  height of sprite in world units
      */
     public void setXYWH(float centerX, float centerY, float width, float height) {
+        resetInterpolation();
+        setBounds(centerX, centerY, width, height);
+    }
+
+    /**
+     * Sets our center and size without resetting where we are drawn from, for the engine's
+     * own moves and for size changes, which should still be drawn smoothly.
+     */
+    private void setBounds(float centerX, float centerY, float width, float height) {
         boundingRect.set(centerX - width / 2, centerY - height / 2,
                 centerX + width / 2, centerY + height / 2);
+        boundsChanged();
     }
 
     /**
@@ -357,7 +1001,7 @@ abstract public class GameObject {
      * @param width new width in world units
      */
     public void setWidth(float width) {
-        setXYWH(boundingRect.centerX(), boundingRect.centerY(), width, boundingRect.height());
+        setBounds(boundingRect.centerX(), boundingRect.centerY(), width, boundingRect.height());
     }
 
     /**
@@ -366,7 +1010,7 @@ abstract public class GameObject {
      * @param height new height in world units
      */
     public void setHeight(float height) {
-        setXYWH(boundingRect.centerX(), boundingRect.centerY(), boundingRect.width(), height);
+        setBounds(boundingRect.centerX(), boundingRect.centerY(), boundingRect.width(), height);
     }
 
     public void setDebugMode(boolean bool) {
@@ -383,7 +1027,9 @@ abstract public class GameObject {
      * @param y vertical coordinate of the destination in world units
      */
     public void setUpperLeftXY(float x, float y) {
+        resetInterpolation();
         boundingRect.offset(x - boundingRect.left, y - boundingRect.top);
+        boundsChanged();
     }
 
     /**
@@ -403,7 +1049,7 @@ abstract public class GameObject {
      * @return true if this object intersects/touches {@code other}
      */
     final public boolean intersects(GameObject other) {
-        return RectF.intersects(other.boundingRect, boundingRect);
+        return WorldRect.intersects(other.boundingRect, boundingRect);
     }
 
     /**
@@ -414,7 +1060,7 @@ abstract public class GameObject {
      */
     final public GameObject intersectsAny(List<? extends GameObject> objects) {
         for (GameObject obj : objects) {
-            if (RectF.intersects(obj.boundingRect, boundingRect)) {
+            if (WorldRect.intersects(obj.boundingRect, boundingRect)) {
                 return obj;
             }
         }
@@ -498,6 +1144,9 @@ abstract public class GameObject {
      * @param dX velocity in pixels per second
      */
     public void setdX(float dX) {
+        if (dX != this.dX) {
+            wakeUp();
+        }
         this.dX = dX;
     }
 
@@ -516,6 +1165,9 @@ abstract public class GameObject {
      * @param dY velocity in pixels per second
      */
     public void setdY(float dY) {
+        if (dY != this.dY) {
+            wakeUp();
+        }
         this.dY = dY;
     }
 
@@ -534,6 +1186,7 @@ abstract public class GameObject {
      * @param feelsGravity {@code true} to make this object respond to gravity
      */
     public void setFeelsGravity(boolean feelsGravity) {
+        wakeUp();
         this.feelsGravity = feelsGravity;
     }
 
@@ -571,15 +1224,53 @@ abstract public class GameObject {
      * Configures whether objects that collide with this one will be affected or will simply pass
      * through.  See also isBouncy/setBouncy to configure what happens in a collision.
      *
+     * <p>
+     *     Triggers can't be solid, so making a trigger solid turns it into an ordinary object.
+     * </p>
+     *
      * @param solid {@code true} to make it solid
      */
     public void setSolid(boolean solid) {
+        if (solid && isTrigger) {
+            setTrigger(false);
+        }
         if (manager != null) {
             manager.setObjectSolidity(this, solid);
         }
         isSolid = solid;
     }
 
+    /**
+     * Checks whether this object has been marked as never moving.  See
+     * {@link #setStatic(boolean)}.
+     *
+     * @return {@code true} if the object is static
+     */
+    public boolean isStatic() {
+        return isStatic;
+    }
+
+    /**
+     * Marks this object as part of the level's scenery that never moves, like a floor, wall
+     * or platform.  Static solids are kept in a separate, read-only index that is built once
+     * when the level is set up, which makes checking moving objects against them faster.
+     * <p>
+     *     Static objects can still be moved, but each move (and each static solid added or
+     *     removed) means rebuilding that index, so only use this for things that stay put.
+     * </p>
+     *
+     * @param isStatic {@code true} if the object never moves
+     */
+    public void setStatic(boolean isStatic) {
+        if (manager != null && isSolid) {
+            manager.setObjectSolidity(this, false);
+            this.isStatic = isStatic;
+            manager.setObjectSolidity(this, true);
+        } else {
+            this.isStatic = isStatic;
+        }
+    }
+
     /**
      * Get this object's horizontal gravitational acceleration
      *
@@ -595,6 +1286,7 @@ abstract public class GameObject {
      * @param accelX acceleration in pixels/second/second
      */
     public void setAccelX(float accelX) {
+        wakeUp();
         this.ddX = accelX;
     }
 
@@ -613,6 +1305,7 @@ abstract public class GameObject {
      * @param accelY acceleration in pixels/second/second
      */
     public void setAccelY(float accelY) {
+        wakeUp();
         this.ddY = accelY;
     }
 
@@ -635,21 +1328,273 @@ abstract public class GameObject {
     }
 
     /**
-     * Called when this objects collides with another one in the physics engine
+     * Called once per step for as long as this object is touching another one in the physics
+     * engine.  If you only want to react once per collision, use
+     * {@link #onCollisionEnter(GameObject)} instead.
+     * <p>
+     *     Like the other collision callbacks, this is called after every object has moved
+     *     for the step, and both objects of a pair are told.
+     * </p>
      *
      * @param other The other object it collided with
      */
     public void onCollision(GameObject other) {
     }
 
+    /**
+     * Called on the first step that this object touches another one.
+     *
+     * @param other the object it started touching
+     */
+    public void onCollisionEnter(GameObject other) {
+    }
+
+    /**
+     * Called on each later step that this object is still touching another one.
+     *
+     * @param other the object it is still touching
+     */
+    public void onCollisionStay(GameObject other) {
+    }
+
+    /**
+     * Called on the first step that this object is no longer touching another one, including
+     * when the other object was removed from the game.
+     *
+     * @param other the object it stopped touching
+     */
+    public void onCollisionExit(GameObject other) {
+    }
+
+    /**
+     * Checks whether this object is a trigger volume.  See {@link #setTrigger(boolean)}.
+     *
+     * @return {@code true} if this object is a trigger
+     */
+    public boolean isTrigger() {
+        return isTrigger;
+    }
+
+    /**
+     * Makes this object a trigger volume: an area that doesn't block anything, but finds out
+     * when other objects move into it or out of it.  Both the trigger and the other object
+     * get {@link #onTriggerEnter(GameObject)} and {@link #onTriggerExit(GameObject)} calls,
+     * which only happen when something actually goes in or out, so there's no need to
+     * check for overlaps every step.
+     * <p>
+     *     Triggers use the collision layers like solids do, and they aren't solid: making a
+     *     solid object into a trigger makes it non-solid.
+     * </p>
+     *
+     * @param isTrigger {@code true} to make this object a trigger
+     */
+    public void setTrigger(boolean isTrigger) {
+        if (isTrigger == this.isTrigger) {
+            return;
+        }
+        if (isTrigger && isSolid) {
+            setSolid(false);
+        }
+        this.isTrigger = isTrigger;
+        if (manager != null) {
+            manager.setObjectTrigger(this, isTrigger);
+        }
+    }
+
+    /**
+     * Called at the end of the step in which this object and a trigger start to overlap.
+     * Triggers get it when an object moves into them; other objects get it when they move
+     * into a trigger, with the trigger as {@code other}.
+     * <p>
+     *     There is also a trigger covering the whole world, given by
+     *     {@link GameObjectManager#getWorldTrigger()}.  Objects get this call with that
+     *     trigger when they come back into the world after going off the edge.
+     * </p>
+     *
+     * @param other the trigger (or for a trigger, the object) that now overlaps this one
+     */
+    public void onTriggerEnter(GameObject other) {
+    }
+
+    /**
+     * Called at the end of the step in which this object and a trigger stop overlapping,
+     * including when the other one was removed from the game.  Objects that go fully off
+     * the edge of the world get this call with {@link GameObjectManager#getWorldTrigger()}.
+     *
+     * @param other the trigger (or for a trigger, the object) that no longer overlaps this one
+     */
+    public void onTriggerExit(GameObject other) {
+    }
+
+    /**
+     * Checks whether this object's area overlaps another's, using the collision shapes if
+     * either of them is complex.
+     */
+    boolean overlaps(GameObject other) {
+        if (!WorldRect.intersects(getCollisionBounds(), other.getCollisionBounds())) {
+            return false;
+        }
+        return !(isComplex() || other.isComplex())
+                || manager.collideComplex(this, other, mCollisionResult);
+    }
+
+    /**
+     * Gets the collision layers this object is on.  See {@link #setCollisionCategory(int)}.
+     *
+     * @return bit field with one bit set for each layer
+     */
+    public int getCollisionCategory() {
+        return mCollisionCategory;
+    }
+
+    /**
+     * Puts this object on one or more of 32 collision layers, for example cars on layer 1 and
+     * logs on layer 2.  Together with {@link #setCollisionMask(int)} this decides which
+     * objects can collide at all; pairs that can't are skipped without any geometry being
+     * checked.  By default every object is on layer 0 only.
+     *
+     * @param category bit field with bit {@code n} set to put the object on layer {@code n},
+     *                 e.g. {@code 1 << 2} for layer 2
+     */
+    public void setCollisionCategory(int category) {
+        int old = mCollisionCategory;
+        mCollisionCategory = category;
+        if (manager != null) {
+            manager.onCollisionFilterChanged(this, old);
+        }
+    }
+
+    /**
+     * Gets the collision layers this object can collide with.  See
+     * {@link #setCollisionMask(int)}.
+     *
+     * @return bit field with one bit set for each layer
+     */
+    public int getCollisionMask() {
+        return mCollisionMask;
+    }
+
+    /**
+     * Chooses which collision layers this object can collide with.  Two objects only collide
+     * if each one's category has a bit in common with the other one's mask.  By default an
+     * object can collide with every layer.
+     * <p>
+     *     For instance, to have particles that only hit the floor, put the floor on its own
+     *     layer with {@code floor.setCollisionCategory(1 << 3)} and give the particles
+     *     {@code setCollisionMask(1 << 3)}.
+     * </p>
+     *
+     * @param mask bit field with bit {@code n} set to collide with layer {@code n}
+     */
+    public void setCollisionMask(int mask) {
+        mCollisionMask = mask;
+        if (manager != null) {
+            manager.onCollisionFilterChanged(this, mCollisionCategory);
+        }
+    }
+
+    /**
+     * Checks whether this object's collision layers allow it to collide with another one.
+     *
+     * @param other the object to check against
+     * @return {@code true} if each object's category is in the other one's mask
+     */
+    public final boolean canCollideWith(GameObject other) {
+        return (mCollisionCategory & other.mCollisionMask) != 0
+                && (other.mCollisionCategory & mCollisionMask) != 0;
+    }
+
     public boolean isComplex(){ return isComplex; }
 
     public void setIsComplex(boolean complex){
         isComplex = complex;
     }
 
+    /**
+     * Gives this object a convex collision shape.  The vertices are relative to the object's
+     * center at its current size; if the object is later resized or rotated, the shape is
+     * stretched and turned to match.
+     *
+     * @param verts corners of the shape, in order around its edge
+     */
     public void setComplexShape(CollisionVertex... verts){
-        complexShape = new CollisionShape(verts);
+        setComplexShape(new CollisionShape(verts, boundingRect.width(), boundingRect.height()));
+    }
+
+    /**
+     * Gives this object a collision shape of any kind: a {@link CollisionShape} polygon, a
+     * {@link CollisionBox}, {@link CollisionCircle} or {@link CollisionCapsule}.
+     *
+     * @param shape the new shape, described relative to the object's center
+     */
+    public void setComplexShape(ConvexShape shape) {
+        complexShape = shape;
         isComplex = true;
+        boundsChanged();
+    }
+
+    /**
+     * Gives this object a collision shape made of several convex parts, for objects that
+     * aren't convex themselves.  The parts are described relative to the object's center at
+     * its current size; see {@link CompoundShape}.
+     *
+     * @param parts the convex parts
+     */
+    public void setCompoundShape(ConvexShape... parts) {
+        setComplexShape(new CompoundShape(boundingRect.width(), boundingRect.height(), parts));
+    }
+
+    /**
+     * Gives this object a circular collision shape centered on it.  Much cheaper to check
+     * than a polygon, so a good choice for balls and bullets.
+     *
+     * @param radius radius of the circle at the object's current size, in world units
+     */
+    public void setCircleShape(float radius) {
+        setComplexShape(new CollisionCircle(radius, boundingRect.width(), boundingRect.height()));
+    }
+
+    /**
+     * Gives this object a capsule-shaped collision shape: every point within {@code radius}
+     * of the line between two points given relative to the object's center.
+     *
+     * @param x1     horizontal offset of one end of the center line, in world units
+     * @param y1     vertical offset of that end
+     * @param x2     horizontal offset of the other end
+     * @param y2     vertical offset of the other end
+     * @param radius how far the capsule reaches out from its center line
+     */
+    public void setCapsuleShape(float x1, float y1, float x2, float y2, float radius) {
+        setComplexShape(new CollisionCapsule(x1, y1, x2, y2, radius,
+                boundingRect.width(), boundingRect.height()));
+    }
+
+    /**
+     * Rotates the object this many degrees.  For a {@link Sprite} this turns the image; the
+     * object's collision shape turns with it.
+     *
+     * @param degrees angle to rotate the object by (clockwise from its default orientation)
+     */
+    public void setRotation(float degrees) {
+        mRotation = degrees;
+        boundsChanged();
+    }
+
+    /**
+     * Rotates the object by an additional amount on top of its current rotation
+     *
+     * @param degrees number of additional degrees to rotate the object
+     */
+    public void addRotation(float degrees) {
+        setRotation(mRotation + degrees);
+    }
+
+    /**
+     * Query the rotation angle of the object.
+     *
+     * @return number of degrees clockwise the object is rotated from its default orientation.
+     */
+    public float getRotation() {
+        return mRotation;
     }
 }
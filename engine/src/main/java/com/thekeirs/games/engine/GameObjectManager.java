@@ -1,12 +1,5 @@
 package com.thekeirs.games.engine;
 
-import android.content.res.Resources;
-import android.graphics.Canvas;
-import android.graphics.RectF;
-import android.util.Log;
-import android.view.MotionEvent;
-import android.view.SurfaceView;
-
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -16,6 +9,9 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <h1>The central class of the game engine, responsible for keeping track of all the game objects
@@ -29,14 +25,47 @@ import java.util.TreeMap;
 
 public final class GameObjectManager implements IMessageClient, GameView.IRedrawService, GameView.IGameLogicService {
     final private String TAG = "GameObjectManager";
+    final private static int PARALLEL_MIN_OBJECTS = 512;   // Fewer than this aren't worth splitting
+    final private static int OBJECTS_PER_TASK = 128;
+    private static final Map<Class<?>, Boolean> sOwnUpdate = new ConcurrentHashMap<>();
     private Map<String, GameObject> mObjects;
+    private final ArrayList<GameObject> mById = new ArrayList<>();     // Same objects, oldest first
+    private final ArrayList<GameObject> mMovers = new ArrayList<>();   // Scratch for each update
+    private final ArrayList<GameObject> mScripted = new ArrayList<>();
     private Scene mScene;
     private GameLevel mLevel;
     private GameLevel mNextLevel;
     private float mWorldScreenWidth = 1600f, mWorldScreenHeight = 900f;
-    private Resources mResources;
     private SortedMap<Integer, List<GameObject>> mZOrder = new TreeMap<>();
     private Set<GameObject> solidThings = new HashSet<>();
+    private List<Set<GameObject>> mSolidLayers = new ArrayList<>();    // Solids on each layer
+    private float mCollisionCellSize = 100f;
+    private SpatialGrid mSolidGrid = new SpatialGrid(mCollisionCellSize);
+    private List<GameObject> mStaticSolids = new ArrayList<>();
+    private StaticCollisionIndex mStaticIndex;      // null when it needs rebuilding
+    private int mStaticsVersion;                    // Bumped whenever the static solids change
+    private float mDistanceFieldCellSize;           // 0 when there's no distance field
+    private StaticDistanceField mStaticField;       // null when it needs rebuilding
+    private DynamicAabbTree mQueryTree = new DynamicAabbTree();
+    private SeparatingAxisCache mAxisCache = new SeparatingAxisCache();
+    private ContactManager mContacts = new ContactManager();
+    private final WorldRect mWorldBoundary = new WorldRect(0, 0, mWorldScreenWidth, mWorldScreenHeight);
+    private TriggerManager mTriggers = new TriggerManager(mQueryTree,
+            new TriggerVolume("world", mWorldBoundary), mCollisionCellSize);
+    private final AtomicInteger mSleepingCount = new AtomicInteger();  // Woken from systems too
+    private long mClock;                    // Msec of game time since we started
+    private Clock mEngineClock = new Clock();
+    private RenderSnapshot mRenderSnapshot;     // For render(); created when first needed
+    private RenderCommandList mRenderCommands;
+    private WorldRect mWakeArea = new WorldRect();
+    private float[] mCachedAxis = new float[2];
+    private final ThreadLocal<ArrayList<ArrayList<GameObject>>> mScratchLists =
+            new ThreadLocal<ArrayList<ArrayList<GameObject>>>() {
+                @Override
+                protected ArrayList<ArrayList<GameObject>> initialValue() {
+                    return new ArrayList<>();
+                }
+            };
     private float rightStickX, rightStickY;
     private float leftStickX, leftStickY;
     private Object mGameState;
@@ -48,21 +77,55 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
      */
     public MessageBus mBus;
 
+    private final EngineContext mContext;
+    private final Jobs mJobs;
+    private final SystemScheduler mSystems;
+
     /**
-     * Called by the game's main Activity to set up all the game logic.
+     * Called by the game's main Activity to set up all the game logic.  Images and sounds are
+     * loaded from the resources given to {@link Images#setResources}; without them (when
+     * running the game somewhere other than on a device, see {@link HeadlessRunner}) there is
+     * nothing to load them from.
      *
      * @param mbus {@link MessageBus} for passing messages between game objects and infrastructure
-     * @param res  pointer to the resources for this Activity so we can make them accesible to
-     *             things that need them, in particular {@link Sprite} and
-     *             {@link BackgroundImageScene}
      */
-    public GameObjectManager(MessageBus mbus, Resources res) {
-        mResources = res;
+    public GameObjectManager(MessageBus mbus) {
+        this(mbus, EngineContext.getDefault());
+    }
+
+    /**
+     * Sets up the game logic to run with its own {@link EngineContext}, so it can run side by
+     * side with other games in the same process; see {@link WorldHost}.
+     *
+     * @param mbus    {@link MessageBus} for passing messages between game objects and infrastructure
+     * @param context random numbers, sounds and images for this game
+     */
+    public GameObjectManager(MessageBus mbus, EngineContext context) {
+        mContext = context;
+        mJobs = new Jobs(context);
+        mSystems = new SystemScheduler(context);
 
         mObjects = new HashMap<>();
+        for (int layer = 0; layer < 32; layer++) {
+            mSolidLayers.add(new HashSet<GameObject>());
+        }
         mBus = mbus;
         mBus.addClient(this);
-        Images.setDefaultImage(R.drawable.default_image);
+        mContext.setDefaultImageId(R.drawable.default_image);
+    }
+
+    /**
+     * Gets the job system for running slow game logic on the device's other processors.
+     */
+    public Jobs getJobs() {
+        return mJobs;
+    }
+
+    /**
+     * Gets the context this game runs with: its random numbers, sounds and images.
+     */
+    public EngineContext getContext() {
+        return mContext;
     }
 
     /**
@@ -83,35 +146,41 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
             mLevel.finish();
         }
         mObjects.clear();
+        mById.clear();
         solidThings.clear();
+        for (Set<GameObject> layer : mSolidLayers) {
+            layer.clear();
+        }
+        mSolidGrid.clear();
+        mStaticSolids.clear();
+        staticsChanged();
+        mQueryTree.clear();
+        mAxisCache.clear();
+        mContacts.clear();
+        mTriggers.clear();
+        mSleepingCount.set(0);
         mZOrder.clear();
         mScene = null;
+        mSystems.clear();
 
         mLevel = mNextLevel;
         mNextLevel = null;
         mLevel.setObjectManager(this);
         mLevel.setup();
+        getStaticIndex();
+        getStaticField();
     }
 
-    /**
-     * Returns the cached resources object.
-     *
-     * @return the resources associated with the Activity that this game is running with.
-     */
-    public Resources getResources() {
-        return mResources;
-    }
-
-
     /**
      * Adds a {@link GameObject} or a subclass into the list of objects being managed.
      * <p>
-     *     Objects in this list will have their update() and draw() routines called at regular
+     *     Objects in this list will be updated and drawn at regular
      *     intervals, and will receive UI events (taps, swipes) that are within their boundary.
      * </p>
      * @param obj a {@link GameObject} or derived class to manage
      */
     public void addObject(GameObject obj) {
+        checkWorldWritable();
         if (mObjects.containsKey(obj)) {
             hint("Object added multiple times: " + obj.name,
                     "You added the same object to the game manager more than once.  This is " +
@@ -128,12 +197,29 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
             }
             obj.setManager(this);
             mObjects.put(obj.name, obj);
+            addById(obj);
+            obj.treeProxy = mQueryTree.createProxy(obj);
             addObjectToZOrder(obj);
             setObjectSolidity(obj, obj.isSolid());
+            mTriggers.add(obj);
             obj.setDebugMode(this.debugMode || obj.debugMode);
+            if (obj.isSleeping()) {
+                mSleepingCount.incrementAndGet();
+            }
         }
     }
 
+    /**
+     * Adds a {@link GameSystem} to be run every update until the level changes.  Usually
+     * called from the level's {@code setup()}.
+     *
+     * @param system the system to add
+     */
+    public void addSystem(GameSystem system) {
+        system.setManager(this);
+        mSystems.add(system);
+    }
+
     /**
      * Look up the first object that was registered with name {@code name}
      * @param name the name of the object to search for
@@ -164,7 +250,106 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
     }
 
     /**
-     * Set the scene to be used as a background starting on the next draw() cycle.
+     * Return a list of all game objects whose bounding boxes overlap a given area.
+     * <p>
+     *     This is much faster than checking every object yourself, since the manager keeps
+     *     all of its objects sorted into a tree of nested boxes and only has to look at the
+     *     parts of the tree near the area.
+     * </p>
+     * @param area the region to check, in world units
+     * @return a {@link List} containing zero or more game objects.
+     */
+    public List<GameObject> getObjectsInRegion(WorldRect area) {
+        List<GameObject> objects = new ArrayList<>();
+        mQueryTree.queryRegion(area, objects);
+        return objects;
+    }
+
+    /**
+     * Return a list of all game objects whose bounding boxes contain a given point.
+     *
+     * @param x horizontal coordinate of the point, in world units
+     * @param y vertical coordinate of the point, in world units
+     * @return a {@link List} containing zero or more game objects.
+     */
+    public List<GameObject> getObjectsAt(float x, float y) {
+        List<GameObject> objects = new ArrayList<>();
+        mQueryTree.queryPoint(x, y, objects);
+        return objects;
+    }
+
+    /**
+     * Find the first game object in the way when travelling in a straight line from one point
+     * to another.
+     *
+     * @param x1        horizontal coordinate of the starting point, in world units
+     * @param y1        vertical coordinate of the starting point, in world units
+     * @param x2        horizontal coordinate of the end point, in world units
+     * @param y2        vertical coordinate of the end point, in world units
+     * @param ignore    an object to ignore (usually the one doing the looking), or {@code null}
+     * @param solidOnly {@code true} to only count solid objects as being in the way
+     * @return the object closest to the starting point that the line passes through, or
+     * {@code null} if the path is clear.
+     */
+    public GameObject findFirstObjectAlong(float x1, float y1, float x2, float y2,
+                                          GameObject ignore, boolean solidOnly) {
+        return mQueryTree.raycast(x1, y1, x2, y2, ignore, solidOnly);
+    }
+
+    /**
+     * Checks whether one game object can "see" another: that is, whether a straight line
+     * between their centers passes through no solid objects other than the two of them.
+     * <p>
+     *     Useful for enemies that should only chase the player when nothing is in between.
+     * </p>
+     * @param from the object doing the looking
+     * @param to   the object being looked at
+     * @return {@code true} if nothing solid blocks the view
+     */
+    public boolean hasLineOfSight(GameObject from, GameObject to) {
+        GameObject blocker = mQueryTree.raycast(from.getX(), from.getY(), to.getX(), to.getY(),
+                from, true);
+        return blocker == null || blocker == to;
+    }
+
+    /**
+     * Find the game objects nearest to a point, closest first.
+     * <p>
+     *     Distance is measured to the edge of each object's bounding box, so an object that
+     *     covers the point counts as being at distance zero.
+     * </p>
+     * @param x      horizontal coordinate of the point, in world units
+     * @param y      vertical coordinate of the point, in world units
+     * @param count  the maximum number of objects to return
+     * @param prefix only objects whose names start with this prefix are considered, like
+     *               {@link #getObjectsMatching(String)}.  Use {@code null} to consider all.
+     * @return a {@link List} containing up to {@code count} game objects.
+     */
+    public List<GameObject> getNearestObjects(float x, float y, int count, String prefix) {
+        List<GameObject> objects = new ArrayList<>();
+        mQueryTree.queryNearest(x, y, count, prefix, null, objects);
+        return objects;
+    }
+
+    /**
+     * Find the game object nearest to a point whose name starts with a given prefix.
+     *
+     * @param x      horizontal coordinate of the point, in world units
+     * @param y      vertical coordinate of the point, in world units
+     * @param prefix only objects whose names start with this prefix are considered, or
+     *               {@code null} to consider all.
+     * @return the nearest such object, or {@code null} if there are none.
+     */
+    public GameObject getNearestObject(float x, float y, String prefix) {
+        ArrayList<GameObject> objects = obtainScratchList();
+        mQueryTree.queryNearest(x, y, 1, prefix, null, objects);
+        GameObject nearest = objects.isEmpty() ? null : objects.get(0);
+        recycleScratchList(objects);
+        return nearest;
+    }
+
+    /**
+     * Set the scene to be used as a background starting with the next frame drawn.
      * <p>
      *     If you want the background to just be a solid color, pass in an instance of
      *     {@link SolidColorScene}.
@@ -196,6 +381,48 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
     public void setWorldScreenSize(float width, float height) {
         mWorldScreenWidth = width;
         mWorldScreenHeight = height;
+        mWorldBoundary.set(0, 0, width, height);
+    }
+
+    /**
+     * Sets the width and height of the game world, along with the size of the grid cells used
+     * to speed up collision checks.
+     * <p>
+     *     Solid objects are filed into a grid of square cells so a moving object only has to be
+     *     checked against the solids in the cells it overlaps.  A good cell size is roughly the
+     *     size of a typical moving object; the default is 100 world units.  Like the world size,
+     *     the cell size carries over to later levels unless they set it again.
+     * </p>
+     *
+     * @param width    width of the world in units
+     * @param height   height of the world in units
+     * @param cellSize width and height of each collision grid cell, in world units
+     */
+    public void setWorldScreenSize(float width, float height, float cellSize) {
+        setWorldScreenSize(width, height);
+        setCollisionCellSize(cellSize);
+    }
+
+    /**
+     * Changes the size of the grid cells used to speed up collision checks.  See
+     * {@link #setWorldScreenSize(float, float, float)}.
+     *
+     * @param cellSize width and height of each collision grid cell, in world units
+     */
+    public void setCollisionCellSize(float cellSize) {
+        mCollisionCellSize = cellSize;
+        mSolidGrid.setCellSize(cellSize);
+        mStaticIndex = null;
+        mTriggers.setCellSize(cellSize);
+    }
+
+    /**
+     * Get the currently-configured collision grid cell size
+     *
+     * @return the cell size in world units
+     */
+    public float getCollisionCellSize() {
+        return mCollisionCellSize;
     }
 
     /**
@@ -225,13 +452,12 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
      * @param x the x coordinate of the tap, in world units
      * @param y the y coordinate of the tap, in world units
      */
-    private void checkTouchedObjects(float x, float y) {
+    void checkTouchedObjects(float x, float y) {
         if (!mLevel.onAnyTouch(x, y)) {
-            for (GameObject obj : mObjects.values()) {
-                if (obj.contains(x, y)) {
-                    obj.onTouch(x, y);
-                    return;
-                }
+            GameObject obj = findObjectAt(x, y);
+            if (obj != null) {
+                obj.onTouch(x, y);
+                return;
             }
             mLevel.onUnclaimedTouch(x, y);
         }
@@ -255,18 +481,28 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
      * @param x the x coordinate of the tap, in world units
      * @param y the y coordinate of the tap, in world units
      */
-    private void deliverFling(float x, float y, float dx, float dy) {
+    void deliverFling(float x, float y, float dx, float dy) {
         if (!mLevel.onAnyFling(x, y, dx, dy)) {
-            for (GameObject obj : mObjects.values()) {
-                if (obj.contains(x, y)) {
-                    obj.onFling(x, y, dx, dy);
-                    return;
-                }
+            GameObject obj = findObjectAt(x, y);
+            if (obj != null) {
+                obj.onFling(x, y, dx, dy);
+                return;
             }
             mLevel.onUnclaimedFling(x, y, dx, dy);
         }
     }
 
+    /**
+     * Returns some object containing the given point, or null.
+     */
+    private GameObject findObjectAt(float x, float y) {
+        ArrayList<GameObject> hits = obtainScratchList();
+        mQueryTree.queryPoint(x, y, hits);
+        GameObject obj = hits.isEmpty() ? null : hits.get(0);
+        recycleScratchList(hits);
+        return obj;
+    }
+
     /**
      *     Deliver a scroll action to the current level
      *     <p>
@@ -284,7 +520,7 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
      *         image on screen while the user decides just how far to pull it.
      *     </p>
      */
-    private void deliverScroll(float x, float y, float dx, float dy, boolean finished) {
+    void deliverScroll(float x, float y, float dx, float dy, boolean finished) {
         // To deliver these to specific objects will take a bit more complicated tracking
         // of which object the scroll started on.  For now, just implement the simple one until
         // there's a real need for the more complicated.
@@ -298,12 +534,24 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
      */
     @Override
     public void onMotionEvent(GameView.UIEvent e) {
+        EngineContext previous = EngineContext.bind(mContext);
+        try {
+            // Touch handlers can change the game, so jobs mustn't be looking at it meanwhile.
+            mJobs.finishAll();
+            handleMotionEvent(e);
+        } finally {
+            mJobs.release();
+            EngineContext.bind(previous);
+        }
+    }
+
+    private void handleMotionEvent(GameView.UIEvent e) {
         // We receive the event with coordinates normalized 0.0-1.0f.  Scale to our world coords.
-        float x = (e.event1 != null) ? e.event1.getX() * mWorldScreenWidth : 0.0f;
-        float y = (e.event1 != null) ? e.event1.getY() * mWorldScreenHeight : 0.0f;
+        float x = e.x * mWorldScreenWidth;
+        float y = e.y * mWorldScreenHeight;
         switch (e.type) {
             case Down:
-                Log.d(TAG, "Event ACTION_DOWN at " + x + "," + y);
+                EngineLog.d(TAG, "Event ACTION_DOWN at " + x + "," + y);
                 checkTouchedObjects(x, y);
                 break;
             case Fling:
@@ -311,25 +559,17 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
                 break;
             case Scroll:
                 deliverScroll(x, y, e.dx * mWorldScreenWidth, e.dy * mWorldScreenHeight,
-                        e.event2.getAction() == MotionEvent.ACTION_UP);
+                        e.finished);
                 break;
             case ButtonDown:
-                if (mLevel != null) {
-                    mLevel.onButtonDown(e.keyCode);
-                }
+                deliverButton(e.keyCode, true);
                 break;
             case ButtonUp:
-                if (mLevel != null) {
-                    mLevel.onButtonUp(e.keyCode);
-                }
+                deliverButton(e.keyCode, false);
                 break;
             case Joystick:
-                leftStickX = e.event1.getAxisValue(MotionEvent.AXIS_X);
-                leftStickY = e.event1.getAxisValue(MotionEvent.AXIS_Y);
-                rightStickX = e.event1.getAxisValue(MotionEvent.AXIS_Z);
-                rightStickY = e.event1.getAxisValue(MotionEvent.AXIS_RZ);
-                Log.d(TAG, "sticks: " + leftStickX + " " + leftStickY + " " + rightStickX + " " + rightStickY);
-                Log.d(TAG, "count: " + e.event1.getHistorySize());
+                setSticks(e.leftX, e.leftY, e.rightX, e.rightY);
+                EngineLog.d(TAG, "sticks: " + leftStickX + " " + leftStickY + " " + rightStickX + " " + rightStickY);
                 break;
             default:
                 break;
@@ -337,26 +577,65 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
     }
 
     /**
-     * Called by the game engine thread to redraw all game objects.  Do not call this directly.
+     * Passes a game controller button press or release on to the level.
      *
-     * @param canvas the current canvas object associated with our {@link SurfaceView}
+     * @param keyCode which button
+     * @param down    true if it was pressed, false if released
      */
-    @Override
-    public void draw(Canvas canvas) {
-        float xScale = canvas.getWidth() / mWorldScreenWidth;
-        float yScale = canvas.getHeight() / mWorldScreenHeight;
-
-        // Log.d(TAG, "draw");
-        if (mScene != null) {
-            mScene.draw(canvas);
+    void deliverButton(int keyCode, boolean down) {
+        if (mLevel == null) {
+            return;
+        }
+        if (down) {
+            mLevel.onButtonDown(keyCode);
+        } else {
+            mLevel.onButtonUp(keyCode);
         }
+    }
+
+    /**
+     * Records where the game controller's thumbsticks are.
+     */
+    void setSticks(float leftX, float leftY, float rightX, float rightY) {
+        leftStickX = leftX;
+        leftStickY = leftY;
+        rightStickX = rightX;
+        rightStickY = rightY;
+    }
+
+    /**
+     * Called by the game engine thread after each batch of updates to record what every game
+     * object looks like for the render thread.  Do not call this directly.
+     *
+     * @param snapshot the snapshot to fill in
+     */
+    @Override
+    public void writeSnapshot(RenderSnapshot snapshot) {
+        snapshot.begin(mScene, mWorldScreenWidth, mWorldScreenHeight);
         for (List<GameObject> layer : mZOrder.values()) {
             for (GameObject obj : layer) {
-                obj.draw(canvas, xScale, yScale);
+                obj.writeSnapshot(snapshot);
             }
         }
     }
 
+    /**
+     * Draws every game object, as they are right now, with the given backend.  The game
+     * engine's own threads don't use this; it is for drawing the game somewhere other than
+     * the screen, such as into a {@link SoftwareFramebuffer} to check what a level looks like.
+     *
+     * @param backend what to draw with
+     */
+    public void render(RenderBackend backend) {
+        if (mRenderSnapshot == null) {
+            mRenderSnapshot = new RenderSnapshot();
+            mRenderCommands = new RenderCommandList();
+        }
+        writeSnapshot(mRenderSnapshot);
+        mRenderSnapshot.record(mRenderCommands, backend.getWidth(), backend.getHeight(), 1.0f);
+        backend.render(mRenderCommands);
+    }
+
     /**
      * Called by the game engine thread to update all game objects.  Do not call this directly.
      *
@@ -364,14 +643,51 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
      */
     @Override
     public void update(int millis) {
+        EngineContext previous = EngineContext.bind(mContext);
+        try {
+            step(millis);
+        } finally {
+            mJobs.release();
+            EngineContext.bind(previous);
+        }
+    }
+
+    private void step(int millis) {
+        // Jobs started last update finish before anything else happens, and jobs submitted
+        // during this one wait until it's over, so they never see the world half way through
+        // changing.
+        mJobs.finishAll();
+
         if (mNextLevel != null) {
             gotoNextLevel();
         }
 
-        // Log.d(TAG, "update");
-        for (GameObject obj : mObjects.values()) {
-            obj.update(millis);
+        // Catch up on anything that was moved by poking at boundingRect directly.
+        mSolidGrid.updateAll();
+        mQueryTree.updateAll();
+
+        mClock += millis;
+        Rand.setUpdateMillis(millis);
+
+        mSystems.run(GameSystem.Phase.BEFORE_MOVE, millis);
+
+        // Objects are updated oldest first, so the same game plays out the same way every
+        // time.  Those using the engine's own update() go through it in phases: the first two
+        // only touch each object itself and read the collision grid, so with enough objects
+        // they are spread over several threads.  Moving changes other objects and the grid, so
+        // that is done one object at a time.  Objects with update() logic of their own go last.
+        collectUpdates();
+        integrateAndDetect(millis);
+        for (int i = 0; i < mMovers.size(); i++) {
+            mMovers.get(i).move(millis);
+        }
+        for (int i = 0; i < mScripted.size(); i++) {
+            GameObject obj = mScripted.get(i);
+            if (!obj.isSleeping()) {
+                obj.update(millis);
+            }
         }
+        mSystems.run(GameSystem.Phase.AFTER_MOVE, millis);
         mLevel.update(millis);
 
         // Not available until post-Marshmallow (API 24 or later):
@@ -385,14 +701,159 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
                 it.remove();
             }
         }
+
+        // Everything has moved; tell objects who they bumped into and what they went into.
+        mContacts.endStep();
+        mTriggers.endStep();
+    }
+
+    /**
+     * Sorts the objects that are awake into those the engine can update in phases and those
+     * with update() logic of their own, oldest first.
+     */
+    private void collectUpdates() {
+        mMovers.clear();
+        mScripted.clear();
+        for (int i = 0; i < mById.size(); i++) {
+            GameObject obj = mById.get(i);
+            if (!obj.isSleeping()) {
+                (obj.hasOwnUpdate ? mScripted : mMovers).add(obj);
+            }
+        }
+    }
+
+    /**
+     * Runs the first two phases of the update, {@link GameObject#integrate(int)} and
+     * {@link GameObject#detect(int)}, for every object in {@link #mMovers}.
+     */
+    private void integrateAndDetect(int millis) {
+        // Built now so the lookups below only ever read them.
+        getStaticIndex();
+        getStaticField();
+
+        int count = mMovers.size();
+        if (count < PARALLEL_MIN_OBJECTS || Jobs.Pool.POOL.getParallelism() < 2) {
+            for (int i = 0; i < count; i++) {
+                GameObject obj = mMovers.get(i);
+                obj.integrate(millis);
+                obj.detect(millis);
+            }
+        } else {
+            Jobs.Pool.POOL.invoke(new IntegrateTask(mMovers, 0, count, millis));
+        }
+    }
+
+    private static final class IntegrateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final List<GameObject> mObjects;
+        private final int mFrom, mTo, mMillis;
+
+        IntegrateTask(List<GameObject> objects, int from, int to, int millis) {
+            mObjects = objects;
+            mFrom = from;
+            mTo = to;
+            mMillis = millis;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= OBJECTS_PER_TASK) {
+                for (int i = mFrom; i < mTo; i++) {
+                    GameObject obj = mObjects.get(i);
+                    obj.integrate(mMillis);
+                    obj.detect(mMillis);
+                }
+            } else {
+                int middle = (mFrom + mTo) >>> 1;
+                invokeAll(new IntegrateTask(mObjects, mFrom, middle, mMillis),
+                        new IntegrateTask(mObjects, middle, mTo, mMillis));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a kind of game object overrides {@link GameObject#update(int)}, and so
+     * has to be updated the old-fashioned way, one whole object at a time.
+     * <p>
+     *     Only the classes between the object's own class and {@link GameObject} are looked at,
+     *     one at a time.  Looking a method up makes Java load the types used by every method
+     *     declared in that class, so a game class with a method that takes, say, an Android
+     *     {@code Canvas} can't be looked at where there's no Android.  That kind of object is
+     *     just updated the old-fashioned way too.
+     * </p>
+     */
+    private static boolean hasOwnUpdate(Class<?> type) {
+        Boolean own = sOwnUpdate.get(type);
+        if (own == null) {
+            own = false;
+            try {
+                for (Class<?> c = type; c != GameObject.class && !own; c = c.getSuperclass()) {
+                    try {
+                        c.getDeclaredMethod("update", int.class);
+                        own = true;
+                    } catch (NoSuchMethodException e) {
+                        // Not this class; try its superclass.
+                    }
+                }
+            } catch (LinkageError e) {
+                own = true;
+            }
+            sOwnUpdate.put(type, own);
+        }
+        return own;
+    }
+
+    private void addById(GameObject obj) {
+        obj.hasOwnUpdate = hasOwnUpdate(obj.getClass());
+        int i = findById(obj);
+        if (i < 0) {
+            mById.add(-i - 1, obj);
+        }
+    }
+
+    private void removeById(GameObject obj) {
+        int i = findById(obj);
+        if (i >= 0) {
+            mById.remove(i);
+        }
+    }
+
+    /**
+     * Looks for an object in {@link #mById}.
+     *
+     * @return its index, or if it isn't there, -1 minus the index it would go at
+     */
+    private int findById(GameObject obj) {
+        int id = obj.getId();
+        int low = 0, high = mById.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = mById.get(middle).getId();
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
     }
 
     /**
-     * Returns a rectangle (RectF) that can be used to check if something is on or off the screen
+     * Gets a number that changes whenever a solid is added, removed or moved far enough to
+     * change which solids a search of the same area would find.
+     */
+    long getSolidVersion() {
+        return ((long) mStaticsVersion << 32) | (mSolidGrid.getVersion() & 0xffffffffL);
+    }
+
+    /**
+     * Returns a rectangle (WorldRect) that can be used to check if something is on or off the screen
      * in world coordinates.
      */
-    private RectF getWorldBoundary() {
-        return new RectF(0, 0, mWorldScreenWidth, mWorldScreenHeight);
+    private WorldRect getWorldBoundary() {
+        return mWorldBoundary;
     }
 
     /**
@@ -414,7 +875,7 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
      * @return {@code true} if the object is entirely off-screen
      */
     public boolean isFullyOffScreen(GameObject obj) {
-        return !RectF.intersects(obj.boundingRect, getWorldBoundary());
+        return !WorldRect.intersects(obj.boundingRect, getWorldBoundary());
     }
 
 
@@ -457,27 +918,407 @@ public final class GameObjectManager implements IMessageClient, GameView.IRedraw
     }
 
     public void updateObjectZOrder(GameObject obj) {
+        checkWorldWritable();
         removeObjectFromZOrder(obj);
         addObjectToZOrder(obj);
     }
 
     public void setObjectSolidity(GameObject obj, boolean isSolid) {
+        checkWorldWritable();
         if (isSolid) {
-            solidThings.add(obj);
+            if (solidThings.add(obj)) {
+                addToSolidLayers(obj, obj.getCollisionCategory());
+            }
+            if (obj.isStatic()) {
+                if (!mStaticSolids.contains(obj)) {
+                    mStaticSolids.add(obj);
+                    staticsChanged();
+                }
+            } else {
+                mSolidGrid.insert(obj);
+            }
+        } else if (solidThings.remove(obj)) {
+            removeFromSolidLayers(obj, obj.getCollisionCategory());
+            mSolidGrid.remove(obj);
+            removeStaticSolid(obj);
+            wakeObjectsNear(obj);
+        }
+    }
+
+    /**
+     * Called by a {@link GameObject} when it is made into a trigger or back.  Do not call
+     * directly.
+     *
+     * @param obj       the object that changed
+     * @param isTrigger {@code true} if it is now a trigger
+     */
+    public void setObjectTrigger(GameObject obj, boolean isTrigger) {
+        checkWorldWritable();
+        if (isTrigger) {
+            mTriggers.addTrigger(obj);
         } else {
-            solidThings.remove(obj);
+            mTriggers.removeTrigger(obj);
+        }
+    }
+
+    /**
+     * Returns the trigger that covers the whole world.  Objects get
+     * {@link GameObject#onTriggerExit(GameObject)} with it when they go fully off the edge of
+     * the world, and {@link GameObject#onTriggerEnter(GameObject)} when they come back.
+     *
+     * @return the world trigger; it isn't one of the managed objects
+     */
+    public GameObject getWorldTrigger() {
+        return mTriggers.getWorld();
+    }
+
+    /**
+     * Called by a {@link GameObject} whenever its collision category or mask changes.  Do not
+     * call directly.
+     *
+     * @param obj         the object that changed
+     * @param oldCategory the category it had before the change
+     */
+    public void onCollisionFilterChanged(GameObject obj, int oldCategory) {
+        checkWorldWritable();
+        if (solidThings.contains(obj)) {
+            removeFromSolidLayers(obj, oldCategory);
+            addToSolidLayers(obj, obj.getCollisionCategory());
+            if (obj.isStatic()) {
+                staticsChanged();
+            }
+        }
+        mSolidGrid.updateFilter(obj);
+    }
+
+    private void removeStaticSolid(GameObject obj) {
+        if (mStaticSolids.remove(obj)) {
+            staticsChanged();
+        }
+    }
+
+    /**
+     * Throws away everything built from the static solids, to be built again when next needed.
+     */
+    private void staticsChanged() {
+        mStaticsVersion++;
+        mStaticIndex = null;
+        mStaticField = null;
+    }
+
+    /**
+     * Returns the index of static solids, building it first if it is out of date.
+     */
+    private StaticCollisionIndex getStaticIndex() {
+        if (mStaticIndex == null) {
+            mStaticIndex = new StaticCollisionIndex(mStaticSolids, mCollisionCellSize);
+        }
+        return mStaticIndex;
+    }
+
+    private void addToSolidLayers(GameObject obj, int category) {
+        for (int layer = 0; layer < 32; layer++) {
+            if ((category & (1 << layer)) != 0) {
+                mSolidLayers.get(layer).add(obj);
+            }
+        }
+    }
+
+    private void removeFromSolidLayers(GameObject obj, int category) {
+        for (int layer = 0; layer < 32; layer++) {
+            if ((category & (1 << layer)) != 0) {
+                mSolidLayers.get(layer).remove(obj);
+            }
         }
     }
 
     public void prepareToRemove(GameObject obj) {
+        removeById(obj);
         removeObjectFromZOrder(obj);
-        solidThings.remove(obj);
+        if (solidThings.remove(obj)) {
+            wakeObjectsNear(obj);
+        }
+        if (obj.isSleeping()) {
+            mSleepingCount.decrementAndGet();
+        }
+        removeFromSolidLayers(obj, obj.getCollisionCategory());
+        mSolidGrid.remove(obj);
+        removeStaticSolid(obj);
+        mAxisCache.evict(obj);
+        mContacts.evict(obj);
+        mTriggers.evict(obj);
+        if (obj.treeProxy != DynamicAabbTree.NULL_NODE) {
+            mQueryTree.destroyProxy(obj.treeProxy);
+            obj.treeProxy = DynamicAabbTree.NULL_NODE;
+        }
     }
 
     public Set<GameObject> getSolidObjects() {
         return solidThings;
     }
 
+    /**
+     * Returns the solid objects on one collision layer.  See
+     * {@link GameObject#setCollisionCategory(int)}.
+     *
+     * @param layer layer number, 0 to 31
+     * @return the solids whose category includes that layer.  Do not modify.
+     */
+    public Set<GameObject> getSolidObjectsInLayer(int layer) {
+        return mSolidLayers.get(layer);
+    }
+
+    /**
+     * Finds the solid objects that might overlap an area, using the collision grid rather than
+     * checking every solid in the level.  The results are candidates only; callers still need
+     * to check whether each one actually intersects.
+     * <p>
+     *     If {@code exclude} is given, solids whose collision layers don't allow them to hit
+     *     it are left out as well.  Moving solids come from the collision grid and static ones
+     *     from the read-only static index.
+     * </p>
+     *
+     * @param area    region to search, in world units
+     * @param exclude object to leave out of the results (usually the caller), or {@code null}
+     * @param out     list the candidates are appended to
+     */
+    public void findSolidObjectsNear(WorldRect area, GameObject exclude, List<GameObject> out) {
+        findSolidObjectsNear(area, exclude, true, out);
+    }
+
+    /**
+     * Same as {@link #findSolidObjectsNear(WorldRect, GameObject, List)}, optionally leaving out
+     * the static solids for callers that check those against the distance field instead.
+     */
+    void findSolidObjectsNear(WorldRect area, GameObject exclude, boolean includeStatic,
+                              List<GameObject> out) {
+        int category = (exclude != null) ? exclude.getCollisionCategory() : ~0;
+        int mask = (exclude != null) ? exclude.getCollisionMask() : ~0;
+        mSolidGrid.query(area, exclude, category, mask, out);
+        if (!includeStatic) {
+            return;
+        }
+        StaticCollisionIndex statics = getStaticIndex();
+        if (!statics.isEmpty()) {
+            statics.query(area, exclude, category, mask, out);
+        }
+    }
+
+    /**
+     * Turns on baking the static solids into a signed distance field, so objects that use it
+     * can check for collisions with all the static scenery at once with a single lookup.
+     * See {@link GameObject#setUsesDistanceField(boolean)}.
+     * <p>
+     *     The field is baked at the end of level setup, and again whenever a static solid is
+     *     added, removed or moved.  Smaller cells fit the scenery more closely but take
+     *     longer to bake.  Like the world size, this carries over to later levels unless
+     *     they change it.
+     * </p>
+     *
+     * @param cellSize spacing of the field's sample points in world units, or 0 to turn the
+     *                 field off
+     */
+    public void setStaticDistanceField(float cellSize) {
+        mDistanceFieldCellSize = Math.max(0, cellSize);
+        mStaticField = null;
+    }
+
+    /**
+     * Looks up how far a point is from the nearest static solid, using the distance field
+     * turned on by {@link #setStaticDistanceField(float)}.
+     *
+     * @param gradient if not null, gets the unit direction away from the nearest static
+     *                 solid at {@code gradient[0]}, {@code gradient[1]}
+     * @return distance in world units (negative inside a solid), or
+     *         {@code Float.POSITIVE_INFINITY} if there is no distance field
+     */
+    public float getStaticDistance(float x, float y, float[] gradient) {
+        StaticDistanceField field = getStaticField();
+        if (field == null) {
+            if (gradient != null) {
+                gradient[0] = 0;
+                gradient[1] = 0;
+            }
+            return Float.POSITIVE_INFINITY;
+        }
+        return field.sample(x, y, gradient);
+    }
+
+    /**
+     * Returns the distance field of static solids, baking it first if it is out of date.
+     *
+     * @return the field, or null if it is turned off or there are no static solids
+     */
+    StaticDistanceField getStaticField() {
+        if (mDistanceFieldCellSize <= 0 || mStaticSolids.isEmpty()) {
+            return null;
+        }
+        if (mStaticField == null) {
+            mStaticField = new StaticDistanceField(mStaticSolids, mDistanceFieldCellSize);
+        }
+        return mStaticField;
+    }
+
+    /**
+     * Checks two objects' collision shapes against each other, placed at the objects' current
+     * positions, sizes and rotations.
+     * <p>
+     *     When a pair was apart last time it was checked, the axis that separated it is tried
+     *     first; that one projection is usually enough to show it is still apart, and the
+     *     full test over every edge of both shapes is skipped.
+     * </p>
+     * <p>
+     *     The axis cache and the objects' placed shapes are shared, so this is only called on
+     *     the game engine thread while objects move.  The questions jobs can ask never get here.
+     * </p>
+     *
+     * @param result filled in with the minimum translation vector for {@code a} if they touch
+     * @return {@code true} if the shapes overlap
+     */
+    boolean collideComplex(GameObject a, GameObject b, CollisionResult result) {
+        ConvexShape shapeA = a.getWorldShape(), shapeB = b.getWorldShape();
+        if (mAxisCache.lookup(a, b, mCachedAxis)
+                && shapeA.isSeparatedAlong(mCachedAxis[0], mCachedAxis[1], shapeB)) {
+            return false;
+        }
+        if (shapeA.collideWith(shapeB, result)) {
+            mAxisCache.forget(a, b);
+            return true;
+        }
+        mAxisCache.store(a, b, result.normalX, result.normalY);
+        return false;
+    }
+
+    /**
+     * Checks whether a pair of objects has already been through the collision test this step,
+     * so the second of the two to move doesn't test it again.
+     */
+    boolean wasContactTested(GameObject a, GameObject b) {
+        return mContacts.wasTested(a, b);
+    }
+
+    /**
+     * Records the result of testing a pair of objects, for the collision callbacks delivered
+     * at the end of the step.
+     */
+    void recordContact(GameObject a, GameObject b, boolean touching) {
+        mContacts.record(a, b, touching);
+    }
+
+    /**
+     * Called by a {@link GameObject} whenever it moves or changes size.  Do not call directly.
+     *
+     * @param obj the object that moved
+     */
+    public void onObjectMoved(GameObject obj) {
+        checkWorldWritable();
+        mTriggers.onMoved(obj);
+        if (mSolidGrid.contains(obj)) {
+            mSolidGrid.update(obj);
+            wakeObjectsNear(obj);
+        } else if (obj.isStatic() && mStaticSolids.contains(obj)) {
+            // Static things aren't supposed to move, but if one does, start over.
+            staticsChanged();
+            wakeObjectsNear(obj);
+        }
+        if (obj.treeProxy != DynamicAabbTree.NULL_NODE) {
+            mQueryTree.moveProxy(obj.treeProxy, obj.boundingRect);
+        }
+    }
+
+    /**
+     * Stops a system from changing the world while other systems are running alongside it and
+     * may be looking at it; see {@link GameSystem#writesWorld()}.
+     */
+    private void checkWorldWritable() {
+        if (mSystems.isSharingWorld()) {
+            throw new IllegalStateException("A system that runs alongside others moved, added "
+                    + "or changed a game object; call writesWorld() in its constructor");
+        }
+    }
+
+    /**
+     * Called by a {@link GameObject} when it goes to sleep or wakes up.  Do not call directly.
+     *
+     * @param obj    the object
+     * @param asleep {@code true} if it just went to sleep
+     */
+    public void onSleepChanged(GameObject obj, boolean asleep) {
+        mSleepingCount.addAndGet(asleep ? 1 : -1);
+    }
+
+    /**
+     * Gets the total game time that has gone by, as counted by calls to {@link #update(int)}.
+     *
+     * @return game time in milliseconds
+     */
+    public long getClock() {
+        return mClock;
+    }
+
+    /**
+     * Gets the clock that runs the game.  Use it to slow the game down, pause it, or
+     * fast-forward through it:
+     * <pre>
+     *     manager.getEngineClock().setTimeScale(0.25f);   // Slow motion
+     *     manager.getEngineClock().setFastForward(20);    // Run a level at 20x speed
+     * </pre>
+     *
+     * @return the clock; never null
+     */
+    @Override
+    public Clock getEngineClock() {
+        return mEngineClock;
+    }
+
+    /**
+     * Replaces the clock that runs the game, for example with one driven by a fake time
+     * source.  Takes effect the next time the engine thread starts.
+     *
+     * @param clock the new clock
+     */
+    public void setEngineClock(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock can't be null");
+        }
+        mEngineClock = clock;
+    }
+
+    /**
+     * Wakes any sleeping objects touching a solid that has just moved or gone away, since they
+     * may have been resting on it.
+     */
+    private void wakeObjectsNear(GameObject solid) {
+        if (mSleepingCount.get() == 0) {
+            return;
+        }
+        WorldRect r = solid.getCollisionBounds();
+        mWakeArea.set(r.left - 1, r.top - 1, r.right + 1, r.bottom + 1);
+        ArrayList<GameObject> nearby = obtainScratchList();
+        mQueryTree.queryRegion(mWakeArea, nearby);
+        for (int i = 0; i < nearby.size(); i++) {
+            nearby.get(i).wakeUp();
+        }
+        recycleScratchList(nearby);
+    }
+
+    /**
+     * Hands out an empty list for short-lived use during collision checks, so we don't
+     * allocate a new one for every moving object every frame.  Give it back with
+     * {@link #recycleScratchList(ArrayList)} when done.  Each thread has its own lists, so
+     * queries from jobs don't take each other's.
+     */
+    ArrayList<GameObject> obtainScratchList() {
+        ArrayList<ArrayList<GameObject>> lists = mScratchLists.get();
+        int n = lists.size();
+        return (n > 0) ? lists.remove(n - 1) : new ArrayList<GameObject>();
+    }
+
+    void recycleScratchList(ArrayList<GameObject> list) {
+        list.clear();
+        mScratchLists.get().add(list);
+    }
+
     public float getLeftStickX() {
         return leftStickX;
     }
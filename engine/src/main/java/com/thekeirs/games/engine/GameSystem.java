@@ -0,0 +1,143 @@
+package com.thekeirs.games.engine;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <h1>One piece of game logic that looks after lots of objects at once</h1>
+ * <p>
+ *     Instead of giving every zombie its own {@code update()}, you can write one system that
+ *     moves all the zombies, another that animates them, and another that keeps score.  Add
+ *     your systems to the {@link GameObjectManager} in your level's {@code setup()}, and the
+ *     game engine calls each one's {@link #update(int)} once per update.
+ * </p>
+ * <pre>
+ *     class ZombieBrain extends GameSystem {
+ *         ZombieBrain() {
+ *             super("zombie brain", Phase.BEFORE_MOVE);
+ *             reads("player");
+ *             writes("zombies");
+ *         }
+ *
+ *         public void update(int millis) {
+ *             // Point every zombie at the player
+ *         }
+ *     }
+ * </pre>
+ * <p>
+ *     Each system says in its constructor what it {@link #reads} and what it {@link #writes}.
+ *     These are just names you make up for the parts of your game, like "zombies" or "score".
+ *     Two systems conflict if one writes something the other reads or writes.  The engine
+ *     runs systems in the same phase that don't conflict at the same time on different
+ *     processors, and ones that do conflict one after the other, in the order they were
+ *     added.  Either way the game plays out the same every time, but only if the declarations
+ *     are true: a system that changes something it didn't say it writes can clash with
+ *     another one running at the same time.
+ * </p>
+ * <p>
+ *     Every system can look at the game world: read any object, and ask the manager questions
+ *     like {@link GameObjectManager#getNearestObject} or
+ *     {@link GameObjectManager#getObjectsInRegion}, even while other systems do the same.
+ *     Changing an object's speed, image or your own fields on it is covered by
+ *     {@link #writes}.  But a system that moves objects to a new place, resizes or turns
+ *     them, adds or removes objects, makes them solid or not, or otherwise changes the world
+ *     as a whole must call {@link #writesWorld()}.  It then runs on its own, on the game
+ *     engine thread.  Doing any of that from a system that runs alongside others throws an
+ *     {@link IllegalStateException}.
+ * </p>
+ */
+
+public abstract class GameSystem {
+    /**
+     * When in each update a system runs.
+     */
+    public enum Phase {
+        /** Before the objects move: for deciding where things should go. */
+        BEFORE_MOVE,
+        /** After the objects have moved and had their own updates: for animation and scoring. */
+        AFTER_MOVE
+    }
+
+    private final String mName;
+    private final Phase mPhase;
+    private final Set<String> mReads = new HashSet<>();
+    private final Set<String> mWrites = new HashSet<>();
+    private boolean mWritesWorld;
+
+    /**
+     * The game object manager this system was added to.
+     */
+    protected GameObjectManager mManager;
+
+    /**
+     * @param name  what to call this system, for debugging
+     * @param phase when in each update it runs
+     */
+    protected GameSystem(String name, Phase phase) {
+        mName = name;
+        mPhase = phase;
+    }
+
+    /**
+     * Does this system's work for one update.
+     *
+     * @param millis number of milliseconds since the previous update
+     */
+    public abstract void update(int millis);
+
+    /**
+     * Declares parts of the game this system looks at.  Call from your constructor.
+     */
+    protected final void reads(String... things) {
+        Collections.addAll(mReads, things);
+    }
+
+    /**
+     * Declares parts of the game this system changes.  Call from your constructor.
+     */
+    protected final void writes(String... things) {
+        Collections.addAll(mWrites, things);
+    }
+
+    /**
+     * Declares that this system changes the game world as a whole, for example by moving,
+     * adding or removing objects, so it must never run at the same time as any other system.
+     * Call from your constructor.
+     */
+    protected final void writesWorld() {
+        mWritesWorld = true;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public Phase getPhase() {
+        return mPhase;
+    }
+
+    /**
+     * Called by the object manager when the system is added.  Do not call this directly.
+     */
+    void setManager(GameObjectManager manager) {
+        mManager = manager;
+    }
+
+    /**
+     * Checks whether this system and another one can't safely run at the same time.
+     */
+    boolean conflictsWith(GameSystem other) {
+        if (mWritesWorld || other.mWritesWorld) {
+            return true;
+        }
+        return !Collections.disjoint(mWrites, other.mWrites)
+                || !Collections.disjoint(mWrites, other.mReads)
+                || !Collections.disjoint(mReads, other.mWrites);
+    }
+
+    @Override
+    public String toString() {
+        return "GameSystem(" + mName + ", " + mPhase + ")";
+    }
+}
@@ -1,7 +1,6 @@
 package com.thekeirs.games.engine;
 
 import android.content.Context;
-import android.graphics.Canvas;
 import android.support.v4.view.GestureDetectorCompat;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -17,8 +16,8 @@ import android.view.View;
  * <h1>[internal] Android User Interface widget that provides the space for the game to draw on</h1>
  * <p>
  *     This widget is responsible for starting and stopping the game's background
- *     worker thread when the view is visible and active, and for receiving, packaging up, and
- *     queueing UI events for the worker thread.
+ *     worker and render threads when the view is visible and active, and for receiving,
+ *     packaging up, and queueing UI events for the worker thread.
  * </p>
  */
 public class GameView extends SurfaceView implements SurfaceHolder.Callback {
@@ -27,14 +26,25 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
     private IRedrawService mRedrawService;
     private IGameLogicService mGameLogicService;
     private GameViewThread mGameViewThread;
+    private RenderThread mRenderThread;
+    private int mUpdateMillis = 16;
 
     public interface IRedrawService {
-        void draw(Canvas canvas);
+        /**
+         * Records what the game looks like right now, on the game engine thread, so the render
+         * thread can draw it while the next update runs.
+         */
+        void writeSnapshot(RenderSnapshot snapshot);
     }
 
     public interface IGameLogicService extends IMessageClient {
         void onMotionEvent(UIEvent e);
         void update(int millis);
+
+        /**
+         * @return the clock that decides how much game time passes for each bit of real time
+         */
+        Clock getEngineClock();
     }
 
     public GameView(Context context) {
@@ -117,7 +127,12 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 
     public boolean onGenericMotionEvent(MotionEvent event) {
         if ((event.getSource() & InputDevice.SOURCE_JOYSTICK) == InputDevice.SOURCE_JOYSTICK) {
-            mGameViewThread.queueEvent(new UIEvent(UIEventType.Joystick, event));
+            UIEvent e = new UIEvent(UIEventType.Joystick, event);
+            e.leftX = event.getAxisValue(MotionEvent.AXIS_X);
+            e.leftY = event.getAxisValue(MotionEvent.AXIS_Y);
+            e.rightX = event.getAxisValue(MotionEvent.AXIS_Z);
+            e.rightY = event.getAxisValue(MotionEvent.AXIS_RZ);
+            mGameViewThread.queueEvent(e);
             return true;
         }
         return super.onGenericMotionEvent(event);
@@ -132,16 +147,23 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
         mGameLogicService = gs;
     }
 
+    /**
+     * Sets how often the game world is updated; see {@link GameViewThread#setUpdateInterval}.
+     * Takes effect the next time the view's thread is started.
+     *
+     * @param millis length of each update step, in milliseconds
+     */
+    public void setUpdateInterval(int millis) {
+        mUpdateMillis = millis;
+    }
+
 
     public void onResume() {
 
     }
 
     public void onPause() {
-        if (mGameViewThread != null) {
-            mGameViewThread.gracefulStop();
-            mGameViewThread = null;
-        }
+        stopThreads();
     }
 
     @Override
@@ -151,38 +173,52 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
 
     @Override
     public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
-        if (mGameViewThread != null) {
-            mGameViewThread.gracefulStop();
-            mGameViewThread = null;
-        }
+        stopThreads();
         if (holder != null) {
             Log.d(TAG, "surfaceChanged, launching thread");
-            mGameViewThread = new GameViewThread(holder, mGameLogicService, mRedrawService);
+            mGameViewThread = new GameViewThread(mGameLogicService, mRedrawService);
+            mGameViewThread.setUpdateInterval(mUpdateMillis);
             if (width == 0 || height == 0) {
                 Log.e(TAG, "Illegal width/height: " + width + ", " + height);
             } else {
                 mGameViewThread.setEventScalingFactors(1.0f / width, 1.0f / height);
             }
+            mRenderThread = new RenderThread(holder, mGameViewThread.getSnapshots(),
+                    mGameLogicService.getEngineClock());
             mGameViewThread.start();
+            mRenderThread.start();
         }
     }
 
-    @Override
-    public void surfaceDestroyed(SurfaceHolder holder) {
+    private void stopThreads() {
+        if (mRenderThread != null) {
+            mRenderThread.gracefulStop();
+            mRenderThread = null;
+        }
         if (mGameViewThread != null) {
             mGameViewThread.gracefulStop();
             mGameViewThread = null;
         }
     }
 
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        stopThreads();
+    }
+
     public enum UIEventType {
         Down, ShowPress, SingleTapUp, Scroll, LongPress, Fling, Joystick, ButtonDown, ButtonUp,
     }
 
-    public class UIEvent {
-        UIEvent(UIEventType type, MotionEvent event1) {
+    /**
+     * A touch, gesture or game controller event, copied out of Android's own event objects so
+     * the game engine thread doesn't need Android to handle it.
+     */
+    public static class UIEvent {
+        UIEvent(UIEventType type, MotionEvent event) {
             this.type = type;
-            this.event1 = event1;
+            this.x = event.getX();
+            this.y = event.getY();
         }
 
         UIEvent(UIEventType type, int keyCode) {
@@ -191,17 +227,18 @@ public class GameView extends SurfaceView implements SurfaceHolder.Callback {
         }
 
         UIEvent(UIEventType type, MotionEvent event1, MotionEvent event2, float dx, float dy) {
-            this.type = type;
-            this.event1 = event1;
-            this.event2 = event2;
+            this(type, event1);
+            this.finished = event2.getAction() == MotionEvent.ACTION_UP;
             this.dx = dx;
             this.dy = dy;
         }
 
         UIEventType type;
-        public MotionEvent event1, event2;
+        public float x, y;          // Where it started; scaled to 0.0-1.0 by the engine thread
         public float dx, dy;        // Holds Velocity for flings, distance for scrolls
+        boolean finished;           // Scrolls: the finger has been lifted
+        float leftX, leftY;         // Joystick: where the thumbsticks are
+        float rightX, rightY;
         int keyCode;
     }
 }
-
@@ -1,14 +1,13 @@
 package com.thekeirs.games.engine;
 
-import android.graphics.Canvas;
 import android.util.Log;
-import android.view.SurfaceHolder;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.LockSupport;
 
 /**
- * <h1>[internal] This is the thread where all update() and draw() calls are done for every game
+ * <h1>[internal] This is the thread where all update() calls are done for every game
  * object</h1>
  *
  * <p>
@@ -19,24 +18,48 @@ import java.util.concurrent.LinkedBlockingQueue;
  * <p>
  *     The main Game Activity for the app is responsible for configuring this thread with
  *     a {@link GameView.IGameLogicService} and {@link GameView.IRedrawService} to pass along
- *     the actual update() and draw() calls.
+ *     the actual update() calls, and to record what the game looks like afterwards.
  *  </p>
+ * <p>
+ *     The world is updated in fixed steps, however fast the screen refreshes: each time round
+ *     the loop we add up how much real time has gone by, run as many whole update steps as
+ *     fit in it, then wait until the next step is due.  If we fall far behind (the app was
+ *     paused, or the device is just too slow) we give up on catching up rather than spend
+ *     all our time updating.  How much game time goes by for each bit of real time is up to
+ *     the {@link Clock} that the game logic hands us.
+ * </p>
+ * <p>
+ *     Drawing happens on a separate {@link RenderThread}.  After each batch of updates we fill
+ *     in a {@link RenderSnapshot} and hand it over through a {@link TripleBuffer}, so the next
+ *     update can run while the last one is still being drawn.
+ * </p>
  */
 
 public class GameViewThread extends Thread {
     final private String TAG = "GameViewThread";
     private GameView.IGameLogicService mGameLogic;
     private GameView.IRedrawService mRedrawService;
-    private SurfaceHolder mHolder;
     private BlockingQueue<GameView.UIEvent> mEvents = new LinkedBlockingQueue<>();
     private float mXFactor = 1.0f, mYFactor = 1.0f;
+    private final TripleBuffer<RenderSnapshot> mSnapshots = new TripleBuffer<>(
+            new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot());
+
+    final private static int DEFAULT_UPDATE_MILLIS = 16;
+    final private static int MAX_UPDATES_PER_FRAME = 5;    // Most steps run to catch up at once
+    private int mUpdateMillis = DEFAULT_UPDATE_MILLIS;
 
-    public GameViewThread(SurfaceHolder holder, GameView.IGameLogicService gameLogic, GameView.IRedrawService redrawService) {
-        mHolder = holder;
+    public GameViewThread(GameView.IGameLogicService gameLogic, GameView.IRedrawService redrawService) {
         mGameLogic = gameLogic;
         mRedrawService = redrawService;
     }
 
+    /**
+     * Gets the snapshots we hand to the render thread.
+     */
+    TripleBuffer<RenderSnapshot> getSnapshots() {
+        return mSnapshots;
+    }
+
     /**
      * Set factors to normalize user input event coordinates into range 0.0-1.0
      */
@@ -45,45 +68,79 @@ public class GameViewThread extends Thread {
         mYFactor = yfactor;
     }
 
+    /**
+     * Sets how often the world is updated.  Drawing still happens as often as the screen
+     * refreshes, with objects drawn part way between updates, so a slower update rate saves
+     * work without making motion choppy.
+     *
+     * @param millis length of each update step, in milliseconds; default 16 (about 60 Hz)
+     */
+    public void setUpdateInterval(int millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Update interval must be positive: " + millis);
+        }
+        mUpdateMillis = millis;
+    }
+
     /** UI Events arrive on the UI thread and must be handed off to the worker thread */
     public void queueEvent(GameView.UIEvent e) {
         mEvents.add(e);
     }
 
     public void run() {
-        int loops = 0;
-        long lastLog = System.currentTimeMillis();
+        Clock clock = mGameLogic.getEngineClock();
+        long accumulator = 0;      // Nanoseconds of game time not yet simulated
+        boolean published = false;
+        clock.restart();
         Log.d(TAG, "thread starting");
         while (!isInterrupted()) {
-            Canvas c = mHolder.lockCanvas();
-            if (c == null) {
-                Log.d(TAG, "null canvas from mHolder");
+            GameView.UIEvent e;
+
+            while ((e = mEvents.poll()) != null) {
+                e.x *= mXFactor;
+                e.y *= mYFactor;
+                e.dx *= mXFactor;
+                e.dy *= mYFactor;
+                mGameLogic.onMotionEvent(e);
+            }
+
+            long stepNanos = mUpdateMillis * 1000000L;
+            long elapsed = clock.elapsedGameNanos();
+            int updates = 0;
+            if (clock.isFastForward()) {
+                // Run flat out; the render thread only sees the last of each batch of updates.
+                for (updates = 0; updates < clock.getFastForward(); updates++) {
+                    mGameLogic.update(mUpdateMillis);
+                }
+                accumulator = 0;
             } else {
-                GameView.UIEvent e;
-
-                while ((e = mEvents.poll()) != null) {
-                    if (e.event1 != null && e.type != GameView.UIEventType.Joystick) {
-                        e.event1.setLocation(e.event1.getX() * mXFactor, e.event1.getY() * mYFactor);
-                        if (e.event2 != null) {
-                            e.event2.setLocation(e.event2.getX() * mXFactor, e.event2.getY() * mYFactor);
-                            e.dx *= mXFactor;
-                            e.dy *= mYFactor;
-                        }
-                    }
-                    mGameLogic.onMotionEvent(e);
+                accumulator += elapsed;
+                while (accumulator >= stepNanos && updates < MAX_UPDATES_PER_FRAME) {
+                    mGameLogic.update(mUpdateMillis);
+                    accumulator -= stepNanos;
+                    ++updates;
+                }
+                if (accumulator >= stepNanos) {
+                    // Too far behind to catch up: let the missed time go.
+                    accumulator %= stepNanos;
                 }
-                mGameLogic.update(16);  // TODO: actual frame timing
-                mRedrawService.draw(c);
-                mHolder.unlockCanvasAndPost(c);
-                ++loops;
             }
 
-            long now = System.currentTimeMillis();
-            if (now - lastLog > 5000) {
-                float fps = loops * 1000.0f / (now - lastLog);
-                lastLog = now;
-                loops = 0;
-                Log.d(TAG, "fps = " + fps);
+            if (updates > 0 || !published) {
+                RenderSnapshot snapshot = mSnapshots.back();
+                mRedrawService.writeSnapshot(snapshot);
+                snapshot.finish(clock.realTimeNanos(), accumulator, stepNanos,
+                        clock.isFastForward() ? 0.0f : clock.getTimeScale());
+                mSnapshots.publish();
+                published = true;
+            }
+
+            if (!clock.isFastForward()) {
+                // Sleep until the next update is due.  When paused, check back every step in
+                // case someone unpauses.
+                float scale = clock.getTimeScale();
+                long wait = (scale > 0) ? (long) ((stepNanos - accumulator) / scale) : stepNanos;
+                LockSupport.parkNanos(this, Math.min(wait, stepNanos * MAX_UPDATES_PER_FRAME));
             }
         }
         Log.d(TAG, "thread terminating");
@@ -0,0 +1,198 @@
+package com.thekeirs.games.engine;
+
+/**
+ * <h1>Runs a game level without a screen</h1>
+ * <p>
+ *     The game engine normally runs inside an Android app, updating and drawing the game as
+ *     the screen refreshes.  A HeadlessRunner instead updates the level as fast as you ask it
+ *     to, with no Activity, no screen and no Android classes at all, so a level can be run on
+ *     an ordinary Java VM: in a unit test, in a benchmark, or on a server.  Thousands of
+ *     updates a second are no problem.
+ * </p>
+ * <pre>
+ *     HeadlessRunner runner = new HeadlessRunner(new ZombieLevel());
+ *     runner.tap(800, 450);
+ *     runner.run(600);                        // Ten seconds of game time
+ *     GameObject zombie = runner.getManager().getObjectByName("zombie");
+ * </pre>
+ * <p>
+ *     The runner is also the input source: {@link #tap}, {@link #fling}, {@link #scroll} and
+ *     the controller methods deliver input to the level just as touches and button presses on
+ *     a device would.  Input is delivered straight away, between updates.
+ * </p>
+ * <p>
+ *     There are no Android resources to load images or sounds from, so anything that needs the
+ *     pixels of an image (such as {@link Sprite#setHullShape()}) won't work here; sounds are
+ *     silently skipped.  To see what the level looks like, draw it into a
+ *     {@link SoftwareFramebuffer} with {@link #render(RenderBackend)}.
+ * </p>
+ * <p>
+ *     Give each runner its own {@link EngineContext} to run several games at once, or to make
+ *     a run repeatable: with the same seed and the same input, the level plays out the same
+ *     way every time.
+ * </p>
+ */
+
+public class HeadlessRunner {
+    final private static int DEFAULT_UPDATE_MILLIS = 16;
+
+    private final GameObjectManager mManager;
+    private final int mUpdateMillis;
+
+    /**
+     * Creates a runner for the given level, updating it 16 milliseconds at a time.
+     *
+     * @param level the level to start with; it is set up by the first update
+     */
+    public HeadlessRunner(GameLevel level) {
+        this(level, DEFAULT_UPDATE_MILLIS);
+    }
+
+    /**
+     * Creates a runner for the given level.
+     *
+     * @param level        the level to start with; it is set up by the first update
+     * @param updateMillis game time covered by each update, in milliseconds
+     */
+    public HeadlessRunner(GameLevel level, int updateMillis) {
+        this(level, updateMillis, EngineContext.getDefault());
+    }
+
+    /**
+     * Creates a runner for the given level, with its own random numbers, sounds and images.
+     *
+     * @param level        the level to start with; it is set up by the first update
+     * @param updateMillis game time covered by each update, in milliseconds
+     * @param context      context to run the level with, eg {@code new EngineContext(seed)}
+     */
+    public HeadlessRunner(GameLevel level, int updateMillis, EngineContext context) {
+        if (updateMillis <= 0) {
+            throw new IllegalArgumentException("Update interval must be positive: " + updateMillis);
+        }
+        mManager = new GameObjectManager(new MessageBus(), context);
+        mManager.setLevel(level);
+        mUpdateMillis = updateMillis;
+    }
+
+    public GameObjectManager getManager() {
+        return mManager;
+    }
+
+    /**
+     * Runs one update.
+     */
+    public void step() {
+        mManager.update(mUpdateMillis);
+    }
+
+    /**
+     * Runs the given number of updates back to back.
+     */
+    public void run(int updates) {
+        for (int i = 0; i < updates; i++) {
+            mManager.update(mUpdateMillis);
+        }
+    }
+
+    /**
+     * Runs updates until at least the given amount of game time has gone by.
+     *
+     * @param millis game time to run for, in milliseconds
+     */
+    public void runFor(long millis) {
+        long end = mManager.getClock() + millis;
+        while (mManager.getClock() < end) {
+            mManager.update(mUpdateMillis);
+        }
+    }
+
+    /**
+     * Draws the game as it is right now.
+     *
+     * @param backend what to draw with, usually a {@link SoftwareFramebuffer}
+     */
+    public void render(RenderBackend backend) {
+        EngineContext previous = EngineContext.bind(mManager.getContext());
+        try {
+            mManager.render(backend);
+        } finally {
+            EngineContext.bind(previous);
+        }
+    }
+
+    /**
+     * Taps the screen at a point, in world units.
+     */
+    public void tap(float x, float y) {
+        EngineContext previous = EngineContext.bind(mManager.getContext());
+        try {
+            mManager.checkTouchedObjects(x, y);
+        } finally {
+            EngineContext.bind(previous);
+        }
+    }
+
+    /**
+     * Flings from a point with the given velocity, in world units and world units per second.
+     */
+    public void fling(float x, float y, float dx, float dy) {
+        EngineContext previous = EngineContext.bind(mManager.getContext());
+        try {
+            mManager.deliverFling(x, y, dx, dy);
+        } finally {
+            EngineContext.bind(previous);
+        }
+    }
+
+    /**
+     * Drags from a point by the given distance, in world units.
+     *
+     * @param finished true if this is the end of the drag
+     */
+    public void scroll(float x, float y, float dx, float dy, boolean finished) {
+        EngineContext previous = EngineContext.bind(mManager.getContext());
+        try {
+            mManager.deliverScroll(x, y, dx, dy, finished);
+        } finally {
+            EngineContext.bind(previous);
+        }
+    }
+
+    /**
+     * Presses a game controller button.
+     *
+     * @param keyCode which button, as the level's {@link GameLevel#onButtonDown(int)} sees it
+     */
+    public void pressButton(int keyCode) {
+        EngineContext previous = EngineContext.bind(mManager.getContext());
+        try {
+            mManager.deliverButton(keyCode, true);
+        } finally {
+            EngineContext.bind(previous);
+        }
+    }
+
+    /**
+     * Releases a game controller button.
+     */
+    public void releaseButton(int keyCode) {
+        EngineContext previous = EngineContext.bind(mManager.getContext());
+        try {
+            mManager.deliverButton(keyCode, false);
+        } finally {
+            EngineContext.bind(previous);
+        }
+    }
+
+    /**
+     * Moves the game controller's thumbsticks.  Each axis goes from -1.0 to 1.0.
+     */
+    public void setSticks(float leftX, float leftY, float rightX, float rightY) {
+        EngineContext previous = EngineContext.bind(mManager.getContext());
+        try {
+            mManager.setSticks(leftX, leftY, rightX, rightY);
+        } finally {
+            EngineContext.bind(previous);
+        }
+    }
+}
@@ -11,25 +11,34 @@ import java.util.Map;
 /**
  * A very basic image cache so that when we create 100 frogs or cycle through an animation
  * we only have one shared copy of the bitmap.  No upper cache size for now.
+ * <p>
+ *     Images are loaded from the resources of the current {@link EngineContext}.  A decoded
+ *     bitmap never changes, so the cache is shared by every game running in the process.
+ * </p>
  */
 
 public final class Images {
     private static Map<Integer, Bitmap> mCache = new HashMap<>();
-    private static Resources mResources;
-    private static int mDefaultId;
 
     public static void setResources(Resources r) {
-        mResources = r;
+        EngineContext.current().setResources(r);
     }
 
     public static void setDefaultImage(int defaultId) {
-        mDefaultId = defaultId;
+        EngineContext.current().setDefaultImageId(defaultId);
     }
-    public static Bitmap get(int resourceId) {
+    /**
+     * Gets an image, loading it the first time it's asked for.  Safe to call from both the
+     * game engine thread and the render thread.
+     *
+     * @param resourceId the ID of the image (eg {@literal R.raw.zombie})
+     */
+    public static synchronized Bitmap get(int resourceId) {
         Bitmap bmp = mCache.get(resourceId);
         if (bmp == null) {
+            EngineContext context = EngineContext.current();
             try {
-                bmp = BitmapFactory.decodeResource(mResources, resourceId);
+                bmp = BitmapFactory.decodeResource(context.getResources(), resourceId);
             } catch (Exception e) {
                 bmp = null;
                 Log.d("Images", "decodeResource: " + e.toString());
@@ -37,7 +46,7 @@ public final class Images {
             if (bmp == null) {
                 // Handle exception case or case where decodeResources returns null on its own
                 Log.d("Images", "Error decoding id " + resourceId);
-                bmp = BitmapFactory.decodeResource(mResources, mDefaultId);
+                bmp = BitmapFactory.decodeResource(context.getResources(), context.getDefaultImageId());
             }
             mCache.put(resourceId, bmp);
         }
@@ -0,0 +1,155 @@
+package com.thekeirs.games.engine;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>A piece of game logic that runs on another thread</h1>
+ * <p>
+ *     Put the slow part of your logic - working out where every zombie should head next,
+ *     checking what each guard can see, planning the next wave of enemies - in
+ *     {@link #run()}, and hand the job to {@link Jobs#submit(Job)} from your level's or
+ *     sprite's {@code update()}.  It runs on one of the engine's worker threads while the
+ *     game carries on.  Before the next update, the game engine waits for it to finish and
+ *     then calls {@link #onComplete()} back on the game engine thread, which is where you
+ *     use the results.
+ * </p>
+ * <pre>
+ *     class PlanJob extends Job {
+ *         float targetX, targetY;
+ *
+ *         public void run() {
+ *             // Look at the game objects and work out where to go next.  Don't change them!
+ *             GameObject player = manager.getNearestObject(zombie.getX(), zombie.getY(), "player");
+ *             targetX = player.getX();
+ *             targetY = player.getY();
+ *         }
+ *
+ *         public void onComplete() {
+ *             zombie.hopToward(20, targetX, targetY);
+ *         }
+ *     }
+ * </pre>
+ * <p>
+ *     A job can split its work up by starting child jobs with {@link #spawn(Job)}.  A job
+ *     doesn't count as finished until all its children have finished, and children get their
+ *     {@code onComplete()} call before their parent, in the order they were started.
+ * </p>
+ * <p>
+ *     A job submitted during an update doesn't start until the update is over, and it is
+ *     finished before the next update or touch event, so the game holds still the whole time
+ *     {@code run()} is going.  {@code run()} can read game objects and ask the
+ *     {@link GameObjectManager} questions like
+ *     {@link GameObjectManager#getNearestObject(float, float, String)} or
+ *     {@link GameObjectManager#hasLineOfSight(GameObject, GameObject)}.
+ * </p>
+ * <p>
+ *     <b>Be careful:</b> other jobs may be looking at the same game objects at the same
+ *     time.  Only read game objects in {@code run()}, and keep what you work out in the job's
+ *     own fields; make changes to the game in {@code onComplete()}.
+ *     {@link Rand} works in {@code run()}, but which job gets which random number depends on
+ *     which thread gets there first, so a game using it there won't play out exactly the same
+ *     way twice.
+ * </p>
+ */
+
+public abstract class Job {
+    private Jobs mJobs;
+    private Job mParent;
+    private ArrayList<Job> mChildren;
+    private final AtomicInteger mPending = new AtomicInteger();  // Us plus unfinished children
+    private volatile Throwable mFailure;
+
+    /**
+     * Does the work of the job.  Called once, on a worker thread.
+     */
+    public abstract void run();
+
+    /**
+     * Called on the game engine thread once this job and all its children have finished,
+     * before the next update.  Override this to put the results of the job to use.
+     */
+    public void onComplete() {
+    }
+
+    /**
+     * Starts a child job.  Only call this from this job's {@link #run()}.
+     *
+     * @param child a new job, not one that has been started before
+     */
+    protected final void spawn(Job child) {
+        if (mJobs == null) {
+            throw new IllegalStateException("spawn() can only be called from run()");
+        }
+        if (mChildren == null) {
+            mChildren = new ArrayList<>();
+        }
+        child.prepare(mJobs);
+        child.mParent = this;
+        mChildren.add(child);
+        mPending.incrementAndGet();
+        mJobs.start(child);
+    }
+
+    /**
+     * Gets ready to be run by the given job system.
+     */
+    void prepare(Jobs jobs) {
+        if (mJobs != null) {
+            throw new IllegalStateException("A job can only be started once");
+        }
+        mJobs = jobs;
+        mPending.set(1);
+    }
+
+    /**
+     * Runs the job on whichever worker thread picked it up, keeping hold of anything it throws
+     * so it can be reported on the game engine thread.
+     */
+    void execute() {
+        try {
+            run();
+        } catch (Throwable t) {
+            mFailure = t;
+        } finally {
+            finishOne();
+        }
+    }
+
+    /**
+     * Counts off either the job itself or one of its children.  The last one to finish tells
+     * the parent, or for a job with no parent, the job system.
+     */
+    private void finishOne() {
+        if (mPending.decrementAndGet() == 0) {
+            if (mParent != null) {
+                mParent.finishOne();
+            } else {
+                mJobs.finished(this);
+            }
+        }
+    }
+
+    /**
+     * Calls {@link #onComplete()} on the children and then on this job, and reports the first
+     * failure among them.
+     */
+    void complete() {
+        if (mChildren != null) {
+            for (int i = 0; i < mChildren.size(); i++) {
+                mChildren.get(i).complete();
+            }
+        }
+        if (mFailure != null) {
+            Throwable failure = mFailure;
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+            throw new RuntimeException(failure);
+        }
+        onComplete();
+    }
+}
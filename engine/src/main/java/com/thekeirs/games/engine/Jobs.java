@@ -0,0 +1,260 @@
+package com.thekeirs.games.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1>Runs game logic on all of the device's processors</h1>
+ * <p>
+ *     Everything in an update normally happens one thing at a time on the game engine thread,
+ *     and has to fit in the 16 milliseconds before the next one.  Most phones have several
+ *     processors, though, and the job system lets slow logic use the rest of them.  Each
+ *     game has one, which you get with {@link GameObjectManager#getJobs()}.  There are two
+ *     ways to use it:
+ * </p>
+ * <ul>
+ *     <li>{@link #submit(Job)} starts a {@link Job} running in the background.  It is finished
+ *     by the next update, when its {@link Job#onComplete()} is called.</li>
+ *     <li>{@link #parallelFor(List, ForEach)} does the same thing to every item in a list,
+ *     with the items shared out over the processors, and waits until they are all done.</li>
+ * </ul>
+ * <p>
+ *     The world stays still while jobs look at it.  Jobs submitted during an update don't
+ *     start until the update is over, and they are all finished before the next update or
+ *     touch event changes anything.  {@code parallelFor} holds up the code that called it until
+ *     every item is done.  The manager's questions, like
+ *     {@link GameObjectManager#getNearestObject}, {@link GameObjectManager#getObjectsInRegion}
+ *     and {@link GameObjectManager#hasLineOfSight}, can be asked from any number of threads
+ *     at once, so jobs are free to use them.
+ * </p>
+ * <p>
+ *     The worker threads are shared by every game in the process, one per processor.  A worker
+ *     that runs out of work takes some from a busier one, so uneven jobs still keep every
+ *     processor busy.
+ * </p>
+ */
+
+public final class Jobs {
+    /**
+     * Something to do to each item in a list.  See {@link #parallelFor(List, ForEach)}.
+     */
+    public interface ForEach<T> {
+        /**
+         * Called once for each item, on any thread.  Only change the item itself.
+         */
+        void run(T item);
+    }
+
+    final private static int CHUNKS_PER_THREAD = 4;     // So quick workers can take from slow ones
+
+    private final EngineContext mContext;
+    private final Object mLock = new Object();
+    private int mRunning;                               // Submitted jobs not finished yet
+    private ArrayList<Job> mSubmitted = new ArrayList<>();
+    private ArrayList<Job> mCompleting = new ArrayList<>();
+    private boolean mHolding;                           // The world is changing; don't start jobs
+    private final ArrayList<Job> mHeld = new ArrayList<>();
+
+    /**
+     * Worker threads shared by every job system and by the {@link GameObjectManager}'s own
+     * update, started the first time anything needs them.
+     */
+    static final class Pool {
+        static final ForkJoinPool POOL = new ForkJoinPool();
+    }
+
+    /**
+     * @param context the context jobs run with, so they see the game's own random numbers
+     */
+    Jobs(EngineContext context) {
+        mContext = context;
+    }
+
+    /**
+     * Gets how many worker threads there are to run jobs on.
+     */
+    public int getThreadCount() {
+        return Pool.POOL.getParallelism();
+    }
+
+    /**
+     * Starts a job running in the background.  Call this from game logic, such as from an
+     * {@code update()} method.  A job submitted during an update starts once the update is
+     * over.  The job will have finished, and had its {@link Job#onComplete()} called, by the
+     * start of the next update.
+     *
+     * @param job a new job, not one that has been started before
+     */
+    public void submit(Job job) {
+        job.prepare(this);
+        synchronized (mLock) {
+            mRunning++;
+            mSubmitted.add(job);
+            if (mHolding) {
+                mHeld.add(job);
+                return;
+            }
+        }
+        start(job);
+    }
+
+    /**
+     * Calls {@code body} for every item in a list, sharing the items out over all the worker
+     * threads, and returns once every item has been done.  May be called from the game engine
+     * thread or from inside a job.
+     * <p>
+     *     The items are done in no particular order and possibly all at once, so {@code body}
+     *     should only read the rest of the game, and only change the item it was given.
+     *     Nothing else changes the game until they are all done.
+     * </p>
+     */
+    public <T> void parallelFor(List<T> items, ForEach<T> body) {
+        int threads = Pool.POOL.getParallelism();
+        int count = items.size();
+        if (threads < 2 || count < 2) {
+            for (int i = 0; i < count; i++) {
+                body.run(items.get(i));
+            }
+            return;
+        }
+        int grain = Math.max(1, count / (threads * CHUNKS_PER_THREAD));
+        ForEachTask<T> task = new ForEachTask<>(mContext, items, body, 0, count, grain);
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            Pool.POOL.invoke(task);
+        }
+    }
+
+    /**
+     * Waits for every submitted job to finish, then calls their {@link Job#onComplete()}
+     * methods in the order they were submitted.  From then on, newly submitted jobs are held
+     * back until {@link #release()}, so jobs submitted from {@code onComplete()} don't start
+     * until the game engine thread has finished changing the world.  Called by the
+     * {@link GameObjectManager} before each update and touch event.  Do not call this
+     * directly.
+     *
+     * @throws RuntimeException whatever the first failed job threw, once all of them have
+     *                          finished running; the {@code onComplete()} calls after it are
+     *                          skipped
+     */
+    void finishAll() {
+        release();
+        synchronized (mLock) {
+            while (mRunning > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for jobs", e);
+                }
+            }
+            mHolding = true;
+        }
+        if (mSubmitted.isEmpty()) {
+            return;
+        }
+
+        ArrayList<Job> done = mSubmitted;
+        mSubmitted = mCompleting;
+        mCompleting = done;
+        try {
+            for (int i = 0; i < done.size(); i++) {
+                done.get(i).complete();
+            }
+        } finally {
+            done.clear();
+        }
+    }
+
+    /**
+     * Starts the jobs held back since {@link #finishAll()}, and any submitted from now on.
+     * Called by the {@link GameObjectManager} once an update or touch event is over.
+     */
+    void release() {
+        synchronized (mLock) {
+            mHolding = false;
+            if (mHeld.isEmpty()) {
+                return;
+            }
+        }
+        // Nothing else adds to the held list now we aren't holding.
+        for (int i = 0; i < mHeld.size(); i++) {
+            start(mHeld.get(i));
+        }
+        mHeld.clear();
+    }
+
+    /**
+     * Hands a job to the worker threads.
+     */
+    void start(final Job job) {
+        RecursiveAction task = new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                EngineContext previous = EngineContext.bind(mContext);
+                try {
+                    job.execute();
+                } finally {
+                    EngineContext.bind(previous);
+                }
+            }
+        };
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.fork();
+        } else {
+            Pool.POOL.execute(task);
+        }
+    }
+
+    /**
+     * Called by a submitted job once it and all its children are done.
+     */
+    void finished(Job job) {
+        synchronized (mLock) {
+            if (--mRunning == 0) {
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    private static final class ForEachTask<T> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final EngineContext mContext;
+        private final List<T> mItems;
+        private final ForEach<T> mBody;
+        private final int mFrom, mTo, mGrain;
+
+        ForEachTask(EngineContext context, List<T> items, ForEach<T> body, int from, int to, int grain) {
+            mContext = context;
+            mItems = items;
+            mBody = body;
+            mFrom = from;
+            mTo = to;
+            mGrain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= mGrain) {
+                EngineContext previous = EngineContext.bind(mContext);
+                try {
+                    for (int i = mFrom; i < mTo; i++) {
+                        mBody.run(mItems.get(i));
+                    }
+                } finally {
+                    EngineContext.bind(previous);
+                }
+            } else {
+                int middle = (mFrom + mTo) >>> 1;
+                invokeAll(new ForEachTask<>(mContext, mItems, mBody, mFrom, middle, mGrain),
+                        new ForEachTask<>(mContext, mItems, mBody, middle, mTo, mGrain));
+            }
+        }
+    }
+}
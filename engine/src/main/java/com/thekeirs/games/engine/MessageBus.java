@@ -1,7 +1,5 @@
 package com.thekeirs.games.engine;
 
-import android.util.Log;
-
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,7 +20,7 @@ public final class MessageBus {
 
     public void postMessage(Message msg) {
         if (!msg.type.equals("update_redraw")) {
-            Log.d("msg", msg.type + " (" + msg.x + "," + msg.y + ")");
+            EngineLog.d("msg", msg.type + " (" + msg.x + "," + msg.y + ")");
         }
         for (IMessageClient client: mClients) {
             client.handleMessage(msg);
@@ -1,16 +1,15 @@
 package com.thekeirs.games.engine;
 
-import java.util.Random;
-
 /**
  * <h1>Helper functions for using random numbers in your game</h1>
+ * <p>
+ *     Each running game has its own random number generator (see {@link EngineContext}), so a
+ *     game started with a fixed seed makes the same choices every time it is run.
+ * </p>
  */
 
 final public class Rand {
     final private static String TAG = "Rand";
-    final private static int FPS = 60;
-
-    private static Random mRand = new Random();
 
     /**
      * Returns a random number between {@code min} and {@code max}
@@ -23,7 +22,7 @@ final public class Rand {
      * @return integer in the range min..max
      */
     public static int between(int min, int max) {
-        return min + mRand.nextInt(max - min + 1);
+        return min + EngineContext.current().random.nextInt(max - min + 1);
     }
 
     /**
@@ -32,8 +31,18 @@ final public class Rand {
      * @return usually false, but true randomly every {@code seconds}
      */
     public static boolean onceEvery(float seconds) {
-        int ticks = (int) (seconds * FPS);
-        int prob = mRand.nextInt(ticks);
-        return prob == 0;
+        // Meant to be called once per update, so the chance depends on how long updates are.
+        EngineContext context = EngineContext.current();
+        return context.random.nextFloat() * seconds * 1000.0f < context.updateMillis;
+    }
+
+    /**
+     * Called by the {@link GameObjectManager} with the length of each update, so that
+     * {@link #onceEvery(float)} works the same at any update rate.  Do not call this directly.
+     *
+     * @param millis length of the current update step in milliseconds
+     */
+    static void setUpdateMillis(int millis) {
+        EngineContext.current().updateMillis = millis;
     }
 }
@@ -0,0 +1,22 @@
+package com.thekeirs.games.engine;
+
+/**
+ * <h1>[internal] Something that can carry out a {@link RenderCommandList}</h1>
+ * <p>
+ *     See {@link CanvasBackend}, which draws onto the screen, and {@link SoftwareFramebuffer},
+ *     which draws into an array of pixels without needing Android.
+ * </p>
+ */
+
+public interface RenderBackend {
+    /** Width of the surface being drawn on, in pixels */
+    int getWidth();
+
+    /** Height of the surface being drawn on, in pixels */
+    int getHeight();
+
+    /**
+     * Carries out every command in the list, in order.
+     */
+    void render(RenderCommandList commands);
+}
@@ -0,0 +1,191 @@
+package com.thekeirs.games.engine;
+
+import java.util.Arrays;
+
+/**
+ * <h1>[internal] A frame's worth of drawing, written down as a list of commands</h1>
+ * <p>
+ *     Rather than drawing straight onto an Android {@link android.graphics.Canvas}, a frame is
+ *     first recorded as a list of simple commands: fill the screen, draw an image, write some
+ *     text, outline a box.  A {@link RenderBackend} then carries them out, either onto a
+ *     canvas ({@link CanvasBackend}) or into a plain array of pixels
+ *     ({@link SoftwareFramebuffer}).  Recording doesn't need Android at all, so it can be
+ *     timed, and the results checked, on an ordinary Java VM.
+ * </p>
+ * <p>
+ *     Commands are kept in flat arrays that are reused from frame to frame and only ever
+ *     grow, so recording a frame doesn't allocate memory once the list has reached its
+ *     working size.  Everything is in screen pixels.
+ * </p>
+ */
+
+public final class RenderCommandList {
+    /** Fill the whole screen with one color */
+    final public static int FILL = 0;
+    /** Draw (part of) an image, placed by an affine matrix */
+    final public static int IMAGE = 1;
+    /** Write a line of text */
+    final public static int TEXT = 2;
+    /** Draw a one-pixel outline around a box */
+    final public static int OUTLINE = 3;
+
+    /**
+     * Numbers stored with an {@link #IMAGE} command, from {@link #getArgOffset(int)} on.  The
+     * matrix maps a point (u, v) on the image, from (0, 0) at its top left corner to (1, 1) at
+     * its bottom right, to the screen: x = a*u + b*v + c, y = d*u + e*v + f.
+     */
+    final public static int IMAGE_A = 0, IMAGE_B = 1, IMAGE_C = 2;
+    final public static int IMAGE_D = 3, IMAGE_E = 4, IMAGE_F = 5;
+    /** The part of the image to draw, as fractions of its width and height */
+    final public static int IMAGE_SRC_LEFT = 6, IMAGE_SRC_TOP = 7;
+    final public static int IMAGE_SRC_RIGHT = 8, IMAGE_SRC_BOTTOM = 9;
+    /** Opacity to draw the image with, 0-255 */
+    final public static int IMAGE_ALPHA = 10;
+    final private static int IMAGE_ARGS = 11;
+
+    /** Numbers stored with a {@link #TEXT} command: baseline position and text size */
+    final public static int TEXT_X = 0, TEXT_Y = 1, TEXT_SIZE = 2;
+    final private static int TEXT_ARGS = 3;
+
+    /** Numbers stored with an {@link #OUTLINE} command: the box */
+    final public static int OUTLINE_LEFT = 0, OUTLINE_TOP = 1;
+    final public static int OUTLINE_RIGHT = 2, OUTLINE_BOTTOM = 3;
+    final private static int OUTLINE_ARGS = 4;
+
+    final private static int INITIAL_CAPACITY = 64;
+
+    private int mCount;
+    private int mArgCount;
+    // Per command: what to do, an image ID or ARGB color, and where its numbers start
+    private int[] mOps = new int[3 * INITIAL_CAPACITY];
+    private float[] mArgs = new float[IMAGE_ARGS * INITIAL_CAPACITY];
+    private String[] mTexts = new String[INITIAL_CAPACITY];
+
+    /**
+     * Empties the list, ready to record another frame.
+     */
+    public void clear() {
+        Arrays.fill(mTexts, 0, mCount, null);
+        mCount = 0;
+        mArgCount = 0;
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * Records filling the whole screen with one color.
+     *
+     * @param color ARGB color
+     */
+    public void fill(int color) {
+        add(FILL, color, 0);
+    }
+
+    /**
+     * Records drawing part of an image.  See {@link #IMAGE_A} for what the matrix means.
+     *
+     * @param imageId the ID of the image (eg {@literal R.raw.zombie})
+     * @param matrix  the six numbers a, b, c, d, e, f placing the image on the screen
+     * @param srcLeft   left edge of the part of the image to draw, 0.0-1.0
+     * @param srcTop    top edge of the part to draw
+     * @param srcRight  right edge of the part to draw
+     * @param srcBottom bottom edge of the part to draw
+     * @param alpha   opacity, 0 (invisible) to 255 (solid)
+     */
+    public void image(int imageId, float[] matrix, float srcLeft, float srcTop,
+                      float srcRight, float srcBottom, int alpha) {
+        int a = add(IMAGE, imageId, IMAGE_ARGS);
+        System.arraycopy(matrix, 0, mArgs, a, 6);
+        mArgs[a + IMAGE_SRC_LEFT] = srcLeft;
+        mArgs[a + IMAGE_SRC_TOP] = srcTop;
+        mArgs[a + IMAGE_SRC_RIGHT] = srcRight;
+        mArgs[a + IMAGE_SRC_BOTTOM] = srcBottom;
+        mArgs[a + IMAGE_ALPHA] = alpha;
+    }
+
+    /**
+     * Records writing a line of text.
+     *
+     * @param text  what to write
+     * @param x     left end of the baseline
+     * @param y     height of the baseline
+     * @param size  text size
+     * @param color ARGB color
+     */
+    public void text(String text, float x, float y, float size, int color) {
+        int a = add(TEXT, color, TEXT_ARGS);
+        mTexts[mCount - 1] = text;
+        mArgs[a + TEXT_X] = x;
+        mArgs[a + TEXT_Y] = y;
+        mArgs[a + TEXT_SIZE] = size;
+    }
+
+    /**
+     * Records drawing a one-pixel outline around a box.
+     *
+     * @param color ARGB color
+     */
+    public void outline(float left, float top, float right, float bottom, int color) {
+        int a = add(OUTLINE, color, OUTLINE_ARGS);
+        mArgs[a + OUTLINE_LEFT] = left;
+        mArgs[a + OUTLINE_TOP] = top;
+        mArgs[a + OUTLINE_RIGHT] = right;
+        mArgs[a + OUTLINE_BOTTOM] = bottom;
+    }
+
+    private int add(int op, int value, int args) {
+        if (3 * mCount == mOps.length) {
+            mOps = Arrays.copyOf(mOps, 2 * mOps.length);
+            mTexts = Arrays.copyOf(mTexts, 2 * mTexts.length);
+        }
+        if (mArgCount + args > mArgs.length) {
+            mArgs = Arrays.copyOf(mArgs, Math.max(2 * mArgs.length, mArgCount + args));
+        }
+        int offset = mArgCount;
+        mOps[3 * mCount] = op;
+        mOps[3 * mCount + 1] = value;
+        mOps[3 * mCount + 2] = offset;
+        mCount++;
+        mArgCount += args;
+        return offset;
+    }
+
+    /**
+     * Gets what the i'th command does: {@link #FILL}, {@link #IMAGE}, {@link #TEXT} or
+     * {@link #OUTLINE}.
+     */
+    public int getOp(int i) {
+        return mOps[3 * i];
+    }
+
+    /**
+     * Gets the image ID of an {@link #IMAGE} command, or the color of any other command.
+     */
+    public int getValue(int i) {
+        return mOps[3 * i + 1];
+    }
+
+    /**
+     * Gets where the i'th command's numbers start in {@link #getArgs()}.
+     */
+    public int getArgOffset(int i) {
+        return mOps[3 * i + 2];
+    }
+
+    /**
+     * Gets the numbers stored with every command.  Don't hold on to this: it is replaced
+     * whenever the list grows.
+     */
+    public float[] getArgs() {
+        return mArgs;
+    }
+
+    /**
+     * Gets the text written by a {@link #TEXT} command.
+     */
+    public String getText(int i) {
+        return mTexts[i];
+    }
+}
@@ -0,0 +1,195 @@
+package com.thekeirs.games.engine;
+
+import java.util.Arrays;
+
+/**
+ * <h1>[internal] Everything the render thread needs to know to draw one frame</h1>
+ * <p>
+ *     After each batch of updates the simulation thread writes down, for every visible object,
+ *     where it was and where it is, how big it is, how it's turned, and which image (or text)
+ *     to show.  The render thread then records the frame from this snapshot as a
+ *     {@link RenderCommandList} and draws it while the simulation carries on with the next
+ *     update, so neither has to wait for the other and the two can run on different cores.  Snapshots are passed between the threads through a
+ *     {@link TripleBuffer} and reused from frame to frame; their arrays only grow, so once a
+ *     level has got going no memory is allocated.
+ * </p>
+ * <p>
+ *     Objects add themselves with {@link GameObject#writeSnapshot(RenderSnapshot)}.
+ * </p>
+ */
+
+public final class RenderSnapshot {
+    final public static int FLIP_X = 1;     // Mirror the image left/right
+    final public static int FLIP_Y = 2;     // Mirror the image up/down
+    final public static int OUTLINE = 4;    // Outline the object's bounding box, for debugging
+
+    final private static int IMAGE = 0;
+    final private static int TEXT = 1;
+    final private static int STRIDE = 7;    // x, y, previous x, previous y, width, height, rotation
+    final private static int INITIAL_CAPACITY = 64;
+
+    private int mCount;
+    private int[] mKind = new int[INITIAL_CAPACITY];
+    private int[] mImage = new int[INITIAL_CAPACITY];       // Image ID, or text color
+    private int[] mFlags = new int[INITIAL_CAPACITY];
+    private float[] mGeometry = new float[STRIDE * INITIAL_CAPACITY];
+    private float[] mTextSize = new float[INITIAL_CAPACITY];
+    private String[] mText = new String[INITIAL_CAPACITY];
+
+    private Scene mScene;
+    private float mWorldWidth, mWorldHeight;
+    private long mPublishedNanos;       // Real time when the simulation handed this over
+    private long mLeftoverNanos;        // Game time already gone by toward the next update
+    private long mStepNanos;            // Length of an update; 0 until the first snapshot
+    private float mTimeScale;
+
+    final private static int OUTLINE_COLOR = 0xff000000;
+    private final float[] mMatrix = new float[6];   // Only used on the render thread
+
+    /**
+     * Empties the snapshot, ready to write a new frame into.
+     */
+    void begin(Scene scene, float worldWidth, float worldHeight) {
+        Arrays.fill(mText, 0, mCount, null);
+        mCount = 0;
+        mScene = scene;
+        mWorldWidth = worldWidth;
+        mWorldHeight = worldHeight;
+    }
+
+    /**
+     * Records when the snapshot was finished, so the render thread can work out how far
+     * past it each frame falls.
+     */
+    void finish(long publishedNanos, long leftoverNanos, long stepNanos, float timeScale) {
+        mPublishedNanos = publishedNanos;
+        mLeftoverNanos = leftoverNanos;
+        mStepNanos = stepNanos;
+        mTimeScale = timeScale;
+    }
+
+    /**
+     * Adds an image drawn to fill an object's bounding box.
+     *
+     * @param obj     the object being drawn
+     * @param imageId the ID of the image (eg {@literal R.raw.zombie})
+     * @param flags   any of {@link #FLIP_X}, {@link #FLIP_Y} and {@link #OUTLINE}
+     */
+    public void addImage(GameObject obj, int imageId, int flags) {
+        int i = add(obj, IMAGE, flags);
+        mImage[i] = imageId;
+    }
+
+    /**
+     * Adds a line of text drawn along the bottom left of an object's bounding box.
+     *
+     * @param obj   the object being drawn
+     * @param text  what to write
+     * @param color ARGB color of the text
+     * @param size  height of the text
+     */
+    public void addText(GameObject obj, String text, int color, float size) {
+        int i = add(obj, TEXT, 0);
+        mImage[i] = color;
+        mText[i] = text;
+        mTextSize[i] = size;
+    }
+
+    private int add(GameObject obj, int kind, int flags) {
+        if (mCount == mKind.length) {
+            grow();
+        }
+        int i = mCount++;
+        mKind[i] = kind;
+        mFlags[i] = flags;
+        int g = STRIDE * i;
+        mGeometry[g] = obj.getX();
+        mGeometry[g + 1] = obj.getY();
+        mGeometry[g + 2] = obj.getPreviousX();
+        mGeometry[g + 3] = obj.getPreviousY();
+        mGeometry[g + 4] = obj.getWidth();
+        mGeometry[g + 5] = obj.getHeight();
+        mGeometry[g + 6] = obj.getRotation();
+        return i;
+    }
+
+    private void grow() {
+        int capacity = 2 * mKind.length;
+        mKind = Arrays.copyOf(mKind, capacity);
+        mImage = Arrays.copyOf(mImage, capacity);
+        mFlags = Arrays.copyOf(mFlags, capacity);
+        mGeometry = Arrays.copyOf(mGeometry, STRIDE * capacity);
+        mTextSize = Arrays.copyOf(mTextSize, capacity);
+        mText = Arrays.copyOf(mText, capacity);
+    }
+
+    /**
+     * Checks whether anything has been written into this snapshot yet.
+     */
+    boolean isReady() {
+        return mStepNanos > 0;
+    }
+
+    /**
+     * Works out how far between the last update and the next one a frame drawn now falls.
+     *
+     * @param nowNanos the current real time, from the same clock the snapshot was stamped with
+     * @return 0.0 to draw things where they were, up to 1.0 to draw them where they are
+     */
+    float alphaAt(long nowNanos) {
+        float alpha = (mLeftoverNanos + (nowNanos - mPublishedNanos) * mTimeScale) / mStepNanos;
+        return Math.max(0.0f, Math.min(1.0f, alpha));
+    }
+
+    /**
+     * Records the commands to draw the snapshot onto a screen of the given size.
+     *
+     * @param out    the command list to fill in; cleared first
+     * @param width  width of the screen in pixels
+     * @param height height of the screen in pixels
+     * @param alpha  how far this frame is from the last update toward the next one, 0.0-1.0
+     */
+    public void record(RenderCommandList out, float width, float height, float alpha) {
+        float xScale = width / mWorldWidth;
+        float yScale = height / mWorldHeight;
+
+        out.clear();
+        if (mScene != null) {
+            mScene.writeCommands(out, width, height);
+        }
+        for (int i = 0; i < mCount; i++) {
+            int g = STRIDE * i;
+            float x = mGeometry[g], y = mGeometry[g + 1];
+            x = mGeometry[g + 2] + (x - mGeometry[g + 2]) * alpha;
+            y = mGeometry[g + 3] + (y - mGeometry[g + 3]) * alpha;
+            float w = mGeometry[g + 4], h = mGeometry[g + 5];
+
+            if (mKind[i] == TEXT) {
+                // Text position and size are in screen units, not world units.
+                out.text(mText[i], x - w / 2, y + h / 2, mTextSize[i], mImage[i]);
+                continue;
+            }
+
+            // Turn the object's box about its center in world units, then scale to the
+            // screen.  Flipping just runs the image the other way across the box.
+            double radians = Math.toRadians(mGeometry[g + 6]);
+            float cos = (float) Math.cos(radians), sin = (float) Math.sin(radians);
+            float across = ((mFlags[i] & FLIP_X) != 0) ? -w : w;
+            float down = ((mFlags[i] & FLIP_Y) != 0) ? -h : h;
+            mMatrix[RenderCommandList.IMAGE_A] = xScale * cos * across;
+            mMatrix[RenderCommandList.IMAGE_B] = -xScale * sin * down;
+            mMatrix[RenderCommandList.IMAGE_D] = yScale * sin * across;
+            mMatrix[RenderCommandList.IMAGE_E] = yScale * cos * down;
+            mMatrix[RenderCommandList.IMAGE_C] = xScale * x
+                    - 0.5f * (mMatrix[RenderCommandList.IMAGE_A] + mMatrix[RenderCommandList.IMAGE_B]);
+            mMatrix[RenderCommandList.IMAGE_F] = yScale * y
+                    - 0.5f * (mMatrix[RenderCommandList.IMAGE_D] + mMatrix[RenderCommandList.IMAGE_E]);
+            out.image(mImage[i], mMatrix, 0, 0, 1, 1, 255);
+
+            if ((mFlags[i] & OUTLINE) != 0) {
+                out.outline((x - w / 2) * xScale, (y - h / 2) * yScale,
+                        (x + w / 2) * xScale, (y + h / 2) * yScale, OUTLINE_COLOR);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.thekeirs.games.engine;
+
+import android.graphics.Canvas;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>[internal] This is the thread where every frame is drawn</h1>
+ * <p>
+ *     Runs alongside the {@link GameViewThread}, drawing the most recent
+ *     {@link RenderSnapshot} it has published each time the screen is ready for a new frame:
+ *     the snapshot is recorded as a {@link RenderCommandList}, which a {@link CanvasBackend}
+ *     then draws.  Objects are drawn part way between where they were before the last update
+ *     and where they are now, depending on how long ago that update was, so motion stays
+ *     smooth however the update and refresh rates line up.
+ * </p>
+ * <p>
+ *     This thread never touches the game objects themselves, only the snapshots, so it can
+ *     draw one frame while the game engine thread is busy updating the next.
+ * </p>
+ */
+
+public class RenderThread extends Thread {
+    final private String TAG = "RenderThread";
+    final private static long WAIT_FOR_FIRST_FRAME_NANOS = 1000000L;
+    private final SurfaceHolder mHolder;
+    private final TripleBuffer<RenderSnapshot> mSnapshots;
+    private final Clock mClock;
+    private final RenderCommandList mCommands = new RenderCommandList();
+    private final CanvasBackend mBackend = new CanvasBackend();
+
+    RenderThread(SurfaceHolder holder, TripleBuffer<RenderSnapshot> snapshots, Clock clock) {
+        mHolder = holder;
+        mSnapshots = snapshots;
+        mClock = clock;
+    }
+
+    public void run() {
+        int loops = 0;
+        long lastLog = mClock.realTimeNanos();
+        Log.d(TAG, "thread starting");
+        while (!isInterrupted()) {
+            mSnapshots.swapFront();
+            RenderSnapshot snapshot = mSnapshots.front();
+            if (!snapshot.isReady()) {
+                // Nothing to draw until the game engine thread has finished its first update.
+                LockSupport.parkNanos(this, WAIT_FOR_FIRST_FRAME_NANOS);
+                continue;
+            }
+
+            Canvas c = mHolder.lockCanvas();
+            if (c == null) {
+                Log.d(TAG, "null canvas from mHolder");
+            } else {
+                mBackend.setCanvas(c);
+                snapshot.record(mCommands, c.getWidth(), c.getHeight(),
+                        snapshot.alphaAt(mClock.realTimeNanos()));
+                mBackend.render(mCommands);
+                mHolder.unlockCanvasAndPost(c);
+                ++loops;
+            }
+
+            long now = mClock.realTimeNanos();
+            if (now - lastLog > 5000000000L) {
+                float fps = loops * 1.0e9f / (now - lastLog);
+                lastLog = now;
+                loops = 0;
+                Log.d(TAG, "fps = " + fps);
+            }
+        }
+        Log.d(TAG, "thread terminating");
+    }
+
+    public void gracefulStop() {
+        Log.d(TAG, "thread termination requested");
+
+        this.interrupt();
+        try {
+            this.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+}
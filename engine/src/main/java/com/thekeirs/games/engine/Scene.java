@@ -1,7 +1,5 @@
 package com.thekeirs.games.engine;
 
-import android.graphics.Canvas;
-
 /**
  * <h1>An abstract scene (background for a level) class</h1>
  * <p>
@@ -11,5 +9,13 @@ import android.graphics.Canvas;
  */
 
 abstract public class Scene {
-    abstract public void draw(Canvas canvas);
+    /**
+     * Records the commands to draw this background onto a screen of the given size.  Called
+     * on the render thread every frame.
+     *
+     * @param out    the frame being recorded
+     * @param width  width of the screen in pixels
+     * @param height height of the screen in pixels
+     */
+    abstract public void writeCommands(RenderCommandList out, float width, float height);
 }
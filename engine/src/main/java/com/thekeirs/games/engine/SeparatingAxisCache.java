@@ -0,0 +1,165 @@
+package com.thekeirs.games.engine;
+
+/**
+ * <h1>[internal] Remembers which axis last separated each pair of complex objects</h1>
+ * <p>
+ *     Two objects that weren't touching last frame are almost always kept apart by the same
+ *     axis this frame.  By remembering that axis and checking it before anything else, the
+ *     collision code can usually prove the pair is still apart with a single projection
+ *     instead of projecting onto every edge of both shapes.
+ * </p>
+ * <p>
+ *     Entries are keyed by the ids of the two objects (order doesn't matter) in an
+ *     open-addressed table of primitive arrays, so lookups don't allocate.  The
+ *     {@link GameObjectManager} evicts an object's entries when it is removed.
+ * </p>
+ */
+
+public final class SeparatingAxisCache {
+    final private static long EMPTY = 0;
+    final private static long DELETED = -1;
+    final private static int INITIAL_CAPACITY = 64;
+
+    private long[] mKeys = new long[INITIAL_CAPACITY];
+    private float[] mAxisX = new float[INITIAL_CAPACITY];
+    private float[] mAxisY = new float[INITIAL_CAPACITY];
+    private int mSize;          // Live entries
+    private int mDeleted;       // Tombstones
+
+    /**
+     * Looks up the separating axis last recorded for a pair of objects.
+     *
+     * @param axis receives the axis as {x, y} if found
+     * @return {@code true} if an axis was found
+     */
+    public boolean lookup(GameObject a, GameObject b, float[] axis) {
+        int i = find(key(a, b));
+        if (i < 0) {
+            return false;
+        }
+        axis[0] = mAxisX[i];
+        axis[1] = mAxisY[i];
+        return true;
+    }
+
+    /**
+     * Records the axis that separated a pair of objects.
+     */
+    public void store(GameObject a, GameObject b, float axisX, float axisY) {
+        long key = key(a, b);
+        int mask = mKeys.length - 1;
+        int slot = -1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long k = mKeys[i];
+            if (k == key) {
+                slot = i;
+                break;
+            }
+            if (k == DELETED && slot < 0) {
+                slot = i;
+            } else if (k == EMPTY) {
+                if (slot < 0) {
+                    slot = i;
+                } else {
+                    mDeleted--;
+                }
+                mKeys[slot] = key;
+                mSize++;
+                break;
+            }
+        }
+        mAxisX[slot] = axisX;
+        mAxisY[slot] = axisY;
+        if ((mSize + mDeleted) * 2 > mKeys.length) {
+            rehash(mSize * 4 > mKeys.length ? mKeys.length * 2 : mKeys.length);
+        }
+    }
+
+    /**
+     * Drops whatever was recorded for a pair of objects, for instance because they are now
+     * touching.
+     */
+    public void forget(GameObject a, GameObject b) {
+        int i = find(key(a, b));
+        if (i >= 0) {
+            mKeys[i] = DELETED;
+            mSize--;
+            mDeleted++;
+        }
+    }
+
+    /**
+     * Drops every entry involving the given object.
+     */
+    public void evict(GameObject obj) {
+        if (mSize == 0) {
+            return;
+        }
+        long id = obj.getId();
+        for (int i = 0; i < mKeys.length; i++) {
+            long k = mKeys[i];
+            if (k != EMPTY && k != DELETED && ((k >>> 32) == id || (k & 0xffffffffL) == id)) {
+                mKeys[i] = DELETED;
+                mSize--;
+                mDeleted++;
+            }
+        }
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void clear() {
+        mKeys = new long[INITIAL_CAPACITY];
+        mAxisX = new float[INITIAL_CAPACITY];
+        mAxisY = new float[INITIAL_CAPACITY];
+        mSize = 0;
+        mDeleted = 0;
+    }
+
+    private int find(long key) {
+        int mask = mKeys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long k = mKeys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = mKeys;
+        float[] oldX = mAxisX, oldY = mAxisY;
+        mKeys = new long[capacity];
+        mAxisX = new float[capacity];
+        mAxisY = new float[capacity];
+        mDeleted = 0;
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k == EMPTY || k == DELETED) {
+                continue;
+            }
+            int i = hash(k) & mask;
+            while (mKeys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            mKeys[i] = k;
+            mAxisX[i] = oldX[j];
+            mAxisY[i] = oldY[j];
+        }
+    }
+
+    private static long key(GameObject a, GameObject b) {
+        long ia = a.getId(), ib = b.getId();
+        return (ia < ib) ? (ia << 32) | ib : (ib << 32) | ia;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,222 @@
+package com.thekeirs.games.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <h1>[internal] Carries out render commands into a plain array of pixels</h1>
+ * <p>
+ *     Needs nothing from Android, so a frame can be drawn and checked in an ordinary Java
+ *     test: record it with {@link GameObjectManager#render(RenderBackend)}, then compare
+ *     {@link #getPixels()} against a known-good image.  Images are looked up by resource ID
+ *     like everywhere else, but since there are no Android resources to load them from, each
+ *     image must first be handed over with {@link #putImage}.  Images that haven't been are
+ *     skipped.
+ * </p>
+ * <p>
+ *     Drawing is kept simple so the results are easy to predict: images are sampled at the
+ *     nearest pixel without smoothing, and outlines are one pixel wide.  There is no font to
+ *     draw text with, so text commands are skipped too.
+ * </p>
+ */
+
+public final class SoftwareFramebuffer implements RenderBackend {
+    private final int mWidth, mHeight;
+    private final int[] mPixels;        // ARGB, row by row
+    private final Map<Integer, int[]> mImages = new HashMap<>();
+    private final Map<Integer, int[]> mImageSizes = new HashMap<>();
+
+    public SoftwareFramebuffer(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Illegal framebuffer size: " + width + "x" + height);
+        }
+        mWidth = width;
+        mHeight = height;
+        mPixels = new int[width * height];
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Gets the pixels drawn so far.
+     *
+     * @return ARGB colors, row by row; this is the framebuffer itself, not a copy
+     */
+    public int[] getPixels() {
+        return mPixels;
+    }
+
+    public int getPixel(int x, int y) {
+        return mPixels[y * mWidth + x];
+    }
+
+    /**
+     * Sets every pixel to one color.
+     *
+     * @param color ARGB color
+     */
+    public void clear(int color) {
+        Arrays.fill(mPixels, color);
+    }
+
+    /**
+     * Supplies the pixels for an image, so image commands using it can be drawn.
+     *
+     * @param imageId the ID the image is drawn by (eg {@literal R.raw.zombie})
+     * @param pixels  ARGB colors, row by row; kept, not copied
+     */
+    public void putImage(int imageId, int width, int height, int[] pixels) {
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Need " + width * height + " pixels, got " + pixels.length);
+        }
+        mImages.put(imageId, pixels);
+        mImageSizes.put(imageId, new int[] {width, height});
+    }
+
+    @Override
+    public void render(RenderCommandList commands) {
+        float[] args = commands.getArgs();
+        for (int i = 0; i < commands.size(); i++) {
+            int a = commands.getArgOffset(i);
+            int value = commands.getValue(i);
+            switch (commands.getOp(i)) {
+                case RenderCommandList.FILL:
+                    if ((value >>> 24) == 255) {
+                        Arrays.fill(mPixels, value);
+                    } else {
+                        fillRect(0, 0, mWidth, mHeight, value);
+                    }
+                    break;
+                case RenderCommandList.IMAGE:
+                    int[] image = mImages.get(value);
+                    if (image != null) {
+                        int[] size = mImageSizes.get(value);
+                        drawImage(image, size[0], size[1], args, a);
+                    }
+                    break;
+                case RenderCommandList.OUTLINE:
+                    drawOutline(args, a, value);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Draws an image by working backwards from each screen pixel it might cover to the spot on
+     * the image that lands there.
+     */
+    private void drawImage(int[] image, int imageWidth, int imageHeight, float[] args, int a) {
+        float ma = args[a + RenderCommandList.IMAGE_A], mb = args[a + RenderCommandList.IMAGE_B];
+        float mc = args[a + RenderCommandList.IMAGE_C], md = args[a + RenderCommandList.IMAGE_D];
+        float me = args[a + RenderCommandList.IMAGE_E], mf = args[a + RenderCommandList.IMAGE_F];
+        float det = ma * me - mb * md;
+        if (Math.abs(det) < 1e-6f) {
+            return;     // Squashed flat: nothing to see
+        }
+        float srcLeft = args[a + RenderCommandList.IMAGE_SRC_LEFT];
+        float srcTop = args[a + RenderCommandList.IMAGE_SRC_TOP];
+        float srcWidth = args[a + RenderCommandList.IMAGE_SRC_RIGHT] - srcLeft;
+        float srcHeight = args[a + RenderCommandList.IMAGE_SRC_BOTTOM] - srcTop;
+        int alpha = (int) args[a + RenderCommandList.IMAGE_ALPHA];
+
+        // Screen pixels the image could possibly cover.
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 4; corner++) {
+            float u = corner & 1, v = corner >> 1;
+            float x = ma * u + mb * v + mc, y = md * u + me * v + mf;
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        int left = Math.max(0, (int) Math.floor(minX));
+        int top = Math.max(0, (int) Math.floor(minY));
+        int right = Math.min(mWidth, (int) Math.ceil(maxX));
+        int bottom = Math.min(mHeight, (int) Math.ceil(maxY));
+
+        // Inverse of the matrix, stepped along one pixel at a time.
+        float duDx = me / det, dvDx = -md / det;
+        for (int py = top; py < bottom; py++) {
+            float x = left + 0.5f - mc, y = py + 0.5f - mf;
+            float u = (me * x - mb * y) / det;
+            float v = (-md * x + ma * y) / det;
+            int row = py * mWidth;
+            for (int px = left; px < right; px++, u += duDx, v += dvDx) {
+                if (u < 0 || u >= 1 || v < 0 || v >= 1) {
+                    continue;
+                }
+                int tx = (int) ((srcLeft + u * srcWidth) * imageWidth);
+                int ty = (int) ((srcTop + v * srcHeight) * imageHeight);
+                tx = Math.max(0, Math.min(imageWidth - 1, tx));
+                ty = Math.max(0, Math.min(imageHeight - 1, ty));
+                blend(row + px, image[ty * imageWidth + tx], alpha);
+            }
+        }
+    }
+
+    private void drawOutline(float[] args, int a, int color) {
+        int left = Math.round(args[a + RenderCommandList.OUTLINE_LEFT]);
+        int top = Math.round(args[a + RenderCommandList.OUTLINE_TOP]);
+        int right = Math.round(args[a + RenderCommandList.OUTLINE_RIGHT]);
+        int bottom = Math.round(args[a + RenderCommandList.OUTLINE_BOTTOM]);
+        if (right <= left || bottom <= top) {
+            return;
+        }
+        fillRect(left, top, right, top + 1, color);
+        if (bottom - 1 > top) {
+            fillRect(left, bottom - 1, right, bottom, color);
+        }
+        fillRect(left, top + 1, left + 1, bottom - 1, color);
+        if (right - 1 > left) {
+            fillRect(right - 1, top + 1, right, bottom - 1, color);
+        }
+    }
+
+    private void fillRect(int left, int top, int right, int bottom, int color) {
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(mWidth, right);
+        bottom = Math.min(mHeight, bottom);
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                blend(y * mWidth + x, color, 255);
+            }
+        }
+    }
+
+    /**
+     * Draws one color over a pixel, letting the pixel show through wherever the color is
+     * transparent.
+     *
+     * @param alpha extra opacity to apply to the color, 0-255
+     */
+    private void blend(int index, int color, int alpha) {
+        int sa = (color >>> 24) * alpha / 255;
+        if (sa == 0) {
+            return;
+        }
+        if (sa == 255) {
+            mPixels[index] = color;
+            return;
+        }
+        int dst = mPixels[index];
+        int da = (dst >>> 24) * (255 - sa) / 255;   // How much of the pixel shows through
+        int outA = sa + da;
+        int r = (((color >> 16) & 0xff) * sa + ((dst >> 16) & 0xff) * da) / outA;
+        int g = (((color >> 8) & 0xff) * sa + ((dst >> 8) & 0xff) * da) / outA;
+        int b = ((color & 0xff) * sa + (dst & 0xff) * da) / outA;
+        mPixels[index] = (outA << 24) | (r << 16) | (g << 8) | b;
+    }
+}
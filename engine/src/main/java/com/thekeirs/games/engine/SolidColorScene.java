@@ -1,14 +1,12 @@
 package com.thekeirs.games.engine;
 
-import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Paint;
 
 /**
  * <h1>Gives your level a background scene that is all one solid color</h1>
  */
 public class SolidColorScene extends Scene {
-    private Paint mPaint;
+    private int mColor;
 
     /**
      * Creates a new SolidColorScene object with the specified color.
@@ -20,17 +18,28 @@ public class SolidColorScene extends Scene {
      * @param color_str a color string of the form "#f29833", for example from Google's color picker
      */
     public SolidColorScene(String color_str) {
-        mPaint = new Paint();
-        mPaint.setColor(Color.parseColor(color_str));
+        mColor = parseColor(color_str);
     }
 
     /**
-     * Called by the game engine to draw this background onto the screen each frame.
-     *
-     * @param canvas
+     * Reads "#rrggbb" and "#aarrggbb" colors ourselves, so a scene can be set up without
+     * Android; anything else (like "red") is left to Android.
      */
+    private static int parseColor(String color_str) {
+        int length = color_str.length();
+        if (color_str.startsWith("#") && (length == 7 || length == 9)) {
+            try {
+                long color = Long.parseLong(color_str.substring(1), 16);
+                return (length == 7) ? (int) (color | 0xff000000L) : (int) color;
+            } catch (NumberFormatException e) {
+                // Fall through and let Android complain about it.
+            }
+        }
+        return Color.parseColor(color_str);
+    }
+
     @Override
-    public void draw(Canvas canvas) {
-        canvas.drawRect(0, 0, canvas.getWidth(), canvas.getHeight(), mPaint);
+    public void writeCommands(RenderCommandList out, float width, float height) {
+        out.fill(mColor);
     }
 }
@@ -0,0 +1,438 @@
+package com.thekeirs.games.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>[internal] Uniform-grid spatial hash used as the collision broadphase</h1>
+ * <p>
+ *     The world is divided into square cells of a fixed size.  Every object in the grid is
+ *     listed in each cell its bounding box overlaps, so finding the objects near a rectangle
+ *     only has to look at the handful of cells under that rectangle instead of every object
+ *     in the level.  Cells are hashed by their integer coordinates, so objects that wander
+ *     off-screen still work; there is no fixed world boundary.
+ * </p>
+ * <p>
+ *     Objects that would cover a huge number of cells (a floor spanning the entire world with
+ *     a tiny cell size, for instance) are kept in a separate "oversize" list that every query
+ *     checks, so they don't bloat every cell they touch.
+ * </p>
+ */
+
+public final class SpatialGrid {
+    final private static int MAX_CELLS_PER_OBJECT = 64;
+    final private static int INITIAL_TABLE_SIZE = 256;
+    final private static int MAX_SPARE_CELLS = 64;
+
+    /**
+     * [internal] Bookkeeping for one object in the grid: which range of cells it currently
+     * occupies.  Stored on the {@link GameObject} so moving it doesn't need a map lookup.
+     * An object can only be in one grid at a time.
+     */
+    static final class Entry {
+        final GameObject obj;
+        final SpatialGrid grid;
+        int minX, minY, maxX, maxY;
+        int category, mask;             // Copied from obj so queries don't have to chase it
+        boolean oversize;
+        int index;                      // Where it is in mEntries
+        int oversizeIndex;              // Where it is in mOversize, if oversize
+
+        Entry(GameObject obj, SpatialGrid grid) {
+            this.obj = obj;
+            this.grid = grid;
+            this.category = obj.getCollisionCategory();
+            this.mask = obj.getCollisionMask();
+        }
+    }
+
+    private static final class Cell {
+        long key;
+        final ArrayList<Entry> entries = new ArrayList<>(4);
+
+        Cell(long key) {
+            this.key = key;
+        }
+    }
+
+    private float mCellSize;
+    private float mInvCellSize;
+    private Cell[] mTable = new Cell[INITIAL_TABLE_SIZE];
+    private int mCellCount;
+    private final ArrayList<Cell> mSpareCells = new ArrayList<>();  // Emptied cells, for reuse
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+    private final ArrayList<Entry> mOversize = new ArrayList<>();
+    private int mVersion;                   // Bumped whenever a query could give a different answer
+
+    /**
+     * Creates an empty grid.
+     *
+     * @param cellSize width and height of each grid cell in world units
+     */
+    public SpatialGrid(float cellSize) {
+        setCellSize(cellSize);
+    }
+
+    /**
+     * Changes the cell size, re-filing every object already in the grid.
+     *
+     * @param cellSize width and height of each grid cell in world units
+     */
+    public void setCellSize(float cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Grid cell size must be positive: " + cellSize);
+        }
+        mCellSize = cellSize;
+        mInvCellSize = 1.0f / cellSize;
+
+        List<Entry> entries = new ArrayList<>(mEntries);
+        clearCells();
+        for (Entry e : entries) {
+            file(e);
+        }
+    }
+
+    public float getCellSize() {
+        return mCellSize;
+    }
+
+    /**
+     * Gets how many cells have objects in them right now.
+     */
+    int getCellCount() {
+        return mCellCount;
+    }
+
+    /**
+     * Gets a number that changes whenever an object is added, removed, moved to different
+     * cells or given different collision layers.  While it stays the same, a query over the
+     * same area finds the same objects in the same order.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Adds an object to the grid based on its current collision bounds.  Adding an object that is
+     * already present just refreshes its position.
+     */
+    public void insert(GameObject obj) {
+        if (obj.gridEntry != null) {
+            if (obj.gridEntry.grid != this) {
+                throw new IllegalStateException(obj.name + " is already in another grid");
+            }
+            update(obj);
+            return;
+        }
+        Entry e = new Entry(obj, this);
+        obj.gridEntry = e;
+        e.index = mEntries.size();
+        mEntries.add(e);
+        file(e);
+    }
+
+    /**
+     * Removes an object from the grid.  Does nothing if the object isn't in the grid.
+     */
+    public void remove(GameObject obj) {
+        Entry e = obj.gridEntry;
+        if (e == null || e.grid != this) {
+            return;
+        }
+        unfile(e);
+        Entry last = mEntries.remove(mEntries.size() - 1);
+        if (last != e) {
+            last.index = e.index;
+            mEntries.set(e.index, last);
+        }
+        obj.gridEntry = null;
+    }
+
+    /**
+     * Checks whether an object is in this grid.
+     */
+    public boolean contains(GameObject obj) {
+        return obj.gridEntry != null && obj.gridEntry.grid == this;
+    }
+
+    /**
+     * Re-files an object after it has moved or changed size.  This is cheap when the object
+     * is still over the same cells, which is the common case from one frame to the next.
+     */
+    public void update(GameObject obj) {
+        Entry e = obj.gridEntry;
+        if (e == null || e.grid != this) {
+            return;
+        }
+        WorldRect r = obj.getCollisionBounds();
+        int minX = cellOf(r.left), minY = cellOf(r.top);
+        int maxX = cellOf(r.right), maxY = cellOf(r.bottom);
+        if (minX == e.minX && minY == e.minY && maxX == e.maxX && maxY == e.maxY) {
+            return;
+        }
+        unfile(e);
+        file(e);
+    }
+
+    /**
+     * Picks up a change to an object's collision category or mask.
+     */
+    public void updateFilter(GameObject obj) {
+        Entry e = obj.gridEntry;
+        if (e != null && e.grid == this) {
+            mVersion++;
+            e.category = obj.getCollisionCategory();
+            e.mask = obj.getCollisionMask();
+        }
+    }
+
+    /**
+     * Re-files every object in the grid.  Used once per frame to pick up objects whose
+     * {@code boundingRect} was modified directly rather than through the {@link GameObject}
+     * movement methods.
+     */
+    public void updateAll() {
+        for (int i = 0; i < mEntries.size(); i++) {
+            update(mEntries.get(i).obj);
+        }
+    }
+
+    /**
+     * Removes every object from the grid.
+     */
+    public void clear() {
+        for (Entry e : mEntries) {
+            e.obj.gridEntry = null;
+        }
+        mEntries.clear();
+        clearCells();
+    }
+
+    /**
+     * Finds every object whose cells overlap the given area.  Each object is reported once.
+     * Callers still need to do their own exact overlap test, since sharing a cell does not
+     * mean two boxes actually touch.
+     *
+     * @param area    region to search, in world units
+     * @param exclude an object to leave out of the results (usually the one asking), or null
+     * @param out     list that the found objects are appended to
+     */
+    public void query(WorldRect area, GameObject exclude, List<GameObject> out) {
+        query(area, exclude, ~0, ~0, out);
+    }
+
+    /**
+     * Finds every object whose cells overlap the given area and whose collision layers
+     * agree with the given ones: the object's category must be in {@code mask}, and
+     * {@code category} must be in the object's mask.  Objects that fail that check are
+     * skipped with a couple of bitwise ANDs, before any geometry is looked at.
+     *
+     * @param area     region to search, in world units
+     * @param exclude  an object to leave out of the results (usually the one asking), or null
+     * @param category collision category bits of the object asking
+     * @param mask     collision mask bits of the object asking
+     * @param out      list that the found objects are appended to
+     */
+    public void query(WorldRect area, GameObject exclude, int category, int mask,
+                      List<GameObject> out) {
+        for (int i = 0; i < mOversize.size(); i++) {
+            Entry e = mOversize.get(i);
+            if (e.obj != exclude && accepts(e, category, mask)) {
+                out.add(e.obj);
+            }
+        }
+
+        int minX = cellOf(area.left), minY = cellOf(area.top);
+        int maxX = cellOf(area.right), maxY = cellOf(area.bottom);
+        if (countCells(minX, minY, maxX, maxY) > MAX_CELLS_PER_OBJECT * 4) {
+            // Asking about an enormous area; cheaper to just look at everyone.
+            for (int i = 0; i < mEntries.size(); i++) {
+                Entry e = mEntries.get(i);
+                if (!e.oversize && e.obj != exclude && accepts(e, category, mask)) {
+                    out.add(e.obj);
+                }
+            }
+            return;
+        }
+
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                Cell cell = findCell(key(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.entries.size(); i++) {
+                    Entry e = cell.entries.get(i);
+                    // An object spanning several cells is only reported from the first cell
+                    // shared by it and the query area, so no per-query "seen" set is needed.
+                    if (cx == Math.max(minX, e.minX) && cy == Math.max(minY, e.minY)
+                            && e.obj != exclude && accepts(e, category, mask)) {
+                        out.add(e.obj);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean accepts(Entry e, int category, int mask) {
+        return (e.category & mask) != 0 && (category & e.mask) != 0;
+    }
+
+    private void file(Entry e) {
+        mVersion++;
+        WorldRect r = e.obj.getCollisionBounds();
+        e.minX = cellOf(r.left);
+        e.minY = cellOf(r.top);
+        e.maxX = cellOf(r.right);
+        e.maxY = cellOf(r.bottom);
+        e.oversize = countCells(e.minX, e.minY, e.maxX, e.maxY) > MAX_CELLS_PER_OBJECT;
+        if (e.oversize) {
+            e.oversizeIndex = mOversize.size();
+            mOversize.add(e);
+            return;
+        }
+        for (int cx = e.minX; cx <= e.maxX; cx++) {
+            for (int cy = e.minY; cy <= e.maxY; cy++) {
+                obtainCell(key(cx, cy)).entries.add(e);
+            }
+        }
+    }
+
+    private void unfile(Entry e) {
+        mVersion++;
+        if (e.oversize) {
+            Entry last = mOversize.remove(mOversize.size() - 1);
+            if (last != e) {
+                last.oversizeIndex = e.oversizeIndex;
+                mOversize.set(e.oversizeIndex, last);
+            }
+            return;
+        }
+        for (int cx = e.minX; cx <= e.maxX; cx++) {
+            for (int cy = e.minY; cy <= e.maxY; cy++) {
+                removeFromCell(key(cx, cy), e);
+            }
+        }
+    }
+
+    /**
+     * Counts the cells in a range, or something over {@link Integer#MAX_VALUE} if there are
+     * more.  Each side can be up to 2^32 cells long, so the sides are checked on their own
+     * before multiplying, which could overflow even a long.
+     */
+    private static long countCells(int minX, int minY, int maxX, int maxY) {
+        long across = (long) maxX - minX + 1, down = (long) maxY - minY + 1;
+        if (across > Integer.MAX_VALUE || down > Integer.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return across * down;
+    }
+
+    private int cellOf(float coord) {
+        return (int) Math.floor(coord * mInvCellSize);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private Cell findCell(long key) {
+        int mask = mTable.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            Cell c = mTable[i];
+            if (c == null || c.key == key) {
+                return c;
+            }
+        }
+    }
+
+    private Cell obtainCell(long key) {
+        int mask = mTable.length - 1;
+        int i = slot(key, mask);
+        for (; mTable[i] != null; i = (i + 1) & mask) {
+            if (mTable[i].key == key) {
+                return mTable[i];
+            }
+        }
+        Cell c;
+        if (mSpareCells.isEmpty()) {
+            c = new Cell(key);
+        } else {
+            c = mSpareCells.remove(mSpareCells.size() - 1);
+            c.key = key;
+        }
+        mTable[i] = c;
+        if (++mCellCount * 2 > mTable.length) {
+            grow();
+        }
+        return c;
+    }
+
+    /**
+     * Takes an entry out of a cell, and the cell out of the table once it is empty, so the
+     * table doesn't fill up with cells that objects have wandered away from.
+     */
+    private void removeFromCell(long key, Entry e) {
+        int mask = mTable.length - 1;
+        for (int i = slot(key, mask); mTable[i] != null; i = (i + 1) & mask) {
+            Cell c = mTable[i];
+            if (c.key == key) {
+                c.entries.remove(e);
+                if (c.entries.isEmpty()) {
+                    deleteSlot(i);
+                    if (mSpareCells.size() < MAX_SPARE_CELLS) {
+                        mSpareCells.add(c);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Empties one slot of the table.  Any cell further along the same run that could have
+     * gone in the slot is shifted back into it, and so on down the run, so a search never
+     * stops early at the gap.
+     */
+    private void deleteSlot(int hole) {
+        int mask = mTable.length - 1;
+        for (int i = (hole + 1) & mask; mTable[i] != null; i = (i + 1) & mask) {
+            int home = slot(mTable[i].key, mask);
+            // The cell can move back unless its home slot is after the hole, up to where it is.
+            boolean stays = (hole <= i) ? (hole < home && home <= i) : (hole < home || home <= i);
+            if (!stays) {
+                mTable[hole] = mTable[i];
+                hole = i;
+            }
+        }
+        mTable[hole] = null;
+        mCellCount--;
+    }
+
+    private void grow() {
+        Cell[] old = mTable;
+        mTable = new Cell[old.length * 2];
+        int mask = mTable.length - 1;
+        for (Cell c : old) {
+            if (c != null) {
+                int i = slot(c.key, mask);
+                while (mTable[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                mTable[i] = c;
+            }
+        }
+    }
+
+    private void clearCells() {
+        mVersion++;
+        mTable = new Cell[INITIAL_TABLE_SIZE];
+        mCellCount = 0;
+        mOversize.clear();
+    }
+}
@@ -1,12 +1,5 @@
 package com.thekeirs.games.engine;
 
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Matrix;
-import android.graphics.Paint;
-import android.graphics.Path;
-import android.graphics.RectF;
-
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -32,11 +25,10 @@ public class Sprite extends GameObject {
     final static String DEFAULT_STATE_NAME = "default";
     protected String mMotionState = DEFAULT_STATE_NAME;
     protected Map<String, MotionSequence> mMotionSequences = new HashMap<>();
+    private final List<String> mMotionStateOrder = new ArrayList<>();  // In the order added
     private long timeInThisMotionState;
-    private Matrix mMatrix;
     private boolean mFlipX;
     private boolean mFlipY;
-    private float mRotation;
 
     /**
      * Returns a Sprite game object with the given name and location/size on the screen.
@@ -50,7 +42,7 @@ public class Sprite extends GameObject {
      * @param height height of the sprite
      */
     public Sprite(String name, float centerX, float centerY, float width, float height) {
-        super(name, new RectF(centerX - width / 2, centerY - height / 2,
+        super(name, new WorldRect(centerX - width / 2, centerY - height / 2,
                 centerX + width / 2, centerY + height / 2));
     }
 
@@ -66,7 +58,7 @@ public class Sprite extends GameObject {
      * @param image_id   the ID of the image to display (eg {@code R.id.my_sprite})
      */
     public Sprite(String name, float centerX, float centerY, float width, float height, int image_id) {
-        super(name, new RectF(centerX - width / 2, centerY - height / 2,
+        super(name, new WorldRect(centerX - width / 2, centerY - height / 2,
                 centerX + width / 2, centerY + height / 2));
         setDefaultImage(image_id);
     }
@@ -82,11 +74,52 @@ public class Sprite extends GameObject {
     }
 
     public void setDefaultImage(int id) {
-        mMotionSequences.put(DEFAULT_STATE_NAME, new MotionSequence(id));
+        putMotionSequence(DEFAULT_STATE_NAME, new MotionSequence(id));
+    }
+
+    /**
+     * Gives this sprite a collision shape that fits the visible part of its default image,
+     * with at most {@value CollisionHulls#DEFAULT_MAX_VERTICES} corners.  See
+     * {@link CollisionHulls}.
+     */
+    public void setHullShape() {
+        setHullShape(CollisionHulls.DEFAULT_MAX_VERTICES);
+    }
+
+    /**
+     * Gives this sprite a collision shape that fits the visible part of its default image.
+     * Fewer corners are cheaper to check but fit the image less closely.
+     *
+     * @param maxVertices most corners the shape may have, at least 3
+     */
+    public void setHullShape(int maxVertices) {
+        MotionSequence seq = mMotionSequences.get(DEFAULT_STATE_NAME);
+        if (seq == null) {
+            throw new IllegalStateException("Sprite " + name + " has no image to fit a hull to");
+        }
+        setComplexShape(CollisionHulls.get(seq.resourceIds.get(0), maxVertices));
     }
 
     public void setMotionSequence(String motionStateName, int frameDuration, int... ids) {
-        mMotionSequences.put(motionStateName, new MotionSequence(frameDuration, ids));
+        putMotionSequence(motionStateName, new MotionSequence(frameDuration, ids));
+    }
+
+    private void putMotionSequence(String motionStateName, MotionSequence sequence) {
+        if (mMotionSequences.put(motionStateName, sequence) == null) {
+            mMotionStateOrder.add(motionStateName);
+        }
+    }
+
+    /**
+     * [internal] Numbers the current motion state by the order the states were first given
+     * a sequence in, so it can be reported as a plain number.  The default image counts as a
+     * state too.
+     *
+     * @return 0 for the first state, 1 for the second and so on, or -1 if the current state
+     *         has no sequence
+     */
+    int getMotionIndex() {
+        return mMotionStateOrder.indexOf(mMotionState);
     }
 
 
@@ -122,34 +155,41 @@ public class Sprite extends GameObject {
         super.onFling(x, y, dx, dy);
     }
 
+    @Override
+    void integrate(int msec) {
+        super.integrate(msec);
+        timeInThisMotionState += msec;
+    }
+
     /**
-     * Called once per screen refresh to do whatever modifications are desired to the sprite's
-     * location, size, etc.
-     * <p>
-     * By default, sprites have no behavior - they just sit in one place.
-     * Override this method if desired to make your sprite move.
-     *
-     * @param msec number of milliseconds since the last screen update.
+     * Sprites stay awake while they are playing an animation, so it doesn't freeze part way
+     * through.
      */
     @Override
-    public void update(int msec) {
-        super.update(msec);
-        timeInThisMotionState += msec;
+    protected boolean canSleep() {
+        MotionSequence ms = mMotionSequences.get(mMotionState);
+        return super.canSleep() && (ms == null || ms.resourceIds.size() <= 1);
+    }
+
+    @Override
+    protected void writeSnapshot(RenderSnapshot snapshot) {
+        int imageId = getCurrentImage();
+        if (imageId != 0) {
+            int flags = (mFlipX ? RenderSnapshot.FLIP_X : 0) | (mFlipY ? RenderSnapshot.FLIP_Y : 0)
+                    | (debugMode ? RenderSnapshot.OUTLINE : 0);
+            snapshot.addImage(this, imageId, flags);
+        }
     }
 
     /**
-     * Called by the Game Engine to draw this sprite onto the screen every frame.  Do not call
-     * this routine yourself.
+     * Works out which image of the current motion sequence is showing.
      *
-     * @param c       Canvas object provided by the operating system
-     * @param xScale  horizontal scale factor between world and screen coordinates
-     * @param yScale  horizontal scale factor between world and screen coordinates
+     * @return the image ID, or 0 if there's nothing to show
      */
-    public void draw(Canvas c, float xScale, float yScale) {
+    private int getCurrentImage() {
         MotionSequence ms = mMotionSequences.get(mMotionState);
         if (ms == null || ms.resourceIds.isEmpty()) {
-            // No image has been requested, or someone put is in a bad state.  Draw nothing.
-            return;
+            return 0;
         }
 
         // Loop through resourceIDs, spending specified time on each frame.
@@ -161,60 +201,9 @@ public class Sprite extends GameObject {
         if (resourceID == -1) {
             setMotionState(DEFAULT_STATE_NAME);
             // Call recursively to make sure everything gets checked again.
-            draw(c, xScale, yScale);
-            return;
-        }
-        int imageId = ms.resourceIds.get(frameIndex);
-        Bitmap image = Images.get(imageId);
-
-        // Log.d("gameobject", "Drawing " + name + " at " + x + ", " + y);
-
-        if (mMatrix == null) {
-            mMatrix = new Matrix();
-        }
-        mMatrix.setTranslate(-image.getWidth() / 2.0f, -image.getHeight() / 2.0f);
-        if (mFlipX) {
-            mMatrix.postScale(-1.0f, 1.0f);
-        }
-        if (mFlipY) {
-            mMatrix.postScale(1.0f, -1.0f);
-        }
-        if (mRotation != 0.0f) {
-            mMatrix.postRotate(mRotation);
-        }
-        mMatrix.postScale(boundingRect.width() * xScale / image.getWidth(), boundingRect.height() * yScale / image.getHeight());
-        mMatrix.postTranslate(boundingRect.centerX() * xScale, boundingRect.centerY() * yScale);
-
-        // RectF screenRect = new RectF(boundingRect.left * xScale, boundingRect.top * yScale, boundingRect.right * xScale, boundingRect.bottom * yScale);
-        if (this.debugMode) {
-            c.drawRect(boundingRect.left * xScale, boundingRect.top * yScale, boundingRect.right * xScale, boundingRect.bottom * yScale, new Paint());
-        }
-        c.drawBitmap(image, mMatrix, null);
-
-        if (this.debugMode) {
-            Paint red = new Paint();
-            red.setARGB(200, 255, 0, 0);
-            red.setStrokeWidth((float) 5.0);
-            Paint purple = new Paint();
-            purple.setARGB(200, 200, 0, 200);
-            purple.setStrokeWidth((float) 3.0);
-            purple.setStyle(Paint.Style.STROKE);
-            if (this.complexShape != null) {
-                Path collisionPath = new Path();
-                collisionPath.reset();
-                collisionPath.moveTo((float) (this.getX() + this.complexShape.verticies[0].x) * xScale,
-                        (float) (this.getY() + this.complexShape.verticies[0].y) * yScale);
-                for (int i = 1; i < this.complexShape.verticies.length; i++) {
-                    collisionPath.lineTo((float) (this.getX() + this.complexShape.verticies[i].x) * xScale,
-                            (float) (this.getY() + this.complexShape.verticies[i].y) * yScale);
-                }
-                collisionPath.close();
-                c.drawPath(collisionPath, purple);
-                for (CollisionVertex vert : this.complexShape.verticies) {
-                    c.drawPoint((float) (this.getX() + vert.x) * xScale, (float) (this.getY() + vert.y) * yScale, red);
-                }
-            }
+            return getCurrentImage();
         }
+        return resourceID;
     }
 
     private class MotionSequence {
@@ -254,31 +243,4 @@ public class Sprite extends GameObject {
         mFlipY = flip;
     }
 
-    /**
-     * Rotates the sprite this many degrees
-     *
-     * @param degrees angle to rotate the sprite image by  (clockwise from its default image)
-     */
-    public void setRotation(float degrees) {
-        mRotation = degrees;
-    }
-
-    /**
-     * Rotates the sprite by an additional amount on top of its current rotation
-     *
-     * @param degrees number of additional degrees to rotate the sprite
-     */
-    public void addRotation(float degrees) {
-        mRotation += degrees;
-    }
-
-    /**
-     * Query the rotation angle of the sprite.
-     *
-     * @return number of degrees clockwise the sprite is rotate from its default orientation.
-     */
-    public float getRotation() {
-        return mRotation;
-    }
-
 }
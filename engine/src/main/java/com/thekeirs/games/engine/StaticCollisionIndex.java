@@ -0,0 +1,216 @@
+package com.thekeirs.games.engine;
+
+import java.util.List;
+
+/**
+ * <h1>[internal] Read-only index of the solid objects that never move</h1>
+ * <p>
+ *     Floors, walls and platforms are set up once per level and then stay put, so there's no
+ *     point keeping them in a structure that is built for objects coming and going.  This
+ *     index is built in one go from the level's static solids and never changed afterwards;
+ *     the {@link GameObjectManager} throws it away and builds a new one if a static solid is
+ *     added or removed.
+ * </p>
+ * <p>
+ *     The objects are filed into a uniform grid covering just the area they occupy, packed
+ *     "compressed row" style: one array of object indexes sorted by cell, and one array of
+ *     where each cell's run starts.  Each object's bounds, collision category and mask sit
+ *     in flat arrays alongside, so a query can reject candidates without touching the
+ *     objects themselves.  Objects spanning a huge number of cells go in a separate list
+ *     that every query checks, like in {@link SpatialGrid}.
+ * </p>
+ */
+
+public final class StaticCollisionIndex {
+    final private static int MAX_CELLS_PER_OBJECT = 64;
+    final private static int MAX_GRID_CELLS = 1 << 16;
+
+    private final GameObject[] mObjects;
+    private final float[] mBounds;      // left, top, right, bottom for each object
+    private final int[] mCategory;
+    private final int[] mMask;
+    private final int[] mFirstCellX;    // Each object's first grid column and row
+    private final int[] mFirstCellY;
+    private final int[] mOversize;      // Objects that aren't filed in the grid
+
+    private final float mInvCellSize;
+    private final int mOriginX, mOriginY;   // Cell coordinates of the grid's first cell
+    private final int mColumns, mRows;
+    private final int[] mCellStart;     // mCellItems[mCellStart[c] .. mCellStart[c + 1]] are in c
+    private final int[] mCellItems;
+
+    /**
+     * Builds the index.
+     *
+     * @param objects  the static solid objects
+     * @param cellSize width and height of each grid cell in world units.  Made larger if the
+     *                 objects are spread out so far that the grid would be huge.
+     */
+    public StaticCollisionIndex(List<GameObject> objects, float cellSize) {
+        int n = objects.size();
+        mObjects = objects.toArray(new GameObject[n]);
+        mBounds = new float[n * 4];
+        mCategory = new int[n];
+        mMask = new int[n];
+        mFirstCellX = new int[n];
+        mFirstCellY = new int[n];
+
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            GameObject obj = mObjects[i];
+            WorldRect r = obj.getCollisionBounds();
+            mBounds[4 * i] = r.left;
+            mBounds[4 * i + 1] = r.top;
+            mBounds[4 * i + 2] = r.right;
+            mBounds[4 * i + 3] = r.bottom;
+            mCategory[i] = obj.getCollisionCategory();
+            mMask[i] = obj.getCollisionMask();
+            left = Math.min(left, r.left);
+            top = Math.min(top, r.top);
+            right = Math.max(right, r.right);
+            bottom = Math.max(bottom, r.bottom);
+        }
+
+        // Grow the cells until the grid over everything is a reasonable size.
+        if (n > 0) {
+            while ((long) (Math.floor(right / cellSize) - Math.floor(left / cellSize) + 1)
+                    * (long) (Math.floor(bottom / cellSize) - Math.floor(top / cellSize) + 1)
+                    > MAX_GRID_CELLS) {
+                cellSize *= 2;
+            }
+        }
+        mInvCellSize = 1.0f / cellSize;
+
+        // First pass: which objects go in the grid, and how far it has to reach.
+        boolean[] oversize = new boolean[n];
+        int oversizeCount = 0;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            int x0 = cellOf(mBounds[4 * i]), y0 = cellOf(mBounds[4 * i + 1]);
+            int x1 = cellOf(mBounds[4 * i + 2]), y1 = cellOf(mBounds[4 * i + 3]);
+            if ((long) (x1 - x0 + 1) * (y1 - y0 + 1) > MAX_CELLS_PER_OBJECT) {
+                oversize[i] = true;
+                oversizeCount++;
+                continue;
+            }
+            minX = Math.min(minX, x0);
+            minY = Math.min(minY, y0);
+            maxX = Math.max(maxX, x1);
+            maxY = Math.max(maxY, y1);
+        }
+        mOversize = new int[oversizeCount];
+        if (oversizeCount == n) {
+            mOriginX = mOriginY = 0;
+            mColumns = mRows = 0;
+            mCellStart = new int[1];
+            mCellItems = new int[0];
+            for (int i = 0, o = 0; i < n; i++) {
+                mOversize[o++] = i;
+            }
+            return;
+        }
+        mOriginX = minX;
+        mOriginY = minY;
+        mColumns = maxX - minX + 1;
+        mRows = maxY - minY + 1;
+
+        // Second pass: count the objects in each cell, then turn the counts into start offsets.
+        mCellStart = new int[mColumns * mRows + 1];
+        for (int i = 0, o = 0; i < n; i++) {
+            if (oversize[i]) {
+                mOversize[o++] = i;
+                continue;
+            }
+            int x0 = cellOf(mBounds[4 * i]) - mOriginX, y0 = cellOf(mBounds[4 * i + 1]) - mOriginY;
+            int x1 = cellOf(mBounds[4 * i + 2]) - mOriginX, y1 = cellOf(mBounds[4 * i + 3]) - mOriginY;
+            mFirstCellX[i] = x0;
+            mFirstCellY[i] = y0;
+            for (int cy = y0; cy <= y1; cy++) {
+                for (int cx = x0; cx <= x1; cx++) {
+                    mCellStart[cy * mColumns + cx + 1]++;
+                }
+            }
+        }
+        for (int c = 0; c < mColumns * mRows; c++) {
+            mCellStart[c + 1] += mCellStart[c];
+        }
+
+        // Third pass: drop each object into its cells.
+        mCellItems = new int[mCellStart[mColumns * mRows]];
+        int[] fill = new int[mColumns * mRows];
+        for (int i = 0; i < n; i++) {
+            if (oversize[i]) {
+                continue;
+            }
+            int x1 = cellOf(mBounds[4 * i + 2]) - mOriginX, y1 = cellOf(mBounds[4 * i + 3]) - mOriginY;
+            for (int cy = mFirstCellY[i]; cy <= y1; cy++) {
+                for (int cx = mFirstCellX[i]; cx <= x1; cx++) {
+                    int c = cy * mColumns + cx;
+                    mCellItems[mCellStart[c] + fill[c]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks whether the index has no objects in it at all.
+     */
+    public boolean isEmpty() {
+        return mObjects.length == 0;
+    }
+
+    /**
+     * Finds every object whose bounds overlap the given area and whose collision layers
+     * agree with the given ones, the same way as
+     * {@link SpatialGrid#query(WorldRect, GameObject, int, int, List)}.  Unlike the grid, the
+     * bounds are checked here, so everything reported really does overlap (or touch) the area.
+     *
+     * @param area     region to search, in world units
+     * @param exclude  an object to leave out of the results (usually the one asking), or null
+     * @param category collision category bits of the object asking
+     * @param mask     collision mask bits of the object asking
+     * @param out      list that the found objects are appended to
+     */
+    public void query(WorldRect area, GameObject exclude, int category, int mask,
+                      List<GameObject> out) {
+        for (int o = 0; o < mOversize.length; o++) {
+            check(mOversize[o], area, exclude, category, mask, out);
+        }
+        if (mColumns == 0) {
+            return;
+        }
+
+        int minX = Math.max(cellOf(area.left) - mOriginX, 0);
+        int minY = Math.max(cellOf(area.top) - mOriginY, 0);
+        int maxX = Math.min(cellOf(area.right) - mOriginX, mColumns - 1);
+        int maxY = Math.min(cellOf(area.bottom) - mOriginY, mRows - 1);
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                int c = cy * mColumns + cx;
+                for (int k = mCellStart[c]; k < mCellStart[c + 1]; k++) {
+                    int i = mCellItems[k];
+                    // Only report an object from the first cell it shares with the area.
+                    if (cx == Math.max(minX, mFirstCellX[i]) && cy == Math.max(minY, mFirstCellY[i])) {
+                        check(i, area, exclude, category, mask, out);
+                    }
+                }
+            }
+        }
+    }
+
+    private void check(int i, WorldRect area, GameObject exclude, int category, int mask,
+                       List<GameObject> out) {
+        if ((mCategory[i] & mask) != 0 && (category & mMask[i]) != 0
+                && mBounds[4 * i] <= area.right && area.left <= mBounds[4 * i + 2]
+                && mBounds[4 * i + 1] <= area.bottom && area.top <= mBounds[4 * i + 3]
+                && mObjects[i] != exclude) {
+            out.add(mObjects[i]);
+        }
+    }
+
+    private int cellOf(float coord) {
+        return (int) Math.floor(coord * mInvCellSize);
+    }
+}
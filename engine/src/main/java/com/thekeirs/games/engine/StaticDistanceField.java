@@ -0,0 +1,189 @@
+package com.thekeirs.games.engine;
+
+import java.util.List;
+
+/**
+ * <h1>[internal] Signed distance field baked from a level's static solids</h1>
+ * <p>
+ *     A grid of sample points covers the static solids.  Each point stores how far it is
+ *     from the nearest solid (negative inside one), which way is straight away from it, and
+ *     which solid that is.  Finding out how close a point is to any of the static scenery is
+ *     then a single bilinear lookup, however many solids there are and however complex
+ *     their shapes; see {@link GameObject#setUsesDistanceField(boolean)}.
+ * </p>
+ * <p>
+ *     Distances are only worked out within a band of {@value #BAND_CELLS} cells around each
+ *     solid, and count as the band's width anywhere further out.  Like
+ *     {@link StaticCollisionIndex} the field never changes once built, and is thrown away
+ *     and baked again if the static solids change.  Baking looks at every sample point near
+ *     every solid, so it belongs in level setup rather than in the middle of play.
+ * </p>
+ */
+
+public final class StaticDistanceField {
+    final private static int BAND_CELLS = 8;
+    final private static int MAX_POINTS = 1 << 20;
+
+    private final float mCellSize;
+    private final float mInvCellSize;
+    private final float mOriginX, mOriginY;
+    private final int mColumns, mRows;      // Sample points across and down
+    private final float mFar;               // Distance reported beyond the band
+
+    // Per sample point (column + row * mColumns): distance, then a unit gradient pointing
+    // away from the nearest solid: d0, gx0, gy0, d1, gx1, gy1, ...
+    private final float[] mField;
+    private final int[] mNearest;           // Index into mObjects of the nearest solid, or -1
+    private final GameObject[] mObjects;
+
+    /**
+     * Bakes a distance field for the given solids.
+     *
+     * @param objects  the static solids
+     * @param cellSize spacing of the sample points in world units; doubled as often as
+     *                 needed to keep the grid to a sensible size
+     */
+    public StaticDistanceField(List<GameObject> objects, float cellSize) {
+        mObjects = objects.toArray(new GameObject[objects.size()]);
+
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (GameObject obj : mObjects) {
+            WorldRect r = obj.getCollisionBounds();
+            minX = Math.min(minX, r.left);
+            minY = Math.min(minY, r.top);
+            maxX = Math.max(maxX, r.right);
+            maxY = Math.max(maxY, r.bottom);
+        }
+
+        int columns = 0, rows = 0;
+        if (mObjects.length > 0) {
+            while (true) {
+                float band = BAND_CELLS * cellSize;
+                columns = (int) Math.ceil((maxX - minX + 2 * band) / cellSize) + 1;
+                rows = (int) Math.ceil((maxY - minY + 2 * band) / cellSize) + 1;
+                if ((long) columns * rows <= MAX_POINTS) {
+                    break;
+                }
+                cellSize *= 2;
+            }
+        }
+        mCellSize = cellSize;
+        mInvCellSize = 1.0f / cellSize;
+        mFar = BAND_CELLS * cellSize;
+        mOriginX = minX - mFar;
+        mOriginY = minY - mFar;
+        mColumns = columns;
+        mRows = rows;
+        mField = new float[3 * columns * rows];
+        mNearest = new int[columns * rows];
+
+        for (int p = 0; p < mNearest.length; p++) {
+            mField[3 * p] = mFar;
+            mNearest[p] = -1;
+        }
+        for (int o = 0; o < mObjects.length; o++) {
+            bake(o);
+        }
+        calculateGradients();
+    }
+
+    /**
+     * Checks whether there's anything in the field.
+     */
+    public boolean isEmpty() {
+        return mObjects.length == 0;
+    }
+
+    /**
+     * Looks up the distance from a point to the nearest static solid.
+     *
+     * @param gradient if not null, gets the unit direction straight away from the nearest
+     *                 solid at {@code gradient[0]}, {@code gradient[1]}; zero if there is
+     *                 no solid within range
+     * @return distance in world units, negative inside a solid
+     */
+    public float sample(float x, float y, float[] gradient) {
+        float fx = (x - mOriginX) * mInvCellSize, fy = (y - mOriginY) * mInvCellSize;
+        int cx = (int) Math.floor(fx), cy = (int) Math.floor(fy);
+        if (cx < 0 || cy < 0 || cx >= mColumns - 1 || cy >= mRows - 1) {
+            if (gradient != null) {
+                gradient[0] = 0;
+                gradient[1] = 0;
+            }
+            return mFar;
+        }
+        float tx = fx - cx, ty = fy - cy;
+        int p00 = 3 * (cy * mColumns + cx), p10 = p00 + 3;
+        int p01 = p00 + 3 * mColumns, p11 = p01 + 3;
+        float w00 = (1 - tx) * (1 - ty), w10 = tx * (1 - ty), w01 = (1 - tx) * ty, w11 = tx * ty;
+
+        if (gradient != null) {
+            float gx = w00 * mField[p00 + 1] + w10 * mField[p10 + 1]
+                    + w01 * mField[p01 + 1] + w11 * mField[p11 + 1];
+            float gy = w00 * mField[p00 + 2] + w10 * mField[p10 + 2]
+                    + w01 * mField[p01 + 2] + w11 * mField[p11 + 2];
+            float len = (float) Math.sqrt(gx * gx + gy * gy);
+            gradient[0] = (len > 0) ? gx / len : 0;
+            gradient[1] = (len > 0) ? gy / len : 0;
+        }
+        return w00 * mField[p00] + w10 * mField[p10] + w01 * mField[p01] + w11 * mField[p11];
+    }
+
+    /**
+     * Finds the static solid nearest to a point, as of when the field was baked.
+     *
+     * @return the solid, or null if there is none within range
+     */
+    public GameObject nearestSolid(float x, float y) {
+        int cx = Math.round((x - mOriginX) * mInvCellSize);
+        int cy = Math.round((y - mOriginY) * mInvCellSize);
+        if (cx < 0 || cy < 0 || cx >= mColumns || cy >= mRows) {
+            return null;
+        }
+        int nearest = mNearest[cy * mColumns + cx];
+        return (nearest >= 0) ? mObjects[nearest] : null;
+    }
+
+    /**
+     * Works out the distance to one solid at every sample point within the band around it,
+     * keeping it wherever it's the nearest so far.
+     */
+    private void bake(int o) {
+        ConvexShape shape = mObjects[o].getWorldShape();
+        WorldRect r = mObjects[o].getCollisionBounds();
+        int minX = Math.max(0, (int) Math.floor((r.left - mFar - mOriginX) * mInvCellSize));
+        int minY = Math.max(0, (int) Math.floor((r.top - mFar - mOriginY) * mInvCellSize));
+        int maxX = Math.min(mColumns - 1, (int) Math.ceil((r.right + mFar - mOriginX) * mInvCellSize));
+        int maxY = Math.min(mRows - 1, (int) Math.ceil((r.bottom + mFar - mOriginY) * mInvCellSize));
+        for (int cy = minY; cy <= maxY; cy++) {
+            float y = mOriginY + cy * mCellSize;
+            for (int cx = minX; cx <= maxX; cx++) {
+                float d = shape.signedDistance(mOriginX + cx * mCellSize, y);
+                int p = cy * mColumns + cx;
+                if (d < mField[3 * p]) {
+                    mField[3 * p] = d;
+                    mNearest[p] = o;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills in the gradient at every sample point from the distances around it.
+     */
+    private void calculateGradients() {
+        for (int cy = 0; cy < mRows; cy++) {
+            for (int cx = 0; cx < mColumns; cx++) {
+                int p = cy * mColumns + cx;
+                int left = (cx > 0) ? p - 1 : p, right = (cx < mColumns - 1) ? p + 1 : p;
+                int up = (cy > 0) ? p - mColumns : p, down = (cy < mRows - 1) ? p + mColumns : p;
+                float gx = mField[3 * right] - mField[3 * left];
+                float gy = mField[3 * down] - mField[3 * up];
+                float len = (float) Math.sqrt(gx * gx + gy * gy);
+                mField[3 * p + 1] = (len > 0) ? gx / len : 0;
+                mField[3 * p + 2] = (len > 0) ? gy / len : 0;
+            }
+        }
+    }
+}
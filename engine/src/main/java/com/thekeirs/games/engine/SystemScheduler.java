@@ -0,0 +1,180 @@
+package com.thekeirs.games.engine;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1>[internal] Works out which {@link GameSystem}s can run at the same time, and runs them</h1>
+ * <p>
+ *     The systems in each phase are sorted into waves.  A system goes in the wave after the
+ *     latest one holding an earlier-added system it conflicts with, so no two systems in a
+ *     wave conflict, and any two that do conflict run in the order they were added.  Each
+ *     wave waits for the one before it, and the systems within a wave run side by side on
+ *     the job system's worker threads.
+ * </p>
+ * <p>
+ *     Every system is taken to read the game world, and one that calls
+ *     {@link GameSystem#writesWorld()} conflicts with all the others, so it always has a wave
+ *     to itself and runs on the game engine thread.  While a wave of several systems is
+ *     running, the manager refuses to move, add or rearrange objects, so a system that forgot
+ *     to say it writes the world fails straight away instead of corrupting the others'
+ *     lookups.
+ * </p>
+ * <p>
+ *     The waves are worked out once, the first update after systems are added, which is
+ *     normally the first update of a level.  The tasks that run the systems are made then too
+ *     and reused every update after.
+ * </p>
+ */
+
+final class SystemScheduler {
+    private final EngineContext mContext;
+    private final ArrayList<GameSystem> mSystems = new ArrayList<>();
+    private Wave[][] mWaves;                // By phase, then in running order; null if out of date
+    private volatile boolean mSharing;      // Running a wave of more than one system
+
+    /**
+     * Runs one system, with the game's context.
+     */
+    private final class SystemTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final GameSystem system;
+        int millis;
+
+        SystemTask(GameSystem system) {
+            this.system = system;
+        }
+
+        @Override
+        protected void compute() {
+            EngineContext previous = EngineContext.bind(mContext);
+            try {
+                system.update(millis);
+            } finally {
+                EngineContext.bind(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs the systems in one wave side by side.
+     */
+    private static final class Wave extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final SystemTask[] tasks;
+
+        Wave(SystemTask[] tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected void compute() {
+            invokeAll(tasks);
+        }
+    }
+
+    SystemScheduler(EngineContext context) {
+        mContext = context;
+    }
+
+    void add(GameSystem system) {
+        mSystems.add(system);
+        mWaves = null;
+    }
+
+    void clear() {
+        mSystems.clear();
+        mWaves = null;
+    }
+
+    boolean isEmpty() {
+        return mSystems.isEmpty();
+    }
+
+    /**
+     * Checks whether several systems are running at once, so none of them may change the
+     * world.  This is true even when there's only one processor and they take turns, so a
+     * missing {@link GameSystem#writesWorld()} shows up on every device.
+     */
+    boolean isSharingWorld() {
+        return mSharing;
+    }
+
+    /**
+     * Runs every system in the given phase.
+     */
+    void run(GameSystem.Phase phase, int millis) {
+        if (mSystems.isEmpty()) {
+            return;
+        }
+        if (mWaves == null) {
+            build();
+        }
+        boolean parallel = Jobs.Pool.POOL.getParallelism() > 1;
+        for (Wave wave : mWaves[phase.ordinal()]) {
+            SystemTask[] tasks = wave.tasks;
+            mSharing = tasks.length > 1;
+            try {
+                if (tasks.length == 1 || !parallel) {
+                    // Already on the game engine thread with its context; just call them.
+                    for (SystemTask task : tasks) {
+                        task.system.update(millis);
+                    }
+                    continue;
+                }
+                for (SystemTask task : tasks) {
+                    task.reinitialize();
+                    task.millis = millis;
+                }
+                wave.reinitialize();
+                if (ForkJoinTask.inForkJoinPool()) {
+                    wave.invoke();
+                } else {
+                    Jobs.Pool.POOL.invoke(wave);
+                }
+            } finally {
+                mSharing = false;
+            }
+        }
+    }
+
+    /**
+     * Sorts the systems into waves.
+     */
+    private void build() {
+        GameSystem.Phase[] phases = GameSystem.Phase.values();
+        mWaves = new Wave[phases.length][];
+        int[] depth = new int[mSystems.size()];
+        for (GameSystem.Phase phase : phases) {
+            int waveCount = 0;
+            for (int i = 0; i < mSystems.size(); i++) {
+                GameSystem system = mSystems.get(i);
+                if (system.getPhase() != phase) {
+                    continue;
+                }
+                depth[i] = 0;
+                for (int j = 0; j < i; j++) {
+                    GameSystem earlier = mSystems.get(j);
+                    if (earlier.getPhase() == phase && system.conflictsWith(earlier)) {
+                        depth[i] = Math.max(depth[i], depth[j] + 1);
+                    }
+                }
+                waveCount = Math.max(waveCount, depth[i] + 1);
+            }
+
+            Wave[] waves = new Wave[waveCount];
+            ArrayList<SystemTask> tasks = new ArrayList<>();
+            for (int w = 0; w < waveCount; w++) {
+                tasks.clear();
+                for (int i = 0; i < mSystems.size(); i++) {
+                    if (mSystems.get(i).getPhase() == phase && depth[i] == w) {
+                        tasks.add(new SystemTask(mSystems.get(i)));
+                    }
+                }
+                waves[w] = new Wave(tasks.toArray(new SystemTask[tasks.size()]));
+            }
+            mWaves[phase.ordinal()] = waves;
+        }
+    }
+}
@@ -1,9 +1,5 @@
 package com.thekeirs.games.engine;
 
-import android.graphics.Canvas;
-import android.graphics.Paint;
-import android.graphics.RectF;
-
 /**
  * Created by Holden Matheson on 3/1/2017.
  *
@@ -12,19 +8,16 @@ import android.graphics.RectF;
 
 public class Text extends GameObject {
     private String text = "";
-    private Paint paint = new Paint();
-    public Text(String name, RectF extent) {
+    private int color = 0xff000000;     // ARGB
+    private float size = 100;
+    public Text(String name, WorldRect extent) {
         super(name, extent);
-        this.paint.setARGB(255, 0, 0, 0);
-        this.paint.setTextSize(100);
     }
 
     public Text(String name, String text, float centerX, float centerY, float width, float height) {
-        super(name, new RectF(centerX - width / 2, centerY - height / 2,
+        super(name, new WorldRect(centerX - width / 2, centerY - height / 2,
                 centerX + width / 2, centerY + height / 2));
         this.text = text;
-        this.paint.setARGB(255, 0, 0, 0);
-        this.paint.setTextSize(100);
     }
 
     public void setText(String text){
@@ -42,24 +35,24 @@ public class Text extends GameObject {
         g = Integer.parseInt(RGB.substring(2,4), 16);
         b = Integer.parseInt(RGB.substring(4,6), 16);
 
-        paint.setARGB(this.paint.getAlpha(), r, g, b);
+        color = (color & 0xff000000) | (r << 16) | (g << 8) | b;
     }
 
     /**
      * Sets the transparency of the test
      * @param num integer from 0 (invisible) to 255 (solid)
      */
-    public void setTransparency(int num) { this.paint.setAlpha(num);}
+    public void setTransparency(int num) { this.color = (color & 0x00ffffff) | ((num & 0xff) << 24);}
 
     /**
      * Sets the text size
      * @param scale Size of the text (default is 100)
      */
-    public void setSize(float scale) { this.paint.setTextSize(scale);}
+    public void setSize(float scale) { this.size = scale;}
 
-    public void copyPaint(Text textToCopy){ this.paint = textToCopy.paint;}
+    public void copyPaint(Text textToCopy){ this.color = textToCopy.color; this.size = textToCopy.size;}
     @Override
-    public void draw(Canvas c, float xScale, float yScale) {
-        c.drawText(this.text, boundingRect.left, boundingRect.bottom, paint);
+    protected void writeSnapshot(RenderSnapshot snapshot) {
+        snapshot.addText(this, text, color, size);
     }
 }
@@ -0,0 +1,417 @@
+package com.thekeirs.games.engine;
+
+import java.util.ArrayList;
+
+/**
+ * <h1>[internal] Keeps track of which objects are inside which trigger volumes</h1>
+ * <p>
+ *     A trigger is an object that doesn't block anything, but wants to know when other
+ *     objects come into or leave its area (see {@link GameObject#setTrigger(boolean)}).
+ *     Triggers are kept in their own {@link SpatialGrid}.
+ * </p>
+ * <p>
+ *     Only objects that moved during a step are looked at.  At the end of the step, each
+ *     moved object is checked against the triggers under it (or, for a moved trigger, against
+ *     the objects under it), and the pairs found are compared with the ones from the step
+ *     before.  A pair with neither object moving can't have changed, so it is left alone.
+ *     Callbacks are only made when something actually goes in or out.
+ * </p>
+ * <p>
+ *     Every object is also checked against the world boundary when it moves, which stands
+ *     in for a trigger covering the whole world: objects get
+ *     {@link GameObject#onTriggerExit} when they go fully off the edge of the world and
+ *     {@link GameObject#onTriggerEnter} when they come back.
+ * </p>
+ * <p>
+ *     Pairs are kept in an open-addressed table of primitive arrays keyed by the two object
+ *     ids, like {@link ContactManager}.
+ * </p>
+ */
+
+public final class TriggerManager {
+    final private static long EMPTY = 0;
+    final private static long DELETED = -1;
+    final private static int INITIAL_CAPACITY = 64;
+
+    final private static byte ENTER = 0;
+    final private static byte EXIT = 1;
+    final private static byte LEFT_GAME = 2;    // Second object was removed; only tell the first
+
+    private final SpatialGrid mGrid;
+    private final DynamicAabbTree mTree;
+    private final GameObject mWorld;
+    private int mTriggerCount;
+
+    private long[] mKeys = new long[INITIAL_CAPACITY];
+    private GameObject[] mTrigger = new GameObject[INITIAL_CAPACITY];
+    private GameObject[] mOther = new GameObject[INITIAL_CAPACITY];
+    private boolean[] mInside = new boolean[INITIAL_CAPACITY];      // Found inside this step
+    private boolean[] mWasInside = new boolean[INITIAL_CAPACITY];   // Inside last step
+    private int mSize;          // Live entries
+    private int mDeleted;       // Tombstones
+    private final ArrayList<GameObject> mEvicted = new ArrayList<>();  // Left since the last sweep
+
+    // Objects that moved this step, each listed once: their triggerStep is set to mStep
+    private final ArrayList<GameObject> mMoved = new ArrayList<>();
+    private final ArrayList<GameObject> mFound = new ArrayList<>();
+    private int mStep = 1;
+
+    // Events waiting to be delivered: (mEventA[i], mEventB[i]) with type mEventType[i]
+    private GameObject[] mEventA = new GameObject[INITIAL_CAPACITY];
+    private GameObject[] mEventB = new GameObject[INITIAL_CAPACITY];
+    private byte[] mEventType = new byte[INITIAL_CAPACITY];
+    private int mEventCount;
+
+    /**
+     * Creates a trigger manager.
+     *
+     * @param tree     the manager's query tree, holding every object
+     * @param world    stand-in trigger for the world boundary, passed to the callbacks
+     * @param cellSize cell size for the grid of triggers
+     */
+    public TriggerManager(DynamicAabbTree tree, GameObject world, float cellSize) {
+        mTree = tree;
+        mWorld = world;
+        mGrid = new SpatialGrid(cellSize);
+    }
+
+    /**
+     * Returns the object that stands for the world boundary in trigger callbacks.
+     */
+    public GameObject getWorld() {
+        return mWorld;
+    }
+
+    /**
+     * Changes the cell size of the grid of triggers.
+     */
+    public void setCellSize(float cellSize) {
+        mGrid.setCellSize(cellSize);
+    }
+
+    /**
+     * Starts watching an object that has just been added to the game.  It doesn't get a
+     * callback for being inside the world, only for leaving it.
+     */
+    public void add(GameObject obj) {
+        obj.insideWorld = WorldRect.intersects(obj.boundingRect, mWorld.boundingRect);
+        if (obj.isTrigger()) {
+            addTrigger(obj);
+        }
+        onMoved(obj);
+    }
+
+    /**
+     * Puts an object in the grid of triggers after it has been made into one.
+     */
+    public void addTrigger(GameObject obj) {
+        if (!mGrid.contains(obj)) {
+            mGrid.insert(obj);
+            mTriggerCount++;
+        }
+        onMoved(obj);
+    }
+
+    /**
+     * Takes an object out of the grid of triggers.  The objects inside it are told they
+     * have left it at the end of the step.
+     */
+    public void removeTrigger(GameObject obj) {
+        if (mGrid.contains(obj)) {
+            mGrid.remove(obj);
+            mTriggerCount--;
+        }
+        onMoved(obj);
+    }
+
+    /**
+     * Notes that an object has moved, so it gets checked at the end of the step.
+     */
+    public void onMoved(GameObject obj) {
+        if (obj.triggerStep == mStep) {
+            return;
+        }
+        obj.triggerStep = mStep;
+        mMoved.add(obj);
+        if (obj.isTrigger()) {
+            mGrid.update(obj);
+        }
+    }
+
+    /**
+     * Forgets an object that is leaving the game.  The other side of each pair it was in gets
+     * {@link GameObject#onTriggerExit} at the end of the step; the leaving object doesn't
+     * hear about it.  As in {@link ContactManager#evict}, the object's pairs are swept out at
+     * the end of the step, in one pass for everything that left.
+     */
+    public void evict(GameObject obj) {
+        if (mGrid.contains(obj)) {
+            mGrid.remove(obj);
+            mTriggerCount--;
+        }
+        if (mSize == 0 || obj.triggersEvicted) {
+            return;
+        }
+        obj.triggersEvicted = true;
+        mEvicted.add(obj);
+    }
+
+    /**
+     * Checks the objects that moved during this step against the triggers and the world
+     * boundary, and delivers the callbacks for everything that went in or out.
+     */
+    public void endStep() {
+        sweepEvicted();
+        for (int m = 0; m < mMoved.size(); m++) {
+            GameObject obj = mMoved.get(m);
+            if (obj.treeProxy == DynamicAabbTree.NULL_NODE) {
+                continue;   // No longer in the game
+            }
+            if (obj.isTrigger()) {
+                mTree.queryRegion(obj.getCollisionBounds(), mFound);
+                for (int i = 0; i < mFound.size(); i++) {
+                    GameObject other = mFound.get(i);
+                    if (!other.isTrigger() && obj.canCollideWith(other) && obj.overlaps(other)) {
+                        // Not mInside[insert(...)]: that picks the array before insert() can grow it.
+                        int slot = insert(obj, other);
+                        mInside[slot] = true;
+                    }
+                }
+                mFound.clear();
+            } else {
+                if (mTriggerCount > 0) {
+                    mGrid.query(obj.getCollisionBounds(), obj, obj.getCollisionCategory(),
+                            obj.getCollisionMask(), mFound);
+                    for (int i = 0; i < mFound.size(); i++) {
+                        GameObject trigger = mFound.get(i);
+                        if (trigger.overlaps(obj)) {
+                            int slot = insert(trigger, obj);
+                            mInside[slot] = true;
+                        }
+                    }
+                    mFound.clear();
+                }
+                boolean inside = WorldRect.intersects(obj.boundingRect, mWorld.boundingRect);
+                if (inside != obj.insideWorld) {
+                    obj.insideWorld = inside;
+                    addEvent(mWorld, obj, inside ? ENTER : EXIT);
+                }
+            }
+        }
+
+        for (int i = 0; i < mKeys.length; i++) {
+            long k = mKeys[i];
+            if (k == EMPTY || k == DELETED) {
+                continue;
+            }
+            boolean inside = mInside[i];
+            if (!inside && mTrigger[i].triggerStep != mStep && mOther[i].triggerStep != mStep
+                    && mTrigger[i].isTrigger()) {
+                inside = mWasInside[i];     // Neither one moved, so nothing changed
+            }
+            if (inside != mWasInside[i]) {
+                addEvent(mTrigger[i], mOther[i], inside ? ENTER : EXIT);
+            }
+            if (inside) {
+                mWasInside[i] = true;
+                mInside[i] = false;
+            } else {
+                deleteSlot(i);
+            }
+        }
+        if (mDeleted * 4 > mKeys.length) {
+            rehash(mKeys.length);
+        }
+        mMoved.clear();
+        mStep++;
+
+        // Deliver last, so callbacks that move, add or remove objects don't disturb the table.
+        int count = mEventCount;
+        mEventCount = 0;
+        for (int e = 0; e < count; e++) {
+            GameObject a = mEventA[e], b = mEventB[e];
+            mEventA[e] = null;
+            mEventB[e] = null;
+            switch (mEventType[e]) {
+                case ENTER:
+                    a.onTriggerEnter(b);
+                    b.onTriggerEnter(a);
+                    break;
+                case EXIT:
+                    a.onTriggerExit(b);
+                    b.onTriggerExit(a);
+                    break;
+                default:
+                    if (!a.removalRequested()) {
+                        a.onTriggerExit(b);
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Deletes every pair involving an evicted object, and tells the other object of each pair
+     * that was inside.  Runs before any new pairs are found, so an object that was evicted and
+     * then added back starts out fresh.
+     */
+    private void sweepEvicted() {
+        if (mEvicted.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < mKeys.length; i++) {
+            long k = mKeys[i];
+            if (k == EMPTY || k == DELETED) {
+                continue;
+            }
+            GameObject a = mTrigger[i], b = mOther[i];
+            if (!a.triggersEvicted && !b.triggersEvicted) {
+                continue;
+            }
+            if (mWasInside[i] && a.triggersEvicted != b.triggersEvicted) {
+                GameObject left = a.triggersEvicted ? a : b;
+                addEvent(left == a ? b : a, left, LEFT_GAME);
+            }
+            deleteSlot(i);
+        }
+        for (int i = 0; i < mEvicted.size(); i++) {
+            mEvicted.get(i).triggersEvicted = false;
+        }
+        mEvicted.clear();
+    }
+
+    /**
+     * Drops every trigger, pair and undelivered event.
+     */
+    public void clear() {
+        mGrid.clear();
+        mTriggerCount = 0;
+        mKeys = new long[INITIAL_CAPACITY];
+        mTrigger = new GameObject[INITIAL_CAPACITY];
+        mOther = new GameObject[INITIAL_CAPACITY];
+        mInside = new boolean[INITIAL_CAPACITY];
+        mWasInside = new boolean[INITIAL_CAPACITY];
+        mSize = 0;
+        mDeleted = 0;
+        for (int i = 0; i < mEvicted.size(); i++) {
+            mEvicted.get(i).triggersEvicted = false;
+        }
+        mEvicted.clear();
+        mMoved.clear();
+        for (int e = 0; e < mEventCount; e++) {
+            mEventA[e] = null;
+            mEventB[e] = null;
+        }
+        mEventCount = 0;
+    }
+
+    private void addEvent(GameObject a, GameObject b, byte type) {
+        if (mEventCount == mEventType.length) {
+            int capacity = mEventType.length * 2;
+            GameObject[] newA = new GameObject[capacity], newB = new GameObject[capacity];
+            byte[] newType = new byte[capacity];
+            System.arraycopy(mEventA, 0, newA, 0, mEventCount);
+            System.arraycopy(mEventB, 0, newB, 0, mEventCount);
+            System.arraycopy(mEventType, 0, newType, 0, mEventCount);
+            mEventA = newA;
+            mEventB = newB;
+            mEventType = newType;
+        }
+        mEventA[mEventCount] = a;
+        mEventB[mEventCount] = b;
+        mEventType[mEventCount] = type;
+        mEventCount++;
+    }
+
+    private int insert(GameObject trigger, GameObject other) {
+        long key = key(trigger, other);
+        int mask = mKeys.length - 1;
+        int slot = -1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long k = mKeys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == DELETED && slot < 0) {
+                slot = i;
+            } else if (k == EMPTY) {
+                if (slot < 0) {
+                    slot = i;
+                } else {
+                    mDeleted--;
+                }
+                break;
+            }
+        }
+        mKeys[slot] = key;
+        mTrigger[slot] = trigger;
+        mOther[slot] = other;
+        mInside[slot] = false;
+        mWasInside[slot] = false;
+        mSize++;
+        if ((mSize + mDeleted) * 2 > mKeys.length) {
+            rehash(mSize * 4 > mKeys.length ? mKeys.length * 2 : mKeys.length);
+            return find(key);
+        }
+        return slot;
+    }
+
+    private void deleteSlot(int i) {
+        mKeys[i] = DELETED;
+        mTrigger[i] = null;
+        mOther[i] = null;
+        mSize--;
+        mDeleted++;
+    }
+
+    private int find(long key) {
+        int mask = mKeys.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            long k = mKeys[i];
+            if (k == key) {
+                return i;
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = mKeys;
+        GameObject[] oldTrigger = mTrigger, oldOther = mOther;
+        boolean[] oldInside = mInside, oldWas = mWasInside;
+        mKeys = new long[capacity];
+        mTrigger = new GameObject[capacity];
+        mOther = new GameObject[capacity];
+        mInside = new boolean[capacity];
+        mWasInside = new boolean[capacity];
+        mDeleted = 0;
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long k = oldKeys[j];
+            if (k == EMPTY || k == DELETED) {
+                continue;
+            }
+            int i = hash(k) & mask;
+            while (mKeys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            mKeys[i] = k;
+            mTrigger[i] = oldTrigger[j];
+            mOther[i] = oldOther[j];
+            mInside[i] = oldInside[j];
+            mWasInside[i] = oldWas[j];
+        }
+    }
+
+    private static long key(GameObject a, GameObject b) {
+        long ia = a.getId(), ib = b.getId();
+        return (ia < ib) ? (ia << 32) | ib : (ib << 32) | ia;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,39 @@
+package com.thekeirs.games.engine;
+
+/**
+ * An invisible area that finds out when other objects move into it or out of it, like a
+ * finish line, a pit or a pickup zone.  Override {@link #onTriggerEnter(GameObject)} and
+ * {@link #onTriggerExit(GameObject)}, or just check for the trigger in those methods of the
+ * objects that move into it.
+ * <p>
+ *     Any other game object can be made into a trigger too, with
+ *     {@link GameObject#setTrigger(boolean)}.
+ * </p>
+ */
+
+public class TriggerVolume extends GameObject {
+    /**
+     * Creates a trigger volume covering the given area.
+     *
+     * @param name   name of this trigger
+     * @param extent area it covers, in world units
+     */
+    public TriggerVolume(String name, WorldRect extent) {
+        super(name, extent);
+        setTrigger(true);
+    }
+
+    /**
+     * Creates a trigger volume with the given center and size.
+     *
+     * @param name    name of this trigger
+     * @param centerX the horizontal center of the area in world coordinates
+     * @param centerY the vertical center of the area in world coordinates
+     * @param width   width of the area
+     * @param height  height of the area
+     */
+    public TriggerVolume(String name, float centerX, float centerY, float width, float height) {
+        this(name, new WorldRect(centerX - width / 2, centerY - height / 2,
+                centerX + width / 2, centerY + height / 2));
+    }
+}
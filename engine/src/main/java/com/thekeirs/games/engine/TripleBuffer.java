@@ -0,0 +1,70 @@
+package com.thekeirs.games.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>[internal] Hands the latest of a stream of objects from one thread to another without
+ * locking</h1>
+ * <p>
+ *     There are three buffers.  The writer fills its back buffer and publishes it, swapping it
+ *     with the one in the middle; the reader swaps the middle one for its front buffer whenever
+ *     something new has been published.  Neither side ever waits for the other, and the reader
+ *     always gets the most recent complete buffer.  Buffers the reader never got round to are
+ *     simply overwritten.
+ * </p>
+ * <p>
+ *     Exactly one thread may write and exactly one may read.
+ * </p>
+ */
+
+final class TripleBuffer<T> {
+    final private static int INDEX_MASK = 3;
+    final private static int FRESH = 4;     // Set when the middle buffer hasn't been read yet
+
+    private final Object[] mBuffers;
+    private final AtomicInteger mMiddle = new AtomicInteger(1);
+    private int mBack = 0;                  // Writer's buffer
+    private int mFront = 2;                 // Reader's buffer
+
+    TripleBuffer(T first, T second, T third) {
+        mBuffers = new Object[] {first, second, third};
+    }
+
+    /**
+     * Gets the buffer the writer should fill next.  Writer thread only.
+     */
+    @SuppressWarnings("unchecked")
+    T back() {
+        return (T) mBuffers[mBack];
+    }
+
+    /**
+     * Makes the back buffer available to the reader and takes over a different one to fill.
+     * Writer thread only.
+     */
+    void publish() {
+        mBack = mMiddle.getAndSet(mBack | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * Picks up the most recently published buffer, if there is one the reader hasn't seen.
+     * Reader thread only.
+     *
+     * @return true if {@link #front()} changed
+     */
+    boolean swapFront() {
+        if ((mMiddle.get() & FRESH) == 0) {
+            return false;
+        }
+        mFront = mMiddle.getAndSet(mFront) & INDEX_MASK;
+        return true;
+    }
+
+    /**
+     * Gets the buffer the reader is working from.  Reader thread only.
+     */
+    @SuppressWarnings("unchecked")
+    T front() {
+        return (T) mBuffers[mFront];
+    }
+}
@@ -0,0 +1,259 @@
+package com.thekeirs.games.engine;
+
+import java.nio.FloatBuffer;
+
+/**
+ * <h1>Steps many copies of a level together, for training game-playing programs</h1>
+ * <p>
+ *     A training program plays hundreds of games at once: each step it chooses an action for
+ *     every world, advances them all, and looks at what happened.  A WorldBatch does exactly
+ *     that on top of a {@link WorldHost}.  Actions go in and observations come out through
+ *     plain {@link FloatBuffer}s the caller owns - usually direct buffers, so a program
+ *     outside Java can share them without copying - and nothing is allocated per step.
+ * </p>
+ * <pre>
+ *     final int JUMP = 96;    // Whatever key code the level's onButtonDown() jumps on
+ *     WorldBatch batch = new WorldBatch(host, new String[] {"player", "zombie"},
+ *             new int[] {JUMP}, 4);
+ *     FloatBuffer actions = ByteBuffer.allocateDirect(batch.getActionSize() * 4)
+ *             .order(ByteOrder.nativeOrder()).asFloatBuffer();
+ *     FloatBuffer observations = ByteBuffer.allocateDirect(batch.getObservationSize() * 4)
+ *             .order(ByteOrder.nativeOrder()).asFloatBuffer();
+ *     batch.reset(observations);
+ *     while (training) {
+ *         ... fill in actions ...
+ *         batch.step(actions, observations);
+ *     }
+ * </pre>
+ * <p>
+ *     <b>Actions</b> are {@value #ACTION_STRIDE} floats per world, world 0 first, laid out as
+ *     the {@code ACTION_} offsets say.  All zeros means "do nothing".  The buttons are a bit
+ *     mask: bit {@code i} held down means the {@code i}th key code given to the constructor is
+ *     held down, and presses and releases are delivered whenever a bit changes.
+ * </p>
+ * <p>
+ *     <b>Observations</b> are {@value #OBSERVATION_STRIDE} floats for each watched object in
+ *     each world, world 0 first and the objects in the order they were named, laid out as the
+ *     {@code OBS_} offsets say.  An object that doesn't exist (yet, or any more) reads as
+ *     all zeros, with state {@link #STATE_ABSENT}.
+ * </p>
+ * <p>
+ *     A sprite's motion state, such as "walking" or "jumping", is reported as a number:
+ *     0 for the first state it was given a sequence for (usually its default image), 1 for
+ *     the next, and so on.  Every world runs the same level, so the numbers mean the same
+ *     thing in each.  Objects that aren't sprites, and sprites in a state with no sequence,
+ *     report -1.
+ * </p>
+ * <p>
+ *     Buffers are read and written by absolute index starting at 0, up to their limits; their
+ *     positions are left alone.
+ * </p>
+ */
+
+public final class WorldBatch {
+    final public static int ACTION_TAP = 0;        // Non-zero to tap the screen this step
+    final public static int ACTION_TAP_X = 1;      // Where to tap, in world units
+    final public static int ACTION_TAP_Y = 2;
+    final public static int ACTION_LEFT_X = 3;     // Thumbsticks, -1.0 to 1.0
+    final public static int ACTION_LEFT_Y = 4;
+    final public static int ACTION_RIGHT_X = 5;
+    final public static int ACTION_RIGHT_Y = 6;
+    final public static int ACTION_BUTTONS = 7;    // Bit mask of buttons held down
+    final public static int ACTION_STRIDE = 8;
+
+    final public static int OBS_X = 0;
+    final public static int OBS_Y = 1;
+    final public static int OBS_DX = 2;
+    final public static int OBS_DY = 3;
+    final public static int OBS_STATE = 4;         // One of the STATE_ values
+    final public static int OBS_MOTION = 5;        // Sprite's motion state number, or -1
+    final public static int OBSERVATION_STRIDE = 6;
+
+    final public static int STATE_ABSENT = 0;
+    final public static int STATE_AWAKE = 1;
+    final public static int STATE_SLEEPING = 2;
+
+    final private static int MAX_BUTTONS = 24;     // Whole numbers stay exact in a float up to 2^24
+
+    private final WorldHost mHost;
+    private final String[] mObjectNames;
+    private final int[] mKeyCodes;
+    private final int mUpdatesPerStep;
+    private final int[] mButtonsDown;               // Per world, as of the last step
+    private final WorldHost.StepHook mHook;
+
+    // The buffers for the step in progress.
+    private FloatBuffer mActions;
+    private FloatBuffer mObservations;
+
+    /**
+     * @param host           the worlds to step; the batch takes charge of stepping them
+     * @param objectNames    names of the objects to report on in every world
+     * @param keyCodes       the key codes the action bit mask stands for, as the level's
+     *                       {@link GameLevel#onButtonDown(int)} sees them; at most 24
+     * @param updatesPerStep how many updates each step runs, with the same action held
+     */
+    public WorldBatch(WorldHost host, String[] objectNames, int[] keyCodes, int updatesPerStep) {
+        if (keyCodes.length > MAX_BUTTONS) {
+            throw new IllegalArgumentException("At most " + MAX_BUTTONS + " buttons: " + keyCodes.length);
+        }
+        if (updatesPerStep <= 0) {
+            throw new IllegalArgumentException("Need at least one update per step: " + updatesPerStep);
+        }
+        mHost = host;
+        mObjectNames = objectNames.clone();
+        mKeyCodes = keyCodes.clone();
+        mUpdatesPerStep = updatesPerStep;
+        mButtonsDown = new int[host.getWorldCount()];
+        mHook = new WorldHost.StepHook() {
+            @Override
+            public void beforeStep(int world) {
+                if (mActions != null) {
+                    applyActions(world, mActions);
+                }
+            }
+
+            @Override
+            public void afterStep(int world) {
+                writeObservations(world, mObservations);
+            }
+        };
+    }
+
+    public int getWorldCount() {
+        return mHost.getWorldCount();
+    }
+
+    /**
+     * Gets how many floats the actions buffer needs.
+     */
+    public int getActionSize() {
+        return mHost.getWorldCount() * ACTION_STRIDE;
+    }
+
+    /**
+     * Gets how many floats the observations buffer needs.
+     */
+    public int getObservationSize() {
+        return mHost.getWorldCount() * mObjectNames.length * OBSERVATION_STRIDE;
+    }
+
+    /**
+     * Starts every world over with a new level, runs its first update so the level is set up,
+     * and reports where everything starts out.
+     *
+     * @param observations where to write the observations
+     */
+    public void reset(FloatBuffer observations) {
+        checkSize(observations, getObservationSize(), "observations");
+        for (int world = 0; world < mHost.getWorldCount(); world++) {
+            restart(world);
+        }
+        run(null, observations, 1);
+    }
+
+    /**
+     * Starts one world over with a new level, runs its first update so the level is set up,
+     * and writes its part of the observations.  The other worlds are left alone.
+     *
+     * @param world        number of the world, from 0 up
+     * @param observations where to write the observations
+     */
+    public void reset(int world, FloatBuffer observations) {
+        checkSize(observations, getObservationSize(), "observations");
+        restart(world);
+        mHost.getWorld(world).step();
+        writeObservations(world, observations);
+    }
+
+    /**
+     * Applies one action to each world, runs every world forward, and reports where
+     * everything ended up.
+     *
+     * @param actions      the action for each world
+     * @param observations where to write the observations
+     */
+    public void step(FloatBuffer actions, FloatBuffer observations) {
+        checkSize(actions, getActionSize(), "actions");
+        checkSize(observations, getObservationSize(), "observations");
+        run(actions, observations, mUpdatesPerStep);
+    }
+
+    private void run(FloatBuffer actions, FloatBuffer observations, int updates) {
+        mActions = actions;
+        mObservations = observations;
+        mHost.setStepHook(mHook);
+        try {
+            mHost.step(updates);
+        } finally {
+            mHost.setStepHook(null);
+            mActions = null;
+            mObservations = null;
+        }
+    }
+
+    private void restart(int world) {
+        HeadlessRunner runner = mHost.getWorld(world);
+        for (int i = 0; i < mKeyCodes.length; i++) {
+            if ((mButtonsDown[world] & (1 << i)) != 0) {
+                runner.releaseButton(mKeyCodes[i]);
+            }
+        }
+        mButtonsDown[world] = 0;
+        runner.setSticks(0, 0, 0, 0);
+        mHost.restart(world);
+    }
+
+    private void applyActions(int world, FloatBuffer actions) {
+        HeadlessRunner runner = mHost.getWorld(world);
+        int a = world * ACTION_STRIDE;
+        runner.setSticks(actions.get(a + ACTION_LEFT_X), actions.get(a + ACTION_LEFT_Y),
+                actions.get(a + ACTION_RIGHT_X), actions.get(a + ACTION_RIGHT_Y));
+
+        int buttons = (int) actions.get(a + ACTION_BUTTONS);
+        int changed = buttons ^ mButtonsDown[world];
+        for (int i = 0; changed != 0 && i < mKeyCodes.length; i++) {
+            int bit = 1 << i;
+            if ((changed & bit) != 0) {
+                if ((buttons & bit) != 0) {
+                    runner.pressButton(mKeyCodes[i]);
+                } else {
+                    runner.releaseButton(mKeyCodes[i]);
+                }
+            }
+        }
+        mButtonsDown[world] = buttons;
+
+        if (actions.get(a + ACTION_TAP) != 0) {
+            runner.tap(actions.get(a + ACTION_TAP_X), actions.get(a + ACTION_TAP_Y));
+        }
+    }
+
+    private void writeObservations(int world, FloatBuffer observations) {
+        GameObjectManager manager = mHost.getWorld(world).getManager();
+        int o = world * mObjectNames.length * OBSERVATION_STRIDE;
+        for (String name : mObjectNames) {
+            GameObject obj = manager.getObjectByName(name);
+            if (obj == null) {
+                for (int i = 0; i < OBSERVATION_STRIDE; i++) {
+                    observations.put(o + i, 0);
+                }
+            } else {
+                observations.put(o + OBS_X, obj.getX());
+                observations.put(o + OBS_Y, obj.getY());
+                observations.put(o + OBS_DX, obj.getdX());
+                observations.put(o + OBS_DY, obj.getdY());
+                observations.put(o + OBS_STATE, obj.isSleeping() ? STATE_SLEEPING : STATE_AWAKE);
+                observations.put(o + OBS_MOTION,
+                        (obj instanceof Sprite) ? ((Sprite) obj).getMotionIndex() : -1);
+            }
+            o += OBSERVATION_STRIDE;
+        }
+    }
+
+    private static void checkSize(FloatBuffer buffer, int size, String what) {
+        if (buffer.limit() < size) {
+            throw new IllegalArgumentException("Need room for " + size + " " + what + ", got " + buffer.limit());
+        }
+    }
+}
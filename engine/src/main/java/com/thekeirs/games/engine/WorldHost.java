@@ -0,0 +1,229 @@
+package com.thekeirs.games.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>Runs many copies of a game side by side</h1>
+ * <p>
+ *     Each world is a game level running in its own {@link HeadlessRunner} with its own
+ *     {@link EngineContext}, so worlds never see each other's objects or random numbers.  The
+ *     worlds are updated by a fixed pool of threads, one per processor by default, however many
+ *     worlds there are: hundreds of worlds are fine.  This is handy for trying a level out with
+ *     lots of different random seeds at once, or for training a game-playing program.
+ * </p>
+ * <pre>
+ *     WorldHost host = new WorldHost(256, 1234L, new WorldHost.LevelFactory() {
+ *         public GameLevel create(int world) {
+ *             return new ZombieLevel();
+ *         }
+ *     });
+ *     host.step(600);                         // Ten seconds of game time in every world
+ *     GameObject zombie = host.getWorld(17).getManager().getObjectByName("zombie");
+ *     host.shutdown();
+ * </pre>
+ * <p>
+ *     World number {@code i} is seeded with {@code seed + i}, so running the same worlds with
+ *     the same input gives the same results every time, no matter how the updates happen to
+ *     be spread over the threads.  Images and collision hulls are loaded once and shared by
+ *     every world.
+ * </p>
+ * <p>
+ *     Only touch the worlds (to read their objects or give them input) between calls to
+ *     {@link #step}, never from another thread while a step is running.
+ * </p>
+ */
+
+public final class WorldHost {
+    /**
+     * Creates the level each world starts with.
+     */
+    public interface LevelFactory {
+        /**
+         * @param world number of the world the level is for, from 0 up
+         * @return a new level; every world needs its own
+         */
+        GameLevel create(int world);
+    }
+
+    /**
+     * [internal] Extra work to do for each world just before and just after its updates, on
+     * whichever thread is updating it.
+     */
+    interface StepHook {
+        void beforeStep(int world);
+
+        void afterStep(int world);
+    }
+
+    final private static int DEFAULT_UPDATE_MILLIS = 16;
+
+    private final HeadlessRunner[] mWorlds;
+    private final LevelFactory mFactory;
+    private final ExecutorService mPool;
+    private final List<Callable<Void>> mTasks;
+    private final AtomicInteger mNextWorld = new AtomicInteger();
+    private int mUpdates;
+    private StepHook mHook;
+
+    /**
+     * Creates the worlds, with one thread per processor to run them and 16 milliseconds per
+     * update.
+     *
+     * @param worldCount how many worlds to run
+     * @param seed       random number seed for world 0; each following world gets the next one
+     * @param factory    creates the level each world starts with
+     */
+    public WorldHost(int worldCount, long seed, LevelFactory factory) {
+        this(worldCount, seed, factory, Runtime.getRuntime().availableProcessors(), DEFAULT_UPDATE_MILLIS);
+    }
+
+    /**
+     * Creates the worlds.
+     *
+     * @param worldCount   how many worlds to run
+     * @param seed         random number seed for world 0; each following world gets the next one
+     * @param factory      creates the level each world starts with
+     * @param threadCount  how many threads to update the worlds with
+     * @param updateMillis game time covered by each update, in milliseconds
+     */
+    public WorldHost(int worldCount, long seed, LevelFactory factory, int threadCount, int updateMillis) {
+        if (worldCount <= 0) {
+            throw new IllegalArgumentException("Need at least one world: " + worldCount);
+        }
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("Need at least one thread: " + threadCount);
+        }
+        mFactory = factory;
+        mWorlds = new HeadlessRunner[worldCount];
+        for (int i = 0; i < worldCount; i++) {
+            EngineContext context = new EngineContext(seed + i);
+            mWorlds[i] = new HeadlessRunner(createLevel(i, context), updateMillis, context);
+        }
+
+        threadCount = Math.min(threadCount, worldCount);
+        mPool = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private int mCount;
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "WorldHost-" + mCount++);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        // Each thread keeps taking the next world nobody has started on yet, so a world that
+        // happens to be slow doesn't hold up the worlds after it.
+        mTasks = new ArrayList<>(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            mTasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int world;
+                    while ((world = mNextWorld.getAndIncrement()) < mWorlds.length) {
+                        StepHook hook = mHook;
+                        if (hook != null) {
+                            hook.beforeStep(world);
+                        }
+                        mWorlds[world].run(mUpdates);
+                        if (hook != null) {
+                            hook.afterStep(world);
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+    }
+
+    private GameLevel createLevel(int world, EngineContext context) {
+        // The level may well want random numbers while it's being built.
+        EngineContext previous = EngineContext.bind(context);
+        try {
+            return mFactory.create(world);
+        } finally {
+            EngineContext.bind(previous);
+        }
+    }
+
+    /**
+     * Starts a world over with a brand new level from the factory.  The new level is set up by
+     * the world's next update.  Its random numbers carry on from where they were rather than
+     * starting over, so a restarted world doesn't just replay its last game.
+     *
+     * @param world number of the world, from 0 up
+     */
+    public void restart(int world) {
+        GameObjectManager manager = mWorlds[world].getManager();
+        manager.setLevel(createLevel(world, manager.getContext()));
+    }
+
+    /**
+     * Sets the extra work to do for each world around its updates, or null for none.
+     */
+    void setStepHook(StepHook hook) {
+        mHook = hook;
+    }
+
+    public int getWorldCount() {
+        return mWorlds.length;
+    }
+
+    /**
+     * Gets one of the worlds, to look at its objects or give it input.
+     *
+     * @param world number of the world, from 0 up
+     */
+    public HeadlessRunner getWorld(int world) {
+        return mWorlds[world];
+    }
+
+    /**
+     * Runs the given number of updates in every world, and waits for them all to finish.
+     *
+     * @throws RuntimeException if the game code in any world threw
+     */
+    public void step(int updates) {
+        mUpdates = updates;
+        mNextWorld.set(0);
+        List<Future<Void>> results;
+        try {
+            results = mPool.invokeAll(mTasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while updating worlds", e);
+        }
+        for (Future<Void> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while updating worlds", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Stops the threads.  The worlds can still be looked at afterwards, but not stepped.
+     */
+    public void shutdown() {
+        mPool.shutdownNow();
+    }
+}
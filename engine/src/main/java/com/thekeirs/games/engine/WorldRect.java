@@ -0,0 +1,141 @@
+package com.thekeirs.games.engine;
+
+/**
+ * <h1>A rectangle in world coordinates</h1>
+ * <p>
+ *     Works just like Android's {@code RectF}: {@code left} and {@code top} are the upper left
+ *     corner, {@code right} and {@code bottom} the lower right, with y increasing downward.
+ *     The game engine has its own so that the simulation - game objects, collisions, levels -
+ *     doesn't need any Android classes, and can be run on an ordinary Java VM by the
+ *     {@link HeadlessRunner}.
+ * </p>
+ */
+
+public class WorldRect {
+    public float left;
+    public float top;
+    public float right;
+    public float bottom;
+
+    /**
+     * Creates an empty rectangle at (0, 0).
+     */
+    public WorldRect() {
+    }
+
+    public WorldRect(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public WorldRect(WorldRect r) {
+        this(r.left, r.top, r.right, r.bottom);
+    }
+
+    public final float width() {
+        return right - left;
+    }
+
+    public final float height() {
+        return bottom - top;
+    }
+
+    public final float centerX() {
+        return (left + right) * 0.5f;
+    }
+
+    public final float centerY() {
+        return (top + bottom) * 0.5f;
+    }
+
+    /**
+     * Checks whether the rectangle has no area: zero or negative width or height.
+     */
+    public final boolean isEmpty() {
+        return left >= right || top >= bottom;
+    }
+
+    public void setEmpty() {
+        left = top = right = bottom = 0;
+    }
+
+    public void set(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    public void set(WorldRect r) {
+        set(r.left, r.top, r.right, r.bottom);
+    }
+
+    /**
+     * Moves the rectangle without changing its size.
+     */
+    public void offset(float dx, float dy) {
+        left += dx;
+        right += dx;
+        top += dy;
+        bottom += dy;
+    }
+
+    /**
+     * Moves the rectangle so its upper left corner is at the given point, without changing its
+     * size.
+     */
+    public void offsetTo(float newLeft, float newTop) {
+        right += newLeft - left;
+        bottom += newTop - top;
+        left = newLeft;
+        top = newTop;
+    }
+
+    /**
+     * Checks whether a point is inside.  The left and top edges count as inside; the right and
+     * bottom edges don't.
+     */
+    public boolean contains(float x, float y) {
+        return left < right && top < bottom && x >= left && x < right && y >= top && y < bottom;
+    }
+
+    /**
+     * Checks whether another rectangle fits completely inside this one.
+     */
+    public boolean contains(WorldRect r) {
+        return left < right && top < bottom
+                && left <= r.left && top <= r.top && right >= r.right && bottom >= r.bottom;
+    }
+
+    /**
+     * Grows the rectangle just enough to cover another one as well.  An empty rectangle on
+     * either side is ignored.
+     */
+    public void union(WorldRect r) {
+        if (r.left >= r.right || r.top >= r.bottom) {
+            return;
+        }
+        if (left < right && top < bottom) {
+            left = Math.min(left, r.left);
+            top = Math.min(top, r.top);
+            right = Math.max(right, r.right);
+            bottom = Math.max(bottom, r.bottom);
+        } else {
+            set(r);
+        }
+    }
+
+    /**
+     * Checks whether two rectangles overlap.  Rectangles that only share an edge don't.
+     */
+    public static boolean intersects(WorldRect a, WorldRect b) {
+        return a.left < b.right && b.left < a.right && a.top < b.bottom && b.top < a.bottom;
+    }
+
+    @Override
+    public String toString() {
+        return "WorldRect(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+    }
+}
@@ -0,0 +1,109 @@
+package com.thekeirs.games.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the minimum translation vector reported for compound shapes really does push
+ * them apart, even when several parts overlap in different directions.
+ */
+public class CompoundShapeTest {
+    private static final float TOLERANCE = 0.01f;     // World units
+
+    private final CollisionResult mResult = new CollisionResult();
+    private final CollisionResult mAfter = new CollisionResult();
+
+    @Test
+    public void mtvSeparatesRandomCompounds() {
+        Random random = new Random(42);
+        int hits = 0;
+        for (int trial = 0; trial < 20000; trial++) {
+            ConvexShape a = randomCompound(random);
+            ConvexShape b = random.nextBoolean() ? randomCompound(random) : randomPart(random);
+            float ax = random.nextFloat() * 80, ay = random.nextFloat() * 80;
+            float rotation = random.nextFloat() * 360;
+            a.setTransform(ax, ay, 100, 100, rotation);
+            b.setTransform(40, 40, 100, 100, random.nextFloat() * 360);
+            if (!a.collideWith(b, mResult)) {
+                continue;
+            }
+            hits++;
+            a.setTransform(ax + mResult.getTranslationX(), ay + mResult.getTranslationY(),
+                    100, 100, rotation);
+            if (a.collideWith(b, mAfter)) {
+                assertTrue("Trial " + trial + " still overlaps by " + mAfter.depth,
+                        mAfter.depth <= TOLERANCE);
+            }
+        }
+        assertTrue("Too few overlapping trials to mean anything: " + hits, hits > 1000);
+    }
+
+    @Test
+    public void mtvSeparatesPartWedgedBetweenTwoOthers() {
+        // A block pushed down into a U: the floor of the U pushes it up, and the two sides
+        // push it sideways in opposite directions.
+        ConvexShape u = new CompoundShape(box(-40, 0, 10, 40), box(40, 0, 10, 40), box(0, 35, 50, 5));
+        ConvexShape block = new CompoundShape(box(0, 0, 32, 10));
+        u.setTransform(0, 0, 100, 100, 0);
+        block.setTransform(0, 25, 100, 100, 0);
+        assertTrue(block.collideWith(u, mResult));
+
+        block.setTransform(mResult.getTranslationX(), 25 + mResult.getTranslationY(), 100, 100, 0);
+        assertFalse(block.collideWith(u, mAfter) && mAfter.depth > TOLERANCE);
+    }
+
+    @Test
+    public void singleOverlappingPartGivesThatPartsResult() {
+        CollisionShape part = box(0, 0, 10, 10);
+        ConvexShape compound = new CompoundShape(box(0, 0, 10, 10), box(200, 0, 10, 10));
+        CollisionShape other = box(0, 0, 10, 10);
+        part.setTransform(0, 0, 100, 100, 0);
+        compound.setTransform(0, 0, 100, 100, 0);
+        other.setTransform(15, 4, 100, 100, 0);
+
+        assertTrue(part.collideWith(other, mResult));
+        assertTrue(compound.collideWith(other, mAfter));
+        assertEquals(mResult.normalX, mAfter.normalX, 0f);
+        assertEquals(mResult.normalY, mAfter.normalY, 0f);
+        assertEquals(mResult.depth, mAfter.depth, 0f);
+    }
+
+    private static ConvexShape randomCompound(Random random) {
+        ConvexShape[] parts = new ConvexShape[2 + random.nextInt(3)];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = randomPart(random);
+        }
+        return new CompoundShape(parts);
+    }
+
+    private static ConvexShape randomPart(Random random) {
+        float cx = random.nextFloat() * 60 - 30, cy = random.nextFloat() * 60 - 30;
+        switch (random.nextInt(3)) {
+            case 0:
+                return box(cx, cy, 5 + random.nextFloat() * 30, 5 + random.nextFloat() * 30);
+            case 1:
+                return new CollisionCapsule(cx, cy, cx + random.nextFloat() * 30 - 15,
+                        cy + random.nextFloat() * 30 - 15, 3 + random.nextFloat() * 12);
+            default:
+                float size = 5 + random.nextFloat() * 20;
+                return new CollisionShape(new CollisionVertex[] {
+                        new CollisionVertex(cx, cy - size),
+                        new CollisionVertex(cx + size, cy + size),
+                        new CollisionVertex(cx - size, cy + size)});
+        }
+    }
+
+    /**
+     * A box centered at (cx, cy) that reaches halfWidth and halfHeight either side.
+     */
+    private static CollisionShape box(float cx, float cy, float halfWidth, float halfHeight) {
+        return new CollisionShape(new CollisionVertex[] {
+                new CollisionVertex(cx - halfWidth, cy - halfHeight),
+                new CollisionVertex(cx + halfWidth, cy - halfHeight),
+                new CollisionVertex(cx + halfWidth, cy + halfHeight),
+                new CollisionVertex(cx - halfWidth, cy + halfHeight)});
+    }
+}
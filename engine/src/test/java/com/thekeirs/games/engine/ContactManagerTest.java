@@ -0,0 +1,119 @@
+package com.thekeirs.games.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that contacts which stop being checked, because an object jumped away or left the
+ * game, end with exactly one exit.
+ */
+public class ContactManagerTest {
+    /**
+     * Counts its collision callbacks.
+     */
+    static class Counter extends Sprite {
+        int enters, stays, exits;
+
+        Counter(String name, float centerX, float centerY, float width, float height) {
+            super(name, centerX, centerY, width, height);
+        }
+
+        @Override
+        public void onCollisionEnter(GameObject other) {
+            enters++;
+        }
+
+        @Override
+        public void onCollisionStay(GameObject other) {
+            stays++;
+        }
+
+        @Override
+        public void onCollisionExit(GameObject other) {
+            exits++;
+        }
+    }
+
+    private static GameObjectManager makeWorld(final Counter floor, final List<Counter> balls) {
+        floor.setSolid(true);
+        for (Counter ball : balls) {
+            ball.setFeelsGravity(true);
+            ball.setCanSleep(false);
+        }
+        GameObjectManager manager = new GameObjectManager(new MessageBus());
+        manager.setLevel(new GameLevel() {
+            @Override
+            public void setup() {
+                mManager.addObject(floor);
+                for (Counter ball : balls) {
+                    mManager.addObject(ball);
+                }
+            }
+        });
+        return manager;
+    }
+
+    private static void settle(GameObjectManager manager, List<Counter> balls) {
+        for (int i = 0; i < 60; i++) {
+            manager.update(16);
+        }
+        for (Counter ball : balls) {
+            assertEquals(1, ball.enters);
+            assertTrue(ball.stays > 0);
+            assertEquals(0, ball.exits);
+        }
+    }
+
+    @Test
+    public void pairNobodyChecksAnyMoreExitsOnce() {
+        Counter floor = new Counter("floor", 800, 800, 1600, 40);
+        Counter ball = new Counter("ball", 800, 760, 20, 20);
+        List<Counter> balls = new ArrayList<>();
+        balls.add(ball);
+        GameObjectManager manager = makeWorld(floor, balls);
+        settle(manager, balls);
+
+        // Jumping away means the pair isn't checked while moving; the end of the step has
+        // to notice it came apart.
+        ball.setFeelsGravity(false);
+        ball.setdY(0);
+        ball.setXY(200, 100);
+        int stays = ball.stays;
+        for (int i = 0; i < 10; i++) {
+            manager.update(16);
+        }
+        assertEquals(1, ball.exits);
+        assertEquals(1, floor.exits);
+        assertEquals(stays, ball.stays);
+    }
+
+    @Test
+    public void removedObjectsExitOnceEach() {
+        Counter floor = new Counter("floor", 800, 800, 1600, 40);
+        List<Counter> balls = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            balls.add(new Counter("ball" + i, 10 + i * 15, 770, 10, 10));
+        }
+        GameObjectManager manager = makeWorld(floor, balls);
+        settle(manager, balls);
+        assertEquals(balls.size(), floor.enters);
+
+        // Half of them leave the game on the same step.
+        List<Counter> removed = balls.subList(0, balls.size() / 2);
+        for (Counter ball : removed) {
+            ball.requestRemoval();
+        }
+        for (int i = 0; i < 10; i++) {
+            manager.update(16);
+        }
+        assertEquals(removed.size(), floor.exits);
+        for (Counter ball : balls) {
+            // The ones that left aren't told; the rest are still resting on the floor.
+            assertEquals(0, ball.exits);
+        }
+    }
+}
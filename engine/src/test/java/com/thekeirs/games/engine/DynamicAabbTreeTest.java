@@ -0,0 +1,214 @@
+package com.thekeirs.games.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the query tree against looking at every object, over a long run of random inserts,
+ * moves, removes and queries, and checks that it stays put together and balanced.
+ */
+public class DynamicAabbTreeTest {
+    private static final int OPERATIONS = 20000;
+    private static final int OBJECTS = 400;
+
+    private final Random mRandom = new Random(2024);
+    private final DynamicAabbTree mTree = new DynamicAabbTree();
+    private final List<GameObject> mAll = new ArrayList<>();
+    private final Map<GameObject, Integer> mProxies = new HashMap<>();
+
+    private void placeRandomly(GameObject obj) {
+        float x = mRandom.nextFloat() * 2000 - 200, y = mRandom.nextFloat() * 1200 - 150;
+        float w = 1 + mRandom.nextFloat() * 80, h = 1 + mRandom.nextFloat() * 80;
+        if (mRandom.nextInt(40) == 0) {
+            w *= 20;
+        }
+        obj.boundingRect.set(x - w / 2, y - h / 2, x + w / 2, y + h / 2);
+    }
+
+    private static float distanceSq(GameObject obj, float x, float y) {
+        WorldRect r = obj.boundingRect;
+        float dx = (x < r.left) ? r.left - x : (x > r.right) ? x - r.right : 0;
+        float dy = (y < r.top) ? r.top - y : (y > r.bottom) ? y - r.bottom : 0;
+        return dx * dx + dy * dy;
+    }
+
+    private void checkRegion(WorldRect area) {
+        List<GameObject> found = new ArrayList<>();
+        mTree.queryRegion(area, found);
+        HashSet<GameObject> expected = new HashSet<>();
+        for (GameObject obj : mProxies.keySet()) {
+            if (WorldRect.intersects(obj.boundingRect, area)) {
+                expected.add(obj);
+            }
+        }
+        assertEquals(expected.size(), found.size());
+        assertEquals(expected, new HashSet<>(found));
+    }
+
+    private void checkPoint(float x, float y) {
+        List<GameObject> found = new ArrayList<>();
+        mTree.queryPoint(x, y, found);
+        HashSet<GameObject> expected = new HashSet<>();
+        for (GameObject obj : mProxies.keySet()) {
+            if (obj.contains(x, y)) {
+                expected.add(obj);
+            }
+        }
+        assertEquals(expected.size(), found.size());
+        assertEquals(expected, new HashSet<>(found));
+    }
+
+    private void checkRaycast(float x1, float y1, float x2, float y2, GameObject exclude,
+                              boolean solidOnly) {
+        float dx = x2 - x1, dy = y2 - y1;
+        float bestT = Float.POSITIVE_INFINITY;
+        for (GameObject obj : mProxies.keySet()) {
+            if (obj == exclude || (solidOnly && !obj.isSolid())) {
+                continue;
+            }
+            WorldRect r = obj.boundingRect;
+            float t = DynamicAabbTree.segmentEntry(x1, y1, dx, dy, r.left, r.top, r.right, r.bottom);
+            if (t >= 0) {
+                bestT = Math.min(bestT, t);
+            }
+        }
+
+        GameObject hit = mTree.raycast(x1, y1, x2, y2, exclude, solidOnly);
+        if (bestT == Float.POSITIVE_INFINITY) {
+            assertNull(hit);
+            return;
+        }
+        // Several objects can be hit at exactly the same point; any of them will do.
+        assertNotNull(hit);
+        assertTrue(hit != exclude && (!solidOnly || hit.isSolid()));
+        WorldRect r = hit.boundingRect;
+        assertEquals(bestT,
+                DynamicAabbTree.segmentEntry(x1, y1, dx, dy, r.left, r.top, r.right, r.bottom), 0f);
+    }
+
+    private void checkNearest(float x, float y, int k, String prefix, GameObject exclude) {
+        List<Float> expected = new ArrayList<>();
+        for (GameObject obj : mProxies.keySet()) {
+            if (obj != exclude && (prefix == null || obj.name.startsWith(prefix))) {
+                expected.add(distanceSq(obj, x, y));
+            }
+        }
+        Collections.sort(expected);
+        expected = expected.subList(0, Math.min(k, expected.size()));
+
+        List<GameObject> found = new ArrayList<>();
+        mTree.queryNearest(x, y, k, prefix, exclude, found);
+        // Objects the same distance away can come back in either order, so compare distances.
+        List<Float> distances = new ArrayList<>();
+        for (GameObject obj : found) {
+            assertTrue(obj != exclude && (prefix == null || obj.name.startsWith(prefix)));
+            distances.add(distanceSq(obj, x, y));
+        }
+        assertEquals(expected, distances);
+        assertEquals(found.size(), new HashSet<>(found).size());
+    }
+
+    private void checkStructure() {
+        assertEquals(mProxies.size(), mTree.validate());
+        int n = mProxies.size();
+        if (n > 1) {
+            // A balanced tree of n leaves is about log2(n) high.
+            double log2 = Math.log(n) / Math.log(2);
+            assertTrue("Height " + mTree.getHeight() + " for " + n + " leaves",
+                    mTree.getHeight() <= 2 * Math.ceil(log2) + 1);
+        }
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        for (int i = 0; i < OBJECTS; i++) {
+            Sprite obj = new Sprite(((i % 3 == 0) ? "pad" : "rock") + i, 0, 0, 1, 1);
+            obj.setSolid(i % 2 == 0);
+            placeRandomly(obj);
+            mAll.add(obj);
+        }
+        WorldRect area = new WorldRect();
+
+        for (int op = 0; op < OPERATIONS; op++) {
+            GameObject obj = mAll.get(mRandom.nextInt(mAll.size()));
+            Integer proxy = mProxies.get(obj);
+            float x = mRandom.nextFloat() * 2000 - 200, y = mRandom.nextFloat() * 1200 - 150;
+            switch (mRandom.nextInt(12)) {
+                case 0:
+                case 1:
+                    if (proxy == null) {
+                        mProxies.put(obj, mTree.createProxy(obj));
+                    }
+                    break;
+                case 2:
+                    if (proxy != null) {
+                        mTree.destroyProxy(proxy);
+                        mProxies.remove(obj);
+                    }
+                    break;
+                case 3:
+                case 4:
+                    // Mostly jiggling inside the fat box; now and then somewhere else entirely.
+                    if (mRandom.nextInt(4) == 0) {
+                        placeRandomly(obj);
+                    } else {
+                        obj.boundingRect.offset(mRandom.nextFloat() * 6 - 3, mRandom.nextFloat() * 6 - 3);
+                    }
+                    if (proxy != null) {
+                        mTree.moveProxy(proxy, obj.boundingRect);
+                    }
+                    break;
+                case 5:
+                    float size = mRandom.nextFloat() * 300;
+                    area.set(x, y, x + size, y + mRandom.nextFloat() * 300);
+                    checkRegion(area);
+                    break;
+                case 6:
+                    checkPoint(x, y);
+                    break;
+                case 7:
+                case 8:
+                    checkRaycast(x, y, x + mRandom.nextFloat() * 1200 - 600,
+                            y + mRandom.nextFloat() * 1200 - 600,
+                            mRandom.nextBoolean() ? obj : null, mRandom.nextBoolean());
+                    break;
+                case 9:
+                    // Straight along an axis, which the slab test treats separately.
+                    checkRaycast(x, y, x, y + mRandom.nextFloat() * 800 - 400, null, false);
+                    checkRaycast(x, y, x + mRandom.nextFloat() * 800 - 400, y, null, false);
+                    break;
+                default:
+                    checkNearest(x, y, 1 + mRandom.nextInt(8),
+                            mRandom.nextBoolean() ? "pad" : null, mRandom.nextBoolean() ? obj : null);
+                    break;
+            }
+            if (op % 500 == 0) {
+                checkStructure();
+            }
+        }
+        checkStructure();
+
+        for (GameObject obj : new ArrayList<>(mProxies.keySet())) {
+            mTree.destroyProxy(mProxies.remove(obj));
+        }
+        assertEquals(-1, mTree.getHeight());
+
+        // Objects added in order along a line are the worst case for an unbalanced tree.
+        for (int i = 0; i < mAll.size(); i++) {
+            GameObject obj = mAll.get(i);
+            obj.boundingRect.set(i * 10, 0, i * 10 + 5, 5);
+            mProxies.put(obj, mTree.createProxy(obj));
+        }
+        checkStructure();
+        checkNearest(0, 0, 5, null, null);
+    }
+}
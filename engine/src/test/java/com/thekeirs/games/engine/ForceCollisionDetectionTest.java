@@ -0,0 +1,130 @@
+package com.thekeirs.games.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that asking whether an object would hit something at another position only looks
+ * there, and doesn't count as actually hitting it.
+ */
+public class ForceCollisionDetectionTest {
+    /**
+     * Writes down every collision callback it gets.
+     */
+    static class Recorder extends Sprite {
+        final List<String> calls = new ArrayList<>();
+
+        Recorder(String name, float centerX, float centerY) {
+            super(name, centerX, centerY, 40, 40);
+        }
+
+        @Override
+        public void onCollision(GameObject other) {
+            calls.add("collision " + other.name);
+        }
+
+        @Override
+        public void onCollisionEnter(GameObject other) {
+            calls.add("enter " + other.name);
+        }
+
+        @Override
+        public void onCollisionExit(GameObject other) {
+            calls.add("exit " + other.name);
+        }
+    }
+
+    private static GameObjectManager makeWorld(final GameObject... objects) {
+        GameObjectManager manager = new GameObjectManager(new MessageBus());
+        manager.setLevel(new GameLevel() {
+            @Override
+            public void setup() {
+                for (GameObject obj : objects) {
+                    mManager.addObject(obj);
+                }
+            }
+        });
+        return manager;
+    }
+
+    private static Sprite death() {
+        // Spans y 250 to 300 around its center at 275.
+        Sprite death = new Sprite("death", 400, 275, 200, 50);
+        death.setSolid(true);
+        death.setComplexShape(
+                new CollisionVertex(0, -25),
+                new CollisionVertex(100, 25),
+                new CollisionVertex(-100, 25));
+        return death;
+    }
+
+    @Test
+    public void farAwayOffsetDoesNotCollide() {
+        Recorder zombie = new Recorder("zombie", 400, 100);
+        zombie.setComplexShape(
+                new CollisionVertex(-20, -20),
+                new CollisionVertex(20, -20),
+                new CollisionVertex(20, 20),
+                new CollisionVertex(-20, 20));
+        zombie.setdY(100);
+        GameObjectManager manager = makeWorld(zombie, death());
+        manager.update(16);
+        float y = zombie.getY();
+
+        // The whole path down to the solid would run through it, but the offset position is
+        // still 60 units short.
+        assertFalse(zombie.forceCollisionDetection(6, 90));
+        assertEquals(y, zombie.getY(), 0f);
+        assertEquals(100, zombie.getdY(), 0f);
+        manager.update(16);
+        assertTrue(zombie.calls.toString(), zombie.calls.isEmpty());
+    }
+
+    @Test
+    public void overlappingOffsetReportsWithoutTouching() {
+        Recorder zombie = new Recorder("zombie", 400, 100);
+        zombie.setComplexShape(
+                new CollisionVertex(-20, -20),
+                new CollisionVertex(20, -20),
+                new CollisionVertex(20, 20),
+                new CollisionVertex(-20, 20));
+        zombie.setdY(100);
+        GameObjectManager manager = makeWorld(zombie, death());
+        manager.update(16);
+        float x = zombie.getX(), y = zombie.getY();
+
+        assertTrue(zombie.forceCollisionDetection(0, 290 - y));
+        assertEquals("[collision death]", zombie.calls.toString());
+        assertEquals(x, zombie.getX(), 0f);
+        assertEquals(y, zombie.getY(), 0f);
+        assertEquals(100, zombie.getdY(), 0f);
+
+        // We never got there, so there's nothing to enter or leave.
+        zombie.calls.clear();
+        manager.update(16);
+        assertTrue(zombie.calls.toString(), zombie.calls.isEmpty());
+    }
+
+    @Test
+    public void plainSolidsAreCheckedAtTheOffsetOnly() {
+        Recorder ball = new Recorder("ball", 100, 100);
+        Sprite floor = new Sprite("floor", 100, 300, 400, 20);
+        floor.setSolid(true);
+        GameObjectManager manager = makeWorld(ball, floor);
+        manager.update(16);
+
+        assertFalse(ball.forceCollisionDetection(0, 150));
+        assertFalse(ball.forceCollisionDetection(0, 300));
+        assertTrue(ball.forceCollisionDetection(0, 190));
+        assertEquals("[collision floor]", ball.calls.toString());
+        assertEquals(100, ball.getY(), 0f);
+
+        ball.calls.clear();
+        manager.update(16);
+        assertTrue(ball.calls.toString(), ball.calls.isEmpty());
+    }
+}
@@ -0,0 +1,131 @@
+package com.thekeirs.games.engine;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that systems running side by side can look at the world safely, and that one
+ * changing the world without saying so is caught.
+ */
+public class GameSystemTest {
+    private static final int SPRITES = 600;
+    private static final int QUERIES = 2000;
+
+    /**
+     * Finds the box nearest each of a set of points, every update.
+     */
+    static class NearestSystem extends GameSystem {
+        final float[] points = new float[QUERIES * 2];
+        final GameObject[] nearest = new GameObject[QUERIES];
+
+        NearestSystem(String name, Random random) {
+            super(name, Phase.AFTER_MOVE);
+            reads("boxes");
+            writes(name);
+            for (int i = 0; i < points.length; i += 2) {
+                points[i] = random.nextFloat() * 1600;
+                points[i + 1] = random.nextFloat() * 900;
+            }
+        }
+
+        @Override
+        public void update(int millis) {
+            for (int i = 0; i < QUERIES; i++) {
+                nearest[i] = mManager.getNearestObject(points[2 * i], points[2 * i + 1], "box");
+            }
+        }
+
+        /**
+         * Checks the answers from the last update against the manager's, asked now.
+         */
+        void check() {
+            for (int i = 0; i < QUERIES; i++) {
+                assertSame(mManager.getNearestObject(points[2 * i], points[2 * i + 1], "box"),
+                        nearest[i]);
+            }
+        }
+    }
+
+    /**
+     * Says it only keeps score, but moves every box a little too, optionally declaring that
+     * it changes the world.
+     */
+    static class NudgeSystem extends GameSystem {
+        NudgeSystem(boolean declared) {
+            super("nudge", Phase.AFTER_MOVE);
+            writes("score");
+            if (declared) {
+                writesWorld();
+            }
+        }
+
+        @Override
+        public void update(int millis) {
+            for (GameObject box : mManager.getObjectsMatching("box")) {
+                box.setX(box.getX() + 1);
+            }
+        }
+    }
+
+    private static GameObjectManager makeWorld(final Random random, final GameSystem... systems) {
+        GameObjectManager manager = new GameObjectManager(new MessageBus());
+        manager.setLevel(new GameLevel() {
+            @Override
+            public void setup() {
+                for (int i = 0; i < SPRITES; i++) {
+                    Sprite box = new Sprite("box" + i, random.nextFloat() * 1600,
+                            random.nextFloat() * 900, 10, 10);
+                    box.setdX(random.nextFloat() * 400 - 200);
+                    box.setdY(random.nextFloat() * 400 - 200);
+                    mManager.addObject(box);
+                }
+                for (GameSystem system : systems) {
+                    mManager.addSystem(system);
+                }
+            }
+        });
+        return manager;
+    }
+
+    @Test
+    public void twoSystemsAskingForNearestObjectsInOneWave() {
+        Random random = new Random(3);
+        NearestSystem first = new NearestSystem("first", random);
+        NearestSystem second = new NearestSystem("second", random);
+        assertFalse(first.conflictsWith(second));
+        GameObjectManager manager = makeWorld(random, first, second);
+        for (int i = 0; i < 30; i++) {
+            manager.update(16);
+            // Nothing moves between the systems running and the end of the update.
+            first.check();
+            second.check();
+        }
+    }
+
+    @Test
+    public void movingObjectsAlongsideOtherSystemsIsCaught() {
+        Random random = new Random(5);
+        GameObjectManager manager = makeWorld(random, new NearestSystem("looker", random),
+                new NudgeSystem(false));
+        try {
+            manager.update(16);
+            fail("Moving objects from a system sharing its wave should throw");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("writesWorld"));
+        }
+    }
+
+    @Test
+    public void systemsThatWriteTheWorldRunOnTheirOwn() {
+        Random random = new Random(5);
+        NearestSystem looker = new NearestSystem("looker", random);
+        GameObjectManager manager = makeWorld(random, new NudgeSystem(true), looker);
+        for (int i = 0; i < 10; i++) {
+            manager.update(16);
+            looker.check();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.thekeirs.games.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that objects are drawn between where they were and where they are when they move,
+ * but not when the game puts them somewhere new.
+ */
+public class InterpolationTest {
+    private static final int CAR_IMAGE = 1;
+    private static final int BALL_IMAGE = 2;
+
+    /**
+     * Finds where the image with the given ID is centered in a recorded frame.
+     */
+    private static float drawnX(RenderCommandList commands, int imageId) {
+        float[] args = commands.getArgs();
+        for (int i = 0; i < commands.size(); i++) {
+            if (commands.getOp(i) == RenderCommandList.IMAGE && commands.getValue(i) == imageId) {
+                int a = commands.getArgOffset(i);
+                return args[a + RenderCommandList.IMAGE_C]
+                        + 0.5f * (args[a + RenderCommandList.IMAGE_A] + args[a + RenderCommandList.IMAGE_B]);
+            }
+        }
+        throw new AssertionError("Image " + imageId + " wasn't drawn");
+    }
+
+    @Test
+    public void wrappingAroundIsNotDrawnSlidingAcross() {
+        final Sprite car = new Sprite("car", 1590, 400, 100, 50, CAR_IMAGE);
+        final Sprite ball = new Sprite("ball", 100, 200, 20, 20, BALL_IMAGE);
+        ball.setdX(600);
+        GameObjectManager manager = new GameObjectManager(new MessageBus());
+        manager.setLevel(new GameLevel() {
+            @Override
+            public void setup() {
+                mManager.addObject(car);
+                mManager.addObject(ball);
+            }
+
+            @Override
+            public void update(int millis) {
+                super.update(millis);
+                car.moveBy(9.6f, 0);
+                if (car.getX() > 1600) {
+                    car.setX(-100);
+                }
+            }
+        });
+        RenderSnapshot snapshot = new RenderSnapshot();
+        RenderCommandList commands = new RenderCommandList();
+
+        manager.update(16);
+        float ballBefore = ball.getX();
+        manager.update(16);
+        assertEquals(-100, car.getX(), 0f);
+
+        manager.writeSnapshot(snapshot);
+        snapshot.record(commands, 1600, 900, 0.5f);
+        assertEquals(-100, drawnX(commands, CAR_IMAGE), 0.01f);
+        // Moving by its velocity is still drawn halfway along.
+        assertEquals((ballBefore + ball.getX()) / 2, drawnX(commands, BALL_IMAGE), 0.01f);
+    }
+}
@@ -0,0 +1,146 @@
+package com.thekeirs.games.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that jobs can ask the manager questions about the world while the game keeps
+ * running, and get the same answers the game engine thread would.
+ */
+public class JobsTest {
+    private static final int SPRITES = 600;
+    private static final int JOBS_PER_UPDATE = 8;
+    private static final int QUERIES_PER_JOB = 200;
+
+    /**
+     * Asks about a set of random points, and checks the answers against the game engine
+     * thread's own once it finishes.
+     */
+    static class QueryJob extends Job {
+        static int completed;
+
+        final GameObjectManager manager;
+        final float[] points;
+        final GameObject[] nearest;
+        final GameObject[] firstAlong;
+        final int[] inRegion;
+
+        QueryJob(GameObjectManager manager, Random random) {
+            this.manager = manager;
+            points = new float[QUERIES_PER_JOB * 2];
+            for (int i = 0; i < points.length; i += 2) {
+                points[i] = random.nextFloat() * 1600;
+                points[i + 1] = random.nextFloat() * 900;
+            }
+            nearest = new GameObject[QUERIES_PER_JOB];
+            firstAlong = new GameObject[QUERIES_PER_JOB];
+            inRegion = new int[QUERIES_PER_JOB];
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < QUERIES_PER_JOB; i++) {
+                float x = points[2 * i], y = points[2 * i + 1];
+                nearest[i] = manager.getNearestObject(x, y, "box");
+                firstAlong[i] = manager.findFirstObjectAlong(x, y, 800, 450, null, false);
+                inRegion[i] = manager.getObjectsInRegion(new WorldRect(x - 50, y - 50, x + 50, y + 50)).size();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            for (int i = 0; i < QUERIES_PER_JOB; i++) {
+                float x = points[2 * i], y = points[2 * i + 1];
+                assertSame(manager.getNearestObject(x, y, "box"), nearest[i]);
+                assertSame(manager.findFirstObjectAlong(x, y, 800, 450, null, false), firstAlong[i]);
+                assertEquals(manager.getObjectsInRegion(
+                        new WorldRect(x - 50, y - 50, x + 50, y + 50)).size(), inRegion[i]);
+            }
+            completed++;
+        }
+    }
+
+    @Test
+    public void jobsSeeTheWorldHoldStill() {
+        final Random random = new Random(7);
+        final GameObjectManager manager = new GameObjectManager(new MessageBus());
+        manager.setLevel(new GameLevel() {
+            @Override
+            public void setup() {
+                for (int i = 0; i < SPRITES; i++) {
+                    Sprite box = new Sprite("box" + i, random.nextFloat() * 1600,
+                            random.nextFloat() * 900, 10, 10);
+                    box.setdX(random.nextFloat() * 400 - 200);
+                    box.setdY(random.nextFloat() * 400 - 200);
+                    mManager.addObject(box);
+                }
+            }
+
+            @Override
+            public void update(int millis) {
+                // Keep everyone on screen, so there's plenty to find.
+                for (GameObject obj : mManager.getObjectsMatching("box")) {
+                    if (obj.getX() < 0 || obj.getX() > 1600) {
+                        obj.setdX(-obj.getdX());
+                    }
+                    if (obj.getY() < 0 || obj.getY() > 900) {
+                        obj.setdY(-obj.getdY());
+                    }
+                }
+                for (int i = 0; i < JOBS_PER_UPDATE; i++) {
+                    mManager.getJobs().submit(new QueryJob(mManager, random));
+                }
+            }
+        });
+
+        QueryJob.completed = 0;
+        for (int i = 0; i < 60; i++) {
+            manager.update(16);
+        }
+        assertEquals(59 * JOBS_PER_UPDATE, QueryJob.completed);
+    }
+
+    @Test
+    public void parallelForQueriesMatchTheGameThread() {
+        final Random random = new Random(11);
+        final GameObjectManager manager = new GameObjectManager(new MessageBus());
+        final List<float[]> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            points.add(new float[] {random.nextFloat() * 1600, random.nextFloat() * 900, 0});
+        }
+        manager.setLevel(new GameLevel() {
+            @Override
+            public void setup() {
+                for (int i = 0; i < SPRITES; i++) {
+                    Sprite box = new Sprite("box" + i, random.nextFloat() * 1600,
+                            random.nextFloat() * 900, 10, 10);
+                    box.setdX(random.nextFloat() * 400 - 200);
+                    mManager.addObject(box);
+                }
+            }
+
+            @Override
+            public void update(int millis) {
+                mManager.getJobs().parallelFor(points, new Jobs.ForEach<float[]>() {
+                    @Override
+                    public void run(float[] point) {
+                        GameObject nearest = manager.getNearestObject(point[0], point[1], null);
+                        point[2] = (nearest == null) ? -1 : nearest.getX();
+                    }
+                });
+                for (float[] point : points) {
+                    GameObject nearest = mManager.getNearestObject(point[0], point[1], null);
+                    assertEquals(nearest.getX(), point[2], 0f);
+                }
+            }
+        });
+        for (int i = 0; i < 20; i++) {
+            manager.update(16);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.thekeirs.games.engine;
+
+import android.graphics.Canvas;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the manager tells apart objects it can update in phases from those with an
+ * update() of their own, without needing Android to do it.
+ */
+public class ObjectUpdateTest {
+    /**
+     * Counts its updates, and falls as it goes.
+     */
+    static class CountingSprite extends Sprite {
+        int updates;
+
+        CountingSprite(String name, float centerX, float centerY) {
+            super(name, centerX, centerY, 20, 20);
+        }
+
+        @Override
+        public void update(int msec) {
+            super.update(msec);
+            updates++;
+        }
+    }
+
+    /**
+     * A game's own sprite that still has a method taking an Android type, which can't be
+     * loaded when running without Android.
+     */
+    static class AndroidSprite extends CountingSprite {
+        AndroidSprite(String name, float centerX, float centerY) {
+            super(name, centerX, centerY);
+        }
+
+        public void paint(Canvas c) {
+        }
+    }
+
+    @Test
+    public void plainSpritesAreUpdatedInPhasesAndOwnUpdatesStillRun() {
+        final Sprite plain = new Sprite("plain", 100, 100, 20, 20);
+        final CountingSprite counting = new CountingSprite("counting", 200, 100);
+        final AndroidSprite android = new AndroidSprite("android", 300, 100);
+        GameObjectManager manager = new GameObjectManager(new MessageBus());
+        manager.setLevel(new GameLevel() {
+            @Override
+            public void setup() {
+                for (Sprite sprite : new Sprite[] {plain, counting, android}) {
+                    sprite.setFeelsGravity(true);
+                    mManager.addObject(sprite);
+                }
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            manager.update(16);
+        }
+
+        assertFalse(plain.hasOwnUpdate);
+        assertTrue(counting.hasOwnUpdate);
+        assertTrue(android.hasOwnUpdate);
+        assertEquals(10, counting.updates);
+        assertEquals(10, android.updates);
+        assertTrue(plain.getY() > 100);
+        assertEquals(plain.getY(), counting.getY(), 0.001f);
+        assertEquals(plain.getY(), android.getY(), 0.001f);
+    }
+}
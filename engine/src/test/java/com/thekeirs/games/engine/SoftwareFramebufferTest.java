@@ -0,0 +1,92 @@
+package com.thekeirs.games.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Draws small recorded frames into the software framebuffer and checks every pixel against a
+ * picture of what should come out.
+ */
+public class SoftwareFramebufferTest {
+    private static final int IMAGE_ID = 7;
+    private static final int RED = 0xFFFF0000, GREEN = 0xFF00FF00, WHITE = 0xFFFFFFFF;
+    private static final int BLUE = 0xFF0000FF, CLEAR = 0x00000000;
+
+    /**
+     * A 4x2 image: two columns of red, then a column of green over white, then a column that
+     * can't be seen.
+     */
+    private static final int[] IMAGE = {
+            RED, RED, GREEN, CLEAR,
+            RED, RED, WHITE, CLEAR,
+    };
+
+    /**
+     * Renders the right half of the image, blown up to 4x4 pixels by the matrix and drawn at
+     * half opacity over blue.
+     */
+    private static SoftwareFramebuffer draw(float[] matrix) {
+        SoftwareFramebuffer framebuffer = new SoftwareFramebuffer(8, 8);
+        framebuffer.putImage(IMAGE_ID, 4, 2, IMAGE);
+        RenderCommandList commands = new RenderCommandList();
+        commands.fill(BLUE);
+        commands.image(IMAGE_ID, matrix, 0.5f, 0, 1, 1, 128);
+        framebuffer.render(commands);
+        return framebuffer;
+    }
+
+    /**
+     * Checks every pixel.  In the picture '.' is plain blue, 'g' is green drawn half over blue
+     * and 'w' is white drawn half over blue.
+     */
+    private static void assertPicture(SoftwareFramebuffer framebuffer, String... rows) {
+        for (int y = 0; y < rows.length; y++) {
+            for (int x = 0; x < rows[y].length(); x++) {
+                int expected;
+                switch (rows[y].charAt(x)) {
+                    case 'g':
+                        expected = 0xFF00807F;
+                        break;
+                    case 'w':
+                        expected = 0xFF8080FF;
+                        break;
+                    default:
+                        expected = BLUE;
+                        break;
+                }
+                assertEquals("pixel " + x + "," + y, Integer.toHexString(expected),
+                        Integer.toHexString(framebuffer.getPixel(x, y)));
+            }
+        }
+    }
+
+    @Test
+    public void scaledPartOfAnImageBlendsOver() {
+        SoftwareFramebuffer framebuffer = draw(new float[] {4, 0, 2, 0, 4, 1});
+        // No red: that part of the image is outside the source rectangle.
+        assertPicture(framebuffer,
+                "........",
+                "..gg....",
+                "..gg....",
+                "..ww....",
+                "..ww....",
+                "........",
+                "........",
+                "........");
+    }
+
+    @Test
+    public void mirroredMatrixFlipsTheImage() {
+        SoftwareFramebuffer framebuffer = draw(new float[] {-4, 0, 6, 0, 4, 1});
+        assertPicture(framebuffer,
+                "........",
+                "....gg..",
+                "....gg..",
+                "....ww..",
+                "....ww..",
+                "........",
+                "........",
+                "........");
+    }
+}
@@ -0,0 +1,149 @@
+package com.thekeirs.games.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the collision grid against looking at every object, over a long run of random
+ * inserts, moves, removes and queries.
+ */
+public class SpatialGridTest {
+    private static final int OPERATIONS = 20000;
+    private static final int OBJECTS = 300;
+
+    private static void placeRandomly(GameObject obj, Random random) {
+        float x = random.nextFloat() * 2000 - 200, y = random.nextFloat() * 1200 - 150;
+        float w, h;
+        if (random.nextInt(50) == 0) {
+            // Now and then something far too big for the cells, like a floor.
+            w = 1000 + random.nextFloat() * 3000;
+            h = 10 + random.nextFloat() * 40;
+        } else {
+            w = 1 + random.nextFloat() * 120;
+            h = 1 + random.nextFloat() * 120;
+        }
+        obj.boundingRect.set(x - w / 2, y - h / 2, x + w / 2, y + h / 2);
+    }
+
+    /**
+     * Checks that the grid finds exactly the objects that really overlap an area and pass
+     * the layer check, once each.
+     */
+    private static void checkQuery(SpatialGrid grid, List<GameObject> inGrid, WorldRect area,
+                                   GameObject exclude, int category, int mask) {
+        List<GameObject> found = new ArrayList<>();
+        grid.query(area, exclude, category, mask, found);
+        Set<GameObject> seen = new HashSet<>();
+        Set<GameObject> touching = new HashSet<>();
+        for (GameObject obj : found) {
+            assertTrue(obj.name + " reported twice", seen.add(obj));
+            assertTrue(obj.name + " isn't in the grid", inGrid.contains(obj));
+            if (WorldRect.intersects(area, obj.boundingRect)) {
+                touching.add(obj);
+            }
+        }
+
+        Set<GameObject> expected = new HashSet<>();
+        for (GameObject obj : inGrid) {
+            if (obj != exclude && WorldRect.intersects(area, obj.boundingRect)
+                    && (obj.getCollisionCategory() & mask) != 0
+                    && (category & obj.getCollisionMask()) != 0) {
+                expected.add(obj);
+            }
+        }
+        assertEquals(expected, touching);
+    }
+
+    @Test
+    public void matchesBruteForce() {
+        Random random = new Random(1234);
+        SpatialGrid grid = new SpatialGrid(64);
+        List<GameObject> all = new ArrayList<>();
+        for (int i = 0; i < OBJECTS; i++) {
+            Sprite obj = new Sprite("obj" + i, 0, 0, 1, 1);
+            placeRandomly(obj, random);
+            all.add(obj);
+        }
+        List<GameObject> inGrid = new ArrayList<>();
+        WorldRect area = new WorldRect();
+
+        for (int op = 0; op < OPERATIONS; op++) {
+            GameObject obj = all.get(random.nextInt(all.size()));
+            switch (random.nextInt(10)) {
+                case 0:
+                case 1:
+                    grid.insert(obj);
+                    if (!inGrid.contains(obj)) {
+                        inGrid.add(obj);
+                    }
+                    break;
+                case 2:
+                    grid.remove(obj);
+                    inGrid.remove(obj);
+                    break;
+                case 3:
+                case 4:
+                    // Small moves mostly stay in the same cells; sometimes jump far away.
+                    if (random.nextInt(4) == 0) {
+                        placeRandomly(obj, random);
+                    } else {
+                        obj.boundingRect.offset(random.nextFloat() * 40 - 20,
+                                random.nextFloat() * 40 - 20);
+                    }
+                    grid.update(obj);
+                    break;
+                case 5:
+                    obj.setCollisionCategory(1 << random.nextInt(3));
+                    obj.setCollisionMask(random.nextBoolean() ? ~0 : 1 << random.nextInt(3));
+                    grid.updateFilter(obj);
+                    break;
+                case 6:
+                    if (random.nextInt(100) == 0) {
+                        grid.setCellSize(16 + random.nextFloat() * 200);
+                    }
+                    break;
+                default:
+                    float x = random.nextFloat() * 2000 - 200, y = random.nextFloat() * 1200 - 150;
+                    float size = random.nextInt(20) == 0 ? 5000 : random.nextFloat() * 300;
+                    area.set(x, y, x + size, y + random.nextFloat() * 300);
+                    int category = random.nextBoolean() ? ~0 : 1 << random.nextInt(3);
+                    int mask = random.nextBoolean() ? ~0 : 1 << random.nextInt(3);
+                    checkQuery(grid, inGrid, area, random.nextBoolean() ? obj : null,
+                            category, mask);
+                    break;
+            }
+            assertEquals(inGrid.contains(obj), grid.contains(obj));
+        }
+
+        // Everything gone means every cell is gone too, however much was moved around.
+        for (GameObject obj : all) {
+            grid.remove(obj);
+        }
+        assertEquals(0, grid.getCellCount());
+        area.set(-10000, -10000, 10000, 10000);
+        checkQuery(grid, new ArrayList<GameObject>(), area, null, ~0, ~0);
+    }
+
+    @Test
+    public void cellsFarFromTheOriginDontOverflow() {
+        SpatialGrid grid = new SpatialGrid(1);
+        Sprite far = new Sprite("far", 0, 0, 1, 1);
+        far.boundingRect.set(-3e9f, -3e9f, 3e9f, 3e9f);
+        Sprite near = new Sprite("near", 0, 0, 1, 1);
+        near.boundingRect.set(2e9f, 2e9f, 2e9f + 0.5f, 2e9f + 0.5f);
+        grid.insert(far);
+        grid.insert(near);
+
+        List<GameObject> found = new ArrayList<>();
+        grid.query(new WorldRect(2e9f - 1, 2e9f - 1, 2e9f + 1, 2e9f + 1), null, found);
+        assertTrue(found.contains(far));
+        assertTrue(found.contains(near));
+    }
+}
@@ -0,0 +1,135 @@
+package com.thekeirs.games.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks trigger callbacks with enough objects going in at once that the trigger manager's
+ * table of pairs has to grow while it is filling in which pairs are inside.
+ */
+public class TriggerManagerTest {
+    private static final int BOXES = 300;
+
+    /**
+     * Counts the times it goes in and out of the zone.
+     */
+    static class Box extends Sprite {
+        int enters, exits;
+
+        Box(int i) {
+            super("box" + i, 100 + i % 20 * 5, 100 + i / 20 * 5, 4, 4);
+        }
+
+        @Override
+        public void onTriggerEnter(GameObject other) {
+            if (other.name.equals("zone")) {
+                enters++;
+            }
+        }
+
+        @Override
+        public void onTriggerExit(GameObject other) {
+            if (other.name.equals("zone")) {
+                exits++;
+            }
+        }
+    }
+
+    /**
+     * Counts what goes in and out of it.
+     */
+    static class Zone extends TriggerVolume {
+        int enters, exits;
+
+        Zone() {
+            super("zone", 1200, 450, 400, 400);
+        }
+
+        @Override
+        public void onTriggerEnter(GameObject other) {
+            enters++;
+        }
+
+        @Override
+        public void onTriggerExit(GameObject other) {
+            exits++;
+        }
+    }
+
+    private static void assertCounts(List<Box> boxes, int enters, int exits) {
+        for (Box box : boxes) {
+            assertEquals(box.name + " enters", enters, box.enters);
+            assertEquals(box.name + " exits", exits, box.exits);
+        }
+    }
+
+    @Test
+    public void manyObjectsGoingInAtOnce() {
+        final Zone zone = new Zone();
+        final List<Box> boxes = new ArrayList<>();
+        for (int i = 0; i < BOXES; i++) {
+            boxes.add(new Box(i));
+        }
+        GameObjectManager manager = new GameObjectManager(new MessageBus());
+        manager.setLevel(new GameLevel() {
+            @Override
+            public void setup() {
+                mManager.addObject(zone);
+                for (Box box : boxes) {
+                    mManager.addObject(box);
+                }
+            }
+        });
+        manager.update(16);
+        assertCounts(boxes, 0, 0);
+
+        // All of them go in on the same step, far more pairs than the table starts with room for.
+        for (Box box : boxes) {
+            box.moveBy(1000, 250);
+        }
+        manager.update(16);
+        assertCounts(boxes, 1, 0);
+        assertEquals(BOXES, zone.enters);
+
+        // Moving around inside is just staying.
+        for (int step = 0; step < 3; step++) {
+            for (Box box : boxes) {
+                box.moveBy(1, 1);
+            }
+            manager.update(16);
+        }
+        assertCounts(boxes, 1, 0);
+        assertEquals(BOXES, zone.enters);
+        assertEquals(0, zone.exits);
+
+        // Half of them leave, and a quarter leave the game altogether.
+        List<Box> leaving = boxes.subList(0, BOXES / 2);
+        List<Box> removed = boxes.subList(BOXES / 2, 3 * BOXES / 4);
+        List<Box> staying = boxes.subList(3 * BOXES / 4, BOXES);
+        for (Box box : leaving) {
+            box.moveBy(-1000, 0);
+        }
+        for (Box box : removed) {
+            box.requestRemoval();
+        }
+        manager.update(16);
+        manager.update(16);
+        assertCounts(leaving, 1, 1);
+        assertCounts(removed, 1, 0);
+        assertCounts(staying, 1, 0);
+        assertEquals(BOXES * 3 / 4, zone.exits);
+
+        // The ones that left come back, along with everyone else still here.
+        for (Box box : leaving) {
+            box.moveBy(1000, 0);
+        }
+        manager.update(16);
+        assertCounts(leaving, 2, 1);
+        assertCounts(staying, 1, 0);
+        assertEquals(BOXES * 3 / 2, zone.enters);
+    }
+}
@@ -24,7 +24,7 @@ public class GameActivity extends AppCompatActivity {
 
         mBus = new MessageBus();
 
-        mObjectManager = new GameObjectManager(mBus, getResources());
+        mObjectManager = new GameObjectManager(mBus);
         mObjectManager.setLevel(new StartingLevel());
 
         mGameView = (GameView) findViewById(R.id.gameview);